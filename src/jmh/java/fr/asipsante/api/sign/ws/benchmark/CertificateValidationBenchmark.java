@@ -0,0 +1,128 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.asipsante.api.sign.bean.cacrl.CACRLWrapper;
+import fr.asipsante.api.sign.bean.parameters.CertificateValidationParameters;
+import fr.asipsante.api.sign.bean.rapports.RapportValidationCertificat;
+import fr.asipsante.api.sign.service.ICertificateValidationService;
+import fr.asipsante.api.sign.service.impl.CertificateValidationServiceImpl;
+import fr.asipsante.api.sign.utils.AsipSignException;
+import fr.asipsante.api.sign.ws.bean.ConfigurationLoader;
+import fr.asipsante.api.sign.ws.bean.object.CertVerifConf;
+
+/**
+ * Validation de certificat, comme
+ * ValidationApiDelegateImpl.createRapportValidationCertificat, pour un
+ * certificat PEM ou DER, règle par règle (ou toutes), avec ou sans les
+ * métadonnées lourdes et selon la taille de la CRL de l'AC.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class CertificateValidationBenchmark {
+
+    /** Toutes les règles de vérification de certificat. */
+    private static final String ALL_RULES = "ExpirationCertificat,RevocationCertificat,SignatureCertificatValide,"
+            + "TrustedCertificat,NonRepudiation";
+
+    /** Format du certificat : PEM (texte) ou DER (binaire). */
+    @Param({ "PEM", "DER" })
+    private String format;
+
+    /** Règle vérifiée, ALL pour toutes les règles. */
+    @Param({ "ALL", "ExpirationCertificat", "RevocationCertificat", "SignatureCertificatValide",
+        "TrustedCertificat", "NonRepudiation" })
+    private String rules;
+
+    /** Métadonnées : NONE, BASE ou REPORTS (BASE et rapports). */
+    @Param({ "NONE", "BASE", "REPORTS" })
+    private String metadata;
+
+    /** Nombre de certificats révoqués dans la CRL. */
+    @Param({ "10", "1000", "100000", "1000000" })
+    private int crlEntries;
+
+    /** The certificate validation service. */
+    private ICertificateValidationService certificateValidationService;
+
+    /** The CA/CRL wrapper. */
+    private CACRLWrapper cacrlWrapper;
+
+    /** The certificate validation parameters. */
+    private CertificateValidationParameters certVerifParams;
+
+    /** The DER certificate. */
+    private byte[] der;
+
+    /** The PEM certificate. */
+    private String pem;
+
+    /**
+     * Setup.
+     *
+     * @throws Exception the exception
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final GeneratedPki pki = new GeneratedPki(crlEntries);
+        cacrlWrapper = pki.caCrlService().getCacrlWrapper();
+        certificateValidationService = new CertificateValidationServiceImpl();
+        der = pki.getSignerCertificateDer();
+        pem = pki.getSignerCertificatePem();
+
+        final CertVerifConf certVerifConf = new CertVerifConf();
+        certVerifConf.setIdVerifCert("benchmark");
+        certVerifConf.setDescription("Benchmark");
+        certVerifConf.setRules("ALL".equals(rules) ? ALL_RULES : rules);
+        final String list;
+        if ("BASE".equals(metadata)) {
+            list = "DN_CERTIFICAT";
+        } else if ("REPORTS".equals(metadata)) {
+            list = "DN_CERTIFICAT," + SignatureValidationBenchmark.REPORT_METADATA;
+        } else {
+            list = "";
+        }
+        certVerifConf.setMetadata(list);
+        certVerifParams = ConfigurationLoader.loadCertVerifConf(certVerifConf);
+    }
+
+    /**
+     * Validation du certificat.
+     *
+     * @return the rapport validation certificat
+     * @throws AsipSignException the asip sign exception
+     */
+    @Benchmark
+    public RapportValidationCertificat validate() throws AsipSignException {
+        final RapportValidationCertificat rapportVerifCertANS;
+        if ("DER".equals(format)) {
+            rapportVerifCertANS = certificateValidationService.validateCertificat(der, certVerifParams,
+                    cacrlWrapper);
+        } else {
+            rapportVerifCertANS = certificateValidationService.validateCertificat(pem, certVerifParams,
+                    cacrlWrapper);
+        }
+        return rapportVerifCertANS;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import fr.asipsante.api.sign.bean.cacrl.CACRLWrapper;
+import fr.asipsante.api.sign.bean.parameters.SignatureParameters;
+import fr.asipsante.api.sign.bean.parameters.SignatureValidationParameters;
+import fr.asipsante.api.sign.bean.rapports.RapportSignature;
+import fr.asipsante.api.sign.bean.rapports.RapportValidationSignature;
+import fr.asipsante.api.sign.service.ISignatureService;
+import fr.asipsante.api.sign.service.ISignatureValidationService;
+import fr.asipsante.api.sign.service.impl.SignatureServiceImpl;
+import fr.asipsante.api.sign.service.impl.SignatureValidationServiceImpl;
+import fr.asipsante.api.sign.utils.AsipSignException;
+import fr.asipsante.api.sign.ws.bean.ConfigurationLoader;
+import fr.asipsante.api.sign.ws.bean.object.SignVerifConf;
+import fr.asipsante.api.sign.ws.util.ESignatureType;
+import fr.asipsante.api.sign.ws.validation.FailFastValidation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Validation d'un document valide, comme ValidationApiDelegateImpl : en un
+ * appel au moteur (NORMAL) ou palier par palier (FAILFAST, en-tête
+ * X-Validation-Mode). Sur un document valide, aucun palier n'échoue : chaque
+ * palier est un appel complet au moteur (lecture du document et de la
+ * signature), le mode failfast coûte alors environ autant d'appels que de
+ * paliers (3 avec config.failfast.tiers par défaut).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class FailFastBenchmark {
+
+    /** Paliers de règles par défaut (config.failfast.tiers). */
+    private static final String TIERS = "DocumentIntact,SignatureIntacte,SignatureNonVide,FormatSignature,"
+            + "ExistenceDuCertificatDeSignature,ExistenceBaliseSigningTime,ExpirationCertificat,NonRepudiation;"
+            + "SignatureCertificatValide,ValidationSignature,BundleCRLNonNull,ExpirationCRL;"
+            + "TrustedCertificat,RevocationCertificat";
+
+    /** Taille du document signé. */
+    private static final int DOC_SIZE = 10240;
+
+    /** Nombre de certificats révoqués dans la CRL. */
+    private static final int CRL_ENTRIES = 1000;
+
+    /** The signature type. */
+    @Param({ "XMLDSIG", "XADES", "PADES" })
+    private ESignatureType type;
+
+    /** Mode de validation : NORMAL ou FAILFAST. */
+    @Param({ "NORMAL", "FAILFAST" })
+    private String mode;
+
+    /** The signature validation service. */
+    private ISignatureValidationService signatureValidationService;
+
+    /** The fail-fast validation. */
+    private FailFastValidation failFastValidation;
+
+    /** The CA/CRL wrapper. */
+    private CACRLWrapper cacrlWrapper;
+
+    /** The signature validation parameters. */
+    private SignatureValidationParameters signVerifParams;
+
+    /** The signed document. */
+    private byte[] signedDoc;
+
+    /**
+     * Setup.
+     *
+     * @throws Exception the exception
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final GeneratedPki pki = new GeneratedPki(CRL_ENTRIES);
+        cacrlWrapper = pki.caCrlService().getCacrlWrapper();
+        signatureValidationService = new SignatureValidationServiceImpl();
+
+        final SignVerifConf signVerifConf = new SignVerifConf();
+        signVerifConf.setIdVerifSign("benchmark");
+        signVerifConf.setDescription("Benchmark");
+        signVerifConf.setRules(SignatureValidationBenchmark.ALL_RULES);
+        signVerifConf.setMetadata("");
+        signVerifParams = ConfigurationLoader.loadSignVerifConf(signVerifConf);
+
+        failFastValidation = new FailFastValidation();
+        ReflectionTestUtils.setField(failFastValidation, "enabled", true);
+        ReflectionTestUtils.setField(failFastValidation, "tiers", TIERS);
+        ReflectionTestUtils.setField(failFastValidation, "samples", 20L);
+        ReflectionTestUtils.setField(failFastValidation, "meterRegistry", new SimpleMeterRegistry());
+        failFastValidation.init();
+
+        final SignatureParameters signParams = pki.signParams(Fixtures.conf().getSignatureById("1")
+                .orElseThrow(() -> new IllegalStateException("Configuration 1")));
+        final ISignatureService signatureService = new SignatureServiceImpl();
+        final RapportSignature rapportSignature;
+        if (ESignatureType.XADES.equals(type)) {
+            rapportSignature = signatureService.signXADESBaselineB(Fixtures.xml(DOC_SIZE), signParams);
+        } else if (ESignatureType.PADES.equals(type)) {
+            rapportSignature = signatureService.signPADESBaselineB(Fixtures.pdf(DOC_SIZE), signParams);
+        } else {
+            rapportSignature = signatureService.signXMLDsig(Fixtures.xml(DOC_SIZE), signParams);
+        }
+        signedDoc = rapportSignature.getDocSigneBytes();
+        if (!validate().isValide()) {
+            throw new IllegalStateException("Le document signé doit être valide");
+        }
+    }
+
+    /**
+     * Validation de la signature.
+     *
+     * @return the rapport validation signature, the last one in fail-fast mode
+     * @throws AsipSignException the asip sign exception
+     * @throws IOException       the IO exception
+     */
+    @Benchmark
+    public RapportValidationSignature validate() throws AsipSignException, IOException {
+        if ("FAILFAST".equals(mode)) {
+            final List<RapportValidationSignature> rapports = failFastValidation.validate("signature",
+                    signVerifParams.getRules(),
+                    rules -> validate(FailFastValidation.withRules(signVerifParams, rules)),
+                    RapportValidationSignature::isValide);
+            return rapports.get(rapports.size() - 1);
+        }
+        return validate(signVerifParams);
+    }
+
+    /**
+     * Appel au moteur de validation.
+     *
+     * @param params the validation parameters
+     * @return the rapport validation signature
+     * @throws AsipSignException the asip sign exception
+     */
+    private RapportValidationSignature validate(final SignatureValidationParameters params)
+            throws AsipSignException {
+        final RapportValidationSignature rapportVerifSignANS;
+        if (ESignatureType.XADES.equals(type)) {
+            rapportVerifSignANS = signatureValidationService.validateXADESBaseLineBSignature(signedDoc, params,
+                    cacrlWrapper);
+        } else if (ESignatureType.PADES.equals(type)) {
+            rapportVerifSignANS = signatureValidationService.validatePADESBaseLineBSignature(signedDoc, params,
+                    cacrlWrapper);
+        } else {
+            rapportVerifSignANS = signatureValidationService.validateXMLDsigSignature(signedDoc, params,
+                    cacrlWrapper);
+        }
+        return rapportVerifSignANS;
+    }
+}
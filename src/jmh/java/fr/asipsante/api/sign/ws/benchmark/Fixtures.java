@@ -0,0 +1,102 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.asipsante.api.sign.ws.bean.config.impl.GlobalConfJson;
+import fr.asipsante.api.sign.ws.bean.object.CertVerifConf;
+import fr.asipsante.api.sign.ws.bean.object.ProofConf;
+import fr.asipsante.api.sign.ws.bean.object.SignVerifConf;
+import fr.asipsante.api.sign.ws.bean.object.SignatureConf;
+import fr.asipsante.api.sign.ws.util.SyntheticDocuments;
+
+/**
+ * Jeux de données des benchmarks : configuration de test (esignsante-conf.json)
+ * dont les paramètres sont construits par ConfigurationLoader, comme au
+ * démarrage du service, et documents XML ou PDF de taille donnée (SyntheticDocuments).
+ */
+public final class Fixtures {
+
+    /** Configuration des tests. */
+    private static final String CONF = "esignsante-conf.json";
+
+    /** The configuration. */
+    private static GlobalConfJson conf;
+
+    /**
+     * Instantiates a new fixtures.
+     */
+    private Fixtures() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Configuration de test, chargée une seule fois.
+     *
+     * @return the configuration
+     * @throws IOException            the IO exception
+     * @throws IllegalAccessException the illegal access exception
+     */
+    public static synchronized GlobalConfJson conf() throws IOException, IllegalAccessException {
+        if (conf == null) {
+            try (final InputStream is = resource(CONF)) {
+                final GlobalConfJson loaded = new ObjectMapper().readValue(is, GlobalConfJson.class);
+                for (final SignatureConf signConf : loaded.getSignature()) {
+                    signConf.checkValid();
+                }
+                for (final ProofConf proofConf : loaded.getProof()) {
+                    proofConf.checkValid();
+                }
+                for (final SignVerifConf signVerifConf : loaded.getSignatureVerification()) {
+                    signVerifConf.checkValid();
+                }
+                for (final CertVerifConf certVerifConf : loaded.getCertificateVerification()) {
+                    certVerifConf.checkValid();
+                }
+                conf = loaded;
+            }
+        }
+        return conf;
+    }
+
+    /**
+     * Ressource du classpath de test.
+     *
+     * @param name the name
+     * @return the stream
+     * @throws IOException resource not found
+     */
+    public static InputStream resource(final String name) throws IOException {
+        final InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(name);
+        if (is == null) {
+            throw new IOException("Ressource introuvable : " + name);
+        }
+        return is;
+    }
+
+    /**
+     * Document XML d'au moins size octets.
+     *
+     * @param size the size
+     * @return the document
+     */
+    public static byte[] xml(final int size) {
+        return SyntheticDocuments.xml(size);
+    }
+
+    /**
+     * Document PDF d'au moins size octets.
+     *
+     * @param size the size
+     * @return the document
+     */
+    public static byte[] pdf(final int size) {
+        return SyntheticDocuments.pdf(size);
+    }
+}
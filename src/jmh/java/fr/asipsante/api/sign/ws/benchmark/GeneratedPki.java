@@ -0,0 +1,267 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CRLConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.util.io.pem.PemObject;
+import org.bouncycastle.util.io.pem.PemWriter;
+
+import fr.asipsante.api.sign.bean.parameters.SignatureParameters;
+import fr.asipsante.api.sign.service.ICACRLService;
+import fr.asipsante.api.sign.service.impl.CACRLServiceImpl;
+import fr.asipsante.api.sign.ws.bean.ConfigurationLoader;
+import fr.asipsante.api.sign.ws.bean.object.SignatureConf;
+
+/**
+ * PKI générée pour les benchmarks de validation : une AC, un certificat de
+ * signature émis par l'AC et une CRL de l'AC contenant un nombre donné de
+ * certificats révoqués (le certificat de signature n'en fait pas partie).
+ */
+public final class GeneratedPki {
+
+    /** Signature algorithm. */
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+
+    /** RSA key size. */
+    private static final int KEY_SIZE = 2048;
+
+    /** Validity of certificates and CRL, in days. */
+    private static final long VALIDITY_DAYS = 7;
+
+    /** The CA certificate. */
+    private final X509Certificate caCertificate;
+
+    /** The signer certificate. */
+    private final X509Certificate signerCertificate;
+
+    /** The signer key pair. */
+    private final KeyPair signerKeys;
+
+    /** The CRL. */
+    private final X509CRL crl;
+
+    /**
+     * Génère l'AC, le certificat de signature et la CRL.
+     *
+     * @param crlEntries the number of revoked certificates in the CRL
+     * @throws GeneralSecurityException the general security exception
+     * @throws IOException              the IO exception
+     */
+    public GeneratedPki(final int crlEntries) throws GeneralSecurityException, IOException {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(KEY_SIZE);
+        final KeyPair caKeys = generator.generateKeyPair();
+        signerKeys = generator.generateKeyPair();
+
+        final Date now = new Date();
+        final Date notAfter = new Date(now.getTime() + TimeUnit.DAYS.toMillis(VALIDITY_DAYS));
+        final Date notBefore = new Date(now.getTime() - TimeUnit.DAYS.toMillis(1));
+        final X500Name caName = new X500Name("CN=AC BENCHMARK,O=ANS,C=FR");
+        final JcaX509ExtensionUtils extensionUtils = new JcaX509ExtensionUtils();
+        try {
+            final ContentSigner caSigner = new JcaContentSignerBuilder(SIGNATURE_ALGORITHM)
+                    .build(caKeys.getPrivate());
+
+            final X509v3CertificateBuilder caBuilder = new JcaX509v3CertificateBuilder(caName, BigInteger.ONE,
+                    notBefore, notAfter, caName, caKeys.getPublic())
+                    .addExtension(Extension.basicConstraints, true, new BasicConstraints(true))
+                    .addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign))
+                    .addExtension(Extension.subjectKeyIdentifier, false,
+                            extensionUtils.createSubjectKeyIdentifier(caKeys.getPublic()));
+            caCertificate = new JcaX509CertificateConverter().getCertificate(caBuilder.build(caSigner));
+
+            // les numéros de série 2..crlEntries+1 sont révoqués, le certificat de signature est hors CRL
+            final BigInteger signerSerial = BigInteger.valueOf(crlEntries + 2L);
+            final X509v3CertificateBuilder signerBuilder = new JcaX509v3CertificateBuilder(caCertificate,
+                    signerSerial, notBefore, notAfter, new X500Name("CN=SIGNATAIRE BENCHMARK,O=ANS,C=FR"),
+                    signerKeys.getPublic())
+                    .addExtension(Extension.basicConstraints, true, new BasicConstraints(false))
+                    .addExtension(Extension.keyUsage, true,
+                            new KeyUsage(KeyUsage.digitalSignature | KeyUsage.nonRepudiation))
+                    .addExtension(Extension.subjectKeyIdentifier, false,
+                            extensionUtils.createSubjectKeyIdentifier(signerKeys.getPublic()))
+                    .addExtension(Extension.authorityKeyIdentifier, false,
+                            extensionUtils.createAuthorityKeyIdentifier(caCertificate));
+            signerCertificate = new JcaX509CertificateConverter().getCertificate(signerBuilder.build(caSigner));
+
+            final X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(caName, now);
+            crlBuilder.setNextUpdate(notAfter);
+            crlBuilder.addExtension(Extension.authorityKeyIdentifier, false,
+                    extensionUtils.createAuthorityKeyIdentifier(caCertificate));
+            for (long serial = 2; serial < crlEntries + 2L; serial++) {
+                crlBuilder.addCRLEntry(BigInteger.valueOf(serial), notBefore, CRLReason.keyCompromise);
+            }
+            crl = new JcaX509CRLConverter().getCRL(crlBuilder.build(caSigner));
+        } catch (final OperatorCreationException e) {
+            throw new GeneralSecurityException(e);
+        }
+    }
+
+    /**
+     * Service AC/CRL chargé avec l'AC et la CRL générées, comme par
+     * CaCrlServiceLoader.
+     *
+     * @return the CA/CRL service
+     * @throws IOException              the IO exception
+     * @throws GeneralSecurityException the general security exception
+     */
+    public ICACRLService caCrlService() throws IOException, GeneralSecurityException {
+        final ICACRLService serviceCaCrl = new CACRLServiceImpl();
+        final File caFile = File.createTempFile("ca-bundle", ".crt");
+        final File crlFile = File.createTempFile("ca-bundle", ".crl");
+        try {
+            try (final Writer writer = new FileWriter(caFile)) {
+                writePem(writer, "CERTIFICATE", caCertificate.getEncoded());
+            }
+            try (final Writer writer = new FileWriter(crlFile)) {
+                writePem(writer, "X509 CRL", crl.getEncoded());
+            }
+            serviceCaCrl.loadCA(caFile);
+            serviceCaCrl.loadCRL(crlFile);
+        } finally {
+            caFile.delete();
+            crlFile.delete();
+        }
+        return serviceCaCrl;
+    }
+
+    /**
+     * Paramètres de signature du certificat généré, construits par
+     * ConfigurationLoader à partir des algorithmes de la configuration de test.
+     *
+     * @param model the test signature configuration
+     * @return the signature parameters
+     * @throws IOException the IO exception
+     */
+    public SignatureParameters signParams(final SignatureConf model) throws IOException {
+        final SignatureConf signConf = new SignatureConf();
+        signConf.setDescription("Benchmark");
+        signConf.setCanonicalisationAlgorithm(model.getCanonicalisationAlgorithm());
+        signConf.setDigestAlgorithm(model.getDigestAlgorithm());
+        signConf.setSignaturePackaging(model.getSignaturePackaging());
+        signConf.setSignId(model.getSignId());
+        signConf.setSignValueId(model.getSignValueId());
+        signConf.setObjectId(model.getObjectId());
+        signConf.setElementToSign(model.getElementToSign());
+        signConf.setElementBeforeInsertSignature(model.getElementBeforeInsertSignature());
+        signConf.setCertificate(getSignerCertificatePem());
+        signConf.setPrivateKey(getSignerPrivateKeyPem());
+        return ConfigurationLoader.loadSignConf(signConf);
+    }
+
+    /**
+     * Gets the CA certificate in PEM.
+     *
+     * @return the CA certificate
+     * @throws IOException the IO exception
+     */
+    public String getCaCertificatePem() throws IOException {
+        try {
+            return pem("CERTIFICATE", caCertificate.getEncoded());
+        } catch (final GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Gets the CRL in DER.
+     *
+     * @return the CRL
+     * @throws GeneralSecurityException the general security exception
+     */
+    public byte[] getCrlDer() throws GeneralSecurityException {
+        return crl.getEncoded();
+    }
+
+    /**
+     * Gets the signer private key in PEM (PKCS#8).
+     *
+     * @return the private key
+     * @throws IOException the IO exception
+     */
+    public String getSignerPrivateKeyPem() throws IOException {
+        return pem("PRIVATE KEY", signerKeys.getPrivate().getEncoded());
+    }
+
+    /**
+     * Gets the signer certificate in DER.
+     *
+     * @return the signer certificate
+     * @throws GeneralSecurityException the general security exception
+     */
+    public byte[] getSignerCertificateDer() throws GeneralSecurityException {
+        return signerCertificate.getEncoded();
+    }
+
+    /**
+     * Gets the signer certificate in PEM.
+     *
+     * @return the signer certificate
+     * @throws IOException the IO exception
+     */
+    public String getSignerCertificatePem() throws IOException {
+        try {
+            return pem("CERTIFICATE", signerCertificate.getEncoded());
+        } catch (final GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * PEM encoding.
+     *
+     * @param type    the PEM type
+     * @param content the DER content
+     * @return the PEM
+     * @throws IOException the IO exception
+     */
+    private static String pem(final String type, final byte[] content) throws IOException {
+        final StringWriter writer = new StringWriter();
+        writePem(writer, type, content);
+        return writer.toString();
+    }
+
+    /**
+     * Writes a PEM object.
+     *
+     * @param writer  the writer
+     * @param type    the PEM type
+     * @param content the DER content
+     * @throws IOException the IO exception
+     */
+    private static void writePem(final Writer writer, final String type, final byte[] content) throws IOException {
+        try (final PemWriter pem = new PemWriter(writer)) {
+            pem.writeObject(new PemObject(type, content));
+            pem.flush();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.asipsante.api.sign.ws.util.Secrets;
+
+/**
+ * Coût de vérification d'un secret selon l'algorithme et le coût du hash.
+ * Un coût à 0 correspond au coût par défaut de l'algorithme.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SecretsBenchmark {
+
+    /** The secret. */
+    private static final String SECRET = "password";
+
+    /** The algorithm. */
+    @Param({ Secrets.BCRYPT, Secrets.PBKDF2, Secrets.ARGON2, Secrets.SHA256 })
+    private String algorithm;
+
+    /** The cost. */
+    @Param({ "0", "10" })
+    private int cost;
+
+    /** The hash. */
+    private String hash;
+
+    /**
+     * Setup.
+     */
+    @Setup
+    public void setup() {
+        hash = Secrets.hash(SECRET, algorithm, cost == 0 ? null : cost);
+    }
+
+    /**
+     * Vérification d'un secret valide.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public boolean matchValid() {
+        return Secrets.match(SECRET, hash);
+    }
+
+    /**
+     * Vérification d'un secret invalide.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public boolean matchInvalid() {
+        return Secrets.match("wrong", hash);
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.asipsante.api.sign.bean.parameters.SignatureParameters;
+import fr.asipsante.api.sign.bean.rapports.RapportSignature;
+import fr.asipsante.api.sign.service.ISignatureService;
+import fr.asipsante.api.sign.service.impl.SignatureServiceImpl;
+import fr.asipsante.api.sign.utils.AsipSignException;
+import fr.asipsante.api.sign.ws.util.ESignatureType;
+
+/**
+ * Signature XMLDsig, XAdES et PAdES selon la taille du document, avec la
+ * configuration de signature 1 des tests.
+ * Débit et percentiles de latence ; le taux d'allocation est obtenu avec
+ * -prof gc, la concurrence avec -t (1, 4, max...).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class SignatureBenchmark {
+
+    /** Identifiant de la configuration de signature. */
+    private static final String ID_SIGN_CONF = "1";
+
+    /** The signature type. */
+    @Param({ "XMLDSIG", "XADES", "PADES" })
+    private ESignatureType type;
+
+    /** Taille du document : 1 Ko, 100 Ko, 1 Mo, 10 Mo, 100 Mo. */
+    @Param({ "1024", "102400", "1048576", "10485760", "104857600" })
+    private int size;
+
+    /** The signature service. */
+    private ISignatureService signatureService;
+
+    /** The signature parameters. */
+    private SignatureParameters signParams;
+
+    /** The document. */
+    private byte[] doc;
+
+    /**
+     * Setup.
+     *
+     * @throws Exception the exception
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        signatureService = new SignatureServiceImpl();
+        signParams = Fixtures.conf().getSignatureById(ID_SIGN_CONF)
+                .orElseThrow(() -> new IllegalStateException("Configuration " + ID_SIGN_CONF)).getSignParams();
+        doc = ESignatureType.PADES.equals(type) ? Fixtures.pdf(size) : Fixtures.xml(size);
+    }
+
+    /**
+     * Signature du document.
+     *
+     * @return the rapport signature
+     * @throws AsipSignException the asip sign exception
+     */
+    @Benchmark
+    public RapportSignature sign() throws AsipSignException {
+        final RapportSignature rapportSignature;
+        if (ESignatureType.XADES.equals(type)) {
+            rapportSignature = signatureService.signXADESBaselineB(doc, signParams);
+        } else if (ESignatureType.PADES.equals(type)) {
+            rapportSignature = signatureService.signPADESBaselineB(doc, signParams);
+        } else {
+            rapportSignature = signatureService.signXMLDsig(doc, signParams);
+        }
+        return rapportSignature;
+    }
+}
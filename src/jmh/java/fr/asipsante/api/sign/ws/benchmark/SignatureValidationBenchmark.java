@@ -0,0 +1,181 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.asipsante.api.sign.bean.cacrl.CACRLWrapper;
+import fr.asipsante.api.sign.bean.parameters.SignatureParameters;
+import fr.asipsante.api.sign.bean.parameters.SignatureValidationParameters;
+import fr.asipsante.api.sign.bean.rapports.RapportSignature;
+import fr.asipsante.api.sign.bean.rapports.RapportValidationSignature;
+import fr.asipsante.api.sign.service.ISignatureService;
+import fr.asipsante.api.sign.service.ISignatureValidationService;
+import fr.asipsante.api.sign.service.impl.SignatureServiceImpl;
+import fr.asipsante.api.sign.service.impl.SignatureValidationServiceImpl;
+import fr.asipsante.api.sign.utils.AsipSignException;
+import fr.asipsante.api.sign.ws.bean.ConfigurationLoader;
+import fr.asipsante.api.sign.ws.bean.object.SignVerifConf;
+import fr.asipsante.api.sign.ws.util.ESignatureType;
+import fr.asipsante.api.sign.ws.util.MetadataSelection;
+
+/**
+ * Validation de signature, comme ValidationApiDelegateImpl.genSignVerifReport,
+ * règle par règle (ou toutes), avec ou sans les métadonnées lourdes
+ * (RAPPORT_DIAGNOSTIQUE, RAPPORT_DSS) configurées puis sélectionnées par la
+ * requête, et selon la taille de la CRL de l'AC. Le document est signé par un
+ * certificat émis par une AC générée. Le gain de la sélection se lit en temps
+ * et en allocation (-prof gc) :
+ * -p rules=ALL -p metadata=REPORTS -p selection=ALL,none -prof gc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class SignatureValidationBenchmark {
+
+    /** Toutes les règles de vérification de signature. */
+    static final String ALL_RULES = "TrustedCertificat,FormatSignature,SignatureCertificatValide,"
+            + "ExistenceBaliseSigningTime,ExistenceDuCertificatDeSignature,ExpirationCertificat,NonRepudiation,"
+            + "RevocationCertificat,SignatureNonVide,SignatureIntacte,DocumentIntact,BundleCRLNonNull,ExpirationCRL,"
+            + "ValidationSignature";
+
+    /** Métadonnées légères. */
+    static final String BASE_METADATA = "DATE_SIGNATURE,DN_CERTIFICAT,DOCUMENT_ORIGINAL_NON_SIGNE";
+
+    /** Métadonnées lourdes. */
+    static final String REPORT_METADATA = "RAPPORT_DIAGNOSTIQUE,RAPPORT_DSS";
+
+    /** Taille du document signé. */
+    private static final int DOC_SIZE = 10240;
+
+    /** The signature type. */
+    @Param({ "XMLDSIG", "XADES", "PADES" })
+    private ESignatureType type;
+
+    /** Règle vérifiée, ALL pour toutes les règles. */
+    @Param({ "ALL", "TrustedCertificat", "FormatSignature", "SignatureCertificatValide", "ExistenceBaliseSigningTime",
+        "ExistenceDuCertificatDeSignature", "ExpirationCertificat", "NonRepudiation", "RevocationCertificat",
+        "SignatureNonVide", "SignatureIntacte", "DocumentIntact", "BundleCRLNonNull", "ExpirationCRL",
+        "ValidationSignature" })
+    private String rules;
+
+    /** Métadonnées : NONE, BASE ou REPORTS (BASE et rapports). */
+    @Param({ "NONE", "BASE", "REPORTS" })
+    private String metadata;
+
+    /**
+     * Sélection des métadonnées par la requête (en-tête X-Metadata,
+     * MetadataSelection) : ALL sans en-tête, toutes les métadonnées
+     * configurées.
+     */
+    @Param({ "ALL", "none", "DN_CERTIFICAT" })
+    private String selection;
+
+    /** Nombre de certificats révoqués dans la CRL. */
+    @Param({ "10", "1000", "100000", "1000000" })
+    private int crlEntries;
+
+    /** The signature validation service. */
+    private ISignatureValidationService signatureValidationService;
+
+    /** The CA/CRL wrapper. */
+    private CACRLWrapper cacrlWrapper;
+
+    /** The signature validation parameters. */
+    private SignatureValidationParameters signVerifParams;
+
+    /** The signed document. */
+    private byte[] signedDoc;
+
+    /**
+     * Setup.
+     *
+     * @throws Exception the exception
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final GeneratedPki pki = new GeneratedPki(crlEntries);
+        cacrlWrapper = pki.caCrlService().getCacrlWrapper();
+        signatureValidationService = new SignatureValidationServiceImpl();
+
+        final SignVerifConf signVerifConf = new SignVerifConf();
+        signVerifConf.setIdVerifSign("benchmark");
+        signVerifConf.setDescription("Benchmark");
+        signVerifConf.setRules("ALL".equals(rules) ? ALL_RULES : rules);
+        signVerifConf.setMetadata(metadata(metadata));
+        final SignatureValidationParameters configured = ConfigurationLoader.loadSignVerifConf(signVerifConf);
+        signVerifParams = "ALL".equals(selection) ? configured
+                : MetadataSelection.restrict(configured, MetadataSelection.parse(selection).get());
+
+        final SignatureParameters signParams = pki.signParams(Fixtures.conf().getSignatureById("1")
+                .orElseThrow(() -> new IllegalStateException("Configuration 1")));
+        final ISignatureService signatureService = new SignatureServiceImpl();
+        final RapportSignature rapportSignature;
+        if (ESignatureType.XADES.equals(type)) {
+            rapportSignature = signatureService.signXADESBaselineB(Fixtures.xml(DOC_SIZE), signParams);
+        } else if (ESignatureType.PADES.equals(type)) {
+            rapportSignature = signatureService.signPADESBaselineB(Fixtures.pdf(DOC_SIZE), signParams);
+        } else {
+            rapportSignature = signatureService.signXMLDsig(Fixtures.xml(DOC_SIZE), signParams);
+        }
+        signedDoc = rapportSignature.getDocSigneBytes();
+    }
+
+    /**
+     * Liste de métadonnées d'un niveau.
+     *
+     * @param level NONE, BASE ou REPORTS
+     * @return the metadata list
+     */
+    private static String metadata(final String level) {
+        final String list;
+        if ("BASE".equals(level)) {
+            list = BASE_METADATA;
+        } else if ("REPORTS".equals(level)) {
+            list = BASE_METADATA + "," + REPORT_METADATA;
+        } else {
+            list = "";
+        }
+        return list;
+    }
+
+    /**
+     * Validation de la signature.
+     *
+     * @return the rapport validation signature
+     * @throws AsipSignException the asip sign exception
+     */
+    @Benchmark
+    public RapportValidationSignature validate() throws AsipSignException {
+        final RapportValidationSignature rapportVerifSignANS;
+        if (ESignatureType.XADES.equals(type)) {
+            rapportVerifSignANS = signatureValidationService.validateXADESBaseLineBSignature(signedDoc,
+                    signVerifParams, cacrlWrapper);
+        } else if (ESignatureType.PADES.equals(type)) {
+            rapportVerifSignANS = signatureValidationService.validatePADESBaseLineBSignature(signedDoc,
+                    signVerifParams, cacrlWrapper);
+        } else {
+            rapportVerifSignANS = signatureValidationService.validateXMLDsigSignature(signedDoc,
+                    signVerifParams, cacrlWrapper);
+        }
+        return rapportVerifSignANS;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.loadtest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latences (HdrHistogram, en microsecondes) et erreurs par opération. Le
+ * rapport comprend un fichier .hgrm par opération et un résumé CSV, à comparer
+ * entre deux builds.
+ */
+public class LatencyReport {
+
+    /** Précision des histogrammes. */
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    /** Microseconds per millisecond. */
+    private static final double MICROS_PER_MS = 1000d;
+
+    /** Latences par opération. */
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+
+    /** Erreurs par opération. */
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+
+    /**
+     * Instantiates a new latency report.
+     */
+    public LatencyReport() {
+        for (final Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(SIGNIFICANT_DIGITS));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    /**
+     * Enregistre une requête.
+     *
+     * @param operation    the operation
+     * @param latencyNanos the latency, from the intended start time
+     * @param success      true if the response is a 2xx
+     */
+    public void record(final Operation operation, final long latencyNanos, final boolean success) {
+        latencies.get(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        if (!success) {
+            errors.get(operation).increment();
+        }
+    }
+
+    /**
+     * Ecrit le rapport et l'affiche sur la sortie standard.
+     *
+     * @param output          the output directory
+     * @param durationSeconds the measurement duration
+     * @throws IOException the IO exception
+     */
+    public void write(final File output, final long durationSeconds) throws IOException {
+        if (!output.isDirectory() && !output.mkdirs()) {
+            throw new IOException("Répertoire non créé : " + output);
+        }
+        final Histogram all = new Histogram(SIGNIFICANT_DIGITS);
+        try (final PrintStream csv = new PrintStream(new FileOutputStream(new File(output, "summary.csv")), true,
+                StandardCharsets.UTF_8.name())) {
+            csv.println("operation,count,errors,throughput,p50_ms,p90_ms,p99_ms,p999_ms,max_ms");
+            System.out.println(String.format(Locale.ROOT, "%-18s %8s %7s %9s %9s %9s %9s %9s %9s", "operation",
+                    "count", "errors", "req/s", "p50", "p90", "p99", "p99.9", "max"));
+            for (final Operation operation : Operation.values()) {
+                final Histogram histogram = latencies.get(operation);
+                if (histogram.getTotalCount() > 0) {
+                    all.add(histogram);
+                    line(csv, operation.name(), histogram, errors.get(operation).sum(), durationSeconds);
+                    writeHgrm(new File(output, operation.name() + ".hgrm"), histogram);
+                }
+            }
+            long totalErrors = 0;
+            for (final LongAdder error : errors.values()) {
+                totalErrors += error.sum();
+            }
+            line(csv, "ALL", all, totalErrors, durationSeconds);
+            writeHgrm(new File(output, "ALL.hgrm"), all);
+        }
+        System.out.println("Rapport : " + output.getAbsolutePath());
+    }
+
+    /**
+     * Ligne du résumé.
+     *
+     * @param csv             the CSV output
+     * @param name            the operation name
+     * @param histogram       the histogram
+     * @param errorCount      the errors
+     * @param durationSeconds the measurement duration
+     */
+    private static void line(final PrintStream csv, final String name, final Histogram histogram,
+            final long errorCount, final long durationSeconds) {
+        final double throughput = (double) histogram.getTotalCount() / durationSeconds;
+        final double[] values = { ms(histogram.getValueAtPercentile(50)), ms(histogram.getValueAtPercentile(90)),
+            ms(histogram.getValueAtPercentile(99)), ms(histogram.getValueAtPercentile(99.9)),
+            ms(histogram.getMaxValue()) };
+        csv.println(String.format(Locale.ROOT, "%s,%d,%d,%.2f,%.3f,%.3f,%.3f,%.3f,%.3f", name,
+                histogram.getTotalCount(), errorCount, throughput, values[0], values[1], values[2], values[3],
+                values[4]));
+        System.out.println(String.format(Locale.ROOT, "%-18s %8d %7d %9.2f %9.1f %9.1f %9.1f %9.1f %9.1f", name,
+                histogram.getTotalCount(), errorCount, throughput, values[0], values[1], values[2], values[3],
+                values[4]));
+    }
+
+    /**
+     * Distribution des percentiles, en millisecondes.
+     *
+     * @param file      the file
+     * @param histogram the histogram
+     * @throws IOException the IO exception
+     */
+    private static void writeHgrm(final File file, final Histogram histogram) throws IOException {
+        try (final PrintStream out = new PrintStream(new FileOutputStream(file), true,
+                StandardCharsets.UTF_8.name())) {
+            histogram.outputPercentileDistribution(out, MICROS_PER_MS);
+        }
+    }
+
+    /**
+     * Microseconds to milliseconds.
+     *
+     * @param micros the value in microseconds
+     * @return the value in milliseconds
+     */
+    private static double ms(final long micros) {
+        return micros / MICROS_PER_MS;
+    }
+}
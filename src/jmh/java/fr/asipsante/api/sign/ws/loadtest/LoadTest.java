@@ -0,0 +1,302 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.loadtest;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import fr.asipsante.api.sign.ws.Application;
+import fr.asipsante.api.sign.ws.benchmark.Fixtures;
+import fr.asipsante.api.sign.ws.benchmark.GeneratedPki;
+import fr.asipsante.api.sign.ws.model.ESignSanteSignatureReport;
+
+/**
+ * Test de charge HTTP de bout en bout.
+ * Démarre le service sur un port libre avec une configuration générée (AC,
+ * certificat de signature et CRL générés, CRL servie par LocalPkiServer), puis
+ * envoie un mélange de requêtes de signature et de validation :
+ * <ul>
+ * <li>en boucle fermée avec threads clients si rate=0 ;</li>
+ * <li>en boucle ouverte à rate requêtes/s sinon, la latence étant mesurée
+ * depuis l'instant d'émission prévu (pas d'omission coordonnée).</li>
+ * </ul>
+ * Paramètres (clé=valeur) : threads, rate, warmup et duration (secondes),
+ * size (octets), crlEntries, mix (OPERATION=poids,...), output.
+ */
+public final class LoadTest {
+
+    /** Mélange par défaut. */
+    private static final String DEFAULT_MIX = "SIGN_XADES=3,SIGN_PADES=1,SIGN_XADES_PROOF=1,VALIDATE_XADES=3,"
+            + "VALIDATE_PADES=1,VERIF_CERT=1";
+
+    /** Identifiant des configurations utilisées. */
+    private static final String CONF_ID = "1";
+
+    /** The options. */
+    private final Map<String, String> options;
+
+    /** The HTTP client. */
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    /** The report. */
+    private final LatencyReport report = new LatencyReport();
+
+    /** Documents envoyés. */
+    private final Map<Operation.Document, byte[]> documents = new EnumMap<>(Operation.Document.class);
+
+    /** Opérations, pondérées. */
+    private final List<Operation> mix = new ArrayList<>();
+
+    /** The base url. */
+    private String baseUrl;
+
+    /**
+     * Instantiates a new load test.
+     *
+     * @param options the options
+     */
+    private LoadTest(final Map<String, String> options) {
+        this.options = options;
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args options clé=valeur
+     * @throws Exception the exception
+     */
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> options = new HashMap<>();
+        for (final String arg : args) {
+            final int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.out.println("Usage : threads=16 rate=0 warmup=10 duration=60 size=10240 crlEntries=1000 "
+                        + "mix=" + DEFAULT_MIX + " output=target/loadtest");
+                return;
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new LoadTest(options).run();
+        System.exit(0);
+    }
+
+    /**
+     * Option entière.
+     *
+     * @param name         the name
+     * @param defaultValue the default value
+     * @return the value
+     */
+    private int intOption(final String name, final int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    /**
+     * Déroulement du test.
+     *
+     * @throws Exception the exception
+     */
+    private void run() throws Exception {
+        final GeneratedPki pki = new GeneratedPki(intOption("crlEntries", 1000));
+        final LocalPkiServer pkiServer = new LocalPkiServer(pki.getCrlDer());
+        final File conf = writeConfiguration(pki, pkiServer.getCrlUrl());
+        System.setProperty("ws.conf", conf.getAbsolutePath());
+        final ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties("server.port=0", "config.secret=disable", "config.throttle.enabled=false").run();
+        try {
+            baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            prepareDocuments(pki);
+            for (final String entry : options.getOrDefault("mix", DEFAULT_MIX).split(",")) {
+                final String[] weighted = entry.trim().split("=");
+                final int weight = weighted.length > 1 ? Integer.parseInt(weighted[1]) : 1;
+                for (int i = 0; i < weight; i++) {
+                    mix.add(Operation.valueOf(weighted[0]));
+                }
+            }
+            final int warmup = intOption("warmup", 10);
+            final int duration = intOption("duration", 60);
+            drive(TimeUnit.SECONDS.toNanos(warmup), TimeUnit.SECONDS.toNanos(duration));
+            report.write(new File(options.getOrDefault("output", "target/loadtest")), duration);
+        } finally {
+            context.close();
+            pkiServer.stop();
+            if (!conf.delete()) {
+                conf.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Configuration des tests, avec le certificat de signature, la clé et l'AC
+     * générés.
+     *
+     * @param pki    the generated PKI
+     * @param crlUrl the local CRL url
+     * @return the configuration file
+     * @throws Exception the exception
+     */
+    private static File writeConfiguration(final GeneratedPki pki, final String crlUrl) throws Exception {
+        final ObjectMapper mapper = new ObjectMapper();
+        final ObjectNode conf;
+        try (final InputStream is = Fixtures.resource("esignsante-conf.json")) {
+            conf = (ObjectNode) mapper.readTree(is);
+        }
+        for (final String section : new String[] { "signature", "proof" }) {
+            for (final JsonNode node : conf.get(section)) {
+                ((ObjectNode) node).put("certificate", pki.getSignerCertificatePem());
+                ((ObjectNode) node).put("privateKey", pki.getSignerPrivateKeyPem());
+            }
+        }
+        final ArrayNode ca = conf.putArray("ca");
+        ca.addObject().put("certificate", pki.getCaCertificatePem()).put("crl", crlUrl);
+        final File file = File.createTempFile("esignsante-loadtest", ".json");
+        mapper.writeValue(file, conf);
+        return file;
+    }
+
+    /**
+     * Documents à signer, et documents signés par le service pour la
+     * validation.
+     *
+     * @param pki the generated PKI
+     * @throws Exception the exception
+     */
+    private void prepareDocuments(final GeneratedPki pki) throws Exception {
+        final int size = intOption("size", 10240);
+        documents.put(Operation.Document.XML, Fixtures.xml(size));
+        documents.put(Operation.Document.PDF, Fixtures.pdf(size));
+        documents.put(Operation.Document.CERTIFICATE,
+                pki.getSignerCertificatePem().getBytes(StandardCharsets.US_ASCII));
+        documents.put(Operation.Document.SIGNED_XML, signed(Operation.SIGN_XADES));
+        documents.put(Operation.Document.SIGNED_PDF, signed(Operation.SIGN_PADES));
+    }
+
+    /**
+     * Document signé par le service.
+     *
+     * @param operation the signing operation
+     * @return the signed document
+     */
+    private byte[] signed(final Operation operation) {
+        final ESignSanteSignatureReport rapport = restTemplate.postForObject(baseUrl + operation.getPath(),
+                request(operation), ESignSanteSignatureReport.class);
+        if (rapport == null || rapport.getDocSigne() == null) {
+            throw new IllegalStateException("Signature impossible : " + operation);
+        }
+        return Base64.getDecoder().decode(rapport.getDocSigne());
+    }
+
+    /**
+     * Requête multipart d'une opération.
+     *
+     * @param operation the operation
+     * @return the request
+     */
+    private HttpEntity<MultiValueMap<String, Object>> request(final Operation operation) {
+        final MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("file", new ByteArrayResource(documents.get(operation.getDocument())) {
+            @Override
+            public String getFilename() {
+                return "document";
+            }
+        });
+        body.add(operation.getConfParam(), CONF_ID);
+        if (operation.withProof()) {
+            body.add("idVerifSignConf", CONF_ID);
+            body.add("requestId", "loadtest");
+            body.add("proofTag", "loadtest");
+            body.add("applicantId", "loadtest");
+        }
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        headers.set(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        return new HttpEntity<>(body, headers);
+    }
+
+    /**
+     * Envoie une requête tirée du mélange et enregistre sa latence.
+     *
+     * @param intendedStart  instant d'émission prévu (nanoTime)
+     * @param measureStart   début de la mesure (nanoTime)
+     */
+    private void call(final long intendedStart, final long measureStart) {
+        final Operation operation = mix.get(ThreadLocalRandom.current().nextInt(mix.size()));
+        boolean success;
+        try {
+            final ResponseEntity<String> response = restTemplate.postForEntity(baseUrl + operation.getPath(),
+                    request(operation), String.class);
+            success = response.getStatusCode().is2xxSuccessful();
+        } catch (final RestClientException e) {
+            success = false;
+        }
+        if (intendedStart >= measureStart) {
+            report.record(operation, System.nanoTime() - intendedStart, success);
+        }
+    }
+
+    /**
+     * Génère la charge pendant la chauffe puis la mesure.
+     *
+     * @param warmupNanos   the warm-up duration
+     * @param durationNanos the measurement duration
+     * @throws InterruptedException the interrupted exception
+     */
+    private void drive(final long warmupNanos, final long durationNanos) throws InterruptedException {
+        final int threads = intOption("threads", 16);
+        final int rate = intOption("rate", 0);
+        final long measureStart = System.nanoTime() + warmupNanos;
+        final long end = measureStart + durationNanos;
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        if (rate > 0) {
+            // boucle ouverte : les requêtes sont émises à intervalle fixe, qu'elles attendent ou non un worker
+            final long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+            for (long next = System.nanoTime(); next < end; next += interval) {
+                final long intendedStart = next;
+                LockSupport.parkNanos(intendedStart - System.nanoTime());
+                workers.execute(() -> call(intendedStart, measureStart));
+            }
+        } else {
+            for (int i = 0; i < threads; i++) {
+                workers.execute(() -> {
+                    while (System.nanoTime() < end) {
+                        call(System.nanoTime(), measureStart);
+                    }
+                });
+            }
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.loadtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serveur HTTP local publiant la CRL de l'AC générée, à la place des points de
+ * distribution des CRL de production.
+ */
+public class LocalPkiServer {
+
+    /** Chemin de la CRL. */
+    private static final String CRL_PATH = "/crl/ac-benchmark.crl";
+
+    /** The server. */
+    private final HttpServer server;
+
+    /**
+     * Démarre le serveur sur un port libre de l'interface locale.
+     *
+     * @param crl the CRL in DER
+     * @throws IOException the IO exception
+     */
+    public LocalPkiServer(final byte[] crl) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(CRL_PATH, exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/pkix-crl");
+            exchange.sendResponseHeaders(200, crl.length);
+            try (final OutputStream os = exchange.getResponseBody()) {
+                os.write(crl);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * URL de la CRL.
+     *
+     * @return the url
+     */
+    public String getCrlUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + CRL_PATH;
+    }
+
+    /**
+     * Arrête le serveur.
+     */
+    public void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.loadtest;
+
+/**
+ * Opérations du mélange de trafic et leurs paramètres.
+ */
+public enum Operation {
+
+    /** Signature XMLDsig. */
+    SIGN_XMLDSIG("/signatures/xmldsig", "idSignConf", Document.XML),
+
+    /** Signature XAdES. */
+    SIGN_XADES("/signatures/xadesbaselineb", "idSignConf", Document.XML),
+
+    /** Signature PAdES. */
+    SIGN_PADES("/signatures/padesbaselineb", "idSignConf", Document.PDF),
+
+    /** Signature XAdES avec preuve. */
+    SIGN_XADES_PROOF("/signatures/xadesbaselinebwithproof", "idSignConf", Document.XML),
+
+    /** Validation XAdES. */
+    VALIDATE_XADES("/validation/signatures/xadesbaselineb", "idVerifSignConf", Document.SIGNED_XML),
+
+    /** Validation PAdES. */
+    VALIDATE_PADES("/validation/signatures/padesbaselineb", "idVerifSignConf", Document.SIGNED_PDF),
+
+    /** Validation de certificat. */
+    VERIF_CERT("/validation/certificats", "idVerifCertConf", Document.CERTIFICATE);
+
+    /**
+     * Documents envoyés.
+     */
+    public enum Document {
+        /** Document XML. */
+        XML,
+        /** Document PDF. */
+        PDF,
+        /** Document XML signé en XAdES. */
+        SIGNED_XML,
+        /** Document PDF signé en PAdES. */
+        SIGNED_PDF,
+        /** Certificat PEM. */
+        CERTIFICATE
+    }
+
+    /** The path. */
+    private final String path;
+
+    /** Paramètre portant l'identifiant de configuration. */
+    private final String confParam;
+
+    /** The document. */
+    private final Document document;
+
+    /**
+     * Instantiates a new operation.
+     *
+     * @param path      the path
+     * @param confParam the configuration id parameter
+     * @param document  the document
+     */
+    Operation(final String path, final String confParam, final Document document) {
+        this.path = path;
+        this.confParam = confParam;
+        this.document = document;
+    }
+
+    /**
+     * Gets the path.
+     *
+     * @return the path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the configuration id parameter.
+     *
+     * @return the parameter name
+     */
+    public String getConfParam() {
+        return confParam;
+    }
+
+    /**
+     * Gets the document.
+     *
+     * @return the document
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Opération avec preuve.
+     *
+     * @return true if proof parameters are required
+     */
+    public boolean withProof() {
+        return this == SIGN_XADES_PROOF;
+    }
+}
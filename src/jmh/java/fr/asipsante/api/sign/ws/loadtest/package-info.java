@@ -0,0 +1,7 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+/**
+ * Tests de charge HTTP du service, autonomes (AC et CRL servies localement).
+ */
+package fr.asipsante.api.sign.ws.loadtest;
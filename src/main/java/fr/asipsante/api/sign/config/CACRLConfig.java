@@ -8,6 +8,7 @@ import fr.asipsante.api.sign.config.utils.CaCrlServiceLoader;
 import fr.asipsante.api.sign.service.*;
 import fr.asipsante.api.sign.service.impl.*;
 import fr.asipsante.api.sign.ws.bean.config.IGlobalConf;
+import fr.asipsante.api.sign.ws.metrics.CrlMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,6 +35,12 @@ public class CACRLConfig {
     @Autowired
     private IGlobalConf globalConf;
 
+    /**
+     * crlMetrics.
+     */
+    @Autowired
+    private CrlMetrics crlMetrics;
+
     /**
      * Signature service.
      *
@@ -88,6 +95,6 @@ public class CACRLConfig {
     @Lazy
     public ICACRLService serviceCaCrl() throws IOException {
         final ICACRLService serviceCaCrl = new CACRLServiceImpl();
-        return CaCrlServiceLoader.loadCaCrl(serviceCaCrl, globalConf.getCa());
+        return CaCrlServiceLoader.loadCaCrl(serviceCaCrl, globalConf.getCa(), crlMetrics);
     }
 }
@@ -0,0 +1,39 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.config;
+
+import java.io.IOException;
+
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.ResourceHttpMessageConverter;
+
+/**
+ * The Class StreamingResourceHttpMessageConverter.
+ * Les corps de requête liés à un paramètre de type Resource (morceaux de
+ * téléversement) sont lus au fil de l'eau par le délégué, au lieu d'être
+ * chargés en mémoire avant son appel. La longueur de la ressource est celle
+ * de l'en-tête Content-Length, -1 si elle est inconnue (corps décompressé ou
+ * envoyé par morceaux).
+ */
+public class StreamingResourceHttpMessageConverter extends ResourceHttpMessageConverter {
+
+    @Override
+    protected Resource readInternal(final Class<? extends Resource> clazz, final HttpInputMessage inputMessage)
+            throws IOException {
+        if (Resource.class != clazz) {
+            return super.readInternal(clazz, inputMessage);
+        }
+        final long length = inputMessage.getHeaders().getContentLength();
+        return new InputStreamResource(inputMessage.getBody()) {
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+        };
+    }
+}
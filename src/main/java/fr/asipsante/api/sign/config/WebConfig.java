@@ -33,6 +33,19 @@ public class WebConfig extends WebMvcConfigurerAdapter {
         converters.add(new MappingJackson2HttpMessageConverter());
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter
+     * #extendMessageConverters(java.util.List)
+     */
+    @Override
+    public void extendMessageConverters(final List<HttpMessageConverter<?>> converters) {
+        // avant le ResourceHttpMessageConverter par défaut, qui lit le corps en mémoire
+        converters.add(0, new StreamingResourceHttpMessageConverter());
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -49,13 +49,29 @@ public class CRLLoader {
      */
     private List<String> listCrl;
 
+    /**
+     * load listener.
+     */
+    private final CaCrlLoadListener listener;
+
     /**
      * CRLLoader.
      *
      * @param listCrl crl list
      */
     public CRLLoader(final List<String> listCrl) {
+        this(listCrl, CaCrlLoadListener.NONE);
+    }
+
+    /**
+     * CRLLoader.
+     *
+     * @param listCrl  crl list
+     * @param listener load listener, notified for each source
+     */
+    public CRLLoader(final List<String> listCrl, final CaCrlLoadListener listener) {
         this.listCrl = listCrl;
+        this.listener = listener;
     }
 
     /**
@@ -152,8 +168,16 @@ public class CRLLoader {
         public Collection<X509CRL> getX509CRLs()
                 throws GeneralSecurityException {
             final Collection<X509CRL> result = new LinkedList<>();
-            for (final CRLLoaderImpl delegate : delegates) {
-                result.addAll(delegate.getX509CRLs());
+            for (int i = 0; i < delegates.size(); i++) {
+                final long start = System.nanoTime();
+                try {
+                    final Collection<X509CRL> crls = delegates.get(i).getX509CRLs();
+                    listener.crlLoaded(listCrl.get(i), System.nanoTime() - start, crls);
+                    result.addAll(crls);
+                } catch (final GeneralSecurityException e) {
+                    listener.crlFailed(listCrl.get(i), System.nanoTime() - start);
+                    throw e;
+                }
             }
             return result;
         }
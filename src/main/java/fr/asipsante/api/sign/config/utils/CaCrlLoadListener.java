@@ -0,0 +1,66 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.config.utils;
+
+import java.security.cert.X509CRL;
+import java.util.Collection;
+
+/**
+ * Interface CaCrlLoadListener.
+ * Notifié à chaque chargement des AC et des CRL (démarrage et rechargements
+ * planifiés).
+ */
+public interface CaCrlLoadListener {
+
+    /** Listener sans effet. */
+    CaCrlLoadListener NONE = new CaCrlLoadListener() {
+    };
+
+    /**
+     * Bundle des AC chargé.
+     *
+     * @param count the number of CA certificates
+     */
+    default void caLoaded(final int count) {
+    }
+
+    /**
+     * Début d'un chargement des CRL.
+     */
+    default void crlRefreshStarted() {
+    }
+
+    /**
+     * CRL téléchargées depuis une source.
+     *
+     * @param source        the CRL source
+     * @param durationNanos the fetch duration
+     * @param crls          the CRLs
+     */
+    default void crlLoaded(final String source, final long durationNanos, final Collection<X509CRL> crls) {
+    }
+
+    /**
+     * Échec du téléchargement des CRL d'une source.
+     *
+     * @param source        the CRL source
+     * @param durationNanos the fetch duration
+     */
+    default void crlFailed(final String source, final long durationNanos) {
+    }
+
+    /**
+     * Bundle des CRL construit et chargé sans erreur.
+     */
+    default void crlBundleLoaded() {
+    }
+
+    /**
+     * Bundle des CRL chargé, complet ou non : les sources qui n'ont été ni
+     * téléchargées ni en échec pendant ce chargement ne sont plus chargées.
+     */
+    default void crlRefreshEnded() {
+    }
+}
@@ -44,24 +44,47 @@ public class CaCrlServiceLoader {
      */
     public static ICACRLService loadCaCrl(final ICACRLService serviceCaCrl, final List<CaConf> listCaConf)
             throws IOException {
+        return loadCaCrl(serviceCaCrl, listCaConf, CaCrlLoadListener.NONE);
+    }
+
+    /**
+     * Load ca crl icacrl service.
+     *
+     * @param serviceCaCrl the service ca crl
+     * @param listCaConf   the list ca conf
+     * @param listener     the load listener
+     * @return the icacrl service
+     * @throws IOException the io exception
+     */
+    public static ICACRLService loadCaCrl(final ICACRLService serviceCaCrl, final List<CaConf> listCaConf,
+            final CaCrlLoadListener listener) throws IOException {
         final List<String> certList = listCaConf.stream().map(CaConf::getCertificate).collect(Collectors.toList());
         loadCa(serviceCaCrl, certList);
+        listener.caLoaded(certList.size());
 
         final List<String> crlList = listCaConf.stream().map(CaConf::getCrl).collect(Collectors.toList());
-        loadCrl(serviceCaCrl, crlList);
+        loadCrl(serviceCaCrl, crlList, listener);
         return serviceCaCrl;
     }
 
-    private static void loadCrl(final ICACRLService serviceCaCrl, final List<String> crlList) throws IOException {
+    private static void loadCrl(final ICACRLService serviceCaCrl, final List<String> crlList,
+            final CaCrlLoadListener listener) throws IOException {
         final File crlFile = File.createTempFile("ca-bundle", ".crl");
-        final CRLLoader crlLoader = new CRLLoader(crlList);
+        final CRLLoader crlLoader = new CRLLoader(crlList, listener);
+        boolean complete = false;
+        listener.crlRefreshStarted();
         try {
             crlLoader.buildCRLBundle(crlFile);
+            complete = true;
         } catch (final GeneralSecurityException e) {
             log.error(ExceptionUtils.getStackTrace(e));
         }
         log.info("Chargement du bundle des CRL, chemin : {}", crlFile.getAbsolutePath());
         serviceCaCrl.loadCRL(crlFile); // On télécharge les CRLs puis on contruit un bundle qui contient toutes les CRLs
+        if (complete) {
+            listener.crlBundleLoaded();
+        }
+        listener.crlRefreshEnded();
         if (!crlFile.delete()) {
             log.error("Le fichier {} n'a pas pu être supprimé", crlFile.getAbsolutePath());
         }
@@ -0,0 +1,31 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.scheduled;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import fr.asipsante.api.sign.ws.document.DocumentStore;
+
+/**
+ * The Class PurgeDocuments.
+ * Suppression périodique des documents signés expirés.
+ */
+@Component
+public class PurgeDocuments {
+
+    /** The document store. */
+    @Autowired
+    private DocumentStore documentStore;
+
+    /**
+     * Purge documents, every config.documents.purge ms (1 minute by default).
+     */
+    @Scheduled(fixedDelayString = "${config.documents.purge:60000}")
+    public void purge() {
+        documentStore.purge();
+    }
+}
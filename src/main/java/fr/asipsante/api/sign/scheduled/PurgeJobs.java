@@ -0,0 +1,31 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.scheduled;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import fr.asipsante.api.sign.ws.job.JobManager;
+
+/**
+ * The Class PurgeJobs.
+ * Suppression périodique des traitements asynchrones expirés.
+ */
+@Component
+public class PurgeJobs {
+
+    /** The job manager. */
+    @Autowired
+    private JobManager jobManager;
+
+    /**
+     * Purge jobs, every config.jobs.purge ms (1 minute by default).
+     */
+    @Scheduled(fixedDelayString = "${config.jobs.purge:60000}")
+    public void purge() {
+        jobManager.purge();
+    }
+}
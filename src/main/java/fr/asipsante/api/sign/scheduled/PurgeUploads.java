@@ -0,0 +1,31 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.scheduled;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import fr.asipsante.api.sign.ws.upload.UploadManager;
+
+/**
+ * The Class PurgeUploads.
+ * Suppression périodique des sessions de téléversement inactives.
+ */
+@Component
+public class PurgeUploads {
+
+    /** The upload manager. */
+    @Autowired
+    private UploadManager uploadManager;
+
+    /**
+     * Purge uploads, every config.uploads.purge ms (1 minute by default).
+     */
+    @Scheduled(fixedDelayString = "${config.uploads.purge:60000}")
+    public void purge() {
+        uploadManager.purge();
+    }
+}
@@ -7,6 +7,7 @@ package fr.asipsante.api.sign.scheduled;
 import fr.asipsante.api.sign.config.utils.CaCrlServiceLoader;
 import fr.asipsante.api.sign.service.ICACRLService;
 import fr.asipsante.api.sign.ws.bean.config.IGlobalConf;
+import fr.asipsante.api.sign.ws.metrics.CrlMetrics;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +43,10 @@ public class RefreshConfigurations {
     @Autowired
     private ICACRLService cacrlService;
 
+    /** The CRL metrics. */
+    @Autowired
+    private CrlMetrics crlMetrics;
+
     /** The cron configuration. */
     @Value("${config.crl.scheduling:}")
     private String cronConf;
@@ -52,7 +57,7 @@ public class RefreshConfigurations {
     @Scheduled(cron = "${config.crl.scheduling:-}")
     public void refreshCrl() {
         try {
-            CaCrlServiceLoader.loadCaCrl(cacrlService, globalConf.getCa());
+            CaCrlServiceLoader.loadCaCrl(cacrlService, globalConf.getCa(), crlMetrics);
         } catch (final IOException e) {
             log.error(ExceptionUtils.getStackTrace(e));
         }
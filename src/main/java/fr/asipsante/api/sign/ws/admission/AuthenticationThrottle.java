@@ -0,0 +1,185 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Limitation des échecs d'authentification par couple (adresse IP du client,
+ * idSignConf).
+ * Chaque couple dispose d'un seau de "capacity" jetons. Un jeton est réservé
+ * avant chaque vérification de secret et rendu si le secret est correct :
+ * seul un échec le consomme. Un jeton est rendu toutes les "interval"
+ * millisecondes. Un couple dont le seau est vide est rejeté avant toute
+ * vérification de secret.
+ * Le client est identifié par l'adresse distante de la requête : derrière un
+ * reverse proxy, activer server.forward-headers-strategy=native et déclarer
+ * les proxys de confiance (server.tomcat.remoteip.internal-proxies), sans
+ * quoi tous les clients partagent le seau de l'adresse du proxy.
+ * Les seaux sont stockés dans une table de taille fixe (les couples en
+ * collision partagent un seau), chaque seau est un seul long mis à jour par
+ * CAS : l'instant théorique auquel le seau sera de nouveau plein.
+ */
+@Component
+public class AuthenticationThrottle {
+
+    /**
+     * The log.
+     */
+    Logger log = LoggerFactory.getLogger(AuthenticationThrottle.class);
+
+    /** Murmur3 finalizer constants, pour répartir les clés dans la table. */
+    private static final int MIX1 = 0x85ebca6b;
+
+    /** Murmur3 finalizer constants, pour répartir les clés dans la table. */
+    private static final int MIX2 = 0xc2b2ae35;
+
+    /** Enable/disable throttling. */
+    @Value("${config.throttle.enabled:false}")
+    private boolean enabled;
+
+    /** Number of failed attempts allowed in a burst. */
+    @Value("${config.throttle.capacity:10}")
+    private int capacity;
+
+    /** Time to recover one failed attempt, in milliseconds. */
+    @Value("${config.throttle.interval:6000}")
+    private long interval;
+
+    /** Number of buckets, rounded up to a power of two. */
+    @Value("${config.throttle.slots:4096}")
+    private int slots;
+
+    /** The meter registry. */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Origin of the bucket instants. */
+    private final long origin = System.nanoTime();
+
+    /** Instant (ns since origin) at which each bucket is full again. */
+    private AtomicLongArray buckets;
+
+    /** Index mask. */
+    private int mask;
+
+    /** Interval in nanoseconds. */
+    private long intervalNanos;
+
+    /** Failed attempts counter. */
+    private Counter failures;
+
+    /** Throttled requests counter. */
+    private Counter throttled;
+
+    /**
+     * Init.
+     */
+    @PostConstruct
+    public void init() {
+        final int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        buckets = new AtomicLongArray(size);
+        mask = size - 1;
+        intervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+        failures = Counter.builder("esignsante.auth.failures")
+                .description("Echecs d'authentification par secret").register(meterRegistry);
+        throttled = Counter.builder("esignsante.auth.throttled")
+                .description("Requêtes rejetées (429) après trop d'échecs d'authentification")
+                .register(meterRegistry);
+        if (enabled) {
+            log.info("Limitation des échecs d'authentification : {} essais, un essai rendu toutes les {} ms",
+                    capacity, interval);
+        }
+    }
+
+    /**
+     * Réserve un essai pour le client et la configuration, avant la
+     * vérification du secret : des requêtes parallèles ne peuvent pas
+     * dépasser la capacité du seau. L'essai est rendu par recordSuccess.
+     *
+     * @param client     the client address
+     * @param idSignConf the id sign conf
+     * @return true if no attempt is left and the request must be rejected
+     */
+    public boolean isThrottled(final String client, final Long idSignConf) {
+        if (!enabled) {
+            return false;
+        }
+        final int i = index(client, idSignConf);
+        final long now = System.nanoTime() - origin;
+        long current;
+        long next;
+        do {
+            current = buckets.get(i);
+            next = Math.max(current, now) + intervalNanos;
+            // l'instant théorique reste borné à now + capacity * interval
+            if (next - now > capacity * intervalNanos) {
+                throttled.increment();
+                return true;
+            }
+        } while (!buckets.compareAndSet(i, current, next));
+        return false;
+    }
+
+    /**
+     * Records a successful authentication: the attempt reserved by
+     * isThrottled is given back.
+     *
+     * @param client     the client address
+     * @param idSignConf the id sign conf
+     */
+    public void recordSuccess(final String client, final Long idSignConf) {
+        if (!enabled) {
+            return;
+        }
+        final int i = index(client, idSignConf);
+        final long now = System.nanoTime() - origin;
+        long current;
+        do {
+            current = buckets.get(i);
+            if (current <= now) {
+                return;
+            }
+        } while (!buckets.compareAndSet(i, current, Math.max(now, current - intervalNanos)));
+    }
+
+    /**
+     * Records a failed authentication, the attempt reserved by isThrottled
+     * is kept.
+     *
+     * @param client     the client address
+     * @param idSignConf the id sign conf
+     */
+    public void recordFailure(final String client, final Long idSignConf) {
+        failures.increment();
+    }
+
+    /**
+     * Bucket index.
+     *
+     * @param client     the client address
+     * @param idSignConf the id sign conf
+     * @return the index
+     */
+    private int index(final String client, final Long idSignConf) {
+        int h = 31 * String.valueOf(client).hashCode() + String.valueOf(idSignConf).hashCode();
+        h = (h ^ (h >>> 16)) * MIX1;
+        h = (h ^ (h >>> 13)) * MIX2;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+}
@@ -0,0 +1,479 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.admission;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.multipart.MultipartFile;
+
+import fr.asipsante.api.sign.ws.job.JobManager;
+import fr.asipsante.api.sign.ws.util.ESignatureType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Exécution des signatures et validations sur des pools dédiés, avec des
+ * files d'attente bornées.
+ * Le traitement est confié à un pool par un CompletableFuture : les threads
+ * Tomcat, dimensionnés pour les entrées/sorties, ne font plus de
+ * cryptographie et n'entrent plus en concurrence pour les coeurs. Lorsque la
+ * file est pleine, la requête est rejetée immédiatement (503 avec
+ * Retry-After) au lieu d'attendre l'expiration de la connexion.
+ * Les requêtes sont réparties en deux voies selon la taille du document et
+ * le type de signature : "heavy" (PAdES ou XML volumineux) et "light", chacune
+ * avec son pool et sa file, afin que les gros documents ne bloquent pas les
+ * petites signatures interactives.
+ * Chaque voie peut en outre être protégée par une limite de concurrence
+ * adaptative (GradientLimit) : au-delà de la limite courante, ajustée d'après
+ * la latence mesurée, les requêtes sont rejetées immédiatement (503).
+ * Les documents qui doivent être XML (validation XMLDsig/XAdES, signature
+ * enveloppée ou désignant un élément à signer) sont pré-analysés en flux
+ * (XmlPrescreen) avant leur mise en file : un document refusé n'occupe ni file
+ * ni budget mémoire. Les contrôles d'accès (configuration, limitation des
+ * tentatives, secret) sont faits par les délégués avant l'appel.
+ */
+@Component
+public class CryptoExecutor {
+
+    /**
+     * The log.
+     */
+    Logger log = LoggerFactory.getLogger(CryptoExecutor.class);
+
+    /** Enable/disable the dedicated executors. */
+    @Value("${config.executor.enabled:false}")
+    private boolean enabled;
+
+    /** Number of light lane threads, number of cores if 0. */
+    @Value("${config.executor.threads:0}")
+    private int threads;
+
+    /** Maximum number of queued light requests. */
+    @Value("${config.executor.queue:64}")
+    private int queueSize;
+
+    /** Number of heavy lane threads, half the cores if 0. */
+    @Value("${config.executor.heavy.threads:0}")
+    private int heavyThreads;
+
+    /** Maximum number of queued heavy requests. */
+    @Value("${config.executor.heavy.queue:16}")
+    private int heavyQueueSize;
+
+    /** Document size from which an XML request is heavy, in bytes. */
+    @Value("${config.executor.heavy.size:5242880}")
+    private long heavySize;
+
+    /** Document size from which a PAdES request is heavy, in bytes. */
+    @Value("${config.executor.heavy.padesSize:1048576}")
+    private long heavyPadesSize;
+
+    /** Enable/disable the adaptive concurrency limit. */
+    @Value("${config.limiter.enabled:false}")
+    private boolean limiterEnabled;
+
+    /** Minimal concurrency limit. */
+    @Value("${config.limiter.min:1}")
+    private int limiterMin;
+
+    /** Tolerated latency ratio before reducing the limit. */
+    @Value("${config.limiter.tolerance:1.5}")
+    private double limiterTolerance;
+
+    /** Limit smoothing factor. */
+    @Value("${config.limiter.smoothing:0.2}")
+    private double limiterSmoothing;
+
+    /** Number of samples of the long term latency average. */
+    @Value("${config.limiter.window:600}")
+    private int limiterWindow;
+
+    /** Retry-After value of rejected requests, in seconds. */
+    @Value("${config.executor.retryAfter:1}")
+    private long retryAfter;
+
+    /** The meter registry. */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** The memory budget. */
+    @Autowired
+    private MemoryBudget memoryBudget;
+
+    /** The XML pre-screening. */
+    @Autowired
+    private XmlPrescreen xmlPrescreen;
+
+    /** The asynchronous jobs. */
+    @Autowired
+    private JobManager jobManager;
+
+    /** Light lane. */
+    private Lane light;
+
+    /** Heavy lane. */
+    private Lane heavy;
+
+    /**
+     * Init.
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        final int cores = Runtime.getRuntime().availableProcessors();
+        light = new Lane("light", threads > 0 ? threads : cores, queueSize);
+        heavy = new Lane("heavy", heavyThreads > 0 ? heavyThreads : Math.max(1, cores / 2), heavyQueueSize);
+    }
+
+    /**
+     * Shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (light != null) {
+            light.executor.shutdown();
+            heavy.executor.shutdown();
+        }
+    }
+
+    /**
+     * Exécute un traitement dans la voie correspondant au document et attend
+     * sa réponse, ou le soumet en traitement asynchrone si la requête porte
+     * l'en-tête "Prefer: respond-async".
+     *
+     * @param <T>  the response type
+     * @param type the signature type, null for a certificate
+     * @param doc  the document
+     * @param task the task, applied to the document
+     * @return the response entity, 503 if the queue or the memory budget is full
+     */
+    public <T> ResponseEntity<T> execute(final ESignatureType type, final MultipartFile doc,
+            final Function<MultipartFile, ResponseEntity<T>> task) {
+        final boolean xml = ESignatureType.XMLDSIG.equals(type) || ESignatureType.XADES.equals(type);
+        return execute(type, doc, xml ? Collections.<String>emptySet() : null, task);
+    }
+
+    /**
+     * Exécute un traitement dans la voie correspondant au document et attend
+     * sa réponse, ou le soumet en traitement asynchrone si la requête porte
+     * l'en-tête "Prefer: respond-async". Le document est pré-analysé s'il doit
+     * être XML.
+     *
+     * @param <T>        the response type
+     * @param type       the signature type, null for a certificate
+     * @param doc        the document
+     * @param xmlTargets names of elements the XML document must contain, empty
+     *                   if it only has to be XML, null if it may be of any
+     *                   type (not pre-screened)
+     * @param task       the task, applied to the document
+     * @return the response entity, 503 if the queue or the memory budget is full
+     */
+    public <T> ResponseEntity<T> execute(final ESignatureType type, final MultipartFile doc,
+            final Collection<String> xmlTargets, final Function<MultipartFile, ResponseEntity<T>> task) {
+        final long size = doc == null ? 0 : doc.getSize();
+        if (jobManager.isRequested()) {
+            return jobManager.submit(doc, d -> admit(type, size, d, xmlTargets, task));
+        }
+        return admit(type, size, doc, xmlTargets, task);
+    }
+
+    /**
+     * Exécute un traitement qui lit le document en flux (empreinte d'une
+     * signature détachée) : son empreinte mémoire ne dépend pas de la taille
+     * du document, il s'exécute dans la voie "light".
+     *
+     * @param <T>  the response type
+     * @param doc  the document
+     * @param task the task, applied to the document
+     * @return the response entity, 503 if the queue or the memory budget is full
+     */
+    public <T> ResponseEntity<T> stream(final MultipartFile doc,
+            final Function<MultipartFile, ResponseEntity<T>> task) {
+        if (jobManager.isRequested()) {
+            return jobManager.submit(doc, d -> admit(null, 0, d, null, task));
+        }
+        return admit(null, 0, doc, null, task);
+    }
+
+    /**
+     * Exécute un traitement dans la voie correspondant au document et attend
+     * sa réponse, après avoir pré-analysé un document XML et réservé son
+     * empreinte sur le budget mémoire.
+     *
+     * @param <T>        the response type
+     * @param type       the signature type, null for a certificate
+     * @param size       the document size held in memory
+     * @param doc        the document
+     * @param xmlTargets names of elements the XML document must contain, null
+     *                   if not pre-screened
+     * @param task       the task, applied to the document
+     * @return the response entity, 503 if the queue or the memory budget is
+     *         full, 400 or 501 if the XML document is rejected
+     */
+    private <T> ResponseEntity<T> admit(final ESignatureType type, final long size, final MultipartFile doc,
+            final Collection<String> xmlTargets, final Function<MultipartFile, ResponseEntity<T>> task) {
+        final XmlPrescreen.Result document;
+        try {
+            document = prescreen(doc, xmlTargets);
+        } catch (final XmlPrescreen.RejectedException e) {
+            log.warn("Document XML refusé ({}) : {}", e.getStatus().value(), e.getMessage());
+            return ResponseEntity.status(e.getStatus()).build();
+        } catch (final IOException e) {
+            log.error("Lecture du document impossible : {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        final int reserved = document == null ? memoryBudget.reserve(type, size)
+                : memoryBudget.reserveFootprint(xmlPrescreen.estimate(document, size), size);
+        if (reserved < 0) {
+            return unavailable();
+        }
+        try {
+            if (light == null) {
+                return task.apply(doc);
+            }
+            return (isHeavy(type, size) ? heavy : light).execute(() -> task.apply(doc));
+        } finally {
+            memoryBudget.release(reserved);
+        }
+    }
+
+    /**
+     * Pré-analyse d'un document XML avant sa mise en file.
+     *
+     * @param doc        the document
+     * @param xmlTargets names of elements the document must contain, null if
+     *                   not pre-screened
+     * @return the document statistics, null if not pre-screened
+     * @throws IOException the IO exception, RejectedException if the document
+     *                     is rejected
+     */
+    private XmlPrescreen.Result prescreen(final MultipartFile doc, final Collection<String> xmlTargets)
+            throws IOException {
+        if (doc == null || xmlTargets == null || !xmlPrescreen.isEnabled()) {
+            return null;
+        }
+        try (InputStream in = doc.getInputStream()) {
+            return xmlPrescreen.scan(in, xmlTargets);
+        }
+    }
+
+    /**
+     * Exécute un traitement dans la voie "light" et attend sa réponse.
+     *
+     * @param <T>  the response type
+     * @param task the task
+     * @return the response entity, 503 if the queue is full
+     */
+    public <T> ResponseEntity<T> execute(final Supplier<ResponseEntity<T>> task) {
+        return execute(null, null, d -> task.get());
+    }
+
+    /**
+     * Checks if a request goes to the heavy lane.
+     *
+     * @param type the signature type, null for a certificate
+     * @param size the document size
+     * @return true if heavy
+     */
+    boolean isHeavy(final ESignatureType type, final long size) {
+        return size >= (ESignatureType.PADES.equals(type) ? heavyPadesSize : heavySize);
+    }
+
+    /**
+     * Réponse 503 avec Retry-After.
+     *
+     * @param <T> the response type
+     * @return the response entity
+     */
+    private <T> ResponseEntity<T> unavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter)).build();
+    }
+
+    /**
+     * Voie d'exécution : un pool, sa file et ses métriques.
+     */
+    private final class Lane {
+
+        /** The lane name. */
+        private final String name;
+
+        /** The executor. */
+        private final ThreadPoolExecutor executor;
+
+        /** Queue wait timer. */
+        private final Timer wait;
+
+        /** Rejected requests counter. */
+        private final Counter rejected;
+
+        /** Adaptive concurrency limit, null if disabled. */
+        private final GradientLimit limit;
+
+        /** Requests rejected by the concurrency limit counter. */
+        private final Counter limited;
+
+        /**
+         * Instantiates a new lane.
+         *
+         * @param name  the name
+         * @param size  the number of threads
+         * @param queue the queue size
+         */
+        Lane(final String name, final int size, final int queue) {
+            this.name = name;
+            executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queue)), new WorkerFactory(name),
+                    new ThreadPoolExecutor.AbortPolicy());
+            Gauge.builder("esignsante.executor.queue", executor, e -> e.getQueue().size()).tag("lane", name)
+                    .description("Requêtes en attente d'un thread de traitement").register(meterRegistry);
+            Gauge.builder("esignsante.executor.active", executor, ThreadPoolExecutor::getActiveCount)
+                    .tag("lane", name).description("Requêtes en cours de traitement").register(meterRegistry);
+            wait = Timer.builder("esignsante.executor.wait").tag("lane", name)
+                    .description("Attente dans la file avant traitement").publishPercentileHistogram()
+                    .register(meterRegistry);
+            rejected = Counter.builder("esignsante.executor.rejected").tag("lane", name)
+                    .description("Requêtes rejetées (503) file d'attente pleine").register(meterRegistry);
+            log.info("Voie de traitement {} : {} threads, file de {} requêtes", name, size, queue);
+            if (limiterEnabled) {
+                // limite bornée par la capacité du pool et de sa file
+                limit = new GradientLimit(size, limiterMin, size + Math.max(1, queue), limiterTolerance,
+                        limiterSmoothing, limiterWindow);
+                Gauge.builder("esignsante.limiter.limit", limit, GradientLimit::getLimit).tag("lane", name)
+                        .description("Limite de concurrence courante").register(meterRegistry);
+                Gauge.builder("esignsante.limiter.inflight", limit, GradientLimit::getInflight).tag("lane", name)
+                        .description("Requêtes admises en cours").register(meterRegistry);
+                limited = Counter.builder("esignsante.limiter.rejected").tag("lane", name)
+                        .description("Requêtes rejetées (503) limite de concurrence atteinte")
+                        .register(meterRegistry);
+            } else {
+                limit = null;
+                limited = null;
+            }
+        }
+
+        /**
+         * Exécute un traitement sur le pool et attend sa réponse.
+         * Le contexte de la requête HTTP est transmis au thread du pool.
+         *
+         * @param <T>  the response type
+         * @param task the task
+         * @return the response entity, 503 if the queue is full
+         */
+        <T> ResponseEntity<T> execute(final Supplier<ResponseEntity<T>> task) {
+            if (limit != null && !limit.tryAcquire()) {
+                limited.increment();
+                log.warn("Limite de concurrence {} atteinte ({}) : {}", name, limit.getLimit(),
+                        HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase());
+                return unavailable();
+            }
+            final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+            final long submitted = System.nanoTime();
+            final CompletableFuture<ResponseEntity<T>> future;
+            try {
+                future = CompletableFuture.supplyAsync(() -> {
+                    wait.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                    RequestContextHolder.setRequestAttributes(attributes);
+                    try {
+                        return task.get();
+                    } finally {
+                        RequestContextHolder.resetRequestAttributes();
+                    }
+                }, executor);
+            } catch (final RejectedExecutionException e) {
+                if (limit != null) {
+                    limit.release();
+                }
+                rejected.increment();
+                log.warn("File de traitement {} pleine : {}", name,
+                        HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase());
+                return unavailable();
+            }
+            ResponseEntity<T> re = null;
+            try {
+                re = future.get();
+                return re;
+            } catch (final InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                return unavailable();
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            } finally {
+                if (limit != null) {
+                    if (re != null) {
+                        limit.release(System.nanoTime() - submitted);
+                    } else {
+                        limit.release();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Threads nommés d'un pool.
+     */
+    private static final class WorkerFactory implements ThreadFactory {
+
+        /** Thread name prefix. */
+        private final String prefix;
+
+        /** Thread counter. */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * Instantiates a new worker factory.
+         *
+         * @param lane the lane name
+         */
+        WorkerFactory(final String lane) {
+            prefix = "esignsante-" + lane + "-";
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limite de concurrence adaptative, ajustée d'après la latence mesurée.
+ * La latence de chaque requête est comparée à sa moyenne long terme (moyenne
+ * mobile exponentielle) : tant que la latence courante reste dans la
+ * tolérance, la limite croît de sa racine carrée ; quand elle se dégrade
+ * (file d'attente, coeurs saturés), la limite est réduite
+ * proportionnellement, au plus de moitié. La limite est lissée et bornée par
+ * [min, max].
+ */
+public class GradientLimit {
+
+    /** Marge d'augmentation minimale. */
+    private static final double MIN_QUEUE = 1.0;
+
+    /** Gradient minimal (réduction au plus de moitié). */
+    private static final double MIN_GRADIENT = 0.5;
+
+    /** Ratio au-delà duquel la moyenne long terme est rapprochée de la latence courante. */
+    private static final double DRIFT = 2.0;
+
+    /** Décroissance de la moyenne long terme en cas de dérive. */
+    private static final double DRIFT_DECAY = 0.95;
+
+    /** Minimal limit. */
+    private final int min;
+
+    /** Maximal limit. */
+    private final int max;
+
+    /** Tolerated latency ratio. */
+    private final double tolerance;
+
+    /** Limit smoothing factor. */
+    private final double smoothing;
+
+    /** Long term average factor. */
+    private final double alpha;
+
+    /** Requests in flight. */
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    /** Current limit. */
+    private volatile double limit;
+
+    /** Long term average latency, in nanoseconds. */
+    private double longRtt;
+
+    /**
+     * Instantiates a new gradient limit.
+     *
+     * @param initial   the initial limit
+     * @param min       the minimal limit
+     * @param max       the maximal limit
+     * @param tolerance the tolerated latency ratio (1.5: +50 %)
+     * @param smoothing the limit smoothing factor, in ]0, 1]
+     * @param window    the number of samples of the long term average
+     */
+    public GradientLimit(final int initial, final int min, final int max, final double tolerance,
+            final double smoothing, final int window) {
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.alpha = 2.0 / (Math.max(1, window) + 1);
+        this.limit = Math.min(this.max, Math.max(this.min, initial));
+    }
+
+    /**
+     * Réserve une place si la limite n'est pas atteinte.
+     *
+     * @return true if acquired
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            final int current = inflight.get();
+            if (current >= getLimit()) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Libère une place sans mesure (échec, rejet).
+     */
+    public void release() {
+        inflight.decrementAndGet();
+    }
+
+    /**
+     * Libère une place et ajuste la limite d'après la latence de la requête.
+     *
+     * @param rtt the request latency, in nanoseconds
+     */
+    public void release(final long rtt) {
+        final int current = inflight.getAndDecrement();
+        if (rtt > 0) {
+            update(rtt, current);
+        }
+    }
+
+    /**
+     * Ajuste la limite.
+     *
+     * @param rtt      the request latency, in nanoseconds
+     * @param inFlight the number of requests in flight with this one
+     */
+    private synchronized void update(final long rtt, final int inFlight) {
+        if (longRtt == 0) {
+            longRtt = rtt;
+        } else {
+            longRtt += alpha * (rtt - longRtt);
+        }
+        if (longRtt / rtt > DRIFT) {
+            // charge retombée : la moyenne long terme rejoint la latence courante
+            longRtt *= DRIFT_DECAY;
+        }
+        final double current = limit;
+        if (inFlight < current / 2) {
+            // limite non atteinte : la latence ne renseigne pas sur la capacité
+            return;
+        }
+        final double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * longRtt / rtt));
+        final double target = current * gradient + Math.max(MIN_QUEUE, Math.sqrt(current));
+        limit = Math.min(max, Math.max(min, current * (1 - smoothing) + target * smoothing));
+    }
+
+    /**
+     * Gets the limit.
+     *
+     * @return the current limit
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Gets the in flight count.
+     *
+     * @return the number of requests in flight
+     */
+    public int getInflight() {
+        return inflight.get();
+    }
+}
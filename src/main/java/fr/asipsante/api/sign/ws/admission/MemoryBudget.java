@@ -0,0 +1,210 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.admission;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import fr.asipsante.api.sign.ws.util.ESignatureType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Budget mémoire des requêtes de signature et de validation.
+ * L'empreinte mémoire de chaque requête est estimée d'après la taille du
+ * document et le type de signature (arbre DOM pour XMLDsig/XAdES, PDFBox
+ * pour PAdES), puis réservée sur un budget global avant traitement. Une
+ * requête qui ne tient pas dans le budget attend qu'il se libère, puis est
+ * rejetée (503) : quelques gros PDF simultanés ne peuvent plus épuiser le
+ * tas et provoquer un OutOfMemoryError.
+ * L'empreinte d'un document XML pré-analysé (XmlPrescreen) est estimée
+ * d'après ses nombres d'éléments et d'attributs plutôt que sa seule taille.
+ * Les réservations sont comptées en Ko.
+ */
+@Component
+public class MemoryBudget {
+
+    /**
+     * The log.
+     */
+    Logger log = LoggerFactory.getLogger(MemoryBudget.class);
+
+    /** Ko. */
+    private static final int KB = 1024;
+
+    /** Part du tas maximal utilisée par défaut pour le budget. */
+    private static final double DEFAULT_RATIO = 0.6;
+
+    /** Enable/disable the memory budget. */
+    @Value("${config.memory.enabled:false}")
+    private boolean enabled;
+
+    /** Budget in bytes, 60 % of the maximal heap if 0. */
+    @Value("${config.memory.budget:0}")
+    private long budget;
+
+    /** Maximal wait for the budget, in milliseconds. */
+    @Value("${config.memory.wait:5000}")
+    private long maxWait;
+
+    /** Working set of an XMLDsig/XAdES request, per document byte. */
+    @Value("${config.memory.factor.xml:10}")
+    private double xmlFactor;
+
+    /** Working set of a PAdES request, per document byte. */
+    @Value("${config.memory.factor.pades:6}")
+    private double padesFactor;
+
+    /** Working set of a certificate request, per document byte. */
+    @Value("${config.memory.factor.certificate:2}")
+    private double certificateFactor;
+
+    /** Fixed working set of a request, in bytes. */
+    @Value("${config.memory.overhead:1048576}")
+    private long overhead;
+
+    /** The meter registry. */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Budget in KB. */
+    private int permits;
+
+    /** Available budget. */
+    private Semaphore available;
+
+    /** Budget wait timer. */
+    private Timer wait;
+
+    /** Rejected requests counter. */
+    private Counter rejected;
+
+    /**
+     * Init.
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        final long bytes = budget > 0 ? budget : (long) (Runtime.getRuntime().maxMemory() * DEFAULT_RATIO);
+        permits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / KB));
+        available = new Semaphore(permits, true);
+        Gauge.builder("esignsante.memory.budget", this, b -> (double) b.permits * KB).baseUnit("bytes")
+                .description("Budget mémoire des requêtes").register(meterRegistry);
+        Gauge.builder("esignsante.memory.reserved", this, b -> (double) b.getReserved() * KB).baseUnit("bytes")
+                .description("Mémoire réservée par les requêtes en cours").register(meterRegistry);
+        wait = Timer.builder("esignsante.memory.wait").description("Attente du budget mémoire")
+                .register(meterRegistry);
+        rejected = Counter.builder("esignsante.memory.rejected")
+                .description("Requêtes rejetées (503) budget mémoire insuffisant").register(meterRegistry);
+        log.info("Budget mémoire des requêtes : {} Mo", bytes / KB / KB);
+    }
+
+    /**
+     * Réserve l'empreinte estimée d'une requête, en attendant au plus
+     * config.memory.wait.
+     *
+     * @param type the signature type, null for a certificate
+     * @param size the document size
+     * @return the reserved budget to release, 0 if disabled, -1 if rejected
+     */
+    public int reserve(final ESignatureType type, final long size) {
+        if (available == null) {
+            return 0;
+        }
+        return acquire(estimate(type, size), size);
+    }
+
+    /**
+     * Réserve l'empreinte d'une requête XML mesurée par la pré-analyse du
+     * document, en attendant au plus config.memory.wait.
+     *
+     * @param footprint the estimated DOM footprint, in bytes
+     * @param size      the document size
+     * @return the reserved budget to release, 0 if disabled, -1 if rejected
+     */
+    public int reserveFootprint(final long footprint, final long size) {
+        if (available == null) {
+            return 0;
+        }
+        return acquire(overhead + footprint, size);
+    }
+
+    /**
+     * Réserve une empreinte sur le budget.
+     *
+     * @param bytes the footprint, in bytes
+     * @param size  the document size
+     * @return the reserved budget to release, -1 if rejected
+     */
+    private int acquire(final long bytes, final long size) {
+        // une requête plus grosse que le budget s'exécute seule
+        final int estimate = (int) Math.min(permits, bytes / KB + 1);
+        final long start = System.nanoTime();
+        try {
+            if (available.tryAcquire(estimate, maxWait, TimeUnit.MILLISECONDS)) {
+                return estimate;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            wait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        rejected.increment();
+        log.warn("Budget mémoire insuffisant pour un document de {} octets ({} Ko réservés sur {})", size,
+                getReserved(), permits);
+        return -1;
+    }
+
+    /**
+     * Libère une réservation.
+     *
+     * @param reserved the reserved budget
+     */
+    public void release(final int reserved) {
+        if (reserved > 0) {
+            available.release(reserved);
+        }
+    }
+
+    /**
+     * Empreinte mémoire estimée d'une requête.
+     *
+     * @param type the signature type, null for a certificate
+     * @param size the document size
+     * @return the estimate, in bytes
+     */
+    long estimate(final ESignatureType type, final long size) {
+        final double factor;
+        if (type == null) {
+            factor = certificateFactor;
+        } else if (ESignatureType.PADES.equals(type)) {
+            factor = padesFactor;
+        } else {
+            factor = xmlFactor;
+        }
+        return overhead + (long) (size * factor);
+    }
+
+    /**
+     * Gets the reserved budget.
+     *
+     * @return the reserved budget, in KB
+     */
+    int getReserved() {
+        return available == null ? 0 : permits - available.availablePermits();
+    }
+}
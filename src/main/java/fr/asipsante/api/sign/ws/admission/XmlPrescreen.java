@@ -0,0 +1,269 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.admission;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Pré-analyse en flux (StAX) des documents XML avant leur signature ou leur
+ * validation, qui construisent un arbre DOM complet. Le document est lu une
+ * fois, sans être chargé en mémoire : un document mal formé est refusé (501,
+ * comme pour un document non XML), un document trop profond, portant trop
+ * d'attributs sur un élément ou trop d'éléments est refusé (400), avant
+ * d'occuper le tas et les threads de traitement. Les nombres d'éléments et
+ * d'attributs comptés donnent l'estimation de l'empreinte mémoire de l'arbre
+ * DOM réservée sur le budget mémoire. Seuls les documents qui doivent être XML
+ * sont pré-analysés : une signature enveloppante accepte tout type de
+ * document.
+ */
+@Component
+public class XmlPrescreen {
+
+    /** Enable/disable the pre-screening. */
+    @Value("${config.xml.enabled:false}")
+    private boolean enabled;
+
+    /** Maximum element depth. */
+    @Value("${config.xml.maxDepth:256}")
+    private int maxDepth;
+
+    /** Maximum number of attributes of an element. */
+    @Value("${config.xml.maxAttributes:256}")
+    private int maxAttributes;
+
+    /** Maximum number of elements. */
+    @Value("${config.xml.maxElements:5000000}")
+    private long maxElements;
+
+    /** Estimated DOM footprint of an element, in bytes. */
+    @Value("${config.xml.elementCost:256}")
+    private long elementCost;
+
+    /** Estimated DOM footprint of an attribute, in bytes. */
+    @Value("${config.xml.attributeCost:160}")
+    private long attributeCost;
+
+    /** The meter registry. */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** The StAX factory. */
+    private XMLInputFactory factory;
+
+    /** Pre-screening timer. */
+    private Timer duration;
+
+    /**
+     * Init.
+     */
+    @PostConstruct
+    public void init() {
+        factory = XMLInputFactory.newInstance();
+        // les entités et DTD externes ne sont jamais résolues
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setXMLResolver((publicId, systemId, baseUri, namespace) -> new ByteArrayInputStream(new byte[0]));
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        duration = Timer.builder("esignsante.xml.prescreen").description("Durée de la pré-analyse des documents XML")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Checks if the pre-screening is enabled.
+     *
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Pré-analyse d'un document.
+     *
+     * @param in      the document, closed by the caller
+     * @param targets names of elements which must be present, local or
+     *                prefixed, may be empty
+     * @return the document statistics
+     * @throws RejectedException if the document is rejected
+     */
+    public Result scan(final InputStream in, final Collection<String> targets) throws RejectedException {
+        final long start = System.nanoTime();
+        final Set<String> missing = new HashSet<>(targets);
+        final Result result = new Result();
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(in);
+            int depth = 0;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    result.elements++;
+                    result.attributes += reader.getAttributeCount();
+                    result.depth = Math.max(result.depth, depth);
+                    if (depth > maxDepth) {
+                        throw rejected("depth", HttpStatus.BAD_REQUEST, "profondeur supérieure à " + maxDepth);
+                    }
+                    if (reader.getAttributeCount() > maxAttributes) {
+                        throw rejected("attributes", HttpStatus.BAD_REQUEST,
+                                "plus de " + maxAttributes + " attributs sur l'élément " + reader.getLocalName());
+                    }
+                    if (result.elements > maxElements) {
+                        throw rejected("elements", HttpStatus.BAD_REQUEST, "plus de " + maxElements + " éléments");
+                    }
+                    if (!missing.isEmpty()) {
+                        missing.remove(reader.getLocalName());
+                        missing.remove(reader.getPrefix() + ':' + reader.getLocalName());
+                    }
+                } else if (reader.getEventType() == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        } catch (final XMLStreamException e) {
+            throw rejected("malformed", HttpStatus.NOT_IMPLEMENTED, "document XML mal formé : " + e.getMessage());
+        } finally {
+            close(reader);
+            duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (!missing.isEmpty()) {
+            throw rejected("target", HttpStatus.BAD_REQUEST, "éléments absents du document : " + missing);
+        }
+        return result;
+    }
+
+    /**
+     * Empreinte mémoire estimée de l'arbre DOM d'un document : son contenu
+     * (octets reçus et caractères), ses éléments et ses attributs.
+     *
+     * @param result the document statistics
+     * @param size   the document size
+     * @return the estimate, in bytes
+     */
+    public long estimate(final Result result, final long size) {
+        return size * 3 + result.elements * elementCost + result.attributes * attributeCost;
+    }
+
+    /**
+     * Rejection of a document, counted by reason.
+     *
+     * @param reason  the reason
+     * @param status  the response status
+     * @param message the message
+     * @return the exception
+     */
+    private RejectedException rejected(final String reason, final HttpStatus status, final String message) {
+        Counter.builder("esignsante.xml.rejected").description("Documents XML refusés par la pré-analyse")
+                .tag("reason", reason).register(meterRegistry).increment();
+        return new RejectedException(status, message);
+    }
+
+    /**
+     * Closes the reader, not the stream.
+     *
+     * @param reader the reader
+     */
+    private static void close(final XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (final XMLStreamException e) {
+                // sans conséquence : le flux est fermé par l'appelant
+            }
+        }
+    }
+
+    /**
+     * Statistiques d'un document.
+     */
+    public static final class Result {
+
+        /** Number of elements. */
+        private long elements;
+
+        /** Number of attributes. */
+        private long attributes;
+
+        /** Maximum depth. */
+        private int depth;
+
+        /**
+         * Gets the number of elements.
+         *
+         * @return the number of elements
+         */
+        public long getElements() {
+            return elements;
+        }
+
+        /**
+         * Gets the number of attributes.
+         *
+         * @return the number of attributes
+         */
+        public long getAttributes() {
+            return attributes;
+        }
+
+        /**
+         * Gets the maximum depth.
+         *
+         * @return the maximum depth
+         */
+        public int getDepth() {
+            return depth;
+        }
+    }
+
+    /**
+     * Document refusé par la pré-analyse.
+     */
+    public static class RejectedException extends IOException {
+
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+
+        /** The response status. */
+        private final HttpStatus status;
+
+        /**
+         * Instantiates a new rejected exception.
+         *
+         * @param status  the response status
+         * @param message the message
+         */
+        RejectedException(final HttpStatus status, final String message) {
+            super(message);
+            this.status = status;
+        }
+
+        /**
+         * Gets the response status.
+         *
+         * @return the status
+         */
+        public HttpStatus getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+/**
+ * Contrôle d'admission des requêtes de signature et de validation.
+ */
+package fr.asipsante.api.sign.ws.admission;
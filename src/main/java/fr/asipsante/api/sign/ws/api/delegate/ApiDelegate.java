@@ -5,10 +5,11 @@
 package fr.asipsante.api.sign.ws.api.delegate;
 
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.context.request.NativeWebRequest;
@@ -16,11 +17,9 @@ import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.context.request.ServletWebRequest;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import fr.asipsante.api.sign.bean.proof.OpenIdTokenBean;
 import fr.asipsante.api.sign.utils.AsipSignClientException;
-import fr.asipsante.api.sign.ws.model.OpenidToken;
+import fr.asipsante.api.sign.ws.util.OpenIdTokens;
 
 /**
  * The Class ApiDelegate.
@@ -57,33 +56,32 @@ public class ApiDelegate {
 		return getRequest().map(r -> r.getHeader("Accept"));
 	}
 
+	/**
+	 * Gets the client address.
+	 *
+	 * @return the client address
+	 */
+	public Optional<String> getClientAddress() {
+		return getRequest().map(r -> r.getNativeRequest(HttpServletRequest.class))
+				.map(HttpServletRequest::getRemoteAddr);
+	}
+
 	/**
 	 * Gets the OpenidToken header.
 	 *
-	 * @return the OpenidToken header
+	 * @return the OpenidToken beans
 	 * @throws AsipSignClientException
 	 */
-	public List<OpenidToken> parseOpenIdTokenHeader() throws AsipSignClientException {
-		ObjectMapper objectMapper = new ObjectMapper();
+	public List<OpenIdTokenBean> parseOpenIdTokenHeader() throws AsipSignClientException {
 		Optional<String[]> arrayValues = getRequest().map(r -> r.getHeaderValues("X-OpenidToken"));
-		List<OpenidToken> openidTokens = new ArrayList<OpenidToken>();
+		List<OpenIdTokenBean> openidTokens = new ArrayList<OpenIdTokenBean>();
 		if (arrayValues.isPresent()) {
-
 			for (String b64string : arrayValues.get()) {
-				try {
-					String[] singleValues = b64string.split(",");
-					for (String b64value : singleValues) {
-						byte[] decodedBytes = Base64.getDecoder().decode(b64value);
-						OpenidToken oid = objectMapper.readValue(new String(decodedBytes), OpenidToken.class);
-						openidTokens.add(oid);
-					}
-				} catch (Exception e) {
-					logger.error("Error lors du mapping du token", e);
-					throw new AsipSignClientException("Tokens Openid non conformes.");
+				for (String b64value : b64string.split(",")) {
+					openidTokens.add(OpenIdTokens.parse(b64value));
 				}
 			}
 		}
-
 		return openidTokens;
 	}
 }
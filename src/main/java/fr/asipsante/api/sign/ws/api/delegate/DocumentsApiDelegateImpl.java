@@ -0,0 +1,171 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.api.delegate;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import fr.asipsante.api.sign.ws.api.DocumentsApiDelegate;
+import fr.asipsante.api.sign.ws.document.DocumentStore;
+import fr.asipsante.api.sign.ws.document.DocumentStore.StoredDocument;
+
+/**
+ * The Class DocumentsApiDelegateImpl.
+ * Téléchargement des documents signés conservés, avec reprise (en-têtes Range,
+ * If-Range et ETag). Le contenu est envoyé sans copie en mémoire : par le
+ * conteneur (sendfile) lorsqu'il le permet, sinon par FileChannel.transferTo.
+ */
+@Service
+public class DocumentsApiDelegateImpl extends ApiDelegate implements DocumentsApiDelegate {
+
+    /**
+     * The log.
+     */
+    Logger log = LoggerFactory.getLogger(DocumentsApiDelegateImpl.class);
+
+    /** Attribut de requête Tomcat : envoi de fichier par le connecteur supporté. */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    /** Attribut de requête Tomcat : fichier à envoyer. */
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    /** Attribut de requête Tomcat : premier octet à envoyer. */
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    /** Attribut de requête Tomcat : fin (exclue) des octets à envoyer. */
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /** The document store. */
+    @Autowired
+    private DocumentStore documentStore;
+
+    /**
+     * Get document. La réponse est écrite directement (retour null), sauf en
+     * cas d'erreur.
+     *
+     * @param id the document id
+     * @return the response entity, null when the response has been written
+     */
+    @Override
+    public ResponseEntity<Resource> getDocument(final String id) {
+        final Optional<StoredDocument> document = documentStore.get(id);
+        if (!document.isPresent()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        final StoredDocument doc = document.get();
+        final ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder
+                .currentRequestAttributes();
+        final HttpServletRequest request = attributes.getRequest();
+        final HttpServletResponse response = attributes.getResponse();
+        if (new ServletWebRequest(request, response).checkNotModified(doc.getEtag())) {
+            return null;
+        }
+        long start = 0;
+        long end = doc.getSize() - 1;
+        boolean partial = false;
+        final String range = request.getHeader(HttpHeaders.RANGE);
+        final String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        // If-Range : la reprise n'est valable que pour le même contenu
+        if (range != null && (ifRange == null || ifRange.equals(doc.getEtag()))) {
+            try {
+                final List<HttpRange> ranges = HttpRange.parseRanges(range);
+                // plusieurs intervalles : le document est envoyé en entier
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(doc.getSize());
+                    end = ranges.get(0).getRangeEnd(doc.getSize());
+                    partial = true;
+                }
+            } catch (final IllegalArgumentException e) {
+                log.error("Intervalle invalide : {}", range);
+                return unsatisfiable(doc);
+            }
+            // début au-delà de la fin du document : aucun octet à envoyer
+            if (partial && start >= doc.getSize()) {
+                log.error("Intervalle hors du document : {}", range);
+                return unsatisfiable(doc);
+            }
+        }
+        final long length = end - start + 1;
+        try (FileChannel channel = FileChannel.open(doc.getFile().toPath(), StandardOpenOption.READ)) {
+            response.setStatus(partial ? HttpStatus.PARTIAL_CONTENT.value() : HttpStatus.OK.value());
+            response.setContentType(doc.getContentType());
+            response.setContentLengthLong(length);
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            response.setHeader(HttpHeaders.ETAG, doc.getEtag());
+            if (partial) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE,
+                        "bytes " + start + "-" + end + "/" + doc.getSize());
+            }
+            if (HttpMethod.HEAD.matches(request.getMethod())) {
+                return null;
+            }
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // envoi par le connecteur après le retour du contrôleur
+                request.setAttribute(SENDFILE_FILENAME, doc.getFile().getAbsolutePath());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end + 1);
+            } else {
+                final WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+                long position = start;
+                while (position <= end) {
+                    final long sent = channel.transferTo(position, end + 1 - position, out);
+                    if (sent <= 0) {
+                        throw new EOFException("Document tronqué : " + id);
+                    }
+                    position += sent;
+                }
+                response.flushBuffer();
+            }
+            documentStore.downloaded(length);
+        } catch (final NoSuchFileException e) {
+            log.error("Document supprimé : {}", id);
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (final IOException e) {
+            // interruption du téléchargement par le client le plus souvent
+            log.error(ExceptionUtils.getStackTrace(e));
+            if (!response.isCommitted()) {
+                response.reset();
+                return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Intervalle non satisfiable (416), avec la taille du document.
+     *
+     * @param doc the document
+     * @return the response entity
+     */
+    private static ResponseEntity<Resource> unsatisfiable(final StoredDocument doc) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + doc.getSize()).build();
+    }
+}
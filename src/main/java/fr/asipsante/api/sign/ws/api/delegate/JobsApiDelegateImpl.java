@@ -0,0 +1,91 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.api.delegate;
+
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import fr.asipsante.api.sign.ws.api.JobsApiDelegate;
+import fr.asipsante.api.sign.ws.job.JobManager;
+import fr.asipsante.api.sign.ws.model.Job;
+import fr.asipsante.api.sign.ws.util.WsVars;
+
+/**
+ * The Class JobsApiDelegateImpl.
+ * Suivi des traitements asynchrones et lecture de leur résultat.
+ */
+@Service
+public class JobsApiDelegateImpl extends ApiDelegate implements JobsApiDelegate {
+
+    /**
+     * The log.
+     */
+    Logger log = LoggerFactory.getLogger(JobsApiDelegateImpl.class);
+
+    /** Retry-After value of pending jobs, in seconds. */
+    @Value("${config.executor.retryAfter:1}")
+    private long retryAfter;
+
+    /** The job manager. */
+    @Autowired
+    private JobManager jobManager;
+
+    /**
+     * Gets the job.
+     *
+     * @param id the job id
+     * @return the response entity
+     */
+    @Override
+    public ResponseEntity<Job> getJob(final String id) {
+        final Optional<String> acceptHeader = getAcceptHeader();
+        ResponseEntity<Job> re = new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+        if (acceptHeader.isPresent() && acceptHeader.get().contains(WsVars.HEADER_TYPE.getVar())) {
+            final Optional<Job> job = jobManager.getJob(id);
+            if (job.isPresent()) {
+                re = new ResponseEntity<>(job.get(), HttpStatus.OK);
+            } else {
+                re = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+                log.error("Job {}", HttpStatus.NOT_FOUND.getReasonPhrase());
+            }
+        }
+        return re;
+    }
+
+    /**
+     * Gets the job result, with the HTTP status of the operation.
+     *
+     * @param id the job id
+     * @return the response entity
+     */
+    @Override
+    public ResponseEntity<Object> getJobResult(final String id) {
+        final Optional<String> acceptHeader = getAcceptHeader();
+        ResponseEntity<Object> re = new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+        if (acceptHeader.isPresent() && acceptHeader.get().contains(WsVars.HEADER_TYPE.getVar())) {
+            final Optional<Job> job = jobManager.getJob(id);
+            if (!job.isPresent()) {
+                re = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+                log.error("Job {}", HttpStatus.NOT_FOUND.getReasonPhrase());
+            } else if (job.get().getHttpStatus() == null) {
+                re = ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter)).build();
+            } else {
+                re = ResponseEntity.status(job.get().getHttpStatus()).contentType(MediaType.APPLICATION_JSON)
+                        .body(jobManager.getResult(id));
+            }
+        }
+        return re;
+    }
+}
@@ -38,8 +38,17 @@ public class SecretsApiDelegateImpl extends ApiDelegate implements SecretsApiDel
         ResponseEntity<HashedSecret> re = new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         if (!"".equals(secret.getPlainSecret())) {
             final HashedSecret hs = new HashedSecret();
-            hs.setSecureSecretHash(Secrets.hash(secret.getPlainSecret()));
-            re = new ResponseEntity<>(hs, HttpStatus.OK);
+            try {
+                if (secret.getAlgorithm() == null && secret.getCost() == null) {
+                    hs.setSecureSecretHash(Secrets.hash(secret.getPlainSecret()));
+                } else {
+                    hs.setSecureSecretHash(Secrets.hash(secret.getPlainSecret(), secret.getAlgorithm(),
+                            secret.getCost()));
+                }
+                re = new ResponseEntity<>(hs, HttpStatus.OK);
+            } catch (final IllegalArgumentException e) {
+                log.error(e.getMessage());
+            }
         }
 
         return re;
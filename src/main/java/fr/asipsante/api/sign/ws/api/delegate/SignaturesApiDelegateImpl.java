@@ -5,9 +5,11 @@
 package fr.asipsante.api.sign.ws.api.delegate;
 
 import java.io.IOException;
+import java.net.URI;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +20,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.info.BuildProperties;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.context.request.NativeWebRequest;
@@ -40,15 +43,20 @@ import fr.asipsante.api.sign.service.impl.utils.Version;
 import fr.asipsante.api.sign.utils.AsipSignClientException;
 import fr.asipsante.api.sign.utils.AsipSignException;
 import fr.asipsante.api.sign.utils.AsipSignServerException;
+import fr.asipsante.api.sign.ws.admission.AuthenticationThrottle;
+import fr.asipsante.api.sign.ws.admission.CryptoExecutor;
 import fr.asipsante.api.sign.ws.api.SignaturesApiDelegate;
 import fr.asipsante.api.sign.ws.bean.config.IGlobalConf;
 import fr.asipsante.api.sign.ws.bean.object.ProofConf;
 import fr.asipsante.api.sign.ws.bean.object.SignVerifConf;
 import fr.asipsante.api.sign.ws.bean.object.SignatureConf;
+import fr.asipsante.api.sign.ws.document.DocumentStore;
+import fr.asipsante.api.sign.ws.metrics.PipelineMetrics;
 import fr.asipsante.api.sign.ws.model.ESignSanteSignatureReport;
 import fr.asipsante.api.sign.ws.model.ESignSanteSignatureReportWithProof;
 import fr.asipsante.api.sign.ws.model.Erreur;
 import fr.asipsante.api.sign.ws.model.Metadata;
+import fr.asipsante.api.sign.ws.util.DetachedXades;
 import fr.asipsante.api.sign.ws.util.ESignatureType;
 import fr.asipsante.api.sign.ws.util.SignWsUtils;
 import fr.asipsante.api.sign.ws.util.WsVars;
@@ -94,12 +102,29 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 	@Autowired
 	private BuildProperties buildProperties;
 
+	/** Failed authentication throttling. */
+	@Autowired
+	private AuthenticationThrottle authThrottle;
+
+	/** Per-stage pipeline metrics. */
+	@Autowired
+	private PipelineMetrics pipelineMetrics;
+
+	/** Bounded executor for signing and validation. */
+	@Autowired
+	private CryptoExecutor cryptoExecutor;
+
+	/** Signed documents store. */
+	@Autowired
+	private DocumentStore documentStore;
+
 	/** Enable/disable secret. */
 	@Value("${config.secret}")
 	private String secretEnabled;
 
 	/**
-	 * Digital signature with proof.
+	 * Digital signature with proof. The configuration, the throttle and the
+	 * secret are checked before the request is admitted by the executor.
 	 *
 	 * @param secret          the secret
 	 * @param idSignConf      the id sign conf
@@ -122,6 +147,7 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 			log.error("Configuration {}", HttpStatus.NOT_FOUND.getReasonPhrase());
 		} else {
 			final Optional<ProofConf> signProofConf = globalConf.getProofById(signConf.get().getIdProofConf());
+			final PipelineMetrics.Stages stages = pipelineMetrics.stages("signWithProof", type, idSignConf);
 			if (acceptHeader.isPresent() && acceptHeader.get().contains(WsVars.HEADER_TYPE.getVar())) {
 				// this is redundant with current implementation, params are assured
 				if (signParamsMissing(idSignConf, doc, idVerifSignConf) || proofParamsMissing(proofParameters)) {
@@ -129,19 +155,25 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 				} else if (!signProofConf.isPresent()) {
 					re = new ResponseEntity<>(HttpStatus.NOT_FOUND);
 					log.error("Proof ID {}", HttpStatus.NOT_FOUND.getReasonPhrase());
-				} else if ("enable".equalsIgnoreCase(secretEnabled) && signConf.get().noSecretMatch(secret)) {
+				} else if ("enable".equalsIgnoreCase(secretEnabled) && clientThrottled(idSignConf)) {
+					re = new ResponseEntity<>(HttpStatus.TOO_MANY_REQUESTS);
+					log.error(HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase());
+				} else if ("enable".equalsIgnoreCase(secretEnabled) && secretMismatch(signConf.get(), idSignConf, secret, stages)) {
 					re = new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
 					log.error(HttpStatus.UNAUTHORIZED.getReasonPhrase());
 				} else {
-					final SignatureParameters signParams = signConf.get().getSignParams();
-					if (element != null && !element.isEmpty()) {
-						signParams.setElementToSign(element);
-					}
-					signParams.setRoles(signers);
-					final SignatureValidationParameters signVerifParams = verifConf.get().getSignVerifParams();
-					final SignatureParameters signProofParams = signProofConf.get().getSignProofParams();
-					re = signWithProof(doc, proofParameters, type, signParams, signVerifParams, signProofParams);
-					log.info("Digital Signature With Proof Generated : {}", HttpStatus.OK.getReasonPhrase());
+					re = cryptoExecutor.execute(type, doc, xmlTargets(signConf.get(), type, element), d -> {
+						final SignatureParameters signParams = signConf.get().getSignParams();
+						if (element != null && !element.isEmpty()) {
+							signParams.setElementToSign(element);
+						}
+						signParams.setRoles(signers);
+						final SignatureValidationParameters signVerifParams = verifConf.get().getSignVerifParams();
+						final SignatureParameters signProofParams = signProofConf.get().getSignProofParams();
+						return signWithProof(d, proofParameters, type, signParams, signVerifParams, signProofParams,
+								stages);
+					});
+					log.info("Digital Signature With Proof Generated : {}", re.getStatusCode().getReasonPhrase());
 				}
 			}
 		}
@@ -157,54 +189,63 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 	 * @param signParams               the sign params
 	 * @param signValidationParameters the sign validation parameters
 	 * @param signProofParams          the sign proof params
+	 * @param stages                   the pipeline metrics
 	 * @return the response entity
 	 */
 	private ResponseEntity<ESignSanteSignatureReportWithProof> signWithProof(final MultipartFile doc,
 			final ProofParameters proofParameters, final ESignatureType type, final SignatureParameters signParams,
-			final SignatureValidationParameters signValidationParameters, final SignatureParameters signProofParams) {
+			final SignatureValidationParameters signValidationParameters, final SignatureParameters signProofParams,
+			final PipelineMetrics.Stages stages) {
 		ResponseEntity<ESignSanteSignatureReportWithProof> re;
 		try {
 			// Contrôle du certificat de signature
-			HttpStatus status = SignWsUtils.checkCertificate(signParams, serviceCaCrl.getCacrlWrapper());
+			HttpStatus status = stages.record(PipelineMetrics.CERTIFICATE,
+					() -> SignWsUtils.checkCertificate(signParams, serviceCaCrl.getCacrlWrapper()));
 			if (status != HttpStatus.CONTINUE) {
 				re = new ResponseEntity<>(status);
 			} else {
+				final byte[] docBytes = doc.getBytes();
+				stages.documentSize(docBytes.length);
 				final RapportSignature rapportSignature;
 				final RapportValidationSignature rapportVerifSignature;
 				// Signature du document
+				rapportSignature = stages.record(PipelineMetrics.SIGN, () -> signDocument(docBytes, signParams, type));
+				// Validation de la signature
 				if (ESignatureType.XADES.equals(type)) {
-					rapportSignature = signatureService.signXADESBaselineB(doc.getBytes(), signParams);
-					// Validation de la signature
-					rapportVerifSignature = signatureValidationService.validateXADESBaseLineBSignature(
-							rapportSignature.getDocSigne(), signValidationParameters, serviceCaCrl.getCacrlWrapper());
+					rapportVerifSignature = stages.record(PipelineMetrics.VALIDATE,
+							() -> signatureValidationService.validateXADESBaseLineBSignature(
+									rapportSignature.getDocSigne(), signValidationParameters,
+									serviceCaCrl.getCacrlWrapper()));
 				} else if (ESignatureType.PADES.equals(type)) {
-					rapportSignature = signatureService.signPADESBaselineB(doc.getBytes(), signParams);
-					// Validation de la signature
-					rapportVerifSignature = signatureValidationService.validatePADESBaseLineBSignature(
-							rapportSignature.getDocSigneBytes(), signValidationParameters,
-							serviceCaCrl.getCacrlWrapper());
+					rapportVerifSignature = stages.record(PipelineMetrics.VALIDATE,
+							() -> signatureValidationService.validatePADESBaseLineBSignature(
+									rapportSignature.getDocSigneBytes(), signValidationParameters,
+									serviceCaCrl.getCacrlWrapper()));
 				} else {
-					rapportSignature = signatureService.signXMLDsig(doc.getBytes(), signParams);
-					// Validation de la signature
-					rapportVerifSignature = signatureValidationService.validateXMLDsigSignature(
-							rapportSignature.getDocSigne(), signValidationParameters, serviceCaCrl.getCacrlWrapper());
+					rapportVerifSignature = stages.record(PipelineMetrics.VALIDATE,
+							() -> signatureValidationService.validateXMLDsigSignature(
+									rapportSignature.getDocSigne(), signValidationParameters,
+									serviceCaCrl.getCacrlWrapper()));
 				}
 				// Géneration de la preuve
-				final String proof = proofGenerationService.generateSignVerifProof(rapportVerifSignature,
-						proofParameters, serviceCaCrl.getCacrlWrapper());
+				final String proof = stages.record(PipelineMetrics.PROOF,
+						() -> proofGenerationService.generateSignVerifProof(rapportVerifSignature,
+								proofParameters, serviceCaCrl.getCacrlWrapper()));
 				// Contrôle du certificat de signature de la preuve
-				status = SignWsUtils.checkCertificate(signProofParams, serviceCaCrl.getCacrlWrapper());
+				status = stages.record(PipelineMetrics.CERTIFICATE,
+						() -> SignWsUtils.checkCertificate(signProofParams, serviceCaCrl.getCacrlWrapper()));
 				if (status != HttpStatus.CONTINUE) {
 					re = new ResponseEntity<>(status);
 				} else {
 					// Signature de la preuve
-					final RapportSignature rapportSignaturePreuve = signatureService.signXADESBaselineB(proof,
-							signProofParams);
-
-					final ESignSanteSignatureReportWithProof rapport = populateResultSignWithProof(
-							rapportVerifSignature.getListeErreurSignature(), rapportVerifSignature.getMetaData(),
-							rapportVerifSignature.isValide(), rapportSignature.getDocSigneBytes(),
-							rapportSignaturePreuve.getDocSigne());
+					final RapportSignature rapportSignaturePreuve = stages.record(PipelineMetrics.PROOF_SIGNATURE,
+							() -> signatureService.signXADESBaselineB(proof, signProofParams));
+
+					final ESignSanteSignatureReportWithProof rapport = stages.timer(PipelineMetrics.ENCODE)
+							.record(() -> populateResultSignWithProof(rapportVerifSignature.getListeErreurSignature(),
+									rapportVerifSignature.getMetaData(), rapportVerifSignature.isValide(),
+									rapportSignature.getDocSigneBytes(), mimeType(type),
+									rapportSignaturePreuve.getDocSigne()));
 					re = new ResponseEntity<>(rapport, HttpStatus.OK);
 				}
 			}
@@ -222,6 +263,38 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 		return re;
 	}
 
+	/**
+	 * Checks if the client is throttled after too many failed authentications,
+	 * before any secret hash is computed, and reserves an attempt otherwise.
+	 *
+	 * @param idSignConf the id sign conf
+	 * @return boolean
+	 */
+	private boolean clientThrottled(final Long idSignConf) {
+		return authThrottle.isThrottled(getClientAddress().orElse(""), idSignConf);
+	}
+
+	/**
+	 * Checks the secret, records the failed authentications and gives back the
+	 * reserved attempt on success.
+	 *
+	 * @param signConf   the sign conf
+	 * @param idSignConf the id sign conf
+	 * @param secret     the secret
+	 * @param stages     the pipeline metrics
+	 * @return boolean
+	 */
+	private boolean secretMismatch(final SignatureConf signConf, final Long idSignConf, final String secret,
+			final PipelineMetrics.Stages stages) {
+		final boolean mismatch = stages.timer(PipelineMetrics.SECRET).record(() -> signConf.noSecretMatch(secret));
+		if (mismatch) {
+			authThrottle.recordFailure(getClientAddress().orElse(""), idSignConf);
+		} else {
+			authThrottle.recordSuccess(getClientAddress().orElse(""), idSignConf);
+		}
+		return mismatch;
+	}
+
 	/**
 	 * Checks if all signature params are present.
 	 *
@@ -290,7 +363,7 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 		try {
 			// Remplissage de la liste des beans OpenId
 			List<OpenIdTokenBean> tokens;
-			tokens = SignWsUtils.convertOpenIdTokens(parseOpenIdTokenHeader());
+			tokens = parseOpenIdTokenHeader();
 			if (!tokens.isEmpty()) {
 				proofParameters.setOpenidTokens(tokens);
 			}
@@ -332,7 +405,7 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 		try {
 			// Remplissage de la liste des beans OpenId
 			List<OpenIdTokenBean> tokens;
-			tokens = SignWsUtils.convertOpenIdTokens(parseOpenIdTokenHeader());
+			tokens = parseOpenIdTokenHeader();
 			if (!tokens.isEmpty()) {
 				proofParameters.setOpenidTokens(tokens);
 			}
@@ -374,7 +447,7 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 		try {
 			// Remplissage de la liste des beans OpenId
 			List<OpenIdTokenBean> tokens;
-			tokens = SignWsUtils.convertOpenIdTokens(parseOpenIdTokenHeader());
+			tokens = parseOpenIdTokenHeader();
 			if (!tokens.isEmpty()) {
 				proofParameters.setOpenidTokens(tokens);
 			}
@@ -387,7 +460,8 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 	}
 
 	/**
-	 * Digital signature.
+	 * Digital signature. The configuration, the throttle and the secret are
+	 * checked before the request is admitted by the executor.
 	 *
 	 * @param secret     the secret
 	 * @param idSignConf the id sign conf
@@ -401,21 +475,36 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 		ResponseEntity<ESignSanteSignatureReport> re = new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
 		if (idSignConf != null && doc != null) {
 			final Optional<SignatureConf> signConf = globalConf.getSignatureById(idSignConf.toString());
+			final PipelineMetrics.Stages stages = pipelineMetrics.stages("sign", type, idSignConf);
 			if (acceptHeader.isPresent() && acceptHeader.get().contains(WsVars.HEADER_TYPE.getVar())) {
 				if (!signConf.isPresent()) {
 					re = new ResponseEntity<>(HttpStatus.NOT_FOUND);
 					log.error("Configuration {}", HttpStatus.NOT_FOUND.getReasonPhrase());
-				} else if ("enable".equalsIgnoreCase(secretEnabled) && signConf.get().noSecretMatch(secret)) {
+				} else if ("enable".equalsIgnoreCase(secretEnabled) && clientThrottled(idSignConf)) {
+					re = new ResponseEntity<>(HttpStatus.TOO_MANY_REQUESTS);
+					log.error(HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase());
+				} else if ("enable".equalsIgnoreCase(secretEnabled) && secretMismatch(signConf.get(), idSignConf, secret, stages)) {
 					re = new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
 					log.error(HttpStatus.UNAUTHORIZED.getReasonPhrase());
+				} else if (ESignatureType.XADES.equals(type) && signConf.get().isDetached()) {
+					// signature détachée : seule l'empreinte du document, calculée en flux, est signée
+					re = cryptoExecutor.stream(doc, d -> {
+						stages.documentSize(d.getSize());
+						return signDigest(signConf.get(),
+								() -> DetachedXades.digest(d.getInputStream(), signConf.get().getDigestAlgorithm()),
+								d.getOriginalFilename(), d.getContentType(), signers, stages);
+					});
+					log.info("Digital Signature : {}", re.getStatusCode().getReasonPhrase());
 				} else {
-					final SignatureParameters signParams = signConf.get().getSignParams();
-					if (element != null && !element.isEmpty()) {
-						signParams.setElementToSign(element);
-					}
-					signParams.setRoles(signers);
-					re = sign(signParams, doc, type);
-					log.info("Digital Signature : {}", HttpStatus.OK.getReasonPhrase());
+					re = cryptoExecutor.execute(type, doc, xmlTargets(signConf.get(), type, element), d -> {
+						final SignatureParameters signParams = signConf.get().getSignParams();
+						if (element != null && !element.isEmpty()) {
+							signParams.setElementToSign(element);
+						}
+						signParams.setRoles(signers);
+						return sign(signParams, d, type, stages);
+					});
+					log.info("Digital Signature : {}", re.getStatusCode().getReasonPhrase());
 				}
 			}
 		} else {
@@ -430,28 +519,27 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 	 * @param signParams the signature parameters
 	 * @param doc        the doc
 	 * @param type       the signature type
+	 * @param stages     the pipeline metrics
 	 * @return the response entity
 	 */
 	private ResponseEntity<ESignSanteSignatureReport> sign(final SignatureParameters signParams,
-			final MultipartFile doc, final ESignatureType type) {
+			final MultipartFile doc, final ESignatureType type, final PipelineMetrics.Stages stages) {
 		ResponseEntity<ESignSanteSignatureReport> re;
 		try {
 			// Contrôle du certificat de signature
-			final HttpStatus status = SignWsUtils.checkCertificate(signParams, serviceCaCrl.getCacrlWrapper());
+			final HttpStatus status = stages.record(PipelineMetrics.CERTIFICATE,
+					() -> SignWsUtils.checkCertificate(signParams, serviceCaCrl.getCacrlWrapper()));
 			if (status != HttpStatus.CONTINUE) {
 				re = new ResponseEntity<>(status);
 			} else {
+				final byte[] docBytes = doc.getBytes();
+				stages.documentSize(docBytes.length);
 				// Signature
-				final RapportSignature rapportSignature;
-				if (ESignatureType.XADES.equals(type)) {
-					rapportSignature = signatureService.signXADESBaselineB(doc.getBytes(), signParams);
-				} else if (ESignatureType.PADES.equals(type)) {
-					rapportSignature = signatureService.signPADESBaselineB(doc.getBytes(), signParams);
-				} else {
-					rapportSignature = signatureService.signXMLDsig(doc.getBytes(), signParams);
-				}
-				final ESignSanteSignatureReport rapport = populateResultSign(rapportSignature.getListeErreurSignature(),
-						rapportSignature.getDocSigneBytes());
+				final RapportSignature rapportSignature = stages.record(PipelineMetrics.SIGN,
+						() -> signDocument(docBytes, signParams, type));
+				final ESignSanteSignatureReport rapport = stages.timer(PipelineMetrics.ENCODE)
+						.record(() -> populateResultSign(rapportSignature.getListeErreurSignature(),
+								rapportSignature.getDocSigneBytes(), mimeType(type)));
 				re = new ResponseEntity<>(rapport, HttpStatus.OK);
 			}
 		} catch (final AsipSignClientException e2) {
@@ -467,6 +555,57 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 		return re;
 	}
 
+	/**
+	 * Éléments que le document doit contenir, vérifiés par la pré-analyse
+	 * XML avant l'admission : élément à signer et élément avant lequel insérer
+	 * la signature. Une signature enveloppée n'accepte que des documents XML,
+	 * une signature enveloppante ou PAdES tout type de document, qui n'est
+	 * alors pré-analysé que si un élément à signer est désigné.
+	 *
+	 * @param signConf the signature configuration
+	 * @param type     the signature type
+	 * @param element  the element to sign requested by the client, may be null
+	 * @return the element names, null if the document may be of any type
+	 */
+	private static Collection<String> xmlTargets(final SignatureConf signConf, final ESignatureType type,
+			final String element) {
+		if (ESignatureType.PADES.equals(type)) {
+			return null;
+		}
+		final List<String> targets = new ArrayList<>();
+		final String elementToSign = element != null && !element.isEmpty() ? element : signConf.getElementToSign();
+		if (elementToSign != null && !elementToSign.isEmpty()) {
+			targets.add(elementToSign);
+		}
+		if (signConf.getElementBeforeInsertSignature() != null
+				&& !signConf.getElementBeforeInsertSignature().isEmpty()) {
+			targets.add(signConf.getElementBeforeInsertSignature());
+		}
+		return targets.isEmpty() && !"ENVELOPED".equals(signConf.getSignaturePackaging()) ? null : targets;
+	}
+
+	/**
+	 * Signe le document selon le type de signature.
+	 *
+	 * @param docBytes   the document
+	 * @param signParams the signature parameters
+	 * @param type       the signature type
+	 * @return the rapport signature
+	 * @throws AsipSignException the asip sign exception
+	 */
+	private RapportSignature signDocument(final byte[] docBytes, final SignatureParameters signParams,
+			final ESignatureType type) throws AsipSignException {
+		final RapportSignature rapportSignature;
+		if (ESignatureType.XADES.equals(type)) {
+			rapportSignature = signatureService.signXADESBaselineB(docBytes, signParams);
+		} else if (ESignatureType.PADES.equals(type)) {
+			rapportSignature = signatureService.signPADESBaselineB(docBytes, signParams);
+		} else {
+			rapportSignature = signatureService.signXMLDsig(docBytes, signParams);
+		}
+		return rapportSignature;
+	}
+
 	/**
 	 * Signature XMLDsig.
 	 *
@@ -495,6 +634,118 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 		return digitalSignature(secret, idSignConf, doc, ESignatureType.XADES, signers, null);
 	}
 
+	/**
+	 * Signature xades détachée, à partir de l'empreinte du document.
+	 *
+	 * @param idSignConf the id sign conf
+	 * @param hash       the document digest encoded in base 64
+	 * @param secret     the secret
+	 * @param fileName   the document name
+	 * @param mimeType   the document MIME type
+	 * @return the response entity
+	 */
+	@Override
+	public ResponseEntity<ESignSanteSignatureReport> signatureXadesDetached(final Long idSignConf, final String hash,
+			final String secret, final String fileName, final String mimeType, List<String> signers) {
+		return detachedSignature(secret, idSignConf, hash, fileName, mimeType, signers);
+	}
+
+	/**
+	 * Detached signature.
+	 *
+	 * @param secret     the secret
+	 * @param idSignConf the id sign conf
+	 * @param hash       the document digest encoded in base 64
+	 * @param fileName   the document name
+	 * @param mimeType   the document MIME type
+	 * @param signers    the signers
+	 * @return the response entity
+	 */
+	private ResponseEntity<ESignSanteSignatureReport> detachedSignature(final String secret, final Long idSignConf,
+			final String hash, final String fileName, final String mimeType, final List<String> signers) {
+		final Optional<String> acceptHeader = getAcceptHeader();
+		ResponseEntity<ESignSanteSignatureReport> re = new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+		byte[] digest = null;
+		try {
+			digest = hash == null ? null : Base64.getDecoder().decode(hash);
+		} catch (final IllegalArgumentException e) {
+			log.error("Empreinte mal encodée : {}", e.getMessage());
+		}
+		if (idSignConf != null && digest != null) {
+			final Optional<SignatureConf> signConf = globalConf.getSignatureById(idSignConf.toString());
+			final PipelineMetrics.Stages stages = pipelineMetrics.stages("sign", ESignatureType.XADES, idSignConf);
+			if (acceptHeader.isPresent() && acceptHeader.get().contains(WsVars.HEADER_TYPE.getVar())) {
+				if (!signConf.isPresent()) {
+					re = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+					log.error("Configuration {}", HttpStatus.NOT_FOUND.getReasonPhrase());
+				} else if ("enable".equalsIgnoreCase(secretEnabled) && clientThrottled(idSignConf)) {
+					re = new ResponseEntity<>(HttpStatus.TOO_MANY_REQUESTS);
+					log.error(HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase());
+				} else if ("enable".equalsIgnoreCase(secretEnabled) && secretMismatch(signConf.get(), idSignConf, secret, stages)) {
+					re = new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+					log.error(HttpStatus.UNAUTHORIZED.getReasonPhrase());
+				} else {
+					final byte[] documentDigest = digest;
+					re = cryptoExecutor.execute(() -> signDigest(signConf.get(), () -> documentDigest, fileName,
+							mimeType, signers, stages));
+					log.info("Detached Signature : {}", re.getStatusCode().getReasonPhrase());
+				}
+			}
+		} else {
+			re = new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		return re;
+	}
+
+	/**
+	 * Sign digest.
+	 *
+	 * @param signConf the signature configuration
+	 * @param digest   the document digest, computed after the certificate check
+	 * @param fileName the document name
+	 * @param mimeType the document MIME type
+	 * @param signers  the signers
+	 * @param stages   the pipeline metrics
+	 * @return the response entity
+	 */
+	private ResponseEntity<ESignSanteSignatureReport> signDigest(final SignatureConf signConf,
+			final PipelineMetrics.StageCall<byte[]> digest,
+			final String fileName, final String mimeType, final List<String> signers,
+			final PipelineMetrics.Stages stages) {
+		ResponseEntity<ESignSanteSignatureReport> re;
+		final SignatureParameters signParams = signConf.getSignParams();
+		try {
+			// Contrôle du certificat de signature
+			final HttpStatus status = stages.record(PipelineMetrics.CERTIFICATE,
+					() -> SignWsUtils.checkCertificate(signParams, serviceCaCrl.getCacrlWrapper()));
+			if (status != HttpStatus.CONTINUE) {
+				re = new ResponseEntity<>(status);
+			} else {
+				final byte[] documentDigest = stages.record(PipelineMetrics.DIGEST, digest);
+				// Signature de l'empreinte
+				final byte[] signature = stages.record(PipelineMetrics.SIGN,
+						() -> DetachedXades.sign(signParams, signConf.getDigestAlgorithm(),
+								signConf.getCanonicalisationAlgorithm(), documentDigest, fileName, mimeType,
+								signers));
+				re = new ResponseEntity<>(populateResultSign(new ArrayList<>(), signature,
+						MediaType.APPLICATION_XML_VALUE), HttpStatus.OK);
+			}
+		} catch (final IllegalArgumentException e2) {
+			log.error(e2.getMessage());
+			re = new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		} catch (final AsipSignClientException e2) {
+			log.error(ExceptionUtils.getStackTrace(e2));
+			re = new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+		} catch (final AsipSignServerException e2) {
+			log.error(ExceptionUtils.getStackTrace(e2));
+			re = new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		} catch (final IOException | AsipSignException e2) {
+			log.error(ExceptionUtils.getStackTrace(e2));
+			re = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+		return re;
+	}
+
 	/**
 	 * Signature pades.
 	 *
@@ -509,17 +760,45 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 		return digitalSignature(secret, idSignConf, doc, ESignatureType.PADES, signers, null);
 	}
 
+	/**
+	 * MIME type of a signed document.
+	 *
+	 * @param type the signature type
+	 * @return the MIME type
+	 */
+	private static String mimeType(final ESignatureType type) {
+		return ESignatureType.PADES.equals(type) ? MediaType.APPLICATION_PDF_VALUE : MediaType.APPLICATION_XML_VALUE;
+	}
+
+	/**
+	 * Conserve le document signé si le client demande son adresse de
+	 * téléchargement (en-tête "Prefer: return=minimal").
+	 *
+	 * @param signedDocument the signed document
+	 * @param mimeType       the MIME type
+	 * @return the download address, empty to return the document in the report
+	 */
+	private Optional<URI> storeSigned(final byte[] signedDocument, final String mimeType) {
+		return documentStore.isRequested() ? documentStore.store(signedDocument, mimeType) : Optional.empty();
+	}
+
 	/**
 	 * Populate result sign.
 	 *
 	 * @param erreursSignature the erreurs signature
 	 * @param signedDocument   the signed document
+	 * @param mimeType         the MIME type of the signed document
 	 * @return the fr.asipsante.api.sign.ws.model. rapport signature
 	 */
 	private ESignSanteSignatureReport populateResultSign(final List<ErreurSignature> erreursSignature,
-			final byte[] signedDocument) {
+			final byte[] signedDocument, final String mimeType) {
 		final ESignSanteSignatureReport rapport = new ESignSanteSignatureReport();
-		rapport.setDocSigne(Base64.getEncoder().encodeToString(signedDocument));
+		final Optional<URI> location = storeSigned(signedDocument, mimeType);
+		if (location.isPresent()) {
+			rapport.setDocSigneUrl(location.get().toString());
+		} else {
+			rapport.setDocSigne(Base64.getEncoder().encodeToString(signedDocument));
+		}
 		final List<Erreur> erreurs = new ArrayList<>();
 		for (final ErreurSignature erreurANS : erreursSignature) {
 			final Erreur erreur = new Erreur();
@@ -538,14 +817,21 @@ public class SignaturesApiDelegateImpl extends ApiDelegate implements Signatures
 	 * @param metadata         the metadata
 	 * @param isValide         the is valide
 	 * @param signedDocument   the signed document
+	 * @param mimeType         the MIME type of the signed document
 	 * @param preuve           the preuve
 	 * @return the rapport signature with proof
 	 */
 	private ESignSanteSignatureReportWithProof populateResultSignWithProof(final List<ErreurSignature> erreursSignature,
-			final List<MetaDatum> metadata, final boolean isValide, final byte[] signedDocument, final String preuve) {
+			final List<MetaDatum> metadata, final boolean isValide, final byte[] signedDocument, final String mimeType,
+			final String preuve) {
 		final ESignSanteSignatureReportWithProof rapport = new ESignSanteSignatureReportWithProof();
 		rapport.setValide(isValide);
-		rapport.setDocSigne(Base64.getEncoder().encodeToString(signedDocument));
+		final Optional<URI> location = storeSigned(signedDocument, mimeType);
+		if (location.isPresent()) {
+			rapport.setDocSigneUrl(location.get().toString());
+		} else {
+			rapport.setDocSigne(Base64.getEncoder().encodeToString(signedDocument));
+		}
 		rapport.setPreuve(Base64.getEncoder().encodeToString(preuve.getBytes()));
 
 		final List<Erreur> erreurs = new ArrayList<>();
@@ -0,0 +1,376 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.api.delegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import fr.asipsante.api.sign.ws.admission.AuthenticationThrottle;
+import fr.asipsante.api.sign.ws.api.SignaturesApiDelegate;
+import fr.asipsante.api.sign.ws.api.UploadsApiDelegate;
+import fr.asipsante.api.sign.ws.api.ValidationApiDelegate;
+import fr.asipsante.api.sign.ws.bean.config.IGlobalConf;
+import fr.asipsante.api.sign.ws.bean.object.SignatureConf;
+import fr.asipsante.api.sign.ws.compression.ContentDecoder;
+import fr.asipsante.api.sign.ws.job.StoredFile;
+import fr.asipsante.api.sign.ws.model.Upload;
+import fr.asipsante.api.sign.ws.upload.UploadManager;
+import fr.asipsante.api.sign.ws.util.WsVars;
+
+/**
+ * The Class UploadsApiDelegateImpl.
+ * Téléversement par morceaux puis signature ou vérification du document
+ * assemblé, par les opérations existantes. Si les secrets sont activés, la
+ * session est ouverte avec une configuration de signature et son secret, et
+ * ne peut être signée qu'avec cette configuration.
+ */
+@Service
+public class UploadsApiDelegateImpl extends ApiDelegate implements UploadsApiDelegate {
+
+    /**
+     * The log.
+     */
+    Logger log = LoggerFactory.getLogger(UploadsApiDelegateImpl.class);
+
+    /** Algorithme d'empreinte par défaut. */
+    private static final String DEFAULT_DIGEST = "SHA256";
+
+    /** Retry-After value when too many sessions are open, in seconds. */
+    @Value("${config.executor.retryAfter:1}")
+    private long retryAfter;
+
+    /** Enable/disable secret. */
+    @Value("${config.secret}")
+    private String secretEnabled;
+
+    /** Failed authentication throttling. */
+    @Autowired
+    private AuthenticationThrottle authThrottle;
+
+    /** The upload manager. */
+    @Autowired
+    private UploadManager uploadManager;
+
+    /** The global conf. */
+    @Autowired
+    private IGlobalConf globalConf;
+
+    /** The signatures delegate. */
+    @Autowired
+    private SignaturesApiDelegate signaturesApiDelegate;
+
+    /** The validation delegate. */
+    @Autowired
+    private ValidationApiDelegate validationApiDelegate;
+
+    /**
+     * Checks the Accept header and that upload sessions are enabled.
+     *
+     * @return true if the request can be served
+     */
+    private boolean accepted() {
+        final Optional<String> acceptHeader = getAcceptHeader();
+        return uploadManager.isEnabled() && acceptHeader.isPresent()
+                && acceptHeader.get().contains(WsVars.HEADER_TYPE.getVar());
+    }
+
+    /**
+     * Create upload.
+     *
+     * @param fileName   the document name
+     * @param mimeType   the document MIME type
+     * @param size       the document size
+     * @param idSignConf the id sign conf, for the digest algorithm and the secret
+     * @param secret     the secret
+     * @return the response entity
+     */
+    @Override
+    public ResponseEntity<Upload> createUpload(final String fileName, final String mimeType, final Long size,
+            final Long idSignConf, final String secret) {
+        ResponseEntity<Upload> re = new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+        if (accepted()) {
+            final boolean secured = "enable".equalsIgnoreCase(secretEnabled);
+            if (secured && idSignConf == null) {
+                log.error("Configuration de signature manquante : {}", HttpStatus.BAD_REQUEST.getReasonPhrase());
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            String digestAlgorithm = DEFAULT_DIGEST;
+            if (idSignConf != null) {
+                final Optional<SignatureConf> signConf = globalConf.getSignatureById(idSignConf.toString());
+                if (!signConf.isPresent()) {
+                    log.error("Configuration {}", HttpStatus.NOT_FOUND.getReasonPhrase());
+                    return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+                } else if (secured && clientThrottled(idSignConf)) {
+                    log.error(HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase());
+                    return new ResponseEntity<>(HttpStatus.TOO_MANY_REQUESTS);
+                } else if (secured && secretMismatch(signConf.get(), idSignConf, secret)) {
+                    log.error(HttpStatus.UNAUTHORIZED.getReasonPhrase());
+                    return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+                }
+                digestAlgorithm = signConf.get().getDigestAlgorithm();
+            }
+            try {
+                final Optional<Upload> upload = uploadManager.create(fileName, mimeType, size, digestAlgorithm,
+                        idSignConf);
+                if (upload.isPresent()) {
+                    re = ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentContextPath()
+                            .path("/uploads/{id}").buildAndExpand(upload.get().getId()).toUri()).body(upload.get());
+                } else {
+                    re = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter)).build();
+                }
+            } catch (final IllegalArgumentException e) {
+                log.error(e.getMessage());
+                re = new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            } catch (final IOException e) {
+                log.error(ExceptionUtils.getStackTrace(e));
+                re = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+        return re;
+    }
+
+    /**
+     * Checks if the client has no authentication attempt left.
+     *
+     * @param idSignConf the id sign conf
+     * @return true if the request must be rejected
+     */
+    private boolean clientThrottled(final Long idSignConf) {
+        return authThrottle.isThrottled(getClientAddress().orElse(""), idSignConf);
+    }
+
+    /**
+     * Checks the secret, records the failed authentications and gives back the
+     * reserved attempt on success.
+     *
+     * @param signConf   the sign conf
+     * @param idSignConf the id sign conf
+     * @param secret     the secret
+     * @return true if the secret does not match
+     */
+    private boolean secretMismatch(final SignatureConf signConf, final Long idSignConf, final String secret) {
+        final boolean mismatch = signConf.noSecretMatch(secret);
+        if (mismatch) {
+            authThrottle.recordFailure(getClientAddress().orElse(""), idSignConf);
+        } else {
+            authThrottle.recordSuccess(getClientAddress().orElse(""), idSignConf);
+        }
+        return mismatch;
+    }
+
+    /**
+     * Get upload.
+     *
+     * @param id the session id
+     * @return the response entity
+     */
+    @Override
+    public ResponseEntity<Upload> getUpload(final String id) {
+        ResponseEntity<Upload> re = new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+        if (accepted()) {
+            re = uploadManager.get(id).map(upload -> new ResponseEntity<>(upload, HttpStatus.OK))
+                    .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+        }
+        return re;
+    }
+
+    /**
+     * Append a chunk, read from the request as it is written to the session
+     * file (StreamingResourceHttpMessageConverter). A chunk whose
+     * Content-Length exceeds config.uploads.maxChunk is rejected before it is
+     * read; a compressed chunk has no length and config.uploads.maxChunk is
+     * enforced on the decompressed bytes.
+     *
+     * @param id   the session id
+     * @param body the chunk
+     * @return the response entity
+     */
+    @Override
+    public ResponseEntity<Upload> appendUpload(final String id, final Resource body) {
+        ResponseEntity<Upload> re = new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+        if (accepted()) {
+            final String contentRange = getRequest().map(r -> r.getHeader(HttpHeaders.CONTENT_RANGE)).orElse(null);
+            try (InputStream in = body.getInputStream()) {
+                final HttpStatus status = uploadManager.append(id, contentRange, in, body.contentLength());
+                final Optional<Upload> upload = uploadManager.get(id);
+                if ((status == HttpStatus.OK || status == HttpStatus.CONFLICT) && upload.isPresent()) {
+                    // en cas de conflit, le nombre d'octets reçus indique la position de reprise
+                    re = new ResponseEntity<>(upload.get(), status);
+                } else if (status == HttpStatus.SERVICE_UNAVAILABLE) {
+                    re = ResponseEntity.status(status).header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                            .build();
+                } else {
+                    re = new ResponseEntity<>(status);
+                }
+            } catch (final ContentDecoder.LimitExceededException e) {
+                // corps compressé : limite de décompression atteinte (session supprimée)
+                log.error(e.getMessage());
+                re = new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE);
+            } catch (final IOException e) {
+                log.error(ExceptionUtils.getStackTrace(e));
+                re = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+        return re;
+    }
+
+    /**
+     * Delete upload.
+     *
+     * @param id the session id
+     * @return the response entity
+     */
+    @Override
+    public ResponseEntity<Void> deleteUpload(final String id) {
+        ResponseEntity<Void> re = new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+        if (accepted()) {
+            re = new ResponseEntity<>(uploadManager.remove(id) ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND);
+        }
+        return re;
+    }
+
+    /**
+     * Signe ou vérifie le document téléversé, puis supprime la session si
+     * l'opération a réussi (2xx, 202 pour un traitement asynchrone) ; en cas
+     * d'échec la session est conservée pour une nouvelle tentative.
+     *
+     * @param id              the session id
+     * @param operation       the operation
+     * @param secret          the secret
+     * @param idSignConf      the id sign conf
+     * @param idVerifSignConf the id verif sign conf
+     * @param signers         the signers
+     * @return the response entity of the operation
+     */
+    @Override
+    public ResponseEntity<Object> finalizeUpload(final String id, final String operation, final String secret,
+            final Long idSignConf, final Long idVerifSignConf, final List<String> signers) {
+        if (!accepted()) {
+            return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+        }
+        final Optional<Upload> upload = uploadManager.get(id);
+        if (!upload.isPresent()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        final Optional<StoredFile> doc = uploadManager.finish(id);
+        if (!doc.isPresent()) {
+            log.error("Document incomplet : {} octets reçus sur {}", upload.get().getReceived(),
+                    upload.get().getSize());
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+        if (isSignature(operation) && upload.get().getIdSignConf() != null
+                && !upload.get().getIdSignConf().equals(idSignConf)) {
+            log.error("Session ouverte pour la configuration {} : {}", upload.get().getIdSignConf(),
+                    HttpStatus.FORBIDDEN.getReasonPhrase());
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        // la session porte désormais l'empreinte du document
+        final Upload done = uploadManager.get(id).orElse(upload.get());
+        final ResponseEntity<Object> re = toObject(execute(operation, done, doc.get(), secret, idSignConf,
+                idVerifSignConf, signers));
+        if (re.getStatusCode().is2xxSuccessful()) {
+            // un traitement asynchrone travaille sur sa propre copie du document
+            uploadManager.remove(id);
+        }
+        return re;
+    }
+
+    /**
+     * Checks if the operation is a signature.
+     *
+     * @param operation the operation
+     * @return true for the SIGN_* operations
+     */
+    private static boolean isSignature(final String operation) {
+        return operation != null && operation.startsWith("SIGN_");
+    }
+
+    /**
+     * Exécute l'opération demandée sur le document.
+     *
+     * @param operation       the operation
+     * @param upload          the session
+     * @param doc             the document
+     * @param secret          the secret
+     * @param idSignConf      the id sign conf
+     * @param idVerifSignConf the id verif sign conf
+     * @param signers         the signers
+     * @return the response entity of the operation
+     */
+    private ResponseEntity<?> execute(final String operation, final Upload upload, final StoredFile doc,
+            final String secret, final Long idSignConf, final Long idVerifSignConf, final List<String> signers) {
+        final ResponseEntity<?> re;
+        switch (operation == null ? "" : operation) {
+        case "SIGN_XMLDSIG":
+            re = signaturesApiDelegate.signatureXMLdsig(idSignConf, doc, secret, null);
+            break;
+        case "SIGN_XADES":
+            if (isDetached(idSignConf, upload)) {
+                // l'empreinte calculée à la réception évite une nouvelle lecture du document
+                re = signaturesApiDelegate.signatureXadesDetached(idSignConf, upload.getDigest(), secret,
+                        doc.getOriginalFilename(), doc.getContentType(), signers);
+            } else {
+                re = signaturesApiDelegate.signatureXades(idSignConf, doc, secret, signers);
+            }
+            break;
+        case "SIGN_PADES":
+            re = signaturesApiDelegate.signaturePades(idSignConf, doc, secret, signers);
+            break;
+        case "VERIF_XMLDSIG":
+            re = validationApiDelegate.verifSignatureXMLdsig(idVerifSignConf, doc);
+            break;
+        case "VERIF_XADES":
+            re = validationApiDelegate.verifSignatureXades(idVerifSignConf, doc);
+            break;
+        case "VERIF_PADES":
+            re = validationApiDelegate.verifSignaturePades(idVerifSignConf, doc);
+            break;
+        default:
+            log.error("Opération inconnue : {}", operation);
+            re = new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return re;
+    }
+
+    /**
+     * Checks if the configuration signs detached XAdES with the session digest
+     * algorithm.
+     *
+     * @param idSignConf the id sign conf
+     * @param upload     the session
+     * @return true if the session digest can be signed directly
+     */
+    private boolean isDetached(final Long idSignConf, final Upload upload) {
+        final Optional<SignatureConf> signConf = idSignConf == null ? Optional.empty()
+                : globalConf.getSignatureById(idSignConf.toString());
+        return signConf.isPresent() && signConf.get().isDetached()
+                && upload.getDigestAlgorithm().equals(signConf.get().getDigestAlgorithm());
+    }
+
+    /**
+     * Conversion de la réponse de l'opération.
+     *
+     * @param re the response entity
+     * @return the response entity
+     */
+    private static ResponseEntity<Object> toObject(final ResponseEntity<?> re) {
+        return new ResponseEntity<>(re.getBody(), re.getHeaders(), re.getStatusCode());
+    }
+}
@@ -9,8 +9,10 @@ import java.io.InputStream;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.mozilla.universalchardet.UniversalDetector;
@@ -46,18 +48,22 @@ import fr.asipsante.api.sign.utils.AsipSignClientException;
 import fr.asipsante.api.sign.utils.AsipSignException;
 import fr.asipsante.api.sign.utils.AsipSignParseException;
 import fr.asipsante.api.sign.utils.AsipSignServerException;
+import fr.asipsante.api.sign.ws.admission.CryptoExecutor;
 import fr.asipsante.api.sign.ws.api.ValidationApiDelegate;
 import fr.asipsante.api.sign.ws.bean.config.IGlobalConf;
 import fr.asipsante.api.sign.ws.bean.object.CertVerifConf;
 import fr.asipsante.api.sign.ws.bean.object.ProofConf;
 import fr.asipsante.api.sign.ws.bean.object.SignVerifConf;
+import fr.asipsante.api.sign.ws.metrics.PipelineMetrics;
 import fr.asipsante.api.sign.ws.model.ESignSanteValidationReport;
 import fr.asipsante.api.sign.ws.model.ESignSanteValidationReportWithProof;
 import fr.asipsante.api.sign.ws.model.Erreur;
 import fr.asipsante.api.sign.ws.model.Metadata;
 import fr.asipsante.api.sign.ws.util.ESignatureType;
+import fr.asipsante.api.sign.ws.util.MetadataSelection;
 import fr.asipsante.api.sign.ws.util.SignWsUtils;
 import fr.asipsante.api.sign.ws.util.WsVars;
+import fr.asipsante.api.sign.ws.validation.FailFastValidation;
 
 /**
  * The Class ValidationApiDelegateImpl.
@@ -104,6 +110,18 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
     @Autowired
     private BuildProperties buildProperties;
 
+    /** Per-stage pipeline metrics. */
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
+    /** Bounded executor for signing and validation. */
+    @Autowired
+    private CryptoExecutor cryptoExecutor;
+
+    /** Fail-fast validation mode. */
+    @Autowired
+    private FailFastValidation failFastValidation;
+
     /**
      * Validate digital signature with proof.
      *
@@ -132,8 +150,9 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
                 } else {
                     final SignatureValidationParameters signVerifParams = verifConf.get().getSignVerifParams();
                     final SignatureParameters signProofParams = signProofConf.get().getSignProofParams();
-                    re = validateWithProof(doc, proofParameters, type, signVerifParams,
-                            signProofParams);
+                    re = cryptoExecutor.execute(type, doc, d -> validateWithProof(d, proofParameters, type,
+                            signVerifParams, signProofParams,
+                            pipelineMetrics.stages("validateWithProof", type, idVerifSignConf)));
                     log.info("Validate Digital Signature With Proof Generated : {}", HttpStatus.OK.getReasonPhrase());
                 }
             }
@@ -149,31 +168,37 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
      * @param type                     the signature type
      * @param signValidationParameters the sign validation parameters
      * @param signProofParams          the sign proof params
+     * @param stages                   the pipeline metrics
      * @return the response entity
      */
     private ResponseEntity<ESignSanteValidationReportWithProof> validateWithProof(
             final MultipartFile doc, final ProofParameters proofParameters, ESignatureType type,
-            final SignatureValidationParameters signValidationParameters, final SignatureParameters signProofParams) {
+            final SignatureValidationParameters signValidationParameters, final SignatureParameters signProofParams,
+            final PipelineMetrics.Stages stages) {
         ResponseEntity<ESignSanteValidationReportWithProof> re;
         try {
             // Validation de la signature du document
             final RapportValidationSignature rapportVerifSignANS = genSignVerifReport(doc, type,
-                    signValidationParameters);
+                    signValidationParameters, stages);
 
             // Génération de la preuve
-            final String proof = proofGenerationService.generateSignVerifProof(rapportVerifSignANS, proofParameters,
-                    serviceCaCrl.getCacrlWrapper());
+            final String proof = stages.record(PipelineMetrics.PROOF,
+                    () -> proofGenerationService.generateSignVerifProof(rapportVerifSignANS, proofParameters,
+                            serviceCaCrl.getCacrlWrapper()));
 
             // Contrôle du certificat de signature de la preuve
-            final HttpStatus status = SignWsUtils.checkCertificate(signProofParams, serviceCaCrl.getCacrlWrapper());
+            final HttpStatus status = stages.record(PipelineMetrics.CERTIFICATE,
+                    () -> SignWsUtils.checkCertificate(signProofParams, serviceCaCrl.getCacrlWrapper()));
             if (status != HttpStatus.CONTINUE) {
                 re = new ResponseEntity<>(status);
             } else {
                 // Signature de la preuve
-                final RapportSignature rapportSignProofANS = signatureService.signXMLDsig(proof, signProofParams);
-                final ESignSanteValidationReportWithProof rapport = populateResultSignWithProof(
-                        rapportVerifSignANS.getListeErreurSignature(), rapportVerifSignANS.getMetaData(),
-                        rapportVerifSignANS.isValide(), rapportSignProofANS.getDocSigne());
+                final RapportSignature rapportSignProofANS = stages.record(PipelineMetrics.PROOF_SIGNATURE,
+                        () -> signatureService.signXMLDsig(proof, signProofParams));
+                final ESignSanteValidationReportWithProof rapport = stages.timer(PipelineMetrics.ENCODE)
+                        .record(() -> populateResultSignWithProof(rapportVerifSignANS.getListeErreurSignature(),
+                                rapportVerifSignANS.getMetaData(), rapportVerifSignANS.isValide(),
+                                rapportSignProofANS.getDocSigne()));
                 re = new ResponseEntity<>(rapport, HttpStatus.OK);
             }
         } catch (final AsipSignClientException | AsipSignParseException e1) {
@@ -227,7 +252,8 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
         }
         final ProofParameters proofParameters = new ProofParameters("Sign", requestId, proofTag, applicantId,
                 calledOperation("/validation/signatures/xmldsigwithproof"), wsVersion);
-			return validateDigitalSignatureWithProof(idVerifSignConf, doc, proofParameters, idProofConf, ESignatureType.XMLDSIG);
+        return validateDigitalSignatureWithProof(idVerifSignConf, doc, proofParameters, idProofConf,
+                ESignatureType.XMLDSIG);
     }
 
     /**
@@ -252,7 +278,8 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
         }
         final ProofParameters proofParameters = new ProofParameters("Sign", requestId, proofTag, applicantId,
                 calledOperation("/validation/signatures/xadesbaselinebwithproof"), wsVersion);       
-	        return validateDigitalSignatureWithProof(idVerifSignConf, doc, proofParameters, idProofConf, ESignatureType.XADES);
+        return validateDigitalSignatureWithProof(idVerifSignConf, doc, proofParameters, idProofConf,
+                ESignatureType.XADES);
     }
     
     /**
@@ -282,11 +309,12 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
 		try {
 			// Remplissage de la liste des beans OpenId  
 			List<OpenIdTokenBean> tokens;
-			tokens = SignWsUtils.convertOpenIdTokens(parseOpenIdTokenHeader());
+			tokens = parseOpenIdTokenHeader();
 	        if (!tokens.isEmpty()) {
 				proofParameters.setOpenidTokens(tokens);
 			}   
-	        return validateDigitalSignatureWithProof(idVerifSignConf, doc, proofParameters, idProofConf, ESignatureType.PADES);
+	        return validateDigitalSignatureWithProof(idVerifSignConf, doc, proofParameters, idProofConf,
+	                ESignatureType.PADES);
 		} catch (AsipSignClientException e) {
 			log.error(ExceptionUtils.getStackTrace(e));
 			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
@@ -315,32 +343,61 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
                 re = new ResponseEntity<>(HttpStatus.NOT_FOUND);
                 log.error("Configuration {}" , HttpStatus.NOT_FOUND.getReasonPhrase());
             } else {
-                final SignatureValidationParameters signVerifParams = verifConf.get().getSignVerifParams();
-                re = validate(doc, type, signVerifParams);
-                log.info("Validate Digital Signature : {}", HttpStatus.OK.getReasonPhrase());
+                SignatureValidationParameters signVerifParams = null;
+                try {
+                    signVerifParams = selectedMetadata()
+                            .map(types -> MetadataSelection.restrict(verifConf.get().getSignVerifParams(), types))
+                            .orElseGet(verifConf.get()::getSignVerifParams);
+                } catch (final IllegalArgumentException e) {
+                    log.error("Métadonnée inconnue : {}", e.getMessage());
+                    re = new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                }
+                if (signVerifParams != null && failFastValidation.isRequested()) {
+                    final SignatureValidationParameters params = signVerifParams;
+                    re = cryptoExecutor.execute(type, doc, d -> validateFailFast(d, type, params,
+                            pipelineMetrics.stages("validateFailFast", type, idVerifSignConf)));
+                    log.info("Validate Digital Signature (failfast) : {}", HttpStatus.OK.getReasonPhrase());
+                } else if (signVerifParams != null) {
+                    final SignatureValidationParameters params = signVerifParams;
+                    re = cryptoExecutor.execute(type, doc, d -> validate(d, type, params,
+                            pipelineMetrics.stages("validate", type, idVerifSignConf)));
+                    log.info("Validate Digital Signature : {}", HttpStatus.OK.getReasonPhrase());
+                }
             }
         }
         return re;
     }
 
+    /**
+     * Sélection des métadonnées demandée par l'en-tête X-Metadata.
+     *
+     * @return the selected types, empty when the configured metadata are requested
+     * @throws IllegalArgumentException if a type is unknown
+     */
+    private Optional<Set<MetaDataType>> selectedMetadata() {
+        return MetadataSelection.parse(getRequest().map(r -> r.getHeader(MetadataSelection.HEADER)).orElse(null));
+    }
+
     /**
      * Validate.
      *
      * @param doc                      the doc
      * @param type                     the signature type
      * @param signValidationParameters the sign validation parameters
+     * @param stages                   the pipeline metrics
      * @return the response entity
      */
     private ResponseEntity<ESignSanteValidationReport> validate(
             final MultipartFile doc, ESignatureType type,
-            final SignatureValidationParameters signValidationParameters) {
+            final SignatureValidationParameters signValidationParameters, final PipelineMetrics.Stages stages) {
         ResponseEntity<ESignSanteValidationReport> re;
         try {
             // Validation de la signature du document
             final RapportValidationSignature rapportVerifSignANS = genSignVerifReport(doc, type,
-                    signValidationParameters);
-            final ESignSanteValidationReport rapport = populateResultSign(rapportVerifSignANS.getListeErreurSignature(),
-                    rapportVerifSignANS.getMetaData(), rapportVerifSignANS.isValide());
+                    signValidationParameters, stages);
+            final ESignSanteValidationReport rapport = stages.timer(PipelineMetrics.ENCODE)
+                    .record(() -> populateResultSign(rapportVerifSignANS.getListeErreurSignature(),
+                            rapportVerifSignANS.getMetaData(), rapportVerifSignANS.isValide()));
 
             re = new ResponseEntity<>(rapport, HttpStatus.OK);
         } catch (final AsipSignClientException | AsipSignParseException e2) {
@@ -401,31 +458,92 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
      * @param doc original document
      * @param type Xades, Pades or D-sig
      * @param signValidationParameters signature validation parameters
+     * @param stages the pipeline metrics
      * @return RapportValidationSignature
      * @throws IOException stream file exception
      * @throws AsipSignException asipsign exception
      */
     private RapportValidationSignature genSignVerifReport(
             final MultipartFile doc, ESignatureType type,
-            final SignatureValidationParameters signValidationParameters)
+            final SignatureValidationParameters signValidationParameters, final PipelineMetrics.Stages stages)
             throws IOException, AsipSignException {
 
+        final byte[] docBytes = doc.getBytes();
+        stages.documentSize(docBytes.length);
         // Validation de la signature du document
+        return stages.record(PipelineMetrics.VALIDATE,
+                () -> validateSignature(docBytes, type, signValidationParameters));
+    }
+
+    /**
+     * Validation de la signature du document par le moteur.
+     *
+     * @param docBytes                 the document
+     * @param type                     the signature type
+     * @param signValidationParameters the sign validation parameters
+     * @return RapportValidationSignature
+     * @throws AsipSignException asipsign exception
+     */
+    private RapportValidationSignature validateSignature(final byte[] docBytes, final ESignatureType type,
+            final SignatureValidationParameters signValidationParameters) throws AsipSignException {
         final RapportValidationSignature rapportVerifSignANS;
         if (ESignatureType.XADES.equals(type)) {
-            rapportVerifSignANS = signatureValidationService.validateXADESBaseLineBSignature(doc.getBytes(),
+            rapportVerifSignANS = signatureValidationService.validateXADESBaseLineBSignature(docBytes,
                     signValidationParameters, serviceCaCrl.getCacrlWrapper());
-        } else if(ESignatureType.PADES.equals(type)) {
-        	rapportVerifSignANS = signatureValidationService.validatePADESBaseLineBSignature(doc.getBytes(),
+        } else if (ESignatureType.PADES.equals(type)) {
+            rapportVerifSignANS = signatureValidationService.validatePADESBaseLineBSignature(docBytes,
                     signValidationParameters, serviceCaCrl.getCacrlWrapper());
         } else {
-            rapportVerifSignANS = signatureValidationService.validateXMLDsigSignature(doc.getBytes(),
+            rapportVerifSignANS = signatureValidationService.validateXMLDsigSignature(docBytes,
                     signValidationParameters, serviceCaCrl.getCacrlWrapper());
         }
-
         return rapportVerifSignANS;
     }
 
+    /**
+     * Validate, fail-fast mode: the rule tiers are evaluated until the first
+     * failure. The report has no metadata.
+     *
+     * @param doc                      the doc
+     * @param type                     the signature type
+     * @param signValidationParameters the sign validation parameters
+     * @param stages                   the pipeline metrics
+     * @return the response entity
+     */
+    private ResponseEntity<ESignSanteValidationReport> validateFailFast(
+            final MultipartFile doc, final ESignatureType type,
+            final SignatureValidationParameters signValidationParameters, final PipelineMetrics.Stages stages) {
+        ResponseEntity<ESignSanteValidationReport> re;
+        try {
+            final byte[] docBytes = doc.getBytes();
+            stages.documentSize(docBytes.length);
+            final List<RapportValidationSignature> rapports = stages.record(PipelineMetrics.VALIDATE,
+                    () -> failFastValidation.validate("signature", signValidationParameters.getRules(),
+                            rules -> validateSignature(docBytes, type,
+                                    FailFastValidation.withRules(signValidationParameters, rules)),
+                            RapportValidationSignature::isValide));
+            final List<ErreurSignature> erreurs = new ArrayList<>();
+            for (final RapportValidationSignature rapportVerifSignANS : rapports) {
+                erreurs.addAll(rapportVerifSignANS.getListeErreurSignature());
+            }
+            final boolean valide = rapports.stream().allMatch(RapportValidationSignature::isValide);
+            final ESignSanteValidationReport rapport = stages.timer(PipelineMetrics.ENCODE)
+                    .record(() -> populateResultSign(erreurs, Collections.emptyList(), valide));
+
+            re = new ResponseEntity<>(rapport, HttpStatus.OK);
+        } catch (final AsipSignClientException | AsipSignParseException e2) {
+            log.error(ExceptionUtils.getStackTrace(e2));
+            re = new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+        } catch (final AsipSignServerException e2) {
+            log.error(ExceptionUtils.getStackTrace(e2));
+            re = new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (final IOException | AsipSignException e2) {
+            log.error(ExceptionUtils.getStackTrace(e2));
+            re = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        return re;
+    }
+
     /**
      * Verif certificat with proof.
      *
@@ -466,8 +584,9 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
             } else {
                 final CertificateValidationParameters certVerifParams = verifConf.get().getCertVerifParams();
                 final SignatureParameters signProofParams = signProofConf.get().getSignProofParams();
-                re = validateCertWithProof(doc, certVerifParams, signProofParams,
-                        proofParameters);
+                re = cryptoExecutor.execute(null, doc,
+                        d -> validateCertWithProof(d, certVerifParams, signProofParams,
+                        proofParameters, pipelineMetrics.stages("verifCertWithProof", "certificate", idVerifCertConf)));
                 log.info("Certificate Validation Done, Proof Generated : {}", HttpStatus.OK.getReasonPhrase());
             }
         }
@@ -492,34 +611,39 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
      * @param certValidationParameters the cert validation parameters
      * @param signProofParams          the sign proof params
      * @param proofParameters          the proof parameters
+     * @param stages                   the pipeline metrics
      * @return the response entity
      */
     private ResponseEntity<ESignSanteValidationReportWithProof> validateCertWithProof(
             final MultipartFile doc, final CertificateValidationParameters certValidationParameters,
-            final SignatureParameters signProofParams, final ProofParameters proofParameters) {
+            final SignatureParameters signProofParams, final ProofParameters proofParameters,
+            final PipelineMetrics.Stages stages) {
         
         ResponseEntity<ESignSanteValidationReportWithProof> re;
         
         try {
             final RapportValidationCertificat rapportVerifCertANS = createRapportValidationCertificat(doc,
-                    certValidationParameters);
+                    certValidationParameters, stages);
 
             // Génération de la preuve
-            final String proof = proofGenerationService.generateCertVerifProof(rapportVerifCertANS, proofParameters,
-                    serviceCaCrl.getCacrlWrapper());
+            final String proof = stages.record(PipelineMetrics.PROOF,
+                    () -> proofGenerationService.generateCertVerifProof(rapportVerifCertANS, proofParameters,
+                            serviceCaCrl.getCacrlWrapper()));
 
             // Contrôle du certificat de signature de la preuve
-            final HttpStatus status = SignWsUtils.checkCertificate(signProofParams, serviceCaCrl.getCacrlWrapper());
+            final HttpStatus status = stages.record(PipelineMetrics.CERTIFICATE,
+                    () -> SignWsUtils.checkCertificate(signProofParams, serviceCaCrl.getCacrlWrapper()));
             if (status != HttpStatus.CONTINUE) {
                 re = new ResponseEntity<>(status);
             } else {
                 // Signature de la preuve
-                final RapportSignature rapportSignProofANS = signatureService.signXADESBaselineB(proof,
-                        signProofParams);
+                final RapportSignature rapportSignProofANS = stages.record(PipelineMetrics.PROOF_SIGNATURE,
+                        () -> signatureService.signXADESBaselineB(proof, signProofParams));
 
-                final ESignSanteValidationReportWithProof rapport = populateResultVerifCertWithProof(
-                        rapportVerifCertANS.getListeErreurCertificat(), rapportVerifCertANS.getMetaData(),
-                        rapportVerifCertANS.isValide(), rapportSignProofANS.getDocSigne());
+                final ESignSanteValidationReportWithProof rapport = stages.timer(PipelineMetrics.ENCODE)
+                        .record(() -> populateResultVerifCertWithProof(rapportVerifCertANS.getListeErreurCertificat(),
+                                rapportVerifCertANS.getMetaData(), rapportVerifCertANS.isValide(),
+                                rapportSignProofANS.getDocSigne()));
 
                 re = new ResponseEntity<>(rapport, HttpStatus.OK);
             }
@@ -558,9 +682,28 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
                 re = new ResponseEntity<>(HttpStatus.NOT_FOUND);
                 log.error("Certificate Validation Configuration {}" , HttpStatus.NOT_FOUND.getReasonPhrase());
             } else {
-                final CertificateValidationParameters certVerifParams = verifConf.get().getCertVerifParams();
-                re = validateCert(doc, certVerifParams);
-                log.info("Certificate Validation Done : {}", HttpStatus.OK.getReasonPhrase());
+                CertificateValidationParameters selected = null;
+                try {
+                    selected = selectedMetadata()
+                            .map(types -> MetadataSelection.restrict(verifConf.get().getCertVerifParams(), types))
+                            .orElseGet(verifConf.get()::getCertVerifParams);
+                } catch (final IllegalArgumentException e) {
+                    log.error("Métadonnée inconnue : {}", e.getMessage());
+                    re = new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                }
+                if (selected != null && failFastValidation.isRequested()) {
+                    final CertificateValidationParameters certVerifParams = selected;
+                    re = cryptoExecutor.execute(null, doc,
+                            d -> validateCertFailFast(d, certVerifParams,
+                            pipelineMetrics.stages("verifCertFailFast", "certificate", idVerifCertConf)));
+                    log.info("Certificate Validation Done (failfast) : {}", HttpStatus.OK.getReasonPhrase());
+                } else if (selected != null) {
+                    final CertificateValidationParameters certVerifParams = selected;
+                    re = cryptoExecutor.execute(null, doc,
+                            d -> validateCert(d, certVerifParams,
+                            pipelineMetrics.stages("verifCert", "certificate", idVerifCertConf)));
+                    log.info("Certificate Validation Done : {}", HttpStatus.OK.getReasonPhrase());
+                }
             }
         }
         return re;
@@ -571,20 +714,22 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
      *
      * @param doc                      the doc
      * @param certValidationParameters the cert validation parameters
+     * @param stages                   the pipeline metrics
      * @return the response entity
      */
     private ResponseEntity<ESignSanteValidationReport> validateCert(
-            final MultipartFile doc, final CertificateValidationParameters certValidationParameters) {
+            final MultipartFile doc, final CertificateValidationParameters certValidationParameters,
+            final PipelineMetrics.Stages stages) {
         
         ResponseEntity<ESignSanteValidationReport> re;
         
         try {
             final RapportValidationCertificat rapportVerifCertANS = createRapportValidationCertificat(doc,
-                    certValidationParameters);
+                    certValidationParameters, stages);
 
-            final ESignSanteValidationReport rapport = populateResultVerifCert(
-                    rapportVerifCertANS.getListeErreurCertificat(), rapportVerifCertANS.getMetaData(),
-                    rapportVerifCertANS.isValide());
+            final ESignSanteValidationReport rapport = stages.timer(PipelineMetrics.ENCODE)
+                    .record(() -> populateResultVerifCert(rapportVerifCertANS.getListeErreurCertificat(),
+                            rapportVerifCertANS.getMetaData(), rapportVerifCertANS.isValide()));
 
             re = new ResponseEntity<>(rapport, HttpStatus.OK);
 
@@ -606,28 +751,85 @@ public class ValidationApiDelegateImpl extends ApiDelegate implements Validation
      * 
      * @param doc original document
      * @param certValidationParameters certificate validation paramters
+     * @param stages the pipeline metrics
      * @return RapportValidationCertificat
      * @throws AsipSignException asipsign exception
      * @throws IOException stream file exception
      */
     private RapportValidationCertificat createRapportValidationCertificat(
-            final MultipartFile doc, final CertificateValidationParameters certValidationParameters)
-            throws AsipSignException, IOException {
+            final MultipartFile doc, final CertificateValidationParameters certValidationParameters,
+            final PipelineMetrics.Stages stages) throws AsipSignException, IOException {
         
+        stages.documentSize(doc.getSize());
+        return stages.record(PipelineMetrics.VALIDATE, () -> validateCertificat(doc, certValidationParameters));
+    }
+
+    /**
+     * Validation du certificat par le moteur.
+     *
+     * @param doc                      the certificate, PEM or DER
+     * @param certValidationParameters the cert validation parameters
+     * @return RapportValidationCertificat
+     * @throws AsipSignException asipsign exception
+     * @throws IOException stream file exception
+     */
+    private RapportValidationCertificat validateCertificat(final MultipartFile doc,
+            final CertificateValidationParameters certValidationParameters) throws AsipSignException, IOException {
         final RapportValidationCertificat rapportVerifCertANS;
-        
         if (isBinaryFile(doc)) {
             rapportVerifCertANS = certificateValidationService.validateCertificat(doc.getBytes(),
                     certValidationParameters, serviceCaCrl.getCacrlWrapper());
         } else {
-            final String docString = new String(doc.getBytes(), UniversalDetector.detectCharset(doc.getInputStream()));
-            rapportVerifCertANS = certificateValidationService.validateCertificat(docString, certValidationParameters,
-                    serviceCaCrl.getCacrlWrapper());
+            final String docString = new String(doc.getBytes(),
+                    UniversalDetector.detectCharset(doc.getInputStream()));
+            rapportVerifCertANS = certificateValidationService.validateCertificat(docString,
+                    certValidationParameters, serviceCaCrl.getCacrlWrapper());
         }
-
         return rapportVerifCertANS;
     }
 
+    /**
+     * Validate cert, fail-fast mode: the rule tiers are evaluated until the
+     * first failure. The report has no metadata.
+     *
+     * @param doc                      the doc
+     * @param certValidationParameters the cert validation parameters
+     * @param stages                   the pipeline metrics
+     * @return the response entity
+     */
+    private ResponseEntity<ESignSanteValidationReport> validateCertFailFast(
+            final MultipartFile doc, final CertificateValidationParameters certValidationParameters,
+            final PipelineMetrics.Stages stages) {
+        ResponseEntity<ESignSanteValidationReport> re;
+        try {
+            stages.documentSize(doc.getSize());
+            final List<RapportValidationCertificat> rapports = stages.record(PipelineMetrics.VALIDATE,
+                    () -> failFastValidation.validate("certificate", certValidationParameters.getRules(),
+                            rules -> validateCertificat(doc,
+                                    FailFastValidation.withRules(certValidationParameters, rules)),
+                            RapportValidationCertificat::isValide));
+            final List<ErreurCertificat> erreurs = new ArrayList<>();
+            for (final RapportValidationCertificat rapportVerifCertANS : rapports) {
+                erreurs.addAll(rapportVerifCertANS.getListeErreurCertificat());
+            }
+            final boolean valide = rapports.stream().allMatch(RapportValidationCertificat::isValide);
+            final ESignSanteValidationReport rapport = stages.timer(PipelineMetrics.ENCODE)
+                    .record(() -> populateResultVerifCert(erreurs, Collections.emptyList(), valide));
+
+            re = new ResponseEntity<>(rapport, HttpStatus.OK);
+        } catch (final AsipSignClientException e) {
+            log.error(ExceptionUtils.getStackTrace(e));
+            re = new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+        } catch (final AsipSignServerException e) {
+            log.error(ExceptionUtils.getStackTrace(e));
+            re = new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (final IOException | AsipSignException e) {
+            log.error(ExceptionUtils.getStackTrace(e));
+            re = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        return re;
+    }
+
     /**
      * Checks if is binary file.
      * Guess whether given file is binary. Just checks for anything under 0x09.
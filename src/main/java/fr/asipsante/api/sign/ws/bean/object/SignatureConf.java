@@ -12,7 +12,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Field;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 
@@ -24,6 +29,9 @@ public class SignatureConf {
 	/** The log. */
 	private static final Logger log = LoggerFactory.getLogger(SignatureConf.class);
 
+	/** Hash tagged with a key identifier : "keyId:hash". */
+	private static final Pattern KEYED_HASH = Pattern.compile("^([a-zA-Z_0-9\\-]+):(.+)$");
+
 	/**
 	 * signParams.
 	 */
@@ -40,6 +48,18 @@ public class SignatureConf {
 	 */
 	private String secret;
 
+	/**
+	 * secret hashes tagged with a key identifier, indexed by key identifier.
+	 */
+	@JsonIgnore
+	private Map<String, String> keyedSecrets = new HashMap<>();
+
+	/**
+	 * secret hashes without key identifier.
+	 */
+	@JsonIgnore
+	private List<String> unkeyedSecrets = new ArrayList<>();
+
 	/**
 	 * idProofConf.
 	 */
@@ -110,12 +130,24 @@ public class SignatureConf {
 
 	/**
 	 * No secret match boolean.
+	 * Un secret présenté au format "keyId.secret" n'est comparé qu'au hash
+	 * déclaré avec ce keyId ("keyId:hash"), une seule comparaison est donc faite.
+	 * Sinon le secret est comparé aux hashes déclarés sans keyId.
 	 *
 	 * @param secret the secret
 	 * @return the boolean
 	 */
 	public boolean noSecretMatch(final String secret) {
-		return Arrays.stream(getSecret().trim().split(" ")).noneMatch(hash -> Secrets.match(secret, hash));
+		if (secret != null) {
+			final int separator = secret.indexOf(Secrets.KEY_ID_SEPARATOR);
+			if (separator > 0) {
+				final String hash = keyedSecrets.get(secret.substring(0, separator));
+				if (hash != null) {
+					return !Secrets.match(secret.substring(separator + 1), hash);
+				}
+			}
+		}
+		return unkeyedSecrets.stream().noneMatch(hash -> Secrets.match(secret, hash));
 	}
 
 	/**
@@ -161,6 +193,18 @@ public class SignatureConf {
 	 */
 	public void setSecret(final String secret) {
 		this.secret = secret;
+		keyedSecrets = new HashMap<>();
+		unkeyedSecrets = new ArrayList<>();
+		if (secret != null) {
+			for (final String hash : secret.trim().split(" ")) {
+				final Matcher keyed = KEYED_HASH.matcher(hash);
+				if (keyed.matches()) {
+					keyedSecrets.put(keyed.group(1), keyed.group(2));
+				} else {
+					unkeyedSecrets.add(hash);
+				}
+			}
+		}
 	}
 
 	/**
@@ -280,6 +324,16 @@ public class SignatureConf {
 		return signaturePackaging;
 	}
 
+	/**
+	 * Checks if the signature is detached from the document.
+	 *
+	 * @return true if the signature packaging is DETACHED
+	 */
+	@JsonIgnore
+	public boolean isDetached() {
+		return "DETACHED".equals(signaturePackaging);
+	}
+
 	/**
 	 * Sets signature packaging.
 	 *
@@ -0,0 +1,493 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * The Class CompressingResponseFilter.
+ * Compression gzip des rapports de signature et de validation (document signé
+ * en base 64, rapports diagnostique et DSS), lorsque le client l'accepte
+ * (en-tête Accept-Encoding). Les réponses de moins de
+ * config.compression.threshold octets sont envoyées sans compression. Le taux
+ * de compression et le temps CPU de compression sont mesurés.
+ */
+@Component
+public class CompressingResponseFilter extends OncePerRequestFilter {
+
+    /** Encodage des réponses compressées. */
+    private static final String GZIP = "gzip";
+
+    /** Taille du tampon de compression. */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /** Thread CPU time, when supported. */
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /** Enable/disable response compression. */
+    @Value("${config.compression.enabled:false}")
+    private boolean enabled;
+
+    /** Minimum response size to compress, in bytes. */
+    @Value("${config.compression.threshold:8192}")
+    private int threshold;
+
+    /** Compression level, from 1 (fastest) to 9 (smallest). */
+    @Value("${config.compression.level:6}")
+    private int level;
+
+    /** Compressed paths (prefixes). */
+    @Value("${config.compression.paths:/signatures/,/validation/,/jobs/}")
+    private String[] paths;
+
+    /** The meter registry. */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Uncompressed bytes counter. */
+    private Counter bytesIn;
+
+    /** Compressed bytes counter. */
+    private Counter bytesOut;
+
+    /** Compression ratio per response. */
+    private DistributionSummary ratio;
+
+    /** Compression CPU time per response. */
+    private Timer cpu;
+
+    /**
+     * Init.
+     */
+    @PostConstruct
+    public void init() {
+        bytesIn = Counter.builder("esignsante.compression.in").baseUnit("bytes")
+                .description("Octets des réponses avant compression").register(meterRegistry);
+        bytesOut = Counter.builder("esignsante.compression.out").baseUnit("bytes")
+                .description("Octets des réponses compressées").register(meterRegistry);
+        ratio = DistributionSummary.builder("esignsante.compression.ratio")
+                .description("Taux de compression des réponses").register(meterRegistry);
+        cpu = Timer.builder("esignsante.compression.cpu").description("Temps CPU de compression des réponses")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(final HttpServletRequest request) {
+        if (!enabled || HttpMethod.HEAD.matches(request.getMethod())) {
+            return true;
+        }
+        final String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (final String prefix : paths) {
+            if (path.startsWith(prefix.trim())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request, final HttpServletResponse response,
+            final FilterChain filterChain) throws ServletException, IOException {
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (!acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        final CompressingResponse compressing = new CompressingResponse(response);
+        filterChain.doFilter(request, compressing);
+        compressing.finish();
+    }
+
+    /**
+     * Checks if the client accepts gzip.
+     *
+     * @param acceptEncoding the Accept-Encoding header
+     * @return true if gzip is accepted
+     */
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean accepted = false;
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] parameters = coding.trim().split(";");
+            final String name = parameters[0].trim();
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                final String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (final NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (GZIP.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                // gzip explicitement refusé par q=0
+                return quality > 0;
+            }
+            accepted |= "*".equals(name) && quality > 0;
+        }
+        return accepted;
+    }
+
+    /**
+     * Temps CPU du thread courant, en nanosecondes.
+     *
+     * @return the CPU time
+     */
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Réponse compressée au-delà du seuil.
+     */
+    private final class CompressingResponse extends HttpServletResponseWrapper {
+
+        /** The output stream. */
+        private ThresholdOutputStream output;
+
+        /** The writer. */
+        private PrintWriter writer;
+
+        /** The content length set by the application. */
+        private long contentLength = -1;
+
+        /**
+         * Instantiates a new compressing response.
+         *
+         * @param response the response
+         */
+        CompressingResponse(final HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            if (output == null) {
+                output = new ThresholdOutputStream(this);
+            }
+            return output;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (output != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                output = new ThresholdOutputStream(this);
+                writer = new PrintWriter(new OutputStreamWriter(output, getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(final int len) {
+            contentLength = len;
+        }
+
+        @Override
+        public void setContentLengthLong(final long len) {
+            contentLength = len;
+        }
+
+        @Override
+        public void setHeader(final String name, final String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                contentLength = value == null ? -1 : Long.parseLong(value);
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setHeader(name, value);
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(final String name, final int value) {
+            setHeader(name, String.valueOf(value));
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            // avant le seuil, la réponse reste en mémoire
+            if (output == null || output.started) {
+                super.flushBuffer();
+            }
+        }
+
+        /**
+         * Checks if the response can be compressed.
+         *
+         * @return true if compressible
+         */
+        boolean isCompressible() {
+            final String contentType = getContentType();
+            return !isCommitted() && getStatus() != HttpStatus.PARTIAL_CONTENT.value()
+                    && getHeader(HttpHeaders.CONTENT_ENCODING) == null
+                    && (contentType == null || contentType.contains("json") || contentType.contains("xml")
+                            || contentType.startsWith("text/"));
+        }
+
+        /**
+         * Termine la réponse.
+         *
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (output != null) {
+                output.finish();
+            } else if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+        }
+    }
+
+    /**
+     * Contenu de la réponse, conservé en mémoire jusqu'au seuil puis compressé.
+     */
+    private final class ThresholdOutputStream extends ServletOutputStream {
+
+        /** The response. */
+        private final CompressingResponse response;
+
+        /** Content before the threshold. */
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        /** Compressed output, when compressing. */
+        private GZIPOutputStream gzip;
+
+        /** Response output, counting compressed bytes. */
+        private CountingOutputStream counting;
+
+        /** Output written without compression. */
+        private OutputStream direct;
+
+        /** Threshold reached. */
+        private boolean started;
+
+        /** Uncompressed bytes. */
+        private long written;
+
+        /** Compression CPU time. */
+        private long cpuNanos;
+
+        /**
+         * Instantiates a new threshold output stream.
+         *
+         * @param response the response
+         */
+        ThresholdOutputStream(final CompressingResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            written += len;
+            if (!started) {
+                buffer.write(b, off, len);
+                if (buffer.size() >= threshold) {
+                    start();
+                }
+            } else if (gzip != null) {
+                compress(b, off, len);
+            } else {
+                direct.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // avant le seuil, rien n'est envoyé
+            if (started) {
+                (gzip != null ? counting : direct).flush();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            // avant le seuil, le contenu est conservé en mémoire
+            return !started || output().isReady();
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+            output().setWriteListener(writeListener);
+        }
+
+        /**
+         * Flux de sortie de la réponse enveloppée.
+         *
+         * @return the output stream
+         */
+        private ServletOutputStream output() {
+            try {
+                return response.getResponse().getOutputStream();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Seuil atteint : compression du contenu, si la réponse s'y prête.
+         *
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private void start() throws IOException {
+            started = true;
+            final byte[] pending = buffer.toByteArray();
+            buffer = null;
+            final HttpServletResponse target = (HttpServletResponse) response.getResponse();
+            if (response.isCompressible()) {
+                target.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+                counting = new CountingOutputStream(target.getOutputStream());
+                final long begin = cpuTime();
+                gzip = new GZIPOutputStream(counting, BUFFER_SIZE) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+                cpuNanos += cpuTime() - begin;
+                compress(pending, 0, pending.length);
+            } else {
+                if (response.contentLength >= 0) {
+                    target.setContentLengthLong(response.contentLength);
+                }
+                direct = target.getOutputStream();
+                direct.write(pending);
+            }
+        }
+
+        /**
+         * Compresse une partie du contenu.
+         *
+         * @param b   the bytes
+         * @param off the offset
+         * @param len the length
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private void compress(final byte[] b, final int off, final int len) throws IOException {
+            final long begin = cpuTime();
+            gzip.write(b, off, len);
+            cpuNanos += cpuTime() - begin;
+        }
+
+        /**
+         * Termine la réponse : contenu sous le seuil envoyé tel quel, ou fin de
+         * la compression.
+         *
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        void finish() throws IOException {
+            final HttpServletResponse target = (HttpServletResponse) response.getResponse();
+            if (!started) {
+                target.setContentLength(buffer.size());
+                buffer.writeTo(target.getOutputStream());
+            } else if (gzip != null) {
+                final long begin = cpuTime();
+                gzip.finish();
+                cpuNanos += cpuTime() - begin;
+                bytesIn.increment(written);
+                bytesOut.increment(counting.count);
+                if (counting.count > 0) {
+                    ratio.record((double) written / counting.count);
+                }
+                cpu.record(cpuNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Compte les octets écrits.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+
+        /** The output. */
+        private final OutputStream out;
+
+        /** Bytes written. */
+        private long count;
+
+        /**
+         * Instantiates a new counting output stream.
+         *
+         * @param out the output
+         */
+        CountingOutputStream(final OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
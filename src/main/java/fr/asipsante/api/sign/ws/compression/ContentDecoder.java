@@ -0,0 +1,262 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.compression;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Décodage des contenus envoyés compressés (Content-Encoding gzip ou
+ * deflate). Le contenu est décompressé au fil de la lecture ; la lecture
+ * échoue si le contenu décompressé dépasse config.decompression.maxSize octets
+ * ou config.decompression.maxRatio fois la taille du contenu compressé
+ * (bombe de décompression).
+ */
+@Component
+public class ContentDecoder {
+
+    /** Taille décompressée en deçà de laquelle le taux n'est pas contrôlé. */
+    private static final long RATIO_FLOOR = 1024L * 1024L;
+
+    /** Taille du tampon de copie. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Enable/disable decompression. */
+    @Value("${config.decompression.enabled:true}")
+    private boolean enabled;
+
+    /** Maximum compression ratio. */
+    @Value("${config.decompression.maxRatio:100}")
+    private long maxRatio;
+
+    /** Maximum decompressed size, in bytes. */
+    @Value("${config.decompression.maxSize:209715200}")
+    private long maxSize;
+
+    /** The meter registry. */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Compressed bytes counter. */
+    private Counter compressed;
+
+    /** Decompressed bytes counter. */
+    private Counter decompressed;
+
+    /** Rejected contents counter. */
+    private Counter rejected;
+
+    /**
+     * Init.
+     */
+    @PostConstruct
+    public void init() {
+        compressed = Counter.builder("esignsante.decompression.in").baseUnit("bytes")
+                .description("Octets reçus compressés").register(meterRegistry);
+        decompressed = Counter.builder("esignsante.decompression.out").baseUnit("bytes")
+                .description("Octets décompressés").register(meterRegistry);
+        rejected = Counter.builder("esignsante.decompression.rejected")
+                .description("Contenus compressés refusés (taille ou taux de compression)").register(meterRegistry);
+    }
+
+    /**
+     * Checks if an encoding is to be decoded.
+     *
+     * @param encoding the Content-Encoding value
+     * @return true if the content is compressed
+     */
+    public static boolean isEncoded(final String encoding) {
+        return encoding != null && !encoding.trim().isEmpty() && !"identity".equalsIgnoreCase(encoding.trim());
+    }
+
+    /**
+     * Checks if an encoding can be decoded.
+     *
+     * @param encoding the Content-Encoding value
+     * @return true if supported
+     */
+    public boolean isSupported(final String encoding) {
+        if (!enabled || encoding == null) {
+            return false;
+        }
+        final String value = encoding.trim();
+        return "gzip".equalsIgnoreCase(value) || "x-gzip".equalsIgnoreCase(value)
+                || "deflate".equalsIgnoreCase(value);
+    }
+
+    /**
+     * Décompresse un contenu au fil de la lecture.
+     *
+     * @param encoding the Content-Encoding value
+     * @param in       the compressed content
+     * @return the decompressed content
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public InputStream decode(final String encoding, final InputStream in) throws IOException {
+        if (!isSupported(encoding)) {
+            throw new IllegalArgumentException("Encodage non supporté : " + encoding);
+        }
+        final CountingInputStream raw = new CountingInputStream(in);
+        final InputStream decoded = "deflate".equalsIgnoreCase(encoding.trim()) ? new InflaterInputStream(raw)
+                : new GZIPInputStream(raw, BUFFER_SIZE);
+        return new BoundedInputStream(decoded, raw);
+    }
+
+    /**
+     * Décompresse un contenu dans un fichier temporaire.
+     *
+     * @param encoding the Content-Encoding value
+     * @param in       the compressed content
+     * @return the decompressed file, to be deleted by the caller
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public File spool(final String encoding, final InputStream in) throws IOException {
+        final File file = Files.createTempFile("esignsante-", ".decoded").toFile();
+        try (InputStream decoded = decode(encoding, in); OutputStream out = Files.newOutputStream(file.toPath())) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = decoded.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (final IOException | RuntimeException e) {
+            if (!file.delete() && file.exists()) {
+                file.deleteOnExit();
+            }
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Dépassement de la taille ou du taux de compression autorisés.
+     */
+    public static class LimitExceededException extends IOException {
+
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Instantiates a new limit exceeded exception.
+         *
+         * @param message the message
+         */
+        LimitExceededException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Compte les octets compressés lus.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        /** Bytes read. */
+        private long count;
+
+        /**
+         * Instantiates a new counting input stream.
+         *
+         * @param in the input stream
+         */
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Contenu décompressé, borné en taille et en taux de compression.
+     */
+    private final class BoundedInputStream extends FilterInputStream {
+
+        /** The compressed content. */
+        private final CountingInputStream raw;
+
+        /** Decompressed bytes read. */
+        private long count;
+
+        /**
+         * Instantiates a new bounded input stream.
+         *
+         * @param decoded the decompressed content
+         * @param raw     the compressed content
+         */
+        BoundedInputStream(final InputStream decoded, final CountingInputStream raw) {
+            super(decoded);
+            this.raw = raw;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+                check();
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            compressed.increment(raw.count);
+            decompressed.increment(count);
+            super.close();
+        }
+
+        /**
+         * Contrôle la taille et le taux de compression.
+         *
+         * @throws LimitExceededException limit exceeded
+         */
+        private void check() throws LimitExceededException {
+            if (count > maxSize) {
+                rejected.increment();
+                throw new LimitExceededException("Contenu décompressé supérieur à " + maxSize + " octets");
+            }
+            if (count > RATIO_FLOOR && count > raw.count * maxRatio) {
+                rejected.increment();
+                throw new LimitExceededException("Taux de compression supérieur à " + maxRatio);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.compression;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+/**
+ * The Class DecodingExceptionHandler.
+ * Un corps de requête compressé (hors multipart, voir DecodingRequestFilter)
+ * dont la décompression dépasse les limites de ContentDecoder est refusé
+ * (413), comme une partie de multipart (DecodingMultipartResolver), que la
+ * limite soit atteinte par la lecture du corps ou par le délégué.
+ */
+@ControllerAdvice
+public class DecodingExceptionHandler {
+
+    /** The log. */
+    private static final Logger log = LoggerFactory.getLogger(DecodingExceptionHandler.class);
+
+    /**
+     * Limite de décompression atteinte par le délégué.
+     *
+     * @param e the exception
+     * @return the response entity
+     */
+    @ExceptionHandler(ContentDecoder.LimitExceededException.class)
+    public ResponseEntity<Void> limitExceeded(final ContentDecoder.LimitExceededException e) {
+        log.error(e.getMessage());
+        return new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    /**
+     * Corps de requête illisible : 413 si la limite de décompression est
+     * atteinte, 400 sinon.
+     *
+     * @param e the exception
+     * @return the response entity
+     */
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<Void> notReadable(final HttpMessageNotReadableException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ContentDecoder.LimitExceededException) {
+                return limitExceeded((ContentDecoder.LimitExceededException) cause);
+            }
+        }
+        log.error(e.getMessage());
+        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+}
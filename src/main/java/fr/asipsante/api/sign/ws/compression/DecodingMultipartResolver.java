@@ -0,0 +1,146 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.Part;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.multipart.MultipartException;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.multipart.support.StandardMultipartHttpServletRequest;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.server.ResponseStatusException;
+
+import fr.asipsante.api.sign.ws.job.StoredFile;
+
+/**
+ * The Class DecodingMultipartResolver.
+ * Les documents envoyés compressés (en-tête Content-Encoding de la partie du
+ * multipart) sont décompressés dans un fichier temporaire, supprimé à la fin de
+ * la requête ; les délégués lisent le document décompressé.
+ */
+@Component("multipartResolver")
+public class DecodingMultipartResolver extends StandardServletMultipartResolver {
+
+    /** The content decoder. */
+    @Autowired
+    private ContentDecoder contentDecoder;
+
+    @Override
+    public MultipartHttpServletRequest resolveMultipart(final HttpServletRequest request) throws MultipartException {
+        return new DecodedMultipartRequest(request, contentDecoder);
+    }
+
+    @Override
+    public void cleanupMultipart(final MultipartHttpServletRequest request) {
+        if (request instanceof DecodedMultipartRequest) {
+            ((DecodedMultipartRequest) request).deleteDecoded();
+        }
+        super.cleanupMultipart(request);
+    }
+
+    /**
+     * Requête multipart dont les documents compressés sont décompressés.
+     */
+    private static final class DecodedMultipartRequest extends StandardMultipartHttpServletRequest {
+
+        /** The decompressed files. */
+        private final List<File> decoded = new ArrayList<>();
+
+        /**
+         * Instantiates a new decoded multipart request.
+         *
+         * @param request the request
+         * @param decoder the content decoder
+         * @throws MultipartException the multipart exception
+         */
+        DecodedMultipartRequest(final HttpServletRequest request, final ContentDecoder decoder) {
+            super(request);
+            try {
+                decodeParts(decoder);
+            } catch (final ContentDecoder.LimitExceededException e) {
+                deleteDecoded();
+                throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage(), e);
+            } catch (final IOException e) {
+                deleteDecoded();
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Document compressé invalide", e);
+            } catch (final ServletException e) {
+                deleteDecoded();
+                throw new MultipartException("Lecture du multipart impossible", e);
+            } catch (final RuntimeException e) {
+                deleteDecoded();
+                throw e;
+            }
+        }
+
+        /**
+         * Remplace les documents compressés par leur contenu décompressé.
+         *
+         * @param decoder the content decoder
+         * @throws IOException      Signals that an I/O exception has occurred.
+         * @throws ServletException the servlet exception
+         */
+        private void decodeParts(final ContentDecoder decoder) throws IOException, ServletException {
+            final MultiValueMap<String, MultipartFile> files = new LinkedMultiValueMap<>();
+            final Map<String, Integer> positions = new HashMap<>();
+            for (final Part part : getRequest().getParts()) {
+                final List<MultipartFile> named = getMultiFileMap().get(part.getName());
+                final String disposition = part.getHeader(HttpHeaders.CONTENT_DISPOSITION);
+                if (named == null || disposition == null
+                        || ContentDisposition.parse(disposition).getFilename() == null) {
+                    continue;
+                }
+                // les fichiers d'un même nom sont dans l'ordre des parties
+                final MultipartFile file = named.get(positions.merge(part.getName(), 1, Integer::sum) - 1);
+                final String encoding = part.getHeader(HttpHeaders.CONTENT_ENCODING);
+                if (!ContentDecoder.isEncoded(encoding)) {
+                    files.add(part.getName(), file);
+                } else if (decoder.isSupported(encoding)) {
+                    try (InputStream in = part.getInputStream()) {
+                        final File spooled = decoder.spool(encoding, in);
+                        decoded.add(spooled);
+                        files.add(part.getName(), new StoredFile(part.getName(), spooled,
+                                file.getOriginalFilename(), file.getContentType()));
+                    }
+                } else {
+                    throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                            "Encodage non supporté : " + encoding);
+                }
+            }
+            if (!decoded.isEmpty()) {
+                setMultipartFiles(files);
+            }
+        }
+
+        /**
+         * Supprime les fichiers décompressés.
+         */
+        void deleteDecoded() {
+            for (final File file : decoded) {
+                if (!file.delete() && file.exists()) {
+                    file.deleteOnExit();
+                }
+            }
+            decoded.clear();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * The Class DecodingRequestFilter.
+ * Décompression des corps de requête envoyés compressés (en-tête
+ * Content-Encoding de la requête), lus ensuite au fil de l'eau par les
+ * délégués (morceaux de téléversement par exemple). Le multipart étant lu
+ * directement par le conteneur, une requête multipart compressée en entier est
+ * refusée (415) : le document est alors à compresser dans sa partie.
+ */
+@Component
+public class DecodingRequestFilter extends OncePerRequestFilter {
+
+    /**
+     * The log.
+     */
+    Logger log = LoggerFactory.getLogger(DecodingRequestFilter.class);
+
+    /** Encodages acceptés. */
+    private static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    /** The content decoder. */
+    @Autowired
+    private ContentDecoder contentDecoder;
+
+    @Override
+    protected boolean shouldNotFilter(final HttpServletRequest request) {
+        return !ContentDecoder.isEncoded(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request, final HttpServletResponse response,
+            final FilterChain filterChain) throws ServletException, IOException {
+        final String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        final String contentType = request.getContentType();
+        if (!contentDecoder.isSupported(encoding) || contentType != null
+                && contentType.toLowerCase().startsWith(MediaType.MULTIPART_FORM_DATA_VALUE)) {
+            log.error("Encodage de la requête non supporté : {} ({})", encoding, contentType);
+            response.setHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPTED_ENCODINGS);
+            response.sendError(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value());
+            return;
+        }
+        final ServletInputStream raw = request.getInputStream();
+        final InputStream decoded;
+        try {
+            decoded = contentDecoder.decode(encoding, raw);
+        } catch (final IOException e) {
+            log.error("Corps de requête compressé invalide : {}", e.getMessage());
+            response.sendError(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+        filterChain.doFilter(new DecodedRequest(request, raw, decoded), response);
+    }
+
+    /**
+     * Requête dont le corps est décompressé à la lecture.
+     */
+    private static final class DecodedRequest extends HttpServletRequestWrapper {
+
+        /** The decompressed body. */
+        private final ServletInputStream body;
+
+        /**
+         * Instantiates a new decoded request.
+         *
+         * @param request the request
+         * @param raw     the compressed body
+         * @param decoded the decompressed body
+         */
+        DecodedRequest(final HttpServletRequest request, final ServletInputStream raw, final InputStream decoded) {
+            super(request);
+            this.body = new ServletInputStream() {
+
+                /** End of body reached. */
+                private boolean finished;
+
+                @Override
+                public int read() throws IOException {
+                    final int b = decoded.read();
+                    finished = b == -1;
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    final int read = decoded.read(b, off, len);
+                    finished = read == -1;
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    decoded.close();
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return finished;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return finished || raw.isReady();
+                }
+
+                @Override
+                public void setReadListener(final ReadListener readListener) {
+                    raw.setReadListener(readListener);
+                }
+            };
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return body;
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return isRemoved(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(final String name) {
+            return isRemoved(name) ? Collections.<String>emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            final List<String> names = Collections.list(super.getHeaderNames());
+            names.removeIf(DecodedRequest::isRemoved);
+            return Collections.enumeration(names);
+        }
+
+        /**
+         * En-têtes du contenu compressé, sans objet après décompression.
+         *
+         * @param name the header name
+         * @return true if the header is removed
+         */
+        private static boolean isRemoved(final String name) {
+            return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)
+                    || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+        }
+    }
+}
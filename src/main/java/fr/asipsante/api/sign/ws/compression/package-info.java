@@ -0,0 +1,8 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+/**
+ * Décompression des requêtes et des documents envoyés compressés (gzip,
+ * deflate).
+ */
+package fr.asipsante.api.sign.ws.compression;
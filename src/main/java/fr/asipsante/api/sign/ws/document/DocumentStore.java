@@ -0,0 +1,354 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import fr.asipsante.api.sign.ws.job.JobManager;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Conservation des documents signés sur disque, à la demande du client
+ * (en-tête "Prefer: return=minimal") : le rapport de signature donne alors
+ * l'adresse de téléchargement du document au lieu de son contenu, et un client
+ * dont la connexion est interrompue reprend le téléchargement sans signer à
+ * nouveau. Le nombre de documents et leur taille totale sont bornés (les plus
+ * anciens sont supprimés), et les documents sont supprimés après
+ * config.documents.ttl secondes.
+ */
+@Component
+public class DocumentStore {
+
+    /**
+     * The log.
+     */
+    Logger log = LoggerFactory.getLogger(DocumentStore.class);
+
+    /** Valeur de l'en-tête Prefer. */
+    public static final String RETURN_MINIMAL = "return=minimal";
+
+    /** Enable/disable the document store. */
+    @Value("${config.documents.enabled:false}")
+    private boolean enabled;
+
+    /** Maximum number of stored documents. */
+    @Value("${config.documents.max:1000}")
+    private int maxDocuments;
+
+    /** Maximum total size of stored documents, in bytes. */
+    @Value("${config.documents.maxBytes:1073741824}")
+    private long maxBytes;
+
+    /** Time to live of a document, in seconds. */
+    @Value("${config.documents.ttl:3600}")
+    private long ttl;
+
+    /** Storage directory, temporary directory if empty. */
+    @Value("${config.documents.dir:}")
+    private String dir;
+
+    /** The meter registry. */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Documents by id. */
+    private final ConcurrentMap<String, StoredDocument> documents = new ConcurrentHashMap<>();
+
+    /** Documents, oldest first. */
+    private final Queue<StoredDocument> order = new ConcurrentLinkedQueue<>();
+
+    /** Total size of stored documents. */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /** The storage directory. */
+    private File directory;
+
+    /** Downloaded bytes counter. */
+    private Counter downloaded;
+
+    /**
+     * Init.
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        final File candidate = dir == null || dir.isEmpty()
+                ? new File(System.getProperty("java.io.tmpdir"), "esignsante-documents")
+                : new File(dir);
+        if (!candidate.isDirectory() && !candidate.mkdirs()) {
+            log.error("Répertoire des documents signés inaccessible : {}", candidate);
+            return;
+        }
+        // fichiers d'une exécution précédente
+        final File[] stale = candidate.listFiles();
+        if (stale != null) {
+            for (final File file : stale) {
+                delete(file);
+            }
+        }
+        directory = candidate;
+        Gauge.builder("esignsante.documents", documents, Map::size).description("Documents signés conservés")
+                .register(meterRegistry);
+        Gauge.builder("esignsante.documents.size", bytes, AtomicLong::get).baseUnit("bytes")
+                .description("Taille des documents signés conservés").register(meterRegistry);
+        downloaded = Counter.builder("esignsante.documents.downloaded").baseUnit("bytes")
+                .description("Octets de documents signés téléchargés").register(meterRegistry);
+        log.info("Conservation des documents signés : {} documents, {} octets au plus dans {}", maxDocuments,
+                maxBytes, directory);
+    }
+
+    /**
+     * Shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        for (final StoredDocument document : documents.values()) {
+            delete(document.file);
+        }
+        documents.clear();
+        order.clear();
+        bytes.set(0);
+    }
+
+    /**
+     * Checks if the document store is enabled.
+     *
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Checks if the current request asks for the download address of the
+     * signed document (en-tête "Prefer: return=minimal").
+     *
+     * @return true if the document is to be stored
+     */
+    public boolean isRequested() {
+        if (directory == null) {
+            return false;
+        }
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return false;
+        }
+        final Enumeration<String> values = ((ServletRequestAttributes) attributes).getRequest()
+                .getHeaders(JobManager.PREFER);
+        while (values != null && values.hasMoreElements()) {
+            for (final String preference : values.nextElement().split(",")) {
+                if (RETURN_MINIMAL.equalsIgnoreCase(preference.trim().replace(" ", ""))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Conserve un document signé.
+     *
+     * @param content     the signed document
+     * @param contentType the content type
+     * @return the download address, empty if the document is not stored
+     */
+    public Optional<URI> store(final byte[] content, final String contentType) {
+        if (directory == null || content.length > maxBytes) {
+            return Optional.empty();
+        }
+        final String id = UUID.randomUUID().toString();
+        final File file = new File(directory, id + ".doc");
+        final String etag;
+        try {
+            Files.write(file.toPath(), content);
+            etag = '"' + Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(MessageDigest.getInstance("SHA-256").digest(content)) + '"';
+        } catch (final IOException | NoSuchAlgorithmException e) {
+            log.error(ExceptionUtils.getStackTrace(e));
+            delete(file);
+            return Optional.empty();
+        }
+        final StoredDocument document = new StoredDocument(id, file, content.length, contentType, etag);
+        documents.put(id, document);
+        order.add(document);
+        bytes.addAndGet(document.size);
+        // suppression des documents les plus anciens au-delà des limites
+        StoredDocument oldest;
+        while ((documents.size() > maxDocuments || bytes.get() > maxBytes) && (oldest = order.poll()) != null) {
+            remove(oldest);
+        }
+        return Optional.of(ServletUriComponentsBuilder.fromCurrentContextPath().path("/documents/{id}")
+                .buildAndExpand(id).toUri());
+    }
+
+    /**
+     * Gets a stored document.
+     *
+     * @param id the document id
+     * @return the document
+     */
+    public Optional<StoredDocument> get(final String id) {
+        return Optional.ofNullable(id == null ? null : documents.get(id));
+    }
+
+    /**
+     * Compte les octets téléchargés.
+     *
+     * @param length the downloaded length
+     */
+    public void downloaded(final long length) {
+        if (downloaded != null) {
+            downloaded.increment(length);
+        }
+    }
+
+    /**
+     * Supprime les documents conservés depuis plus de config.documents.ttl.
+     */
+    public void purge() {
+        final long limit = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(ttl);
+        StoredDocument oldest;
+        while ((oldest = order.peek()) != null && oldest.created < limit) {
+            if (order.remove(oldest)) {
+                remove(oldest);
+            }
+        }
+    }
+
+    /**
+     * Supprime un document.
+     *
+     * @param document the document
+     */
+    private void remove(final StoredDocument document) {
+        if (documents.remove(document.id, document)) {
+            bytes.addAndGet(-document.size);
+            delete(document.file);
+        }
+    }
+
+    /**
+     * Supprime un fichier.
+     *
+     * @param file the file
+     */
+    private static void delete(final File file) {
+        if (!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Document signé conservé.
+     */
+    public static final class StoredDocument {
+
+        /** The id. */
+        private final String id;
+
+        /** The file. */
+        private final File file;
+
+        /** The size. */
+        private final long size;
+
+        /** The content type. */
+        private final String contentType;
+
+        /** The entity tag. */
+        private final String etag;
+
+        /** Storage time. */
+        private final long created = System.currentTimeMillis();
+
+        /**
+         * Instantiates a new stored document.
+         *
+         * @param id          the id
+         * @param file        the file
+         * @param size        the size
+         * @param contentType the content type
+         * @param etag        the entity tag
+         */
+        StoredDocument(final String id, final File file, final long size, final String contentType,
+                final String etag) {
+            this.id = id;
+            this.file = file;
+            this.size = size;
+            this.contentType = contentType;
+            this.etag = etag;
+        }
+
+        /**
+         * Gets the file.
+         *
+         * @return the file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Gets the size.
+         *
+         * @return the size
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Gets the content type.
+         *
+         * @return the content type
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Gets the entity tag.
+         *
+         * @return the entity tag
+         */
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
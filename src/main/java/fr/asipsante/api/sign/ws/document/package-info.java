@@ -0,0 +1,7 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+/**
+ * Conservation des documents signés, téléchargeables avec reprise.
+ */
+package fr.asipsante.api.sign.ws.document;
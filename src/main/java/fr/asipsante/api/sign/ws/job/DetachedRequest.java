@@ -0,0 +1,118 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.job;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+/**
+ * Copie des en-têtes, de l'adresse du client et de l'adresse de la requête
+ * HTTP, lue par les délégués (Accept, X-OpenidToken, adresse du client,
+ * adresses de téléchargement) lorsque le traitement s'exécute après la fin de
+ * la requête, dont l'objet est alors recyclé par le conteneur.
+ */
+class DetachedRequest extends HttpServletRequestWrapper {
+
+    /** The headers. */
+    private final Map<String, List<String>> headers = new LinkedCaseInsensitiveMap<>();
+
+    /** The remote address. */
+    private final String remoteAddr;
+
+    /** The scheme. */
+    private final String scheme;
+
+    /** The server name. */
+    private final String serverName;
+
+    /** The server port. */
+    private final int serverPort;
+
+    /** The context path. */
+    private final String contextPath;
+
+    /** The request URI. */
+    private final String requestURI;
+
+    /**
+     * Instantiates a new detached request.
+     *
+     * @param request the request
+     */
+    DetachedRequest(final HttpServletRequest request) {
+        super(request);
+        final Enumeration<String> names = request.getHeaderNames();
+        while (names != null && names.hasMoreElements()) {
+            final String name = names.nextElement();
+            headers.put(name, Collections.list(request.getHeaders(name)));
+        }
+        remoteAddr = request.getRemoteAddr();
+        scheme = request.getScheme();
+        serverName = request.getServerName();
+        serverPort = request.getServerPort();
+        contextPath = request.getContextPath();
+        requestURI = request.getRequestURI();
+    }
+
+    @Override
+    public String getHeader(final String name) {
+        final List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(final String name) {
+        final List<String> values = headers.get(name);
+        return Collections.enumeration(values == null ? Collections.<String>emptyList() : values);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        return Collections.enumeration(new ArrayList<>(headers.keySet()));
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        return remoteAddr;
+    }
+
+    @Override
+    public String getScheme() {
+        return scheme;
+    }
+
+    @Override
+    public String getServerName() {
+        return serverName;
+    }
+
+    @Override
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    @Override
+    public String getContextPath() {
+        return contextPath;
+    }
+
+    @Override
+    public String getRequestURI() {
+        return requestURI;
+    }
+
+    @Override
+    public String getQueryString() {
+        return null;
+    }
+}
@@ -0,0 +1,510 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.job;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.asipsante.api.sign.ws.model.Job;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Traitements asynchrones : une opération de signature ou de vérification
+ * appelée avec l'en-tête "Prefer: respond-async" est exécutée en arrière-plan
+ * et la réponse 202 indique la ressource /jobs/{id} à interroger. Le client
+ * ne garde plus la connexion ouverte au-delà du délai de la passerelle.
+ * Le document est copié sur disque le temps du traitement. Le résultat est
+ * conservé en mémoire, ou sur disque au-delà de config.jobs.memoryThreshold,
+ * pendant config.jobs.ttl secondes ; le nombre de traitements conservés est
+ * borné par config.jobs.max et la taille totale de leurs documents et
+ * résultats par config.jobs.maxBytes.
+ * Un traitement accepté n'échoue pas faute de capacité : tant que
+ * l'admission le refuse (503 avec Retry-After, file, limite de concurrence ou
+ * budget mémoire saturés), il reste en attente et est relancé après ce délai.
+ */
+@Component
+public class JobManager {
+
+    /**
+     * The log.
+     */
+    Logger log = LoggerFactory.getLogger(JobManager.class);
+
+    /** En-tête de demande de traitement asynchrone (RFC 7240). */
+    public static final String PREFER = "Prefer";
+
+    /** Valeur de l'en-tête Prefer. */
+    public static final String RESPOND_ASYNC = "respond-async";
+
+    /** Enable/disable asynchronous jobs. */
+    @Value("${config.jobs.enabled:false}")
+    private boolean enabled;
+
+    /** Number of jobs running at once. */
+    @Value("${config.jobs.threads:2}")
+    private int threads;
+
+    /** Maximum number of stored jobs (pending, running or completed). */
+    @Value("${config.jobs.max:1000}")
+    private int maxJobs;
+
+    /** Maximum total size of stored documents and results, in bytes. */
+    @Value("${config.jobs.maxBytes:1073741824}")
+    private long maxBytes;
+
+    /** Time to live of a completed job, in seconds. */
+    @Value("${config.jobs.ttl:3600}")
+    private long ttl;
+
+    /** Storage directory, temporary directory if empty. */
+    @Value("${config.jobs.dir:}")
+    private String dir;
+
+    /** Document size from which the result is stored on disk, in bytes. */
+    @Value("${config.jobs.memoryThreshold:1048576}")
+    private long memoryThreshold;
+
+    /** Retry-After value of rejected or pending requests, in seconds. */
+    @Value("${config.executor.retryAfter:1}")
+    private long retryAfter;
+
+    /** The object mapper. */
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /** The meter registry. */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Jobs by id. */
+    private final ConcurrentMap<String, Entry> jobs = new ConcurrentHashMap<>();
+
+    /** Number of reserved jobs, stored or being submitted. */
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    /** Total size of reserved documents and results. */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /** The storage directory. */
+    private File directory;
+
+    /** The executor. */
+    private ThreadPoolExecutor executor;
+
+    /** Rejected jobs counter. */
+    private Counter rejected;
+
+    /** Deferred jobs counter. */
+    private Counter deferred;
+
+    /**
+     * Init.
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        directory = dir == null || dir.isEmpty() ? new File(System.getProperty("java.io.tmpdir"), "esignsante-jobs")
+                : new File(dir);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            log.error("Répertoire des traitements asynchrones inaccessible : {}", directory);
+            return;
+        }
+        // fichiers d'une exécution précédente
+        final File[] stale = directory.listFiles();
+        if (stale != null) {
+            for (final File file : stale) {
+                delete(file);
+            }
+        }
+        final AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    final Thread thread = new Thread(r, "esignsante-job-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Gauge.builder("esignsante.jobs", jobs, Map::size).description("Traitements asynchrones conservés")
+                .register(meterRegistry);
+        Gauge.builder("esignsante.jobs.size", bytes, AtomicLong::get).baseUnit("bytes")
+                .description("Taille des documents et résultats des traitements asynchrones")
+                .register(meterRegistry);
+        rejected = Counter.builder("esignsante.jobs.rejected")
+                .description("Traitements asynchrones rejetés (503) nombre ou taille maximal atteint")
+                .register(meterRegistry);
+        deferred = Counter.builder("esignsante.jobs.deferred")
+                .description("Traitements asynchrones relancés faute de capacité").register(meterRegistry);
+        log.info("Traitements asynchrones : {} simultanés, {} conservés au plus ({} octets) pendant {} s dans {}",
+                threads, maxJobs, maxBytes, ttl, directory);
+    }
+
+    /**
+     * Shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            for (final Entry job : jobs.values()) {
+                job.clear();
+            }
+            jobs.clear();
+            reserved.set(0);
+            bytes.set(0);
+        }
+    }
+
+    /**
+     * Checks if the current request asks for an asynchronous job.
+     *
+     * @return true if enabled and the request has the header "Prefer: respond-async"
+     */
+    public boolean isRequested() {
+        if (executor == null) {
+            return false;
+        }
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return false;
+        }
+        final Enumeration<String> values = ((ServletRequestAttributes) attributes).getRequest().getHeaders(PREFER);
+        while (values != null && values.hasMoreElements()) {
+            for (final String preference : values.nextElement().split(",")) {
+                if (RESPOND_ASYNC.equalsIgnoreCase(preference.trim())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Soumet un traitement asynchrone pour la requête courante.
+     *
+     * @param <T>  the response type
+     * @param doc  the document
+     * @param task the task, applied to a copy of the document
+     * @return 202 with the job location, 503 if too many jobs or bytes are stored
+     */
+    public <T> ResponseEntity<T> submit(final MultipartFile doc,
+            final Function<MultipartFile, ResponseEntity<T>> task) {
+        final long size = doc == null ? 0 : doc.getSize();
+        if (!reserve(size)) {
+            rejected.increment();
+            log.warn("Nombre ou taille maximal de traitements asynchrones atteint : {}",
+                    HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter)).build();
+        }
+        final Entry job = new Entry(UUID.randomUUID().toString(), size);
+        try {
+            if (doc != null) {
+                job.document = new StoredFile(doc, new File(directory, job.id + ".doc"));
+            }
+        } catch (final IOException e) {
+            log.error(ExceptionUtils.getStackTrace(e));
+            job.clear();
+            release(job);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        final ServletRequestAttributes attributes = new ServletRequestAttributes(new DetachedRequest(
+                ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest()));
+        jobs.put(job.id, job);
+        executor.execute(() -> run(job, attributes, task));
+        log.info("Traitement asynchrone {} soumis", job.id);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(ServletUriComponentsBuilder.fromCurrentContextPath().path("/jobs/{id}")
+                        .buildAndExpand(job.id).toUri())
+                .build();
+    }
+
+    /**
+     * Réserve une place et la taille d'un document, de façon atomique pour que
+     * des soumissions simultanées ne dépassent pas les bornes.
+     *
+     * @param size the document size
+     * @return true if reserved, false if too many jobs or bytes are stored
+     */
+    private boolean reserve(final long size) {
+        int current;
+        do {
+            current = reserved.get();
+            if (current >= maxJobs) {
+                return false;
+            }
+        } while (!reserved.compareAndSet(current, current + 1));
+        long used;
+        do {
+            used = bytes.get();
+            if (used + size > maxBytes) {
+                reserved.decrementAndGet();
+                return false;
+            }
+        } while (!bytes.compareAndSet(used, used + size));
+        return true;
+    }
+
+    /**
+     * Libère la place et la taille réservées par un traitement.
+     *
+     * @param job the job
+     */
+    private void release(final Entry job) {
+        reserved.decrementAndGet();
+        bytes.addAndGet(-job.bytes);
+    }
+
+    /**
+     * Exécute un traitement et conserve son résultat.
+     *
+     * @param <T>        the response type
+     * @param job        the job
+     * @param attributes the detached request attributes
+     * @param task       the task
+     */
+    private <T> void run(final Entry job, final RequestAttributes attributes,
+            final Function<MultipartFile, ResponseEntity<T>> task) {
+        job.status = Job.StatusEnum.RUNNING;
+        RequestContextHolder.setRequestAttributes(attributes);
+        try {
+            ResponseEntity<T> re = task.apply(job.document);
+            // capacité saturée : le traitement accepté attend au lieu d'échouer
+            while (isDeferred(re)) {
+                deferred.increment();
+                job.status = Job.StatusEnum.PENDING;
+                TimeUnit.SECONDS.sleep(delay(re));
+                job.status = Job.StatusEnum.RUNNING;
+                re = task.apply(job.document);
+            }
+            store(job, re.getBody());
+            job.httpStatus = re.getStatusCodeValue();
+            job.status = Job.StatusEnum.DONE;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.httpStatus = HttpStatus.SERVICE_UNAVAILABLE.value();
+            job.status = Job.StatusEnum.FAILED;
+        } catch (final IOException | RuntimeException e) {
+            log.error(ExceptionUtils.getStackTrace(e));
+            job.httpStatus = HttpStatus.INTERNAL_SERVER_ERROR.value();
+            job.status = Job.StatusEnum.FAILED;
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+            if (job.document != null) {
+                job.document.delete();
+            }
+            job.completed = System.currentTimeMillis();
+            log.info("Traitement asynchrone {} terminé : {}", job.id, job.httpStatus);
+        }
+    }
+
+    /**
+     * Checks if a response is an admission refusal (503 with Retry-After)
+     * rather than the result of the task.
+     *
+     * @param re the response
+     * @return true if the task must be run again later
+     */
+    private static boolean isDeferred(final ResponseEntity<?> re) {
+        return re.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE
+                && re.getHeaders().containsKey(HttpHeaders.RETRY_AFTER);
+    }
+
+    /**
+     * Délai avant de relancer un traitement refusé.
+     *
+     * @param re the response
+     * @return the Retry-After value in seconds, config.executor.retryAfter if invalid
+     */
+    private long delay(final ResponseEntity<?> re) {
+        try {
+            return Math.max(1, Long.parseLong(re.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)));
+        } catch (final NumberFormatException e) {
+            return Math.max(1, retryAfter);
+        }
+    }
+
+    /**
+     * Conserve le résultat d'un traitement, sur disque pour les gros documents.
+     *
+     * @param job  the job
+     * @param body the response body
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void store(final Entry job, final Object body) throws IOException {
+        if (body == null) {
+            return;
+        }
+        final long size;
+        if (job.document != null && job.document.getSize() > memoryThreshold) {
+            final File file = new File(directory, job.id + ".json");
+            objectMapper.writeValue(file, body);
+            job.resultFile = file;
+            size = file.length();
+        } else {
+            job.result = objectMapper.writeValueAsBytes(body);
+            size = job.result.length;
+        }
+        // le résultat remplace le document dans la taille réservée
+        bytes.addAndGet(size - job.bytes);
+        job.bytes = size;
+    }
+
+    /**
+     * Gets a job.
+     *
+     * @param id the job id
+     * @return the job
+     */
+    public Optional<Job> getJob(final String id) {
+        return Optional.ofNullable(id == null ? null : jobs.get(id)).map(Entry::toJob);
+    }
+
+    /**
+     * Gets the result of a completed job.
+     *
+     * @param id the job id
+     * @return the JSON result, null if none
+     */
+    public Resource getResult(final String id) {
+        final Entry job = id == null ? null : jobs.get(id);
+        Resource resource = null;
+        if (job != null && job.resultFile != null) {
+            resource = new FileSystemResource(job.resultFile);
+        } else if (job != null && job.result != null) {
+            resource = new ByteArrayResource(job.result);
+        }
+        return resource;
+    }
+
+    /**
+     * Supprime les traitements terminés depuis plus de config.jobs.ttl.
+     */
+    public void purge() {
+        final long limit = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(ttl);
+        for (final Entry job : jobs.values()) {
+            // une seule purge libère la réservation du traitement
+            if (job.completed > 0 && job.completed < limit && jobs.remove(job.id, job)) {
+                job.clear();
+                release(job);
+            }
+        }
+    }
+
+    /**
+     * Supprime un fichier.
+     *
+     * @param file the file
+     */
+    private static void delete(final File file) {
+        if (!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Traitement conservé.
+     */
+    private static final class Entry {
+
+        /** The id. */
+        private final String id;
+
+        /** The status. */
+        private volatile Job.StatusEnum status = Job.StatusEnum.PENDING;
+
+        /** The HTTP status of the response, once completed. */
+        private volatile Integer httpStatus;
+
+        /** Completion time, 0 until completed. */
+        private volatile long completed;
+
+        /** The copy of the document. */
+        private volatile StoredFile document;
+
+        /** The result, in memory. */
+        private volatile byte[] result;
+
+        /** The result, on disk. */
+        private volatile File resultFile;
+
+        /** Reserved size: the document, then the result. */
+        private volatile long bytes;
+
+        /**
+         * Instantiates a new entry.
+         *
+         * @param id    the id
+         * @param bytes the document size
+         */
+        Entry(final String id, final long bytes) {
+            this.id = id;
+            this.bytes = bytes;
+        }
+
+        /**
+         * To job.
+         *
+         * @return the job model
+         */
+        Job toJob() {
+            final Job job = new Job();
+            job.setId(id);
+            job.setStatus(status);
+            job.setHttpStatus(httpStatus);
+            return job;
+        }
+
+        /**
+         * Supprime les fichiers du traitement.
+         */
+        void clear() {
+            if (document != null) {
+                document.delete();
+            }
+            if (resultFile != null) {
+                delete(resultFile);
+            }
+            result = null;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.job;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Copie sur disque d'un document reçu, utilisable après la fin de la requête
+ * HTTP (les fichiers temporaires du multipart sont alors supprimés), ou vue
+ * d'un document déjà assemblé sur disque.
+ */
+public class StoredFile implements MultipartFile {
+
+    /** The parameter name. */
+    private final String name;
+
+    /** The original filename. */
+    private final String originalFilename;
+
+    /** The content type. */
+    private final String contentType;
+
+    /** The copy. */
+    private final File file;
+
+    /** The size. */
+    private final long size;
+
+    /**
+     * Instantiates a new stored file.
+     *
+     * @param doc  the document
+     * @param file the copy
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    StoredFile(final MultipartFile doc, final File file) throws IOException {
+        this.name = doc.getName();
+        this.originalFilename = doc.getOriginalFilename();
+        this.contentType = doc.getContentType();
+        this.file = file;
+        try (InputStream in = doc.getInputStream()) {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.size = file.length();
+    }
+
+    /**
+     * Instantiates a new stored file over an existing file, without copy.
+     *
+     * @param file             the file
+     * @param originalFilename the original filename
+     * @param contentType      the content type
+     */
+    public StoredFile(final File file, final String originalFilename, final String contentType) {
+        this("file", file, originalFilename, contentType);
+    }
+
+    /**
+     * Instantiates a new stored file over an existing file, without copy.
+     *
+     * @param name             the parameter name
+     * @param file             the file
+     * @param originalFilename the original filename
+     * @param contentType      the content type
+     */
+    public StoredFile(final String name, final File file, final String originalFilename, final String contentType) {
+        this.name = name;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+        this.file = file;
+        this.size = file.length();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(file.toPath());
+    }
+
+    @Override
+    public void transferTo(final File dest) throws IOException {
+        Files.copy(file.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Supprime la copie.
+     */
+    void delete() {
+        if (!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+/**
+ * Traitements asynchrones des opérations de signature et de vérification.
+ */
+package fr.asipsante.api.sign.ws.job;
@@ -0,0 +1,37 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.metrics;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Indicateur de santé "crl" : DOWN dès qu'une CRL chargée a dépassé sa date
+ * nextUpdate. Inclus dans le groupe readiness, il permet au répartiteur de
+ * charge d'écarter une instance dont les données de révocation sont périmées.
+ */
+@Component
+public class CrlHealthIndicator implements HealthIndicator {
+
+    /** The CRL metrics. */
+    @Autowired
+    private CrlMetrics crlMetrics;
+
+    @Override
+    public Health health() {
+        final Map<String, Date> stale = crlMetrics.staleSources(new Date());
+        final Health.Builder builder = stale.isEmpty() ? Health.up() : Health.down().withDetail("expired", stale);
+        final Date lastRefresh = crlMetrics.getLastRefresh();
+        if (lastRefresh != null) {
+            builder.withDetail("lastRefresh", lastRefresh);
+        }
+        return builder.withDetail("nextUpdate", crlMetrics.nextUpdates()).build();
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.metrics;
+
+import java.security.cert.CRLException;
+import java.security.cert.X509CRL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import fr.asipsante.api.sign.config.utils.CaCrlLoadListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Métriques des AC et des CRL, par source de CRL : durée de téléchargement,
+ * taille, nombre d'entrées, âge, délai avant nextUpdate et échecs. Conserve
+ * l'état de la dernière CRL chargée de chaque source pour l'indicateur de
+ * santé ; une source absente d'un chargement (retirée de la configuration par
+ * exemple) est oubliée et ses métriques supprimées.
+ */
+@Component
+public class CrlMetrics implements CaCrlLoadListener {
+
+    /** Source tag. */
+    private static final String SOURCE = "source";
+
+    /** Seconds unit. */
+    private static final String SECONDS = "seconds";
+
+    /** Milliseconds per second. */
+    private static final double MILLIS = 1000d;
+
+    /** The meter registry. */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Etat de chaque source de CRL. */
+    private final ConcurrentMap<String, SourceState> sources = new ConcurrentHashMap<>();
+
+    /** Sources téléchargées ou en échec pendant le chargement en cours. */
+    private final Set<String> refreshed = ConcurrentHashMap.newKeySet();
+
+    /** Nombre d'AC chargées. */
+    private volatile int caCount;
+
+    /** Date du dernier rechargement complet des CRL (ms), 0 si aucun. */
+    private volatile long lastRefresh;
+
+    /** Gauges globales enregistrées. */
+    private volatile boolean registered;
+
+    @Override
+    public void caLoaded(final int count) {
+        registerGlobal();
+        caCount = count;
+    }
+
+    @Override
+    public void crlRefreshStarted() {
+        refreshed.clear();
+    }
+
+    @Override
+    public void crlLoaded(final String source, final long durationNanos, final Collection<X509CRL> crls) {
+        fetchTimer(source, "success").record(durationNanos, TimeUnit.NANOSECONDS);
+        long bytes = 0;
+        long entries = 0;
+        Date thisUpdate = null;
+        Date nextUpdate = null;
+        for (final X509CRL crl : crls) {
+            try {
+                bytes += crl.getEncoded().length;
+            } catch (final CRLException e) {
+                // taille inconnue, la CRL a pourtant été lue
+            }
+            if (crl.getRevokedCertificates() != null) {
+                entries += crl.getRevokedCertificates().size();
+            }
+            if (thisUpdate == null || crl.getThisUpdate().before(thisUpdate)) {
+                thisUpdate = crl.getThisUpdate();
+            }
+            if (crl.getNextUpdate() != null && (nextUpdate == null || crl.getNextUpdate().before(nextUpdate))) {
+                nextUpdate = crl.getNextUpdate();
+            }
+        }
+        final SourceState state = state(source);
+        state.bytes = bytes;
+        state.entries = entries;
+        state.thisUpdate = thisUpdate;
+        state.nextUpdate = nextUpdate;
+        refreshed.add(source);
+    }
+
+    @Override
+    public void crlFailed(final String source, final long durationNanos) {
+        fetchTimer(source, "failure").record(durationNanos, TimeUnit.NANOSECONDS);
+        state(source).failures.increment();
+        // l'état précédent est conservé : une CRL expirée reste signalée
+        refreshed.add(source);
+    }
+
+    @Override
+    public void crlBundleLoaded() {
+        registerGlobal();
+        lastRefresh = System.currentTimeMillis();
+    }
+
+    @Override
+    public void crlRefreshEnded() {
+        for (final String source : sources.keySet()) {
+            if (!refreshed.contains(source)) {
+                sources.remove(source);
+                for (final Meter meter : meterRegistry.getMeters()) {
+                    if (meter.getId().getName().startsWith("esignsante.crl.")
+                            && source.equals(meter.getId().getTag(SOURCE))) {
+                        meterRegistry.remove(meter);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sources dont la CRL chargée a dépassé sa date nextUpdate.
+     *
+     * @param now the current date
+     * @return the nextUpdate of each stale source
+     */
+    public Map<String, Date> staleSources(final Date now) {
+        final Map<String, Date> stale = new HashMap<>();
+        for (final Map.Entry<String, SourceState> source : sources.entrySet()) {
+            final Date nextUpdate = source.getValue().nextUpdate;
+            if (nextUpdate != null && nextUpdate.before(now)) {
+                stale.put(source.getKey(), nextUpdate);
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * Date nextUpdate de la CRL chargée de chaque source.
+     *
+     * @return the nextUpdate of each loaded source
+     */
+    public Map<String, Date> nextUpdates() {
+        final Map<String, Date> nextUpdates = new HashMap<>();
+        for (final Map.Entry<String, SourceState> source : sources.entrySet()) {
+            if (source.getValue().nextUpdate != null) {
+                nextUpdates.put(source.getKey(), source.getValue().nextUpdate);
+            }
+        }
+        return Collections.unmodifiableMap(nextUpdates);
+    }
+
+    /**
+     * Date du dernier rechargement complet des CRL.
+     *
+     * @return the date, null if the CRLs were never fully loaded
+     */
+    public Date getLastRefresh() {
+        return lastRefresh == 0 ? null : new Date(lastRefresh);
+    }
+
+    /**
+     * Fetch timer of a source.
+     *
+     * @param source  the source
+     * @param outcome the outcome
+     * @return the timer
+     */
+    private Timer fetchTimer(final String source, final String outcome) {
+        return Timer.builder("esignsante.crl.fetch").description("Durée de téléchargement des CRL")
+                .tag(SOURCE, source).tag("outcome", outcome).register(meterRegistry);
+    }
+
+    /**
+     * Etat d'une source, ses gauges sont enregistrées à la première utilisation.
+     *
+     * @param source the source
+     * @return the state
+     */
+    private SourceState state(final String source) {
+        return sources.computeIfAbsent(source, s -> {
+            final SourceState state = new SourceState(Counter.builder("esignsante.crl.failures")
+                    .description("Échecs de téléchargement des CRL").tag(SOURCE, s).register(meterRegistry));
+            Gauge.builder("esignsante.crl.size", state, st -> st.bytes).description("Taille de la CRL")
+                    .baseUnit("bytes").tag(SOURCE, s).register(meterRegistry);
+            Gauge.builder("esignsante.crl.entries", state, st -> st.entries)
+                    .description("Nombre de certificats révoqués").tag(SOURCE, s).register(meterRegistry);
+            Gauge.builder("esignsante.crl.age", state, st -> secondsSince(st.thisUpdate))
+                    .description("Age de la CRL (depuis thisUpdate)").baseUnit(SECONDS).tag(SOURCE, s)
+                    .register(meterRegistry);
+            Gauge.builder("esignsante.crl.next.update", state, st -> -secondsSince(st.nextUpdate))
+                    .description("Délai avant nextUpdate, négatif si la CRL est expirée").baseUnit(SECONDS)
+                    .tag(SOURCE, s).register(meterRegistry);
+            return state;
+        });
+    }
+
+    /**
+     * Registers the global gauges once.
+     */
+    private void registerGlobal() {
+        if (!registered) {
+            synchronized (this) {
+                if (!registered) {
+                    Gauge.builder("esignsante.ca.count", this, m -> m.caCount)
+                            .description("Nombre d'AC chargées").register(meterRegistry);
+                    Gauge.builder("esignsante.crl.refresh.last.success", this,
+                            m -> m.lastRefresh == 0 ? Double.NaN : m.lastRefresh / MILLIS)
+                            .description("Date du dernier rechargement complet des CRL (epoch)")
+                            .baseUnit(SECONDS).register(meterRegistry);
+                    registered = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Seconds elapsed since a date.
+     *
+     * @param date the date
+     * @return the seconds, NaN if the date is null
+     */
+    private static double secondsSince(final Date date) {
+        return date == null ? Double.NaN : (System.currentTimeMillis() - date.getTime()) / MILLIS;
+    }
+
+    /**
+     * Etat de la dernière CRL chargée d'une source.
+     */
+    private static final class SourceState {
+
+        /** The failures counter. */
+        private final Counter failures;
+
+        /** The size in bytes. */
+        private volatile long bytes;
+
+        /** The number of revoked certificates. */
+        private volatile long entries;
+
+        /** The earliest thisUpdate. */
+        private volatile Date thisUpdate;
+
+        /** The earliest nextUpdate. */
+        private volatile Date nextUpdate;
+
+        /**
+         * Instantiates a new source state.
+         *
+         * @param failures the failures counter
+         */
+        SourceState(final Counter failures) {
+            this.failures = failures;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import fr.asipsante.api.sign.utils.AsipSignException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Métriques des étapes des traitements de signature et de validation.
+ * Chaque étape (secret, certificate, sign, validate, proof, proofSignature,
+ * encode) est mesurée par le timer esignsante.pipeline.stage, la taille des
+ * documents reçus par esignsante.document.size. Les métriques sont taguées par
+ * opération, type de signature et identifiant de configuration.
+ */
+@Component
+public class PipelineMetrics {
+
+    /** Stage timer name. */
+    public static final String STAGE_TIMER = "esignsante.pipeline.stage";
+
+    /** Document size summary name. */
+    public static final String DOCUMENT_SIZE = "esignsante.document.size";
+
+    /** Secret check stage. */
+    public static final String SECRET = "secret";
+
+    /** Certificate check stage. */
+    public static final String CERTIFICATE = "certificate";
+
+    /** Document digest stage (detached signature). */
+    public static final String DIGEST = "digest";
+
+    /** Signing stage. */
+    public static final String SIGN = "sign";
+
+    /** Validation stage. */
+    public static final String VALIDATE = "validate";
+
+    /** Proof generation stage. */
+    public static final String PROOF = "proof";
+
+    /** Proof signing stage. */
+    public static final String PROOF_SIGNATURE = "proofSignature";
+
+    /** Report encoding stage. */
+    public static final String ENCODE = "encode";
+
+    /** Smallest expected document size (1 KB). */
+    private static final double MIN_DOCUMENT_SIZE = 1024;
+
+    /** Largest expected document size (200 MB, multipart limit). */
+    private static final double MAX_DOCUMENT_SIZE = 200d * 1024 * 1024;
+
+    /** The meter registry. */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Metrics of one request.
+     *
+     * @param operation the operation
+     * @param type      the signature type, or the validated object
+     * @param confId    the configuration id
+     * @return the stages
+     */
+    public Stages stages(final String operation, final Object type, final Object confId) {
+        return new Stages(Tags.of("operation", operation, "type", String.valueOf(type),
+                "conf", String.valueOf(confId)));
+    }
+
+    /**
+     * Call of a stage.
+     *
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    public interface StageCall<T> {
+
+        /**
+         * Call.
+         *
+         * @return the result
+         * @throws IOException       the IO exception
+         * @throws AsipSignException the asip sign exception
+         */
+        T call() throws IOException, AsipSignException;
+    }
+
+    /**
+     * The stages of one request.
+     */
+    public final class Stages {
+
+        /** The tags. */
+        private final Tags tags;
+
+        /**
+         * Instantiates new stages.
+         *
+         * @param tags the tags
+         */
+        Stages(final Tags tags) {
+            this.tags = tags;
+        }
+
+        /**
+         * Timer of a stage.
+         *
+         * @param stage the stage
+         * @return the timer
+         */
+        public Timer timer(final String stage) {
+            return Timer.builder(STAGE_TIMER).description("Durée des étapes de signature et de validation")
+                    .tags(tags).tag("stage", stage).publishPercentileHistogram().register(meterRegistry);
+        }
+
+        /**
+         * Times a stage.
+         *
+         * @param <T>   the result type
+         * @param stage the stage
+         * @param call  the call
+         * @return the result
+         * @throws IOException       the IO exception
+         * @throws AsipSignException the asip sign exception
+         */
+        public <T> T record(final String stage, final StageCall<T> call) throws IOException, AsipSignException {
+            final long start = System.nanoTime();
+            try {
+                return call.call();
+            } finally {
+                timer(stage).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Records the size of the received document.
+         *
+         * @param size the size in bytes
+         */
+        public void documentSize(final long size) {
+            DistributionSummary.builder(DOCUMENT_SIZE).description("Taille des documents reçus").baseUnit("bytes")
+                    .tags(tags).publishPercentileHistogram().minimumExpectedValue(MIN_DOCUMENT_SIZE)
+                    .maximumExpectedValue(MAX_DOCUMENT_SIZE).register(meterRegistry).record(size);
+        }
+    }
+}
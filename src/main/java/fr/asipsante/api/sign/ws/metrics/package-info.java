@@ -0,0 +1,7 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+/**
+ * Métriques Micrometer et indicateurs de santé du composant.
+ */
+package fr.asipsante.api.sign.ws.metrics;
@@ -0,0 +1,494 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.upload;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import fr.asipsante.api.sign.ws.job.StoredFile;
+import fr.asipsante.api.sign.ws.model.Upload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Sessions de téléversement par morceaux : le client ouvre une session, envoie
+ * le document par morceaux successifs (reprise possible à partir du nombre
+ * d'octets reçus), puis demande sa signature ou sa vérification. Les morceaux
+ * sont ajoutés à un fichier de la session et l'empreinte du document est
+ * calculée au fil de la réception ; l'opération finale lit ce fichier sans
+ * nouvelle copie. Les sessions inactives depuis config.uploads.ttl secondes
+ * sont supprimées. La taille d'un document est bornée par
+ * config.uploads.maxSize et celle de l'ensemble des sessions par
+ * config.uploads.maxBytes. Une session ouverte avec une configuration de
+ * signature ne peut être signée qu'avec cette configuration.
+ */
+@Component
+public class UploadManager {
+
+    /**
+     * The log.
+     */
+    Logger log = LoggerFactory.getLogger(UploadManager.class);
+
+    /** Format de l'en-tête Content-Range. */
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    /** Taille du tampon de copie. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Enable/disable upload sessions. */
+    @Value("${config.uploads.enabled:false}")
+    private boolean enabled;
+
+    /** Maximum number of open sessions. */
+    @Value("${config.uploads.max:100}")
+    private int maxUploads;
+
+    /** Time to live of an inactive session, in seconds. */
+    @Value("${config.uploads.ttl:3600}")
+    private long ttl;
+
+    /** Maximum document size, in bytes (spring.servlet.multipart.max-file-size). */
+    @Value("${config.uploads.maxSize:209715200}")
+    private long maxSize;
+
+    /** Maximum total size of the sessions, in bytes. */
+    @Value("${config.uploads.maxBytes:1073741824}")
+    private long maxBytes;
+
+    /** Maximum chunk size, in bytes. */
+    @Value("${config.uploads.maxChunk:16777216}")
+    private long maxChunk;
+
+    /** Storage directory, temporary directory if empty. */
+    @Value("${config.uploads.dir:}")
+    private String dir;
+
+    /** The meter registry. */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Sessions by id. */
+    private final ConcurrentMap<String, Entry> uploads = new ConcurrentHashMap<>();
+
+    /** Number of reserved sessions. */
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    /** Total size of received and reserved bytes. */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /** The storage directory. */
+    private File directory;
+
+    /** Received bytes counter. */
+    private Counter received;
+
+    /**
+     * Init.
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        final File candidate = dir == null || dir.isEmpty()
+                ? new File(System.getProperty("java.io.tmpdir"), "esignsante-uploads")
+                : new File(dir);
+        if (!candidate.isDirectory() && !candidate.mkdirs()) {
+            log.error("Répertoire des téléversements inaccessible : {}", candidate);
+            return;
+        }
+        // fichiers d'une exécution précédente
+        final File[] stale = candidate.listFiles();
+        if (stale != null) {
+            for (final File file : stale) {
+                delete(file);
+            }
+        }
+        directory = candidate;
+        Gauge.builder("esignsante.uploads", uploads, Map::size).description("Sessions de téléversement ouvertes")
+                .register(meterRegistry);
+        Gauge.builder("esignsante.uploads.size", bytes, AtomicLong::get).baseUnit("bytes")
+                .description("Octets reçus par les sessions de téléversement").register(meterRegistry);
+        received = Counter.builder("esignsante.uploads.received").baseUnit("bytes")
+                .description("Octets reçus par morceaux").register(meterRegistry);
+        log.info("Téléversement par morceaux : {} sessions au plus, {} octets par document, {} au total dans {}",
+                maxUploads, maxSize, maxBytes, directory);
+    }
+
+    /**
+     * Shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        for (final Entry upload : uploads.values()) {
+            delete(upload.file);
+        }
+        uploads.clear();
+        sessions.set(0);
+        bytes.set(0);
+    }
+
+    /**
+     * Checks if upload sessions are enabled.
+     *
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Ouvre une session.
+     *
+     * @param fileName        the document name
+     * @param mimeType        the document MIME type
+     * @param size            the announced size, null if unknown
+     * @param digestAlgorithm the digest algorithm (SHA256, SHA512...)
+     * @param idSignConf      the id sign conf the session is bound to, null if none
+     * @return the session, empty if too many sessions are open
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws IllegalArgumentException size too large or unknown algorithm
+     */
+    public Optional<Upload> create(final String fileName, final String mimeType, final Long size,
+            final String digestAlgorithm, final Long idSignConf) throws IOException {
+        if (size != null && (size < 0 || size > maxSize)) {
+            throw new IllegalArgumentException("Taille de document invalide : " + size);
+        }
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(digestAlgorithm.toUpperCase().replace("-", "").replace("SHA", "SHA-"));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Algorithme d'empreinte non supporté : " + digestAlgorithm, e);
+        }
+        int current;
+        do {
+            current = sessions.get();
+            if (current >= maxUploads) {
+                log.warn("Nombre maximal de sessions de téléversement atteint : {}", maxUploads);
+                return Optional.empty();
+            }
+        } while (!sessions.compareAndSet(current, current + 1));
+        final String id = UUID.randomUUID().toString();
+        final File file = new File(directory, id + ".part");
+        if (!file.createNewFile()) {
+            sessions.decrementAndGet();
+            throw new IOException("Fichier de session existant : " + file);
+        }
+        final Entry upload = new Entry(id, fileName, mimeType, size, file, digestAlgorithm, md, idSignConf);
+        uploads.put(id, upload);
+        log.info("Session de téléversement {} ouverte", id);
+        return Optional.of(upload.toUpload());
+    }
+
+    /**
+     * Gets a session.
+     *
+     * @param id the session id
+     * @return the session
+     */
+    public Optional<Upload> get(final String id) {
+        return Optional.ofNullable(id == null ? null : uploads.get(id)).map(Entry::toUpload);
+    }
+
+    /**
+     * Ajoute un morceau au document. La position du morceau, donnée par
+     * l'en-tête Content-Range, doit être égale au nombre d'octets reçus.
+     * Un morceau de longueur inconnue (corps décompressé ou envoyé sans
+     * Content-Length) est lu au plus jusqu'à config.uploads.maxChunk octets :
+     * au-delà, la session est supprimée.
+     *
+     * @param id           the session id
+     * @param contentRange the Content-Range header, null to append
+     * @param chunk        the chunk
+     * @param length       the chunk length, -1 if unknown
+     * @return OK, NOT_FOUND, BAD_REQUEST (invalid range), CONFLICT (wrong
+     *         position or session already completed), PAYLOAD_TOO_LARGE or
+     *         SERVICE_UNAVAILABLE (config.uploads.maxBytes reached)
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public HttpStatus append(final String id, final String contentRange, final InputStream chunk,
+            final long length) throws IOException {
+        final Entry upload = id == null ? null : uploads.get(id);
+        if (upload == null) {
+            return HttpStatus.NOT_FOUND;
+        }
+        if (length > maxChunk) {
+            return HttpStatus.PAYLOAD_TOO_LARGE;
+        }
+        synchronized (upload) {
+            long start = upload.received;
+            long expected = length;
+            if (contentRange != null && !contentRange.isEmpty()) {
+                final Matcher range = CONTENT_RANGE.matcher(contentRange.trim());
+                if (!range.matches()) {
+                    return HttpStatus.BAD_REQUEST;
+                }
+                start = Long.parseLong(range.group(1));
+                final long rangeLength = Long.parseLong(range.group(2)) - start + 1;
+                if (expected >= 0 && rangeLength != expected || rangeLength <= 0
+                        || !"*".equals(range.group(3)) && upload.size != null
+                                && Long.parseLong(range.group(3)) != upload.size) {
+                    return HttpStatus.BAD_REQUEST;
+                }
+                if (rangeLength > maxChunk) {
+                    return HttpStatus.PAYLOAD_TOO_LARGE;
+                }
+                expected = rangeLength;
+            }
+            if (start != upload.received || upload.digest != null) {
+                return HttpStatus.CONFLICT;
+            }
+            final long remaining = (upload.size == null ? maxSize : upload.size) - upload.received;
+            if (expected > remaining) {
+                return HttpStatus.PAYLOAD_TOO_LARGE;
+            }
+            // longueur inconnue : lecture bornée, un octet de plus signale le dépassement
+            final long limit = expected >= 0 ? expected : Math.min(maxChunk, remaining) + 1;
+            final long reserved = expected >= 0 ? expected : limit - 1;
+            if (!reserve(reserved)) {
+                log.warn("Taille maximale des sessions de téléversement atteinte : {}", maxBytes);
+                return HttpStatus.SERVICE_UNAVAILABLE;
+            }
+            long written = 0;
+            try (OutputStream out = new FileOutputStream(upload.file, true)) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while (written < limit && (read = chunk.read(buffer, 0,
+                        (int) Math.min(buffer.length, limit - written))) != -1) {
+                    out.write(buffer, 0, read);
+                    upload.md.update(buffer, 0, read);
+                    written += read;
+                }
+            } catch (final IOException e) {
+                // fichier et empreinte incohérents : la session n'est plus utilisable
+                bytes.addAndGet(-reserved);
+                remove(id);
+                throw e;
+            }
+            if (expected < 0 && written == limit) {
+                bytes.addAndGet(-reserved);
+                remove(id);
+                return HttpStatus.PAYLOAD_TOO_LARGE;
+            }
+            if (expected >= 0 && written != expected) {
+                bytes.addAndGet(-reserved);
+                remove(id);
+                return HttpStatus.BAD_REQUEST;
+            }
+            // seuls les octets reçus restent réservés
+            bytes.addAndGet(written - reserved);
+            upload.received += written;
+            upload.lastAccess = System.currentTimeMillis();
+            received.increment(written);
+            if (upload.size != null && upload.received == upload.size) {
+                upload.digest = upload.md.digest();
+            }
+        }
+        return HttpStatus.OK;
+    }
+
+    /**
+     * Termine la réception et retourne le document assemblé.
+     *
+     * @param id the session id
+     * @return the document, empty if the session is unknown or incomplete
+     */
+    public Optional<StoredFile> finish(final String id) {
+        final Entry upload = id == null ? null : uploads.get(id);
+        if (upload == null) {
+            return Optional.empty();
+        }
+        synchronized (upload) {
+            if (upload.size != null && upload.received != upload.size) {
+                return Optional.empty();
+            }
+            if (upload.digest == null) {
+                upload.digest = upload.md.digest();
+            }
+            upload.lastAccess = System.currentTimeMillis();
+            return Optional.of(new StoredFile(upload.file, upload.fileName, upload.mimeType));
+        }
+    }
+
+    /**
+     * Supprime une session et ses données.
+     *
+     * @param id the session id
+     * @return true if the session existed
+     */
+    public boolean remove(final String id) {
+        final Entry upload = id == null ? null : uploads.remove(id);
+        if (upload != null) {
+            release(upload);
+            log.info("Session de téléversement {} supprimée", id);
+        }
+        return upload != null;
+    }
+
+    /**
+     * Réserve des octets, de façon atomique pour que des envois simultanés ne
+     * dépassent pas config.uploads.maxBytes.
+     *
+     * @param size the number of bytes
+     * @return true if reserved
+     */
+    private boolean reserve(final long size) {
+        long used;
+        do {
+            used = bytes.get();
+            if (used + size > maxBytes) {
+                return false;
+            }
+        } while (!bytes.compareAndSet(used, used + size));
+        return true;
+    }
+
+    /**
+     * Libère la place d'une session retirée et supprime son fichier.
+     *
+     * @param upload the session
+     */
+    private void release(final Entry upload) {
+        synchronized (upload) {
+            sessions.decrementAndGet();
+            bytes.addAndGet(-upload.received);
+            delete(upload.file);
+        }
+    }
+
+    /**
+     * Supprime les sessions inactives depuis plus de config.uploads.ttl.
+     */
+    public void purge() {
+        final long limit = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(ttl);
+        for (final Entry upload : uploads.values()) {
+            if (upload.lastAccess < limit && uploads.remove(upload.id, upload)) {
+                release(upload);
+            }
+        }
+    }
+
+    /**
+     * Supprime un fichier.
+     *
+     * @param file the file
+     */
+    private static void delete(final File file) {
+        if (!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Session de téléversement.
+     */
+    private static final class Entry {
+
+        /** The id. */
+        private final String id;
+
+        /** The document name. */
+        private final String fileName;
+
+        /** The document MIME type. */
+        private final String mimeType;
+
+        /** The announced size, null if unknown. */
+        private final Long size;
+
+        /** The spool file. */
+        private final File file;
+
+        /** The digest algorithm. */
+        private final String digestAlgorithm;
+
+        /** The incremental digest. */
+        private final MessageDigest md;
+
+        /** Received bytes. */
+        private volatile long received;
+
+        /** The digest, once the document is complete. */
+        private volatile byte[] digest;
+
+        /** Last activity time. */
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        /** The id sign conf the session is bound to, null if none. */
+        private final Long idSignConf;
+
+        /**
+         * Instantiates a new entry.
+         *
+         * @param id              the id
+         * @param fileName        the document name
+         * @param mimeType        the document MIME type
+         * @param size            the announced size
+         * @param file            the spool file
+         * @param digestAlgorithm the digest algorithm
+         * @param md              the incremental digest
+         * @param idSignConf      the id sign conf, null if none
+         */
+        Entry(final String id, final String fileName, final String mimeType, final Long size, final File file,
+                final String digestAlgorithm, final MessageDigest md, final Long idSignConf) {
+            this.id = id;
+            this.fileName = fileName;
+            this.mimeType = mimeType;
+            this.size = size;
+            this.file = file;
+            this.digestAlgorithm = digestAlgorithm;
+            this.md = md;
+            this.idSignConf = idSignConf;
+        }
+
+        /**
+         * To upload.
+         *
+         * @return the upload model
+         */
+        Upload toUpload() {
+            final Upload upload = new Upload();
+            upload.setId(id);
+            upload.setFileName(fileName);
+            upload.setSize(size);
+            upload.setReceived(received);
+            upload.setDigestAlgorithm(digestAlgorithm);
+            upload.setIdSignConf(idSignConf);
+            final byte[] value = digest;
+            if (value != null) {
+                upload.setDigest(Base64.getEncoder().encodeToString(value));
+            }
+            return upload;
+        }
+    }
+}
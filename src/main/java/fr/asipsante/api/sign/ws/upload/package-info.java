@@ -0,0 +1,7 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+/**
+ * Téléversement par morceaux, avec reprise, des documents volumineux.
+ */
+package fr.asipsante.api.sign.ws.upload;
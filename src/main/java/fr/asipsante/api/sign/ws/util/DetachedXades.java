@@ -0,0 +1,356 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.UUID;
+
+import javax.xml.XMLConstants;
+import javax.xml.crypto.MarshalException;
+import javax.xml.crypto.dom.DOMStructure;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.SignedInfo;
+import javax.xml.crypto.dsig.XMLObject;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuerSerial;
+import org.springframework.web.util.UriUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import fr.asipsante.api.sign.bean.parameters.SignatureParameters;
+import fr.asipsante.api.sign.utils.AsipSignClientException;
+import fr.asipsante.api.sign.utils.AsipSignException;
+import fr.asipsante.api.sign.utils.AsipSignServerException;
+
+/**
+ * The Class DetachedXades.
+ * Signature XAdES Baseline B détachée à partir de l'empreinte du document :
+ * le client calcule l'empreinte avec l'algorithme de la configuration de
+ * signature et n'envoie pas le document. La référence au document porte
+ * l'empreinte fournie, les propriétés signées (date de signature, certificat
+ * de signature, rôles, type MIME) sont signées avec la clé de la
+ * configuration. Pour une configuration DETACHED, l'empreinte d'un document
+ * téléversé est calculée en flux.
+ */
+public final class DetachedXades {
+
+    /** Espace de noms XAdES. */
+    public static final String XADES_NS = "http://uri.etsi.org/01903/v1.3.2#";
+
+    /** Type de la référence aux propriétés signées. */
+    private static final String SIGNED_PROPERTIES_TYPE = "http://uri.etsi.org/01903#SignedProperties";
+
+    /** Préfixe des URI des algorithmes de signature. */
+    private static final String XMLDSIG_MORE = "http://www.w3.org/2001/04/xmldsig-more#";
+
+    /** The xades prefix. */
+    private static final String XADES = "xades:";
+
+    /** The ds prefix. */
+    private static final String DS = "ds:";
+
+    /** Taille du tampon de lecture des documents. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Instantiates a new detached xades.
+     */
+    private DetachedXades() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Signe l'empreinte d'un document.
+     *
+     * @param signParams      the signature parameters (key store)
+     * @param digestAlgorithm the digest algorithm of the configuration (SHA256, SHA384, SHA512)
+     * @param canonAlgorithm  the canonicalization algorithm of the configuration
+     * @param digest          the document digest
+     * @param fileName        the document name, used as reference URI (optional)
+     * @param mimeType        the document MIME type (optional)
+     * @param roles           the signer roles (optional)
+     * @return the detached signature
+     * @throws AsipSignException client error for an unsupported algorithm or
+     *                           key, server error otherwise
+     * @throws IllegalArgumentException digest of the wrong length for the algorithm
+     */
+    public static byte[] sign(final SignatureParameters signParams, final String digestAlgorithm,
+            final String canonAlgorithm, final byte[] digest, final String fileName, final String mimeType,
+            final List<String> roles) throws AsipSignException {
+        final String hash = digestAlgorithm == null ? "" : digestAlgorithm.toUpperCase().replace("-", "");
+        final String digestUri = digestUri(hash);
+        final MessageDigest md = messageDigest(hash);
+        if (digest == null || digest.length != md.getDigestLength()) {
+            throw new IllegalArgumentException("Empreinte invalide pour l'algorithme " + digestAlgorithm);
+        }
+        try {
+            final KeyStore keyStore = signParams.getKeyStore();
+            String alias = null;
+            final Enumeration<String> aliases = keyStore.aliases();
+            while (alias == null && aliases.hasMoreElements()) {
+                final String candidate = aliases.nextElement();
+                if (keyStore.isKeyEntry(candidate)) {
+                    alias = candidate;
+                }
+            }
+            if (alias == null) {
+                throw new AsipSignServerException("Aucune clé de signature dans la configuration");
+            }
+            final PrivateKey key = (PrivateKey) keyStore.getKey(alias, signParams.getPassword().toCharArray());
+            final X509Certificate cert = (X509Certificate) keyStore.getCertificate(alias);
+            final String c14n = canonAlgorithm == null || canonAlgorithm.isEmpty()
+                    ? CanonicalizationMethod.EXCLUSIVE : canonAlgorithm;
+
+            final String id = UUID.randomUUID().toString();
+            final Document doc = newDocument();
+            final Element signedProperties = signedProperties(doc, id, cert, md, digestUri, mimeType, roles);
+            final Element qualifyingProperties = doc.createElementNS(XADES_NS, XADES + "QualifyingProperties");
+            qualifyingProperties.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:xades", XADES_NS);
+            qualifyingProperties.setAttribute("Target", "#id-" + id);
+            qualifyingProperties.appendChild(signedProperties);
+
+            final XMLSignatureFactory fac = XMLSignatureFactory.getInstance("DOM");
+            final DigestMethod digestMethod = fac.newDigestMethod(digestUri, null);
+            final List<Reference> references = new ArrayList<>();
+            references.add(fac.newReference(
+                    fileName == null || fileName.isEmpty() ? null
+                            : UriUtils.encodePath(fileName, StandardCharsets.UTF_8),
+                    digestMethod, null, null, "r-" + id, digest));
+            references.add(fac.newReference("#xades-" + id, digestMethod,
+                    Collections.singletonList(fac.newTransform(c14n, (TransformParameterSpec) null)),
+                    SIGNED_PROPERTIES_TYPE, null));
+            final SignedInfo signedInfo = fac.newSignedInfo(
+                    fac.newCanonicalizationMethod(c14n, (C14NMethodParameterSpec) null),
+                    fac.newSignatureMethod(signatureUri(key, hash), null), references);
+            final KeyInfoFactory kif = fac.getKeyInfoFactory();
+            final KeyInfo keyInfo = kif.newKeyInfo(
+                    Collections.singletonList(kif.newX509Data(Collections.singletonList(cert))));
+            final XMLObject object = fac.newXMLObject(
+                    Collections.singletonList(new DOMStructure(qualifyingProperties)), null, null, null);
+            final XMLSignature signature = fac.newXMLSignature(signedInfo, keyInfo,
+                    Collections.singletonList(object), "id-" + id, null);
+
+            final DOMSignContext context = new DOMSignContext(key, doc);
+            context.setDefaultNamespacePrefix("ds");
+            context.setIdAttributeNS(signedProperties, null, "Id");
+            signature.sign(context);
+            return serialize(doc);
+        } catch (final GeneralSecurityException | MarshalException | XMLSignatureException
+                | ParserConfigurationException | TransformerException | IOException e) {
+            throw new AsipSignServerException("Erreur lors de la signature détachée : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Calcule l'empreinte d'un document en flux, sans le charger en mémoire.
+     *
+     * @param in              the document stream, closed at the end
+     * @param digestAlgorithm the digest algorithm of the configuration
+     * @return the digest
+     * @throws AsipSignClientException unsupported algorithm
+     * @throws IOException             Signals that an I/O exception has occurred.
+     */
+    public static byte[] digest(final InputStream in, final String digestAlgorithm)
+            throws AsipSignClientException, IOException {
+        final String hash = digestAlgorithm == null ? "" : digestAlgorithm.toUpperCase().replace("-", "");
+        digestUri(hash);
+        final MessageDigest md = messageDigest(hash);
+        try (DigestInputStream dis = new DigestInputStream(in, md)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while (dis.read(buffer) != -1) {
+                // l'empreinte est mise à jour par la lecture
+            }
+        }
+        return md.digest();
+    }
+
+    /**
+     * Propriétés signées : date de signature, certificat de signature, rôles
+     * et type MIME du document.
+     *
+     * @param doc       the document
+     * @param id        the signature id
+     * @param cert      the signing certificate
+     * @param md        the message digest
+     * @param digestUri the digest algorithm URI
+     * @param mimeType  the MIME type
+     * @param roles     the signer roles
+     * @return the signed properties element
+     * @throws GeneralSecurityException the general security exception
+     * @throws IOException              Signals that an I/O exception has occurred.
+     */
+    private static Element signedProperties(final Document doc, final String id, final X509Certificate cert,
+            final MessageDigest md, final String digestUri, final String mimeType, final List<String> roles)
+            throws GeneralSecurityException, IOException {
+        final Element signedProperties = doc.createElementNS(XADES_NS, XADES + "SignedProperties");
+        signedProperties.setAttribute("Id", "xades-" + id);
+        final Element signatureProperties = append(doc, signedProperties, XADES_NS,
+                XADES + "SignedSignatureProperties");
+        append(doc, signatureProperties, XADES_NS, XADES + "SigningTime")
+                .setTextContent(Instant.now().truncatedTo(ChronoUnit.SECONDS).toString());
+
+        final Element certElement = append(doc,
+                append(doc, signatureProperties, XADES_NS, XADES + "SigningCertificateV2"), XADES_NS,
+                XADES + "Cert");
+        final Element certDigest = append(doc, certElement, XADES_NS, XADES + "CertDigest");
+        append(doc, certDigest, XMLSignature.XMLNS, DS + "DigestMethod").setAttribute("Algorithm", digestUri);
+        append(doc, certDigest, XMLSignature.XMLNS, DS + "DigestValue")
+                .setTextContent(Base64.getEncoder().encodeToString(md.digest(cert.getEncoded())));
+        final IssuerSerial issuerSerial = new IssuerSerial(
+                new GeneralNames(new GeneralName(X500Name.getInstance(cert.getIssuerX500Principal().getEncoded()))),
+                cert.getSerialNumber());
+        append(doc, certElement, XADES_NS, XADES + "IssuerSerialV2")
+                .setTextContent(Base64.getEncoder().encodeToString(issuerSerial.getEncoded()));
+
+        if (roles != null && !roles.isEmpty()) {
+            final Element claimedRoles = append(doc,
+                    append(doc, signatureProperties, XADES_NS, XADES + "SignerRoleV2"), XADES_NS,
+                    XADES + "ClaimedRoles");
+            for (final String role : roles) {
+                append(doc, claimedRoles, XADES_NS, XADES + "ClaimedRole").setTextContent(role);
+            }
+        }
+        if (mimeType != null && !mimeType.isEmpty()) {
+            final Element format = append(doc,
+                    append(doc, signedProperties, XADES_NS, XADES + "SignedDataObjectProperties"), XADES_NS,
+                    XADES + "DataObjectFormat");
+            format.setAttribute("ObjectReference", "#r-" + id);
+            append(doc, format, XADES_NS, XADES + "MimeType").setTextContent(mimeType);
+        }
+        return signedProperties;
+    }
+
+    /**
+     * Ajoute un élément.
+     *
+     * @param doc    the document
+     * @param parent the parent
+     * @param ns     the namespace
+     * @param name   the qualified name
+     * @return the element
+     */
+    private static Element append(final Document doc, final Element parent, final String ns, final String name) {
+        final Element element = doc.createElementNS(ns, name);
+        parent.appendChild(element);
+        return element;
+    }
+
+    /**
+     * URI de l'algorithme d'empreinte.
+     *
+     * @param hash the digest algorithm
+     * @return the URI
+     * @throws AsipSignClientException unsupported algorithm
+     */
+    private static String digestUri(final String hash) throws AsipSignClientException {
+        switch (hash) {
+        case "SHA256":
+            return DigestMethod.SHA256;
+        case "SHA384":
+            return XMLDSIG_MORE + "sha384";
+        case "SHA512":
+            return DigestMethod.SHA512;
+        default:
+            throw new AsipSignClientException("Algorithme d'empreinte non supporté : " + hash);
+        }
+    }
+
+    /**
+     * URI de l'algorithme de signature selon le type de clé.
+     *
+     * @param key  the private key
+     * @param hash the digest algorithm
+     * @return the URI
+     * @throws AsipSignClientException unsupported key
+     */
+    private static String signatureUri(final PrivateKey key, final String hash) throws AsipSignClientException {
+        if ("RSA".equals(key.getAlgorithm())) {
+            return XMLDSIG_MORE + "rsa-" + hash.toLowerCase();
+        } else if ("EC".equals(key.getAlgorithm())) {
+            return XMLDSIG_MORE + "ecdsa-" + hash.toLowerCase();
+        }
+        throw new AsipSignClientException("Type de clé non supporté : " + key.getAlgorithm());
+    }
+
+    /**
+     * Message digest.
+     *
+     * @param hash the digest algorithm
+     * @return the message digest
+     * @throws AsipSignClientException unsupported algorithm
+     */
+    private static MessageDigest messageDigest(final String hash) throws AsipSignClientException {
+        try {
+            return MessageDigest.getInstance(hash.replace("SHA", "SHA-"));
+        } catch (final GeneralSecurityException e) {
+            throw new AsipSignClientException("Algorithme d'empreinte non supporté : " + hash);
+        }
+    }
+
+    /**
+     * New document.
+     *
+     * @return the document
+     * @throws ParserConfigurationException the parser configuration exception
+     */
+    private static Document newDocument() throws ParserConfigurationException {
+        final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        return dbf.newDocumentBuilder().newDocument();
+    }
+
+    /**
+     * Serialize.
+     *
+     * @param doc the document
+     * @return the bytes
+     * @throws TransformerException the transformer exception
+     */
+    private static byte[] serialize(final Document doc) throws TransformerException {
+        final TransformerFactory tf = TransformerFactory.newInstance();
+        tf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        tf.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+        final Transformer transformer = tf.newTransformer();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(doc), new StreamResult(out));
+        return out.toByteArray();
+    }
+}
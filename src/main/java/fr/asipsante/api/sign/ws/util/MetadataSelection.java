@@ -0,0 +1,115 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.util;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+import fr.asipsante.api.sign.bean.metadata.MetaDatum;
+import fr.asipsante.api.sign.bean.parameters.CertificateValidationParameters;
+import fr.asipsante.api.sign.bean.parameters.SignatureValidationParameters;
+import fr.asipsante.api.sign.enums.MetaDataType;
+
+/**
+ * Sélection par requête des métadonnées du rapport de validation (en-tête
+ * X-Metadata). Les paramètres de validation transmis au moteur ne portent
+ * que les métadonnées retenues : les rapports lourds (RAPPORT_DIAGNOSTIQUE,
+ * RAPPORT_DSS) non demandés ne sont pas calculés. La configuration reste la
+ * limite : une métadonnée non configurée n'est jamais ajoutée.
+ */
+public final class MetadataSelection {
+
+    /** En-tête de sélection des métadonnées. */
+    public static final String HEADER = "X-Metadata";
+
+    /** Valeur de l'en-tête excluant toutes les métadonnées. */
+    public static final String NONE = "none";
+
+    /**
+     * Instantiates a new metadata selection.
+     */
+    private MetadataSelection() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Lecture de l'en-tête : liste de types de métadonnées séparés par des
+     * virgules, ou "none".
+     *
+     * @param header the header value, may be null
+     * @return the selected types, empty when the header is absent
+     * @throws IllegalArgumentException if a type is unknown
+     */
+    public static Optional<Set<MetaDataType>> parse(final String header) {
+        if (header == null || header.trim().isEmpty()) {
+            return Optional.empty();
+        }
+        final Set<MetaDataType> types = EnumSet.noneOf(MetaDataType.class);
+        for (final String name : header.split(",")) {
+            final String type = name.trim();
+            if (!type.isEmpty() && !NONE.equalsIgnoreCase(type)) {
+                types.add(MetaDataType.valueOf(type.toUpperCase(Locale.ROOT)));
+            }
+        }
+        return Optional.of(types);
+    }
+
+    /**
+     * Paramètres de validation de signature restreints aux métadonnées
+     * sélectionnées. Les paramètres de la configuration ne sont pas modifiés.
+     *
+     * @param params the configured parameters
+     * @param types  the selected types
+     * @return the restricted parameters
+     */
+    public static SignatureValidationParameters restrict(final SignatureValidationParameters params,
+            final Set<MetaDataType> types) {
+        final SignatureValidationParameters restricted = new SignatureValidationParameters();
+        restricted.setDescription(params.getDescription());
+        restricted.setRules(params.getRules());
+        restricted.setMetaData(filter(params.getMetaData(), types));
+        return restricted;
+    }
+
+    /**
+     * Paramètres de validation de certificat restreints aux métadonnées
+     * sélectionnées. Les paramètres de la configuration ne sont pas modifiés.
+     *
+     * @param params the configured parameters
+     * @param types  the selected types
+     * @return the restricted parameters
+     */
+    public static CertificateValidationParameters restrict(final CertificateValidationParameters params,
+            final Set<MetaDataType> types) {
+        final CertificateValidationParameters restricted = new CertificateValidationParameters();
+        restricted.setDescription(params.getDescription());
+        restricted.setRules(params.getRules());
+        restricted.setMetaData(filter(params.getMetaData(), types));
+        return restricted;
+    }
+
+    /**
+     * Filtre des métadonnées configurées.
+     *
+     * @param metadata the configured metadata
+     * @param types    the selected types
+     * @return the selected metadata
+     */
+    private static List<MetaDatum> filter(final List<MetaDatum> metadata, final Set<MetaDataType> types) {
+        final List<MetaDatum> selected = new ArrayList<>();
+        if (metadata != null) {
+            for (final MetaDatum metadatum : metadata) {
+                if (types.contains(metadatum.getType())) {
+                    selected.add(metadatum);
+                }
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import fr.asipsante.api.sign.bean.proof.OpenIdTokenBean;
+import fr.asipsante.api.sign.utils.AsipSignClientException;
+import fr.asipsante.api.sign.ws.model.OpenidToken;
+
+/**
+ * The Class OpenIdTokens.
+ * Conversion des valeurs du header X-OpenidToken (JSON encodé en base 64) en
+ * OpenIdTokenBean. Les jetons déjà convertis sont conservés dans un cache
+ * borné, indexé par l'empreinte SHA-256 de la valeur du header.
+ */
+public final class OpenIdTokens {
+
+    /** The Constant LOG. */
+    private static final Logger LOG = LoggerFactory.getLogger(OpenIdTokens.class);
+
+    /** Nombre maximal de jetons en cache. */
+    private static final long CACHE_SIZE = Long.getLong("ws.openidTokenCache.size", 10000L);
+
+    /** Durée de vie d'un jeton en cache, en secondes. */
+    private static final long CACHE_TTL = Long.getLong("ws.openidTokenCache.ttl", 300L);
+
+    /** Lecteur JSON partagé (thread-safe). */
+    private static final ObjectReader TOKEN_READER = new ObjectMapper().readerFor(OpenidToken.class);
+
+    /** Jetons convertis, par empreinte de la valeur du header. */
+    private static final Cache<String, ParsedToken> CACHE = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE)
+            .expireAfterWrite(CACHE_TTL, TimeUnit.SECONDS).build();
+
+    /**
+     * Instantiates a new open id tokens.
+     */
+    private OpenIdTokens() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Convertit une valeur du header X-OpenidToken.
+     *
+     * @param b64value the JSON token encoded in base 64
+     * @return the open id token bean
+     * @throws AsipSignClientException invalid token
+     */
+    public static OpenIdTokenBean parse(final String b64value) throws AsipSignClientException {
+        final String key = digest(b64value);
+        ParsedToken token = CACHE.getIfPresent(key);
+        if (token == null) {
+            token = decode(b64value);
+            CACHE.put(key, token);
+        }
+        return token.toBean();
+    }
+
+    /**
+     * Décode et lit un jeton.
+     *
+     * @param b64value the JSON token encoded in base 64
+     * @return the parsed token
+     * @throws AsipSignClientException invalid token
+     */
+    private static ParsedToken decode(final String b64value) throws AsipSignClientException {
+        try {
+            final OpenidToken oid = TOKEN_READER.readValue(Base64.getDecoder().decode(b64value));
+            if (oid.getAccessToken() == null || oid.getIntrospectionResponse() == null
+                    || oid.getUserInfo() == null) {
+                throw new AsipSignClientException("Tokens Openid non conformes.");
+            }
+            return new ParsedToken(oid.getAccessToken(),
+                    Base64.getEncoder().encodeToString(oid.getIntrospectionResponse().getBytes(StandardCharsets.UTF_8)),
+                    Base64.getEncoder().encodeToString(oid.getUserInfo().getBytes(StandardCharsets.UTF_8)));
+        } catch (final IOException | IllegalArgumentException e) {
+            LOG.error("Error lors du mapping du token", e);
+            throw new AsipSignClientException("Tokens Openid non conformes.");
+        }
+    }
+
+    /**
+     * Empreinte SHA-256 de la valeur du header.
+     *
+     * @param b64value the header value
+     * @return the digest encoded in base 64
+     */
+    private static String digest(final String b64value) {
+        try {
+            return Base64.getEncoder().encodeToString(
+                    MessageDigest.getInstance("SHA-256").digest(b64value.getBytes(StandardCharsets.UTF_8)));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Jeton converti : le jeton d'accès et les réponses déjà encodées en base 64.
+     */
+    private static final class ParsedToken {
+
+        /** The access token. */
+        private final String accessToken;
+
+        /** The introspection response encoded in base 64. */
+        private final String introspectionResponse;
+
+        /** The user info encoded in base 64. */
+        private final String userInfo;
+
+        /**
+         * Instantiates a new parsed token.
+         *
+         * @param accessToken           the access token
+         * @param introspectionResponse the introspection response
+         * @param userInfo              the user info
+         */
+        ParsedToken(final String accessToken, final String introspectionResponse, final String userInfo) {
+            this.accessToken = accessToken;
+            this.introspectionResponse = introspectionResponse;
+            this.userInfo = userInfo;
+        }
+
+        /**
+         * New bean for the proof parameters.
+         *
+         * @return the open id token bean
+         */
+        OpenIdTokenBean toBean() {
+            final OpenIdTokenBean tokenBean = new OpenIdTokenBean();
+            tokenBean.setAccessToken(accessToken);
+            tokenBean.setIntrospectionResponse(introspectionResponse);
+            tokenBean.setUserInfo(userInfo);
+            return tokenBean;
+        }
+    }
+}
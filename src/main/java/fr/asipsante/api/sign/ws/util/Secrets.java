@@ -4,13 +4,26 @@
 
 package fr.asipsante.api.sign.ws.util;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.MessageDigestPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
 
 /**
  * The Class Secrets.
+ * L'algorithme de chaque hash est détecté à partir de son préfixe ({bcrypt},
+ * {pbkdf2}, {argon2}, {sha256}). Les hashes sans préfixe sont vérifiés avec
+ * l'algorithme global ws.hashAlgo.
  */
 @SuppressWarnings("deprecation")
 public class Secrets {
@@ -18,6 +31,39 @@ public class Secrets {
     /** The Constant LOG_ROUNDS. */
     private static final int LOG_ROUNDS = 12;
 
+    /** Séparateur entre l'identifiant de clé et le secret présenté : "keyId.secret". */
+    public static final char KEY_ID_SEPARATOR = '.';
+
+    /** Identifiant de l'algorithme BCrypt. */
+    public static final String BCRYPT = "bcrypt";
+
+    /** Identifiant de l'algorithme PBKDF2. */
+    public static final String PBKDF2 = "pbkdf2";
+
+    /** Identifiant de l'algorithme Argon2. */
+    public static final String ARGON2 = "argon2";
+
+    /** Identifiant de l'algorithme SHA256 (salé). */
+    public static final String SHA256 = "sha256";
+
+    /** Argon2 salt length. */
+    private static final int ARGON2_SALT_LENGTH = 16;
+
+    /** Argon2 hash length. */
+    private static final int ARGON2_HASH_LENGTH = 32;
+
+    /** Argon2 memory cost (KB). */
+    private static final int ARGON2_MEMORY = 1 << 12;
+
+    /** BCrypt minimum log rounds. */
+    private static final int BCRYPT_MIN_LOG_ROUNDS = 4;
+
+    /** BCrypt maximum log rounds. */
+    private static final int BCRYPT_MAX_LOG_ROUNDS = 14;
+
+    /** Argon2 maximum iterations. */
+    private static final int ARGON2_MAX_ITERATIONS = 64;
+
     /** The Constant HASH_ALGO. */
     private static String HASH_ALGO = System.getProperty("ws.hashAlgo", "BCRYPT");
 
@@ -26,6 +72,38 @@ public class Secrets {
      */
     private static Logger log = LoggerFactory.getLogger(Secrets.class);
 
+    /** Encodeurs pré-construits, par identifiant d'algorithme. */
+    private static final Map<String, PasswordEncoder> ENCODERS;
+
+    /** Encodeurs construits avec un coût spécifique, par identifiant et coût. */
+    private static final ConcurrentMap<String, PasswordEncoder> TUNED_ENCODERS = new ConcurrentHashMap<>();
+
+    /** Identifiant de l'algorithme par défaut. */
+    private static final String DEFAULT_ID;
+
+    /** Encodeur délégant selon le préfixe du hash. */
+    private static final DelegatingPasswordEncoder ENCODER;
+
+    static {
+        final Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put(BCRYPT, new BCryptPasswordEncoder(LOG_ROUNDS));
+        encoders.put(PBKDF2, new Pbkdf2PasswordEncoder());
+        encoders.put(ARGON2, new Argon2PasswordEncoder());
+        encoders.put(SHA256, new MessageDigestPasswordEncoder("SHA-256"));
+        ENCODERS = Collections.unmodifiableMap(encoders);
+
+        String defaultId = HASH_ALGO.toLowerCase();
+        if (!ENCODERS.containsKey(defaultId)) {
+            log.warn("Algorithme de hachage {} inconnu, utilisation de {}", HASH_ALGO, BCRYPT);
+            defaultId = BCRYPT;
+        }
+        DEFAULT_ID = defaultId;
+        ENCODER = new DelegatingPasswordEncoder(DEFAULT_ID, ENCODERS);
+        // hashes sans préfixe : comportement historique de ws.hashAlgo
+        ENCODER.setDefaultPasswordEncoderForMatches(SHA256.equals(DEFAULT_ID) ? ENCODERS.get(SHA256)
+                : ENCODERS.get(BCRYPT));
+    }
+
     /**
      * Instantiates a new secrets.
      */
@@ -39,12 +117,28 @@ public class Secrets {
      * @param secret the password to be hashed
      * @return the hashed password
      */
-	public static String hash(final String secret) {
-        if ("SHA256".equals(HASH_ALGO)) {
-			final MessageDigestPasswordEncoder passEncoder = new MessageDigestPasswordEncoder(HASH_ALGO);
-            return passEncoder.encode(secret);
+    public static String hash(final String secret) {
+        return ENCODER.encode(secret);
+    }
+
+    /**
+     * Returns a hashed password using the given algorithm and cost.<br>
+     * The cost is the log rounds for bcrypt and the iterations for argon2, it is
+     * ignored for pbkdf2 and sha256.
+     *
+     * @param secret    the password to be hashed
+     * @param algorithm the algorithm id, default algorithm if null
+     * @param cost      the cost, default cost if null
+     * @return the hashed password, prefixed with the algorithm id
+     * @throws IllegalArgumentException unknown algorithm or invalid cost
+     */
+    public static String hash(final String secret, final String algorithm, final Integer cost) {
+        final String id = algorithm == null ? DEFAULT_ID : algorithm.toLowerCase();
+        final PasswordEncoder encoder = cost == null ? ENCODERS.get(id) : tunedEncoder(id, cost);
+        if (encoder == null) {
+            throw new IllegalArgumentException("Algorithme de hachage inconnu : " + algorithm);
         }
-        return BCrypt.hashpw(secret, BCrypt.gensalt(LOG_ROUNDS));
+        return "{" + id + "}" + encoder.encode(secret);
     }
 
     /**
@@ -57,17 +151,39 @@ public class Secrets {
      * @param hash   the expected hashed value of the password
      * @return true if the given password match the hashed value, false otherwise
      */
-	public static boolean match(final String secret, final String hash) {
-        if ("SHA256".equals(HASH_ALGO)) {
-            final MessageDigestPasswordEncoder passEncoder = new MessageDigestPasswordEncoder(HASH_ALGO);
-            return passEncoder.matches(secret, hash);
+    public static boolean match(final String secret, final String hash) {
+        if (secret == null) {
+            return false;
         }
         try {
-            return BCrypt.checkpw(secret, hash);
+            return ENCODER.matches(secret, hash);
         } catch (final IllegalArgumentException i) {    // catch exception when parsing unknown hash format, return false
             log.error(i.getMessage());
         }
         return false;
     }
 
+    /**
+     * Encodeur avec un coût spécifique, construit une seule fois par coût.
+     *
+     * @param id   the algorithm id
+     * @param cost the cost
+     * @return the encoder, null if the algorithm is unknown
+     */
+    private static PasswordEncoder tunedEncoder(final String id, final int cost) {
+        if (BCRYPT.equals(id)) {
+            if (cost < BCRYPT_MIN_LOG_ROUNDS || cost > BCRYPT_MAX_LOG_ROUNDS) {
+                throw new IllegalArgumentException("Coût bcrypt invalide : " + cost);
+            }
+            return TUNED_ENCODERS.computeIfAbsent(id + cost, k -> new BCryptPasswordEncoder(cost));
+        } else if (ARGON2.equals(id)) {
+            if (cost < 1 || cost > ARGON2_MAX_ITERATIONS) {
+                throw new IllegalArgumentException("Coût argon2 invalide : " + cost);
+            }
+            return TUNED_ENCODERS.computeIfAbsent(id + cost, k -> new Argon2PasswordEncoder(ARGON2_SALT_LENGTH,
+                    ARGON2_HASH_LENGTH, 1, ARGON2_MEMORY, cost));
+        }
+        return ENCODERS.get(id);
+    }
+
 }
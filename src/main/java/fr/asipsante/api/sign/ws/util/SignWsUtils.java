@@ -7,7 +7,6 @@ package fr.asipsante.api.sign.ws.util;
 import fr.asipsante.api.sign.bean.cacrl.CACRLWrapper;
 import fr.asipsante.api.sign.bean.parameters.CertificateValidationParameters;
 import fr.asipsante.api.sign.bean.parameters.SignatureParameters;
-import fr.asipsante.api.sign.bean.proof.OpenIdTokenBean;
 import fr.asipsante.api.sign.bean.rapports.RapportValidationCertificat;
 import fr.asipsante.api.sign.service.ICertificateValidationService;
 import fr.asipsante.api.sign.service.impl.CertificateValidationServiceImpl;
@@ -19,7 +18,6 @@ import fr.asipsante.api.sign.validation.certificat.rules.impl.ExpirationCertific
 import fr.asipsante.api.sign.validation.certificat.rules.impl.NonRepudiation;
 import fr.asipsante.api.sign.validation.certificat.rules.impl.RevocationCertificat;
 import fr.asipsante.api.sign.validation.certificat.rules.impl.TrustedCertificat;
-import fr.asipsante.api.sign.ws.model.OpenidToken;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
@@ -30,7 +28,6 @@ import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Enumeration;
 import java.util.List;
 
@@ -136,22 +133,4 @@ public class SignWsUtils {
         }
         return status;
     }
-    
-    public static List<OpenIdTokenBean> convertOpenIdTokens(final List<OpenidToken> openidTokens) {
-        List<OpenIdTokenBean> listTokenBeans = new ArrayList<OpenIdTokenBean>();
-        if (!openidTokens.isEmpty()) {
-	        for(OpenidToken token: openidTokens) {
-	        	OpenIdTokenBean tokenBean = new OpenIdTokenBean();
-	        	tokenBean.setAccessToken(token.getAccessToken());
-	        	byte [] instrospectionresponseB64 =token.getIntrospectionResponse().getBytes();
-	        	String encodedIR = Base64.getEncoder().encodeToString(instrospectionresponseB64);
-	        	tokenBean.setIntrospectionResponse(encodedIR);
-	        	byte [] userInfoB64 =token.getUserInfo().getBytes();
-	        	String encodedUI = Base64.getEncoder().encodeToString(userInfoB64);
-	        	tokenBean.setUserInfo(encodedUI);
-	        	listTokenBeans.add(tokenBean);
-	        }
-        }
-        return listTokenBeans;
-    }
 }
@@ -0,0 +1,102 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Class SyntheticDocuments.
+ * Documents XML et PDF de taille donnée, pour la chauffe du service et les
+ * benchmarks.
+ */
+public final class SyntheticDocuments {
+
+    /** Ligne de remplissage des documents XML. */
+    private static final String XML_LINE = "<Ligne>Lorem ipsum dolor sit amet, consectetur adipiscing elit.</Ligne>\n";
+
+    /** Fin des documents XML. */
+    private static final String XML_END = "</Document>\n";
+
+    /** Ligne de remplissage des flux PDF (commentaire). */
+    private static final String PDF_LINE = "% Lorem ipsum dolor sit amet, consectetur adipiscing elit.\n";
+
+    /** Marge pour la structure du PDF. */
+    private static final int PDF_OVERHEAD = 1024;
+
+    /**
+     * Instantiates a new synthetic documents.
+     */
+    private SyntheticDocuments() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Document XML d'au moins size octets.
+     *
+     * @param size the size
+     * @return the document
+     */
+    public static byte[] xml(final int size) {
+        final StringBuilder xml = new StringBuilder(size + XML_LINE.length() * 2);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Document>\n");
+        while (xml.length() < size - XML_END.length()) {
+            xml.append(XML_LINE);
+        }
+        return xml.append(XML_END).toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Document PDF d'une page, dont le flux de contenu porte la taille à au
+     * moins size octets.
+     *
+     * @param size the size
+     * @return the document
+     */
+    public static byte[] pdf(final int size) {
+        final StringBuilder content = new StringBuilder(size);
+        content.append("BT ET\n");
+        while (content.length() < size) {
+            content.append(PDF_LINE);
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(size + PDF_OVERHEAD);
+        final List<Integer> offsets = new ArrayList<>();
+        write(out, "%PDF-1.4\n");
+        offsets.add(out.size());
+        write(out, "1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+        offsets.add(out.size());
+        write(out, "2 0 obj\n<< /Type /Pages /Kids [3 0 R] /Count 1 >>\nendobj\n");
+        offsets.add(out.size());
+        write(out, "3 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 595 842] /Resources << >> "
+                + "/Contents 4 0 R >>\nendobj\n");
+        offsets.add(out.size());
+        write(out, "4 0 obj\n<< /Length " + content.length() + " >>\nstream\n");
+        write(out, content.toString());
+        write(out, "\nendstream\nendobj\n");
+        final int xref = out.size();
+        final StringBuilder trailer = new StringBuilder();
+        trailer.append("xref\n0 ").append(offsets.size() + 1).append("\n0000000000 65535 f \n");
+        for (final int offset : offsets) {
+            trailer.append(String.format("%010d 00000 n \n", offset));
+        }
+        trailer.append("trailer\n<< /Size ").append(offsets.size() + 1).append(" /Root 1 0 R >>\nstartxref\n")
+                .append(xref).append("\n%%EOF\n");
+        write(out, trailer.toString());
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes ASCII text.
+     *
+     * @param out  the output
+     * @param text the text
+     */
+    private static void write(final ByteArrayOutputStream out, final String text) {
+        final byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.validation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import fr.asipsante.api.sign.bean.parameters.CertificateValidationParameters;
+import fr.asipsante.api.sign.bean.parameters.SignatureValidationParameters;
+import fr.asipsante.api.sign.utils.AsipSignException;
+import fr.asipsante.api.sign.validation.certificat.rules.ICertificatVisitor;
+import fr.asipsante.api.sign.validation.signature.rules.IVisitor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Validation avec arrêt à la première règle en échec (en-tête
+ * "X-Validation-Mode: failfast"), pour les clients qui n'attendent que le
+ * résultat valide ou non. Les règles de la configuration sont réparties en
+ * paliers (config.failfast.tiers) évalués successivement, chacun par un appel
+ * au moteur de validation : dès qu'un palier échoue, le résultat est acquis et
+ * les paliers suivants, qui portent les contrôles coûteux (chaîne de
+ * confiance, révocation), ne sont pas évalués. Les paliers sont ordonnés par
+ * leur durée moyenne mesurée, une fois config.failfast.samples mesures
+ * disponibles pour chacun. Les règles ignorées sont comptées par la métrique
+ * esignsante.validation.rules.skipped.
+ * Chaque palier relit le document et la signature : sur un document valide,
+ * tous les paliers sont évalués et la validation coûte environ trois fois
+ * celle du mode normal avec les paliers par défaut (FailFastBenchmark). Le
+ * mode n'est utile que si la plupart des documents reçus sont invalides ; il
+ * est désactivé par défaut (config.failfast.enabled).
+ */
+@Component
+public class FailFastValidation {
+
+    /**
+     * The log.
+     */
+    Logger log = LoggerFactory.getLogger(FailFastValidation.class);
+
+    /** En-tête de choix du mode de validation. */
+    public static final String HEADER = "X-Validation-Mode";
+
+    /** Mode de validation avec arrêt à la première règle en échec. */
+    public static final String FAILFAST = "failfast";
+
+    /** Tier duration timer name. */
+    public static final String TIER_TIMER = "esignsante.validation.tier";
+
+    /** Skipped rules counter name. */
+    public static final String SKIPPED = "esignsante.validation.rules.skipped";
+
+    /** Enable/disable the fail-fast mode. */
+    @Value("${config.failfast.enabled:false}")
+    private boolean enabled;
+
+    /** Rule tiers, separated by ';', presumed cheapest first. */
+    @Value("${config.failfast.tiers:DocumentIntact,SignatureIntacte,SignatureNonVide,FormatSignature,"
+            + "ExistenceDuCertificatDeSignature,ExistenceBaliseSigningTime,ExpirationCertificat,NonRepudiation;"
+            + "SignatureCertificatValide,ValidationSignature,BundleCRLNonNull,ExpirationCRL;"
+            + "TrustedCertificat,RevocationCertificat}")
+    private String tiers;
+
+    /** Measures of every tier before ordering them by mean duration. */
+    @Value("${config.failfast.samples:20}")
+    private long samples;
+
+    /** The meter registry. */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Rule names by tier; rules not listed belong to an extra last tier. */
+    private final List<Set<String>> tierRules = new ArrayList<>();
+
+    /**
+     * Validation of a tier of rules.
+     *
+     * @param <T> the rule type
+     * @param <R> the report type
+     */
+    @FunctionalInterface
+    public interface Step<T, R> {
+
+        /**
+         * Validates the document against the rules.
+         *
+         * @param rules the rules
+         * @return the report
+         * @throws IOException       the IO exception
+         * @throws AsipSignException the asip sign exception
+         */
+        R validate(List<T> rules) throws IOException, AsipSignException;
+    }
+
+    /**
+     * Init.
+     */
+    @PostConstruct
+    public void init() {
+        tierRules.clear();
+        for (final String tier : tiers.split(";")) {
+            final Set<String> names = new HashSet<>(Arrays.asList(tier.replaceAll("\\s+", "").split(",")));
+            names.remove("");
+            if (!names.isEmpty()) {
+                tierRules.add(names);
+            }
+        }
+        log.info("Validation avec arrêt à la première règle en échec : {} paliers de règles", tierRules.size());
+    }
+
+    /**
+     * Checks if the current request asks for the fail-fast mode.
+     *
+     * @return true if the fail-fast mode is requested
+     */
+    public boolean isRequested() {
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!enabled || !(attributes instanceof ServletRequestAttributes)) {
+            return false;
+        }
+        final String mode = ((ServletRequestAttributes) attributes).getRequest().getHeader(HEADER);
+        return mode != null && FAILFAST.equalsIgnoreCase(mode.trim());
+    }
+
+    /**
+     * Évalue les paliers de règles jusqu'au premier en échec.
+     *
+     * @param <T>   the rule type
+     * @param <R>   the report type
+     * @param kind  the validated object, for the metrics
+     * @param rules the configured rules
+     * @param step  the validation of a tier
+     * @param valid the report outcome
+     * @return the reports of the evaluated tiers, in evaluation order
+     * @throws IOException       the IO exception
+     * @throws AsipSignException the asip sign exception
+     */
+    public <T, R> List<R> validate(final String kind, final List<T> rules, final Step<T, R> step,
+            final Predicate<R> valid) throws IOException, AsipSignException {
+        final List<List<T>> groups = group(rules);
+        final List<Integer> order = order(kind, groups);
+        final List<R> reports = new ArrayList<>();
+        for (int i = 0; i < order.size(); i++) {
+            final int tier = order.get(i);
+            final long start = System.nanoTime();
+            final R report = step.validate(groups.get(tier));
+            timer(kind, tier).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            reports.add(report);
+            if (!valid.test(report)) {
+                // résultat acquis : les paliers suivants ne sont pas évalués
+                for (final int skipped : order.subList(i + 1, order.size())) {
+                    for (final T rule : groups.get(skipped)) {
+                        Counter.builder(SKIPPED).description("Règles de validation non évaluées (mode failfast)")
+                                .tags("kind", kind, "rule", name(rule)).register(meterRegistry).increment();
+                    }
+                }
+                break;
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * Répartition des règles par palier.
+     *
+     * @param <T>   the rule type
+     * @param rules the rules
+     * @return the rules of each tier, the last one holding unlisted rules
+     */
+    <T> List<List<T>> group(final List<T> rules) {
+        final List<List<T>> groups = new ArrayList<>();
+        for (int i = 0; i <= tierRules.size(); i++) {
+            groups.add(new ArrayList<>());
+        }
+        if (rules != null) {
+            for (final T rule : rules) {
+                int tier = 0;
+                while (tier < tierRules.size() && !tierRules.get(tier).contains(name(rule))) {
+                    tier++;
+                }
+                groups.get(tier).add(rule);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Ordre d'évaluation des paliers non vides : ordre configuré, puis durée
+     * moyenne croissante lorsque chaque palier a été suffisamment mesuré.
+     *
+     * @param kind   the validated object
+     * @param groups the rules of each tier
+     * @return the tier indexes in evaluation order
+     */
+    List<Integer> order(final String kind, final List<? extends List<?>> groups) {
+        final List<Integer> order = new ArrayList<>();
+        boolean measured = true;
+        for (int tier = 0; tier < groups.size(); tier++) {
+            if (!groups.get(tier).isEmpty()) {
+                order.add(tier);
+                measured &= timer(kind, tier).count() >= samples;
+            }
+        }
+        if (measured) {
+            // tri stable : à durée égale, l'ordre configuré est conservé
+            Collections.sort(order, Comparator.comparingDouble(tier -> timer(kind, tier).mean(TimeUnit.NANOSECONDS)));
+        }
+        return order;
+    }
+
+    /**
+     * Timer of a tier.
+     *
+     * @param kind the validated object
+     * @param tier the tier index
+     * @return the timer
+     */
+    private Timer timer(final String kind, final int tier) {
+        return Timer.builder(TIER_TIMER).description("Durée d'évaluation d'un palier de règles (mode failfast)")
+                .tags("kind", kind, "tier", String.valueOf(tier)).register(meterRegistry);
+    }
+
+    /**
+     * Rule name, as in the configuration.
+     *
+     * @param rule the rule
+     * @return the name
+     */
+    private static String name(final Object rule) {
+        return rule.getClass().getSimpleName();
+    }
+
+    /**
+     * Paramètres de validation de signature limités à un palier de règles,
+     * sans métadonnée.
+     *
+     * @param params the configured parameters
+     * @param rules  the rules of the tier
+     * @return the parameters of the tier
+     */
+    public static SignatureValidationParameters withRules(final SignatureValidationParameters params,
+            final List<IVisitor> rules) {
+        final SignatureValidationParameters tier = new SignatureValidationParameters();
+        tier.setDescription(params.getDescription());
+        tier.setRules(rules);
+        tier.setMetaData(new ArrayList<>());
+        return tier;
+    }
+
+    /**
+     * Paramètres de validation de certificat limités à un palier de règles,
+     * sans métadonnée.
+     *
+     * @param params the configured parameters
+     * @param rules  the rules of the tier
+     * @return the parameters of the tier
+     */
+    public static CertificateValidationParameters withRules(final CertificateValidationParameters params,
+            final List<ICertificatVisitor> rules) {
+        final CertificateValidationParameters tier = new CertificateValidationParameters();
+        tier.setDescription(params.getDescription());
+        tier.setRules(rules);
+        tier.setMetaData(new ArrayList<>());
+        return tier;
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+/**
+ * Modes d'exécution des règles de validation des signatures et des
+ * certificats.
+ */
+package fr.asipsante.api.sign.ws.validation;
@@ -0,0 +1,199 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.warmup;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import fr.asipsante.api.sign.bean.parameters.SignatureParameters;
+import fr.asipsante.api.sign.bean.parameters.SignatureValidationParameters;
+import fr.asipsante.api.sign.bean.rapports.RapportSignature;
+import fr.asipsante.api.sign.service.ICACRLService;
+import fr.asipsante.api.sign.service.ISignatureService;
+import fr.asipsante.api.sign.service.ISignatureValidationService;
+import fr.asipsante.api.sign.utils.AsipSignException;
+import fr.asipsante.api.sign.ws.bean.config.IGlobalConf;
+import fr.asipsante.api.sign.ws.bean.object.SignVerifConf;
+import fr.asipsante.api.sign.ws.bean.object.SignatureConf;
+import fr.asipsante.api.sign.ws.util.ESignatureType;
+import fr.asipsante.api.sign.ws.util.SyntheticDocuments;
+
+/**
+ * Chauffe du service : une fois l'application démarrée (configuration et
+ * CA/CRL chargées), signe des documents synthétiques avec chaque
+ * configuration de signature puis les valide avec chaque configuration de
+ * vérification, "iterations" fois, afin que le JIT ait compilé les chemins
+ * XML security, PDFBox et BouncyCastle avant les premières requêtes.
+ * Tant qu'elle n'est pas terminée, l'indicateur "warmUp" du groupe readiness
+ * est DOWN.
+ */
+@Component
+public class WarmUp {
+
+    /**
+     * The log.
+     */
+    Logger log = LoggerFactory.getLogger(WarmUp.class);
+
+    /** Enable/disable warm-up. */
+    @Value("${config.warmup.enabled:false}")
+    private boolean enabled;
+
+    /** Number of iterations per configuration and signature type. */
+    @Value("${config.warmup.iterations:20}")
+    private int iterations;
+
+    /** Size of the synthetic documents, in bytes. */
+    @Value("${config.warmup.size:10240}")
+    private int size;
+
+    /** The signature service. */
+    @Autowired
+    private ISignatureService signatureService;
+
+    /** The signature validation service. */
+    @Autowired
+    private ISignatureValidationService signatureValidationService;
+
+    /** The service ca crl. */
+    @Autowired
+    private ICACRLService serviceCaCrl;
+
+    /** The global conf. */
+    @Autowired
+    private IGlobalConf globalConf;
+
+    /** Warm-up completed. */
+    private volatile boolean done;
+
+    /**
+     * Lance la chauffe dans un thread dédié, le démarrage n'est pas bloqué.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        final Thread thread = new Thread(this::run, "warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Chauffe : signatures puis validations.
+     */
+    void run() {
+        final long start = System.nanoTime();
+        log.info("Chauffe du service : {} itérations par configuration", iterations);
+        try {
+            final Map<ESignatureType, byte[]> signed = new EnumMap<>(ESignatureType.class);
+            for (final SignatureConf signConf : globalConf.getSignature()) {
+                final SignatureParameters signParams = signConf.getSignParams();
+                if (signParams != null) {
+                    for (final ESignatureType type : ESignatureType.values()) {
+                        final byte[] doc = sign(signConf.getIdSignConf(), signParams, type);
+                        if (doc != null) {
+                            signed.put(type, doc);
+                        }
+                    }
+                }
+            }
+            for (final SignVerifConf verifConf : globalConf.getSignatureVerification()) {
+                final SignatureValidationParameters verifParams = verifConf.getSignVerifParams();
+                if (verifParams != null) {
+                    for (final Map.Entry<ESignatureType, byte[]> doc : signed.entrySet()) {
+                        validate(verifConf.getIdVerifSign(), verifParams, doc.getKey(), doc.getValue());
+                    }
+                }
+            }
+        } catch (final RuntimeException e) {
+            log.error(ExceptionUtils.getStackTrace(e));
+        } finally {
+            done = true;
+            log.info("Chauffe du service terminée en {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Signe un document synthétique "iterations" fois.
+     *
+     * @param id         the id sign conf
+     * @param signParams the sign params
+     * @param type       the signature type
+     * @return the last signed document, null on error
+     */
+    private byte[] sign(final String id, final SignatureParameters signParams, final ESignatureType type) {
+        final byte[] doc = ESignatureType.PADES.equals(type) ? SyntheticDocuments.pdf(size)
+                : SyntheticDocuments.xml(size);
+        byte[] signed = null;
+        try {
+            for (int i = 0; i < iterations; i++) {
+                final RapportSignature rapportSignature;
+                if (ESignatureType.XADES.equals(type)) {
+                    rapportSignature = signatureService.signXADESBaselineB(doc, signParams);
+                } else if (ESignatureType.PADES.equals(type)) {
+                    rapportSignature = signatureService.signPADESBaselineB(doc, signParams);
+                } else {
+                    rapportSignature = signatureService.signXMLDsig(doc, signParams);
+                }
+                signed = rapportSignature.getDocSigneBytes();
+            }
+        } catch (final AsipSignException e) {
+            log.warn("Chauffe : échec de la signature {} avec la configuration {} : {}", type, id,
+                    e.getMessage());
+            signed = null;
+        }
+        return signed;
+    }
+
+    /**
+     * Valide un document signé "iterations" fois.
+     *
+     * @param id          the id verif sign conf
+     * @param verifParams the verif params
+     * @param type        the signature type
+     * @param doc         the signed document
+     */
+    private void validate(final String id, final SignatureValidationParameters verifParams,
+            final ESignatureType type, final byte[] doc) {
+        try {
+            for (int i = 0; i < iterations; i++) {
+                if (ESignatureType.XADES.equals(type)) {
+                    signatureValidationService.validateXADESBaseLineBSignature(doc, verifParams,
+                            serviceCaCrl.getCacrlWrapper());
+                } else if (ESignatureType.PADES.equals(type)) {
+                    signatureValidationService.validatePADESBaseLineBSignature(doc, verifParams,
+                            serviceCaCrl.getCacrlWrapper());
+                } else {
+                    signatureValidationService.validateXMLDsigSignature(doc, verifParams,
+                            serviceCaCrl.getCacrlWrapper());
+                }
+            }
+        } catch (final AsipSignException e) {
+            log.warn("Chauffe : échec de la validation {} avec la configuration {} : {}", type, id,
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Checks if the service is warmed up.
+     *
+     * @return true if warm-up is disabled or completed
+     */
+    public boolean isDone() {
+        return !enabled || done;
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.warmup;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Indicateur de santé "warmUp" : DOWN tant que la chauffe du service n'est
+ * pas terminée. Inclus dans le groupe readiness, il évite qu'une instance
+ * fraîchement déployée reçoive du trafic avec un JIT encore froid.
+ */
+@Component
+public class WarmUpHealthIndicator implements HealthIndicator {
+
+    /** The warm up. */
+    @Autowired
+    private WarmUp warmUp;
+
+    @Override
+    public Health health() {
+        return warmUp.isDone() ? Health.up().build() : Health.down().withDetail("warmUp", "in progress").build();
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+/**
+ * Chauffe du service au démarrage, avant de le déclarer prêt.
+ */
+package fr.asipsante.api.sign.ws.warmup;
@@ -0,0 +1,111 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.admission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The Class AuthenticationThrottleTest.
+ */
+public class AuthenticationThrottleTest {
+
+    /** The throttle. */
+    private AuthenticationThrottle throttle;
+
+    /** The meter registry. */
+    private SimpleMeterRegistry meterRegistry;
+
+    /**
+     * Init.
+     */
+    @Before
+    public void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        throttle = new AuthenticationThrottle();
+        ReflectionTestUtils.setField(throttle, "enabled", true);
+        ReflectionTestUtils.setField(throttle, "capacity", 3);
+        ReflectionTestUtils.setField(throttle, "interval", 60000L);
+        ReflectionTestUtils.setField(throttle, "slots", 1024);
+        ReflectionTestUtils.setField(throttle, "meterRegistry", meterRegistry);
+        throttle.init();
+    }
+
+    /**
+     * Le client est rejeté après "capacity" échecs.
+     */
+    @Test
+    public void throttledAfterCapacityTest() {
+        for (int i = 0; i < 3; i++) {
+            assertFalse(throttle.isThrottled("10.0.0.1", 1L));
+            throttle.recordFailure("10.0.0.1", 1L);
+        }
+        assertTrue(throttle.isThrottled("10.0.0.1", 1L));
+        assertFalse("Une autre configuration ne doit pas être impactée", throttle.isThrottled("10.0.0.1", 2L));
+        assertEquals(1.0, meterRegistry.counter("esignsante.auth.throttled").count(), 0);
+        assertEquals(3.0, meterRegistry.counter("esignsante.auth.failures").count(), 0);
+    }
+
+    /**
+     * Un secret correct rend l'essai réservé.
+     */
+    @Test
+    public void successTest() {
+        for (int i = 0; i < 10; i++) {
+            assertFalse(throttle.isThrottled("10.0.0.1", 1L));
+            throttle.recordSuccess("10.0.0.1", 1L);
+        }
+        assertEquals(0.0, meterRegistry.counter("esignsante.auth.throttled").count(), 0);
+    }
+
+    /**
+     * Des requêtes parallèles ne réservent pas plus de "capacity" essais, et
+     * les requêtes rejetées ne prolongent pas le blocage.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void concurrentTest() throws Exception {
+        final ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            final List<Callable<Boolean>> attempts = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                attempts.add(() -> throttle.isThrottled("10.0.0.1", 1L));
+            }
+            int allowed = 0;
+            for (final Future<Boolean> attempt : clients.invokeAll(attempts)) {
+                if (!attempt.get()) {
+                    allowed++;
+                }
+            }
+            assertEquals(3, allowed);
+        } finally {
+            clients.shutdownNow();
+        }
+        final AtomicLongArray buckets = (AtomicLongArray) ReflectionTestUtils.getField(throttle, "buckets");
+        final long origin = (long) ReflectionTestUtils.getField(throttle, "origin");
+        long max = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            max = Math.max(max, buckets.get(i));
+        }
+        assertTrue(max - (System.nanoTime() - origin) <= TimeUnit.MILLISECONDS.toNanos(3 * 60000L));
+    }
+}
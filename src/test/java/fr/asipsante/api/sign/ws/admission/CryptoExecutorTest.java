@@ -0,0 +1,191 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.admission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import fr.asipsante.api.sign.ws.job.JobManager;
+import fr.asipsante.api.sign.ws.util.ESignatureType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The Class CryptoExecutorTest.
+ */
+public class CryptoExecutorTest {
+
+    /** The executor. */
+    private CryptoExecutor executor;
+
+    /** The meter registry. */
+    private SimpleMeterRegistry meterRegistry;
+
+    /**
+     * Init: one thread and one queued request per lane.
+     */
+    @Before
+    public void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = new CryptoExecutor();
+        ReflectionTestUtils.setField(executor, "enabled", true);
+        ReflectionTestUtils.setField(executor, "threads", 1);
+        ReflectionTestUtils.setField(executor, "queueSize", 1);
+        ReflectionTestUtils.setField(executor, "heavyThreads", 1);
+        ReflectionTestUtils.setField(executor, "heavyQueueSize", 1);
+        ReflectionTestUtils.setField(executor, "heavySize", 1000L);
+        ReflectionTestUtils.setField(executor, "heavyPadesSize", 100L);
+        ReflectionTestUtils.setField(executor, "retryAfter", 2L);
+        ReflectionTestUtils.setField(executor, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(executor, "memoryBudget", new MemoryBudget());
+        ReflectionTestUtils.setField(executor, "jobManager", new JobManager());
+        final XmlPrescreen xmlPrescreen = new XmlPrescreen();
+        ReflectionTestUtils.setField(xmlPrescreen, "enabled", true);
+        ReflectionTestUtils.setField(xmlPrescreen, "maxDepth", 16);
+        ReflectionTestUtils.setField(xmlPrescreen, "maxAttributes", 16);
+        ReflectionTestUtils.setField(xmlPrescreen, "maxElements", 1000L);
+        ReflectionTestUtils.setField(xmlPrescreen, "meterRegistry", meterRegistry);
+        xmlPrescreen.init();
+        ReflectionTestUtils.setField(executor, "xmlPrescreen", xmlPrescreen);
+        executor.init();
+    }
+
+    /**
+     * Shutdown.
+     */
+    @After
+    public void shutdown() {
+        executor.shutdown();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    /**
+     * The request context is visible from the worker thread.
+     */
+    @Test
+    public void requestContextTest() {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        final ResponseEntity<String> re = executor.execute(() -> ResponseEntity.ok(
+                ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest()
+                        .getRemoteAddr()));
+        assertEquals(HttpStatus.OK, re.getStatusCode());
+        assertEquals("10.0.0.1", re.getBody());
+        assertEquals(1, meterRegistry.get("esignsante.executor.wait").tag("lane", "light").timer().count());
+    }
+
+    /**
+     * Lane classification by signature type and document size.
+     */
+    @Test
+    public void laneTest() {
+        assertFalse(executor.isHeavy(ESignatureType.XMLDSIG, 999));
+        assertTrue(executor.isHeavy(ESignatureType.XADES, 1000));
+        assertFalse(executor.isHeavy(ESignatureType.PADES, 99));
+        assertTrue(executor.isHeavy(ESignatureType.PADES, 100));
+        assertFalse(executor.isHeavy(null, 999));
+    }
+
+    /**
+     * Light queue full: 503 with Retry-After, the heavy lane is still served.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void queueFullTest() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            final Future<ResponseEntity<String>> running = clients.submit(() -> executor.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ResponseEntity.ok("running");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            final Future<ResponseEntity<String>> queued = clients
+                    .submit(() -> executor.execute(() -> ResponseEntity.ok("queued")));
+            while (meterRegistry.get("esignsante.executor.queue").tag("lane", "light").gauge().value() < 1) {
+                Thread.sleep(10);
+            }
+
+            final ResponseEntity<String> rejected = executor.execute(() -> ResponseEntity.ok("rejected"));
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getStatusCode());
+            assertEquals("2", rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+            assertEquals(1.0, meterRegistry.get("esignsante.executor.rejected").tag("lane", "light").counter().count(), 0.0);
+
+            final ResponseEntity<String> heavy = executor.execute(ESignatureType.PADES,
+                    new MockMultipartFile("file", new byte[100]), d -> ResponseEntity.ok("heavy"));
+            assertEquals("heavy", heavy.getBody());
+
+            release.countDown();
+            assertEquals("running", running.get(5, TimeUnit.SECONDS).getBody());
+            assertEquals("queued", queued.get(5, TimeUnit.SECONDS).getBody());
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+        }
+    }
+
+    /**
+     * XML documents rejected by the pre-screening before being queued, other
+     * documents not pre-screened.
+     */
+    @Test
+    public void prescreenTest() {
+        final ResponseEntity<String> malformed = executor.execute(ESignatureType.XMLDSIG,
+                new MockMultipartFile("file", "pas du XML".getBytes(StandardCharsets.UTF_8)),
+                d -> ResponseEntity.ok("signed"));
+        assertEquals(HttpStatus.NOT_IMPLEMENTED, malformed.getStatusCode());
+        final String deepXml = String.join("", Collections.nCopies(17, "<a>"))
+                + String.join("", Collections.nCopies(17, "</a>"));
+        final ResponseEntity<String> deep = executor.execute(ESignatureType.XADES,
+                new MockMultipartFile("file", deepXml.getBytes(StandardCharsets.UTF_8)),
+                d -> ResponseEntity.ok("signed"));
+        assertEquals(HttpStatus.BAD_REQUEST, deep.getStatusCode());
+        assertEquals(0, meterRegistry.get("esignsante.executor.wait").tag("lane", "light").timer().count());
+
+        final ResponseEntity<String> signed = executor.execute(ESignatureType.XADES,
+                new MockMultipartFile("file", "<a><b/></a>".getBytes(StandardCharsets.UTF_8)),
+                d -> ResponseEntity.ok("signed"));
+        assertEquals("signed", signed.getBody());
+        // PAdES : document non pré-analysé
+        assertEquals("signed", executor.execute(ESignatureType.PADES, new MockMultipartFile("file", new byte[10]),
+                d -> ResponseEntity.ok("signed")).getBody());
+        // signature enveloppante : tout type de document
+        assertEquals("signed", executor.execute(ESignatureType.XMLDSIG,
+                new MockMultipartFile("file", "pas du XML".getBytes(StandardCharsets.UTF_8)), null,
+                d -> ResponseEntity.ok("signed")).getBody());
+        // élément à signer absent
+        assertEquals(HttpStatus.BAD_REQUEST, executor.execute(ESignatureType.XADES,
+                new MockMultipartFile("file", "<a><b/></a>".getBytes(StandardCharsets.UTF_8)),
+                Collections.singleton("c"), d -> ResponseEntity.ok("signed")).getStatusCode());
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.admission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * The Class GradientLimitTest.
+ */
+public class GradientLimitTest {
+
+    /** Latence de référence, en nanosecondes. */
+    private static final long RTT = 10000000L;
+
+    /**
+     * Requests over the limit are rejected.
+     */
+    @Test
+    public void acquireTest() {
+        final GradientLimit limit = new GradientLimit(2, 1, 10, 1.5, 0.2, 100);
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+        assertEquals(2, limit.getInflight());
+        limit.release();
+        assertTrue(limit.tryAcquire());
+    }
+
+    /**
+     * Stable latency at full load: the limit grows up to the maximum.
+     */
+    @Test
+    public void growTest() {
+        final GradientLimit limit = new GradientLimit(4, 1, 20, 1.5, 0.2, 100);
+        for (int i = 0; i < 200; i++) {
+            saturate(limit);
+            release(limit, RTT);
+        }
+        assertEquals(20, limit.getLimit());
+    }
+
+    /**
+     * Degraded latency: the limit shrinks.
+     */
+    @Test
+    public void shrinkTest() {
+        final GradientLimit limit = new GradientLimit(20, 2, 20, 1.5, 0.2, 1000);
+        for (int i = 0; i < 50; i++) {
+            saturate(limit);
+            release(limit, RTT);
+        }
+        assertEquals(20, limit.getLimit());
+        for (int i = 0; i < 10; i++) {
+            saturate(limit);
+            release(limit, RTT * 10);
+        }
+        assertTrue(limit.getLimit() <= 5);
+    }
+
+    /**
+     * Light load: the limit does not move.
+     */
+    @Test
+    public void appLimitedTest() {
+        final GradientLimit limit = new GradientLimit(10, 1, 20, 1.5, 0.2, 100);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.release(RTT * (i % 2 == 0 ? 1 : 10));
+        }
+        assertEquals(10, limit.getLimit());
+    }
+
+    /**
+     * Acquires up to the limit.
+     *
+     * @param limit the limit
+     */
+    private static void saturate(final GradientLimit limit) {
+        while (limit.tryAcquire()) {
+            // jusqu'à la limite
+        }
+    }
+
+    /**
+     * Releases all requests in flight with the given latency.
+     *
+     * @param limit the limit
+     * @param rtt   the latency
+     */
+    private static void release(final GradientLimit limit, final long rtt) {
+        while (limit.getInflight() > 0) {
+            limit.release(rtt);
+        }
+    }
+}
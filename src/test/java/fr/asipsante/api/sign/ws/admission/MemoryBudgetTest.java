@@ -0,0 +1,111 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.admission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import fr.asipsante.api.sign.ws.util.ESignatureType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The Class MemoryBudgetTest.
+ */
+public class MemoryBudgetTest {
+
+    /** 1 Mo. */
+    private static final long MB = 1024L * 1024L;
+
+    /** The memory budget. */
+    private MemoryBudget memoryBudget;
+
+    /** The meter registry. */
+    private SimpleMeterRegistry meterRegistry;
+
+    /**
+     * Init: 100 MB budget, no wait, no fixed overhead.
+     */
+    @Before
+    public void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        memoryBudget = new MemoryBudget();
+        ReflectionTestUtils.setField(memoryBudget, "enabled", true);
+        ReflectionTestUtils.setField(memoryBudget, "budget", 100 * MB);
+        ReflectionTestUtils.setField(memoryBudget, "maxWait", 0L);
+        ReflectionTestUtils.setField(memoryBudget, "xmlFactor", 10.0);
+        ReflectionTestUtils.setField(memoryBudget, "padesFactor", 6.0);
+        ReflectionTestUtils.setField(memoryBudget, "certificateFactor", 2.0);
+        ReflectionTestUtils.setField(memoryBudget, "overhead", 0L);
+        ReflectionTestUtils.setField(memoryBudget, "meterRegistry", meterRegistry);
+        memoryBudget.init();
+    }
+
+    /**
+     * Estimate by signature type.
+     */
+    @Test
+    public void estimateTest() {
+        assertEquals(10 * MB, memoryBudget.estimate(ESignatureType.XADES, MB));
+        assertEquals(6 * MB, memoryBudget.estimate(ESignatureType.PADES, MB));
+        assertEquals(2 * MB, memoryBudget.estimate(null, MB));
+    }
+
+    /**
+     * Requests that do not fit are rejected until the budget is released.
+     */
+    @Test
+    public void reserveTest() {
+        final int pdf = memoryBudget.reserve(ESignatureType.PADES, 10 * MB);
+        assertTrue(pdf > 0);
+        assertEquals(60.0 * MB, meterRegistry.get("esignsante.memory.reserved").gauge().value(), MB);
+
+        assertEquals(-1, memoryBudget.reserve(ESignatureType.XMLDSIG, 5 * MB));
+        assertEquals(1.0, meterRegistry.get("esignsante.memory.rejected").counter().count(), 0.0);
+
+        final int xml = memoryBudget.reserve(ESignatureType.XMLDSIG, 3 * MB);
+        assertTrue(xml > 0);
+        memoryBudget.release(pdf);
+        memoryBudget.release(xml);
+        assertEquals(0.0, meterRegistry.get("esignsante.memory.reserved").gauge().value(), 0.0);
+    }
+
+    /**
+     * Footprint measured by the XML pre-screening.
+     */
+    @Test
+    public void footprintTest() {
+        final int xml = memoryBudget.reserveFootprint(40 * MB, MB);
+        assertEquals(40.0 * MB, meterRegistry.get("esignsante.memory.reserved").gauge().value(), MB);
+        assertEquals(-1, memoryBudget.reserveFootprint(70 * MB, MB));
+        memoryBudget.release(xml);
+        assertEquals(0, new MemoryBudget().reserveFootprint(70 * MB, MB));
+    }
+
+    /**
+     * A request larger than the budget runs alone.
+     */
+    @Test
+    public void oversizedTest() {
+        final int reserved = memoryBudget.reserve(ESignatureType.PADES, 200 * MB);
+        assertTrue(reserved > 0);
+        assertEquals(-1, memoryBudget.reserve(null, 1));
+        memoryBudget.release(reserved);
+        assertTrue(memoryBudget.reserve(null, 1) > 0);
+    }
+
+    /**
+     * Disabled budget: nothing reserved.
+     */
+    @Test
+    public void disabledTest() {
+        final MemoryBudget disabled = new MemoryBudget();
+        assertEquals(0, disabled.reserve(ESignatureType.PADES, 200 * MB));
+        disabled.release(0);
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.admission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The Class XmlPrescreenTest.
+ */
+public class XmlPrescreenTest {
+
+    /** Document de test. */
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<ns:TOMF xmlns:ns=\"urn:test\" Version=\"1.0\"><ns:Demandeur Type=\"3\"><Id>1</Id></ns:Demandeur>"
+            + "<ns:DONNEES/></ns:TOMF>";
+
+    /** The meter registry. */
+    private MeterRegistry meterRegistry;
+
+    /** The pre-screening. */
+    private XmlPrescreen prescreen;
+
+    /**
+     * Init.
+     */
+    @Before
+    public void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        prescreen = new XmlPrescreen();
+        ReflectionTestUtils.setField(prescreen, "enabled", true);
+        ReflectionTestUtils.setField(prescreen, "maxDepth", 3);
+        ReflectionTestUtils.setField(prescreen, "maxAttributes", 2);
+        ReflectionTestUtils.setField(prescreen, "maxElements", 10L);
+        ReflectionTestUtils.setField(prescreen, "elementCost", 100L);
+        ReflectionTestUtils.setField(prescreen, "attributeCost", 10L);
+        ReflectionTestUtils.setField(prescreen, "meterRegistry", meterRegistry);
+        prescreen.init();
+    }
+
+    /**
+     * Statistiques et estimation de l'empreinte mémoire.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void scanTest() throws Exception {
+        final XmlPrescreen.Result result = prescreen.scan(stream(XML), Collections.emptySet());
+        assertEquals(4, result.getElements());
+        // les déclarations d'espace de noms ne sont pas des attributs
+        assertEquals(2, result.getAttributes());
+        assertEquals(3, result.getDepth());
+        assertEquals(1000 * 3 + 4 * 100 + 2 * 10, prescreen.estimate(result, 1000));
+        assertEquals(1, meterRegistry.get("esignsante.xml.prescreen").timer().count());
+    }
+
+    /**
+     * Éléments à signer et d'insertion de la signature, par nom local ou
+     * préfixé.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void targetTest() throws Exception {
+        prescreen.scan(stream(XML), Arrays.asList("Demandeur", "ns:DONNEES"));
+        assertRejected(XML, HttpStatus.BAD_REQUEST, "target", "Demandeur", "Absent");
+    }
+
+    /**
+     * Documents refusés : mal formé (501), limites dépassées (400).
+     */
+    @Test
+    public void rejectedTest() {
+        assertRejected("Ceci n'est pas un document XML", HttpStatus.NOT_IMPLEMENTED, "malformed");
+        assertRejected("<a><b></a>", HttpStatus.NOT_IMPLEMENTED, "malformed");
+        assertRejected("", HttpStatus.NOT_IMPLEMENTED, "malformed");
+        assertRejected("<a><b><c><d/></c></b></a>", HttpStatus.BAD_REQUEST, "depth");
+        assertRejected("<a x=\"1\" y=\"2\" z=\"3\"/>", HttpStatus.BAD_REQUEST, "attributes");
+        assertRejected("<a>" + String.join("", Collections.nCopies(10, "<b/>")) + "</a>", HttpStatus.BAD_REQUEST,
+                "elements");
+        assertEquals(3.0, meterRegistry.get("esignsante.xml.rejected").tag("reason", "malformed").counter().count(),
+                0.0);
+    }
+
+    /**
+     * Les entités externes ne sont pas résolues.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void externalEntityTest() throws Exception {
+        final String xxe = "<?xml version=\"1.0\"?><!DOCTYPE a SYSTEM \"http://localhost:1/a.dtd\" "
+                + "[<!ENTITY e SYSTEM \"file:///etc/passwd\">]><a>&e;</a>";
+        assertEquals(1, prescreen.scan(stream(xxe), Collections.emptySet()).getElements());
+    }
+
+    /**
+     * Vérifie le refus d'un document.
+     *
+     * @param xml     the document
+     * @param status  the expected status
+     * @param reason  the expected reason
+     * @param targets the targets
+     */
+    private void assertRejected(final String xml, final HttpStatus status, final String reason,
+            final String... targets) {
+        try {
+            prescreen.scan(stream(xml), Arrays.asList(targets));
+            fail("Document accepté : " + xml);
+        } catch (final XmlPrescreen.RejectedException e) {
+            assertEquals(status, e.getStatus());
+            assertNotNull(meterRegistry.find("esignsante.xml.rejected").tag("reason", reason).counter());
+        }
+    }
+
+    /**
+     * Document stream.
+     *
+     * @param xml the document
+     * @return the stream
+     */
+    private static ByteArrayInputStream stream(final String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.api.requests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import fr.asipsante.api.sign.config.CACRLConfig;
+import fr.asipsante.api.sign.config.ScheduledConfig;
+import fr.asipsante.api.sign.config.WebConfig;
+import fr.asipsante.api.sign.config.provider.impl.ESignSanteSanteConfigurationsJson;
+
+/**
+ * Documents signés conservés (en-tête "Prefer: return=minimal") : adresse de
+ * téléchargement dans le rapport, téléchargement complet et partiel.
+ */
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { ESignSanteSanteConfigurationsJson.class, CACRLConfig.class, ScheduledConfig.class,
+        WebConfig.class })
+@SpringBootTest
+@AutoConfigureMockMvc
+@ComponentScan("fr.asipsante.api.sign.ws.api")
+@TestPropertySource(properties = { "config.uploads.enabled=true", "config.jobs.enabled=true",
+        "config.documents.enabled=true" })
+public class DocumentsApiIntegrationTest {
+
+    /** The mock mvc. */
+    @Autowired
+    private MockMvc mockMvc;
+
+    /** The xml. */
+    private MockMultipartFile xml;
+
+    static {
+        final String confPath;
+        try {
+            confPath = String.valueOf(Paths.get(Paths.get(Objects.requireNonNull(Thread.currentThread().
+                    getContextClassLoader().getResource("esignsante-conf.json")).toURI()).toString()));
+            System.setProperty("ws.conf", confPath);
+        } catch (final URISyntaxException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Inits the.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void init() throws Exception {
+        xml = new MockMultipartFile("file", "Fichier_TOMWS2_SANS_SIGNATURE_ISO-8859-15.xml", null,
+                Thread.currentThread().getContextClassLoader()
+                        .getResourceAsStream("Fichier_TOMWS2_SANS_SIGNATURE_ISO-8859-15.xml"));
+        assertNotNull("Le fichier n'a pas été lu.", xml);
+    }
+
+    /**
+     * Cas passant : le rapport donne l'adresse du document signé, téléchargé
+     * en entier puis en partie ; un intervalle hors du document est refusé
+     * (416).
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void signatureReturnMinimalTest() throws Exception {
+        final MvcResult signed = mockMvc.perform(MockMvcRequestBuilders.multipart("/signatures/xmldsig").file(xml)
+                .param("secret", "123456").param("idSignConf", "1").header("Prefer", "return=minimal")
+                .accept("application/json")).andExpect(status().isOk()).andDo(print()).andReturn();
+        final JSONObject body = new JSONObject(signed.getResponse().getContentAsString());
+        assertEquals("La Liste des erreurs n'est pas vide", 0, body.getJSONArray("erreurs").length());
+        assertFalse("Le document signé est dans le rapport", body.has("docSigne"));
+        final String url = body.getString("docSigneUrl");
+        final String document = url.substring(url.indexOf("/documents/"));
+
+        final MvcResult full = mockMvc.perform(MockMvcRequestBuilders.get(document))
+                .andExpect(status().isOk()).andReturn();
+        final byte[] content = full.getResponse().getContentAsByteArray();
+        assertNotNull(full.getResponse().getHeader(HttpHeaders.ETAG));
+
+        final MvcResult partial = mockMvc.perform(MockMvcRequestBuilders.get(document)
+                .header(HttpHeaders.RANGE, "bytes=10-"))
+                .andExpect(status().isPartialContent()).andReturn();
+        assertEquals("bytes 10-" + (content.length - 1) + "/" + content.length,
+                partial.getResponse().getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(Arrays.toString(Arrays.copyOfRange(content, 10, content.length)),
+                Arrays.toString(partial.getResponse().getContentAsByteArray()));
+
+        final MvcResult outside = mockMvc.perform(MockMvcRequestBuilders.get(document)
+                .header(HttpHeaders.RANGE, "bytes=" + content.length + "-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable()).andReturn();
+        assertEquals("bytes */" + content.length, outside.getResponse().getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    /**
+     * Cas non passant : document inconnu.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void unknownDocumentTest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/documents/{id}", "inconnu"))
+                .andExpect(status().isNotFound()).andDo(print());
+    }
+}
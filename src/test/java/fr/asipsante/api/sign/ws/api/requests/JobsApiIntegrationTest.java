@@ -0,0 +1,154 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.api.requests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import fr.asipsante.api.sign.config.CACRLConfig;
+import fr.asipsante.api.sign.config.ScheduledConfig;
+import fr.asipsante.api.sign.config.WebConfig;
+import fr.asipsante.api.sign.config.provider.impl.ESignSanteSanteConfigurationsJson;
+
+/**
+ * Traitements asynchrones (en-tête "Prefer: respond-async") : réponse 202,
+ * suivi du traitement et lecture de son résultat.
+ */
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { ESignSanteSanteConfigurationsJson.class, CACRLConfig.class, ScheduledConfig.class,
+        WebConfig.class })
+@SpringBootTest
+@AutoConfigureMockMvc
+@ComponentScan("fr.asipsante.api.sign.ws.api")
+@TestPropertySource(properties = { "config.uploads.enabled=true", "config.jobs.enabled=true",
+        "config.documents.enabled=true" })
+public class JobsApiIntegrationTest {
+
+    /** Nombre maximal d'interrogations d'un traitement. */
+    private static final int POLL_MAX = 300;
+
+    /** Délai entre deux interrogations, en ms. */
+    private static final long POLL_DELAY = 100;
+
+    /** The mock mvc. */
+    @Autowired
+    private MockMvc mockMvc;
+
+    /** The xml. */
+    private MockMultipartFile xml;
+
+    static {
+        final String confPath;
+        try {
+            confPath = String.valueOf(Paths.get(Paths.get(Objects.requireNonNull(Thread.currentThread().
+                    getContextClassLoader().getResource("esignsante-conf.json")).toURI()).toString()));
+            System.setProperty("ws.conf", confPath);
+        } catch (final URISyntaxException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Inits the.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void init() throws Exception {
+        xml = new MockMultipartFile("file", "Fichier_TOMWS2_SANS_SIGNATURE_ISO-8859-15.xml", null,
+                Thread.currentThread().getContextClassLoader()
+                        .getResourceAsStream("Fichier_TOMWS2_SANS_SIGNATURE_ISO-8859-15.xml"));
+        assertNotNull("Le fichier n'a pas été lu.", xml);
+    }
+
+    /**
+     * Cas passant : signature asynchrone, suivi du traitement puis lecture du
+     * rapport de signature.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void signatureAsyncTest() throws Exception {
+        final MvcResult accepted = mockMvc.perform(MockMvcRequestBuilders.multipart("/signatures/xmldsig").file(xml)
+                .param("secret", "123456").param("idSignConf", "1").header("Prefer", "respond-async")
+                .accept("application/json")).andExpect(status().isAccepted()).andDo(print()).andReturn();
+        final String location = accepted.getResponse().getHeader(HttpHeaders.LOCATION);
+        assertNotNull("L'en-tête Location est absent", location);
+        final String job = location.substring(location.indexOf("/jobs/"));
+
+        JSONObject state = null;
+        for (int i = 0; i < POLL_MAX && (state == null || !state.has("httpStatus")); i++) {
+            if (state != null) {
+                Thread.sleep(POLL_DELAY);
+            }
+            final MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(job).accept("application/json"))
+                    .andExpect(status().isOk()).andReturn();
+            state = new JSONObject(result.getResponse().getContentAsString());
+        }
+        assertNotNull(state);
+        assertTrue("Le traitement n'est pas terminé", state.has("httpStatus"));
+        assertEquals("DONE", state.getString("status"));
+        assertEquals(200, state.getInt("httpStatus"));
+
+        final MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(job + "/result")
+                .accept("application/json")).andExpect(status().isOk()).andDo(print()).andReturn();
+        final JSONObject body = new JSONObject(result.getResponse().getContentAsString());
+        assertEquals("La Liste des erreurs n'est pas vide", 0, body.getJSONArray("erreurs").length());
+        assertTrue("Le document signé est absent", body.has("docSigne"));
+    }
+
+    /**
+     * Cas non passant : les contrôles de la requête sont faits avant la
+     * soumission du traitement (secret incorrect, configuration inconnue).
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void asyncRequestCheckedTest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/signatures/xmldsig").file(xml)
+                .param("secret", "wrongSecret").param("idSignConf", "1").header("Prefer", "respond-async")
+                .accept("application/json")).andExpect(status().isUnauthorized()).andDo(print());
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/validation/signatures/xmldsig").file(xml)
+                .param("idVerifSignConf", "99").header("Prefer", "respond-async").accept("application/json"))
+                .andExpect(status().isNotFound()).andDo(print());
+    }
+
+    /**
+     * Cas non passant : traitement inconnu.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void unknownJobTest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/jobs/{id}", "inconnu").accept("application/json"))
+                .andExpect(status().isNotFound()).andDo(print());
+        mockMvc.perform(MockMvcRequestBuilders.get("/jobs/{id}/result", "inconnu").accept("application/json"))
+                .andExpect(status().isNotFound()).andDo(print());
+    }
+}
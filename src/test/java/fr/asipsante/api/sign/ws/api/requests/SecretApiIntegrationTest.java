@@ -86,4 +86,24 @@ public class SecretApiIntegrationTest {
         assertTrue("Should have 'secureSecretHash' as the first json object", result.getResponse().getContentAsString().startsWith("{\"secureSecretHash\":"));
     }
 
+    /**
+     * Secret generation with an out of range bcrypt cost.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void secretGenCostTest() throws Exception {
+        final Secret secret = new Secret();
+        secret.setPlainSecret("password");
+        secret.setAlgorithm("bcrypt");
+        secret.setCost(31);
+
+        final ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(SerializationFeature.WRAP_ROOT_VALUE, false);
+        final String requestJson = mapper.writer().writeValueAsString(secret);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/secrets").contentType(APPLICATION_JSON_UTF8)
+                .content(requestJson)).andExpect(status().isBadRequest()).andDo(print());
+    }
+
 }
@@ -24,7 +24,10 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Base64;
 import java.util.Objects;
 
 import static org.junit.Assert.*;
@@ -277,6 +280,39 @@ public class SignatureApiIntegrationTest {
         assertEquals("Toutes les données attendus en réponse ne sont pas retrouvées", 2, body.names().length());
     }
     
+    /**
+     * Cas passant signature XADES détachée à partir de l'empreinte du document.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void signatureXadesDetachedTest() throws Exception {
+        final String hash = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-512").digest(xml.getBytes()));
+        final MvcResult result = mockMvc.perform(MockMvcRequestBuilders.multipart("/signatures/xadesbaselineb/detached")
+                .param("hash", hash).param("fileName", "document.xml").param("mimeType", "text/xml")
+                .param("secret", "123456").param("idSignConf", "1").accept("application/json"))
+                .andExpect(status().is2xxSuccessful()).andDo(print()).andReturn();
+
+        final JSONObject body = new JSONObject(result.getResponse().getContentAsString());
+        assertEquals("La Liste des erreurs n'est pas vide", 0, body.getJSONArray("erreurs").length());
+        final String signature = new String(Base64.getDecoder().decode(body.getString("docSigne")), StandardCharsets.UTF_8);
+        assertTrue("La signature ne référence pas le document", signature.contains("URI=\"document.xml\""));
+        assertTrue("La signature ne porte pas l'empreinte", signature.replaceAll("&#13;|\\s", "").contains(hash));
+    }
+
+    /**
+     * Cas non passant signature XADES détachée : empreinte de taille incorrecte.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void signatureXadesDetachedTestWrongHash() throws Exception {
+        final String hash = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(xml.getBytes()));
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/signatures/xadesbaselineb/detached")
+                .param("hash", hash).param("secret", "123456").param("idSignConf", "1").accept("application/json"))
+                .andExpect(status().isBadRequest()).andDo(print());
+    }
+
     /**
      * Cas passant signature PADES sans preuve.
      *
@@ -0,0 +1,135 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.api.requests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import fr.asipsante.api.sign.config.CACRLConfig;
+import fr.asipsante.api.sign.config.ScheduledConfig;
+import fr.asipsante.api.sign.config.WebConfig;
+import fr.asipsante.api.sign.config.provider.impl.ESignSanteSanteConfigurationsJson;
+
+/**
+ * Signature avec la pré-analyse XML activée : un document non XML est signé
+ * en signature enveloppante, refusé en signature enveloppée après les
+ * contrôles du secret.
+ */
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { ESignSanteSanteConfigurationsJson.class, CACRLConfig.class, ScheduledConfig.class,
+        WebConfig.class })
+@SpringBootTest
+@AutoConfigureMockMvc
+@ComponentScan("fr.asipsante.api.sign.ws.api")
+@TestPropertySource(properties = { "config.xml.enabled=true" })
+public class SignatureApiIntegrationTestXmlPrescreen {
+
+    /** The mock mvc. */
+    @Autowired
+    private MockMvc mockMvc;
+
+    /** The texte. */
+    private MockMultipartFile texte;
+
+    static {
+        final String confPath;
+        try {
+            confPath = String.valueOf(Paths.get(Paths.get(Objects.requireNonNull(Thread.currentThread().
+                    getContextClassLoader().getResource("esignsante-conf.json")).toURI()).toString()));
+            System.setProperty("ws.conf", confPath);
+        } catch (final URISyntaxException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Inits the.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void init() throws Exception {
+        texte = new MockMultipartFile("file", "toBeSigned.txt", null,
+                Thread.currentThread().getContextClassLoader().getResourceAsStream("toBeSigned.txt"));
+        assertNotNull("Le fichier n'a pas été lu.", texte);
+    }
+
+    /**
+     * Cas passant signature XMLDSIG enveloppante d'un fichier non XML.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void signatureXMLdsigEnvelopingTest() throws Exception {
+        final MvcResult result = mockMvc.perform(MockMvcRequestBuilders.multipart("/signatures/xmldsig").file(texte)
+                .param("secret", "123456").param("idSignConf", "1").accept("application/json"))
+                .andExpect(status().is2xxSuccessful()).andDo(print()).andReturn();
+
+        final JSONObject body = new JSONObject(result.getResponse().getContentAsString());
+        assertEquals("La Liste des erreurs n'est pas vide", 0, body.getJSONArray("erreurs").length());
+    }
+
+    /**
+     * Cas passant signature XADES enveloppante d'un fichier non XML.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void signatureXadesEnvelopingTest() throws Exception {
+        final MvcResult result = mockMvc.perform(MockMvcRequestBuilders.multipart("/signatures/xadesbaselineb")
+                .file(texte).param("secret", "123456").param("idSignConf", "1").accept("application/json"))
+                .andExpect(status().is2xxSuccessful()).andDo(print()).andReturn();
+
+        final JSONObject body = new JSONObject(result.getResponse().getContentAsString());
+        assertEquals("La Liste des erreurs n'est pas vide", 0, body.getJSONArray("erreurs").length());
+    }
+
+    /**
+     * Erreur 501. Signature enveloppée d'un fichier non XML, refusé par la
+     * pré-analyse.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void signatureXMLdsigEnvelopedTest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/signatures/xmldsig").file(texte)
+                .param("secret", "password").param("idSignConf", "3").accept("application/json"))
+                .andExpect(status().isNotImplemented()).andDo(print());
+    }
+
+    /**
+     * Erreur 401. Le secret est contrôlé avant la pré-analyse du document.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void signatureXMLdsigEnvelopedWrongSecretTest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/signatures/xmldsig").file(texte)
+                .param("secret", "wrongSecret").param("idSignConf", "3").accept("application/json"))
+                .andExpect(status().isUnauthorized()).andDo(print());
+    }
+}
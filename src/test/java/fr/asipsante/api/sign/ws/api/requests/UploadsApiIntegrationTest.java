@@ -0,0 +1,211 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.api.requests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import fr.asipsante.api.sign.config.CACRLConfig;
+import fr.asipsante.api.sign.config.ScheduledConfig;
+import fr.asipsante.api.sign.config.WebConfig;
+import fr.asipsante.api.sign.config.provider.impl.ESignSanteSanteConfigurationsJson;
+
+/**
+ * Téléversement par morceaux : authentification de la session, reprise après
+ * un morceau mal positionné et finalisation.
+ */
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { ESignSanteSanteConfigurationsJson.class, CACRLConfig.class, ScheduledConfig.class,
+        WebConfig.class })
+@SpringBootTest
+@AutoConfigureMockMvc
+@ComponentScan("fr.asipsante.api.sign.ws.api")
+@TestPropertySource(properties = { "config.uploads.enabled=true", "config.jobs.enabled=true",
+        "config.documents.enabled=true" })
+public class UploadsApiIntegrationTest {
+
+    /** The mock mvc. */
+    @Autowired
+    private MockMvc mockMvc;
+
+    /** The xml. */
+    private byte[] xml;
+
+    static {
+        final String confPath;
+        try {
+            confPath = String.valueOf(Paths.get(Paths.get(Objects.requireNonNull(Thread.currentThread().
+                    getContextClassLoader().getResource("esignsante-conf.json")).toURI()).toString()));
+            System.setProperty("ws.conf", confPath);
+        } catch (final URISyntaxException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Inits the.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void init() throws Exception {
+        final MockMultipartFile file = new MockMultipartFile("file", "Fichier_TOMWS2_SANS_SIGNATURE_ISO-8859-15.xml",
+                null, Thread.currentThread().getContextClassLoader()
+                        .getResourceAsStream("Fichier_TOMWS2_SANS_SIGNATURE_ISO-8859-15.xml"));
+        xml = file.getBytes();
+        assertNotNull("Le fichier n'a pas été lu.", xml);
+    }
+
+    /**
+     * Ouvre une session avec la configuration 1.
+     *
+     * @return the session id
+     * @throws Exception the exception
+     */
+    private String create() throws Exception {
+        final MvcResult result = mockMvc.perform(MockMvcRequestBuilders.multipart("/uploads")
+                .param("fileName", "Fichier_TOMWS2_SANS_SIGNATURE_ISO-8859-15.xml")
+                .param("size", String.valueOf(xml.length)).param("idSignConf", "1").param("secret", "123456")
+                .accept("application/json")).andExpect(status().isCreated()).andDo(print()).andReturn();
+        final JSONObject body = new JSONObject(result.getResponse().getContentAsString());
+        assertEquals("La session n'est pas liée à la configuration", 1, body.getLong("idSignConf"));
+        return body.getString("id");
+    }
+
+    /**
+     * Envoie un morceau du document.
+     *
+     * @param id    the session id
+     * @param start the first byte
+     * @param end   the last byte
+     * @return the result
+     * @throws Exception the exception
+     */
+    private MvcResult append(final String id, final int start, final int end) throws Exception {
+        return mockMvc.perform(MockMvcRequestBuilders.put("/uploads/{id}", id)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + xml.length)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM).content(Arrays.copyOfRange(xml, start, end + 1))
+                .accept("application/json")).andDo(print()).andReturn();
+    }
+
+    /**
+     * Cas non passant d'ouverture de session : secret incorrect ou configuration
+     * manquante alors que les secrets sont activés.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void createUploadUnauthorizedTest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/uploads").param("idSignConf", "1")
+                .param("secret", "wrongSecret").accept("application/json")).andExpect(status().isUnauthorized())
+                .andDo(print());
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/uploads").param("secret", "123456")
+                .accept("application/json")).andExpect(status().isBadRequest()).andDo(print());
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/uploads").param("idSignConf", "100")
+                .param("secret", "123456").accept("application/json")).andExpect(status().isNotFound())
+                .andDo(print());
+    }
+
+    /**
+     * Cas passant : envoi en deux morceaux, reprise après un morceau mal
+     * positionné (409), puis signature du document ; la session est ensuite
+     * supprimée.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void uploadResumeAndSignTest() throws Exception {
+        final String id = create();
+        final int half = xml.length / 2;
+
+        assertEquals(200, append(id, 0, half - 1).getResponse().getStatus());
+        // morceau suivant envoyé au-delà des octets reçus
+        final MvcResult conflict = append(id, half + 1, xml.length - 1);
+        assertEquals(409, conflict.getResponse().getStatus());
+        assertEquals("La position de reprise est incorrecte", half,
+                new JSONObject(conflict.getResponse().getContentAsString()).getLong("received"));
+        final MvcResult last = append(id, half, xml.length - 1);
+        assertEquals(200, last.getResponse().getStatus());
+        assertEquals(xml.length, new JSONObject(last.getResponse().getContentAsString()).getLong("received"));
+
+        final MvcResult result = mockMvc.perform(MockMvcRequestBuilders.multipart("/uploads/{id}/finalize", id)
+                .param("operation", "SIGN_XMLDSIG").param("idSignConf", "1").param("secret", "123456")
+                .accept("application/json")).andExpect(status().isOk()).andDo(print()).andReturn();
+        final JSONObject body = new JSONObject(result.getResponse().getContentAsString());
+        assertEquals("La Liste des erreurs n'est pas vide", 0, body.getJSONArray("erreurs").length());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/uploads/{id}", id).accept("application/json"))
+                .andExpect(status().isNotFound()).andDo(print());
+    }
+
+    /**
+     * Cas non passant de finalisation : une autre configuration est refusée,
+     * un secret incorrect conserve la session pour une nouvelle tentative.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void finalizeUploadRetryTest() throws Exception {
+        final String id = create();
+        assertEquals(200, append(id, 0, xml.length - 1).getResponse().getStatus());
+
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/uploads/{id}/finalize", id)
+                .param("operation", "SIGN_XMLDSIG").param("idSignConf", "3").param("secret", "password")
+                .accept("application/json")).andExpect(status().isForbidden()).andDo(print());
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/uploads/{id}/finalize", id)
+                .param("operation", "SIGN_XMLDSIG").param("idSignConf", "1").param("secret", "wrongSecret")
+                .accept("application/json")).andExpect(status().isUnauthorized()).andDo(print());
+        mockMvc.perform(MockMvcRequestBuilders.get("/uploads/{id}", id).accept("application/json"))
+                .andExpect(status().isOk()).andDo(print());
+
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/uploads/{id}/finalize", id)
+                .param("operation", "SIGN_XMLDSIG").param("idSignConf", "1").param("secret", "123456")
+                .accept("application/json")).andExpect(status().isOk()).andDo(print());
+        mockMvc.perform(MockMvcRequestBuilders.get("/uploads/{id}", id).accept("application/json"))
+                .andExpect(status().isNotFound()).andDo(print());
+    }
+
+    /**
+     * Cas non passant de finalisation d'un document incomplet (409).
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void finalizeIncompleteUploadTest() throws Exception {
+        final String id = create();
+        assertEquals(200, append(id, 0, 9).getResponse().getStatus());
+
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/uploads/{id}/finalize", id)
+                .param("operation", "SIGN_XMLDSIG").param("idSignConf", "1").param("secret", "123456")
+                .accept("application/json")).andExpect(status().isConflict()).andDo(print());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/uploads/{id}", id).accept("application/json"))
+                .andExpect(status().isNoContent()).andDo(print());
+    }
+}
@@ -13,6 +13,7 @@ import java.net.URISyntaxException;
 import java.nio.file.Paths;
 import java.util.Objects;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
@@ -36,7 +37,9 @@ import fr.asipsante.api.sign.config.CACRLConfig;
 import fr.asipsante.api.sign.config.ScheduledConfig;
 import fr.asipsante.api.sign.config.WebConfig;
 import fr.asipsante.api.sign.config.provider.impl.ESignSanteSanteConfigurationsJson;
+import fr.asipsante.api.sign.enums.MetaDataType;
 import fr.asipsante.api.sign.ws.model.OpenidToken;
+import fr.asipsante.api.sign.ws.util.MetadataSelection;
 
 /**
  * The Class ValidationApiIntegrationTest.
@@ -228,6 +231,26 @@ public class ValidationApiIntegrationTest {
 				.accept("application/json")).andExpect(status().isNotImplemented()).andDo(print());
 	}
 
+	/**
+	 * Cas non passant de validation avec une configuration inconnue : la
+	 * requête est refusée avant la lecture du document.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void verifSignUnknownConfTest() throws Exception {
+		doc = new MockMultipartFile("file", "TOM_FICHIER_bad.xml", null,
+				Thread.currentThread().getContextClassLoader().getResourceAsStream("TOM_FICHIER_bad.xml"));
+
+		mockMvc.perform(MockMvcRequestBuilders.multipart("/validation/signatures/xadesbaselineb").file(doc)
+				.param("idVerifSignConf", "99").accept("application/json")).andExpect(status().isNotFound())
+				.andDo(print());
+		mockMvc.perform(MockMvcRequestBuilders.multipart("/validation/signatures/xmldsigwithproof").file(doc)
+				.param("idVerifSignConf", "99").param("requestId", "Request-1").param("proofTag", "MonTAG")
+				.param("applicantId", "RPPS").param("idProofConf", "1").accept("application/json"))
+				.andExpect(status().isNotFound()).andDo(print());
+	}
+
 	/**
 	 * Cas non passant validation XMLDSIG document altéré.
 	 *
@@ -391,4 +414,36 @@ public class ValidationApiIntegrationTest {
 		assertTrue("Le code erreur attendu n'est pas le bon",
 				body.getJSONArray("erreurs").get(0).toString().endsWith("\"codeErreur\":\"ERCERT04\"}"));
 	}
+
+	/**
+	 * Sélection des métadonnées du rapport par l'en-tête X-Metadata.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void verifSignXadesMetadataTest() throws Exception {
+		MvcResult result = mockMvc
+				.perform(MockMvcRequestBuilders.multipart("/validation/signatures/xadesbaselineb").file(doc)
+						.param("idVerifSignConf", "1").header(MetadataSelection.HEADER, "DN_CERTIFICAT")
+						.accept("application/json"))
+				.andExpect(status().isOk()).andDo(print()).andReturn();
+		JSONObject body = new JSONObject(result.getResponse().getContentAsString());
+		final JSONArray metadata = body.getJSONArray("metaData");
+		assertEquals("Seul le DN du certificat est attendu", 1, metadata.length());
+		assertEquals("Seul le DN du certificat est attendu", MetaDataType.DN_CERTIFICAT.getName(),
+				metadata.getJSONObject(0).getString("typeMetadata"));
+
+		result = mockMvc
+				.perform(MockMvcRequestBuilders.multipart("/validation/signatures/xadesbaselineb").file(doc)
+						.param("idVerifSignConf", "1").header(MetadataSelection.HEADER, MetadataSelection.NONE)
+						.accept("application/json"))
+				.andExpect(status().isOk()).andDo(print()).andReturn();
+		body = new JSONObject(result.getResponse().getContentAsString());
+		assertEquals("Aucune métadonnée n'est attendue", 0, body.getJSONArray("metaData").length());
+		assertEquals("La Liste des erreurs devrait contenir 2 erreurs", 2, body.getJSONArray("erreurs").length());
+
+		mockMvc.perform(MockMvcRequestBuilders.multipart("/validation/signatures/xadesbaselineb").file(doc)
+				.param("idVerifSignConf", "1").header(MetadataSelection.HEADER, "INCONNU")
+				.accept("application/json")).andExpect(status().isBadRequest()).andDo(print());
+	}
 }
@@ -0,0 +1,60 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.bean.object;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.asipsante.api.sign.ws.util.Secrets;
+
+/**
+ * The Class SignatureConfTest.
+ */
+public class SignatureConfTest {
+
+    /** The signature configuration. */
+    private static SignatureConf signConf;
+
+    /**
+     * Init.
+     */
+    @BeforeClass
+    public static void init() {
+        signConf = new SignatureConf();
+        signConf.setSecret(Secrets.hash("legacy") + " appA:" + Secrets.hash("secretA") + " appB:"
+                + Secrets.hash("secretB"));
+    }
+
+    /**
+     * Secret présenté avec son identifiant de clé.
+     */
+    @Test
+    public void keyedSecretMatchTest() {
+        assertFalse(signConf.noSecretMatch("appA.secretA"));
+        assertFalse(signConf.noSecretMatch("appB.secretB"));
+    }
+
+    /**
+     * Secret présenté avec l'identifiant d'une autre clé.
+     */
+    @Test
+    public void keyedSecretWrongKeyTest() {
+        assertTrue(signConf.noSecretMatch("appA.secretB"));
+        assertTrue(signConf.noSecretMatch("secretA"));
+    }
+
+    /**
+     * Secret présenté sans identifiant de clé.
+     */
+    @Test
+    public void unkeyedSecretMatchTest() {
+        assertFalse(signConf.noSecretMatch("legacy"));
+        assertTrue(signConf.noSecretMatch("unknown.legacy"));
+    }
+
+}
@@ -0,0 +1,216 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The Class CompressingResponseFilterTest.
+ */
+public class CompressingResponseFilterTest {
+
+    /** The filter. */
+    private CompressingResponseFilter filter;
+
+    /** The meter registry. */
+    private SimpleMeterRegistry meterRegistry;
+
+    /**
+     * Init.
+     */
+    @Before
+    public void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new CompressingResponseFilter();
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "threshold", 1024);
+        ReflectionTestUtils.setField(filter, "level", 6);
+        ReflectionTestUtils.setField(filter, "paths", new String[] {"/signatures/", "/validation/"});
+        ReflectionTestUtils.setField(filter, "meterRegistry", meterRegistry);
+        filter.init();
+    }
+
+    /**
+     * Rapport JSON de la taille indiquée.
+     *
+     * @param size the size
+     * @return the report
+     */
+    private static byte[] report(final int size) {
+        final StringBuilder sb = new StringBuilder("{\"metaData\":\"");
+        while (sb.length() < size - 2) {
+            sb.append("PFJhcHBvcnREaWFnbm9zdGlxdWU+");
+        }
+        return sb.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Applique le filtre à une réponse JSON.
+     *
+     * @param uri            the request URI
+     * @param acceptEncoding the Accept-Encoding header
+     * @param body           the response body
+     * @return the response
+     * @throws Exception the exception
+     */
+    private MockHttpServletResponse filter(final String uri, final String acceptEncoding, final byte[] body)
+            throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        if (acceptEncoding != null) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void service(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+                resp.setContentType("application/json");
+                resp.setContentLength(body.length);
+                resp.getOutputStream().write(body);
+                resp.getOutputStream().flush();
+            }
+        }));
+        return response;
+    }
+
+    /**
+     * Accept-Encoding test.
+     */
+    @Test
+    public void acceptsGzipTest() {
+        assertTrue(CompressingResponseFilter.acceptsGzip("gzip, deflate, br"));
+        assertTrue(CompressingResponseFilter.acceptsGzip("deflate, *;q=0.5"));
+        assertFalse(CompressingResponseFilter.acceptsGzip("deflate"));
+        assertFalse(CompressingResponseFilter.acceptsGzip("gzip;q=0, *"));
+        assertFalse(CompressingResponseFilter.acceptsGzip(null));
+    }
+
+    /**
+     * Compress test : rapport au-delà du seuil compressé.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void compressTest() throws Exception {
+        final byte[] body = report(64 * 1024);
+        final MockHttpServletResponse response = filter("/validation/signatures/xadesbaselineb", "gzip", body);
+        assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeader(HttpHeaders.VARY));
+        assertNull(response.getHeader(HttpHeaders.CONTENT_LENGTH));
+        assertTrue(response.getContentAsByteArray().length < body.length / 10);
+        assertArrayEquals(body, StreamUtils.copyToByteArray(
+                new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+        assertEquals(1, meterRegistry.get("esignsante.compression.ratio").summary().count());
+        assertEquals(body.length, meterRegistry.get("esignsante.compression.in").counter().count(), 0);
+    }
+
+    /**
+     * Threshold test : petite réponse, client sans gzip et chemin hors
+     * périmètre envoyés sans compression.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void uncompressedTest() throws Exception {
+        final byte[] small = report(512);
+        MockHttpServletResponse response = filter("/signatures/xadesbaselineb", "gzip", small);
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(small.length, response.getContentLength());
+        assertArrayEquals(small, response.getContentAsByteArray());
+
+        final byte[] body = report(64 * 1024);
+        response = filter("/signatures/xadesbaselineb", "identity", body);
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeader(HttpHeaders.VARY));
+        assertArrayEquals(body, response.getContentAsByteArray());
+
+        response = filter("/documents/1", "gzip", body);
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(body, response.getContentAsByteArray());
+        assertEquals(0, meterRegistry.get("esignsante.compression.ratio").summary().count());
+    }
+
+    /**
+     * Le WriteListener est enregistré sur le flux de la réponse enveloppée.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void writeListenerTest() throws Exception {
+        final AtomicReference<WriteListener> registered = new AtomicReference<>();
+        final ServletOutputStream target = new ServletOutputStream() {
+
+            @Override
+            public void write(final int b) {
+                // sans objet
+            }
+
+            @Override
+            public boolean isReady() {
+                return false;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+                registered.set(writeListener);
+            }
+        };
+        final HttpServletResponse response = new HttpServletResponseWrapper(new MockHttpServletResponse()) {
+
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return target;
+            }
+        };
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/signatures/xadesbaselineb");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        final WriteListener listener = Mockito.mock(WriteListener.class);
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void service(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+                final ServletOutputStream out = resp.getOutputStream();
+                // contenu conservé en mémoire jusqu'au seuil
+                assertTrue(out.isReady());
+                out.setWriteListener(listener);
+            }
+        }));
+        assertSame(listener, registered.get());
+    }
+}
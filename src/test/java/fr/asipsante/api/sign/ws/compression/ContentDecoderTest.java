@@ -0,0 +1,193 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockPart;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The Class ContentDecoderTest.
+ */
+public class ContentDecoderTest {
+
+    /** The document. */
+    private static final byte[] DOCUMENT = "<ClinicalDocument>compressé</ClinicalDocument>"
+            .getBytes(StandardCharsets.UTF_8);
+
+    /** The content decoder. */
+    private ContentDecoder contentDecoder;
+
+    /**
+     * Init.
+     */
+    @Before
+    public void init() {
+        contentDecoder = new ContentDecoder();
+        ReflectionTestUtils.setField(contentDecoder, "enabled", true);
+        ReflectionTestUtils.setField(contentDecoder, "maxRatio", 100L);
+        ReflectionTestUtils.setField(contentDecoder, "maxSize", 16L * 1024L * 1024L);
+        ReflectionTestUtils.setField(contentDecoder, "meterRegistry", new SimpleMeterRegistry());
+        contentDecoder.init();
+    }
+
+    /**
+     * Compresse un contenu.
+     *
+     * @param content the content
+     * @param gzip    gzip, deflate otherwise
+     * @return the compressed content
+     * @throws Exception the exception
+     */
+    private static byte[] compress(final byte[] content, final boolean gzip) throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream out = gzip ? new GZIPOutputStream(bos) : new DeflaterOutputStream(bos)) {
+            out.write(content);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Decode test.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void decodeTest() throws Exception {
+        assertTrue(contentDecoder.isSupported("GZIP"));
+        assertFalse(contentDecoder.isSupported("br"));
+        assertFalse(ContentDecoder.isEncoded("identity"));
+        try (InputStream in = contentDecoder.decode("gzip", new ByteArrayInputStream(compress(DOCUMENT, true)))) {
+            assertArrayEquals(DOCUMENT, StreamUtils.copyToByteArray(in));
+        }
+        final File file = contentDecoder.spool("deflate", new ByteArrayInputStream(compress(DOCUMENT, false)));
+        try {
+            assertArrayEquals(DOCUMENT, Files.readAllBytes(file.toPath()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Bombe de décompression : taux de compression puis taille refusés.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void limitTest() throws Exception {
+        final byte[] bomb = compress(new byte[8 * 1024 * 1024], true);
+        try (InputStream in = contentDecoder.decode("gzip", new ByteArrayInputStream(bomb))) {
+            StreamUtils.copyToByteArray(in);
+            fail("Taux de compression non contrôlé");
+        } catch (final ContentDecoder.LimitExceededException e) {
+            assertTrue(e.getMessage().contains("Taux"));
+        }
+        ReflectionTestUtils.setField(contentDecoder, "maxSize", 16L);
+        try (InputStream in = contentDecoder.decode("gzip", new ByteArrayInputStream(compress(DOCUMENT, true)))) {
+            StreamUtils.copyToByteArray(in);
+            fail("Taille non contrôlée");
+        } catch (final ContentDecoder.LimitExceededException e) {
+            assertTrue(e.getMessage().contains("16"));
+        }
+    }
+
+    /**
+     * Multipart test : le document compressé dans sa partie est lu décompressé.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void multipartTest() throws Exception {
+        final DecodingMultipartResolver resolver = new DecodingMultipartResolver();
+        ReflectionTestUtils.setField(resolver, "contentDecoder", contentDecoder);
+        final MockPart part = new MockPart("file", "cda.xml", compress(DOCUMENT, true));
+        part.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/signatures/xadesbaselineb");
+        request.setContentType("multipart/form-data; boundary=limite");
+        request.addPart(part);
+
+        final MultipartHttpServletRequest multipart = resolver.resolveMultipart(request);
+        final MultipartFile doc = multipart.getFile("file");
+        assertEquals("cda.xml", doc.getOriginalFilename());
+        assertEquals(DOCUMENT.length, doc.getSize());
+        assertArrayEquals(DOCUMENT, doc.getBytes());
+        final File decoded = (File) ReflectionTestUtils.getField(doc, "file");
+        resolver.cleanupMultipart(multipart);
+        assertFalse(decoded.exists());
+
+        part.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "br");
+        try {
+            resolver.resolveMultipart(request);
+            fail("Encodage non supporté accepté");
+        } catch (final ResponseStatusException e) {
+            assertEquals(HttpStatus.UNSUPPORTED_MEDIA_TYPE, e.getStatus());
+        }
+    }
+
+    /**
+     * Corps de requête compressé : lu décompressé, limite de décompression
+     * refusée en 413.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void requestTest() throws Exception {
+        final DecodingRequestFilter filter = new DecodingRequestFilter();
+        ReflectionTestUtils.setField(filter, "contentDecoder", contentDecoder);
+        final MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/uploads/1");
+        request.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        request.addHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        request.setContent(compress(DOCUMENT, true));
+        final MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        final ServletRequest decoded = chain.getRequest();
+        assertEquals(-1, decoded.getContentLengthLong());
+        assertArrayEquals(DOCUMENT, StreamUtils.copyToByteArray(decoded.getInputStream()));
+        assertTrue(decoded.getInputStream().isFinished());
+
+        final DecodingExceptionHandler handler = new DecodingExceptionHandler();
+        final ContentDecoder.LimitExceededException limit = new ContentDecoder.LimitExceededException("limite");
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, handler.limitExceeded(limit).getStatusCode());
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, handler
+                .notReadable(new HttpMessageNotReadableException("illisible", limit, new MockHttpInputMessage(DOCUMENT)))
+                .getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, handler
+                .notReadable(new HttpMessageNotReadableException("illisible", new MockHttpInputMessage(DOCUMENT)))
+                .getStatusCode());
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.document;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import fr.asipsante.api.sign.ws.api.delegate.DocumentsApiDelegateImpl;
+import fr.asipsante.api.sign.ws.job.JobManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The Class DocumentStoreTest.
+ */
+public class DocumentStoreTest {
+
+    /** The signed document. */
+    private static final byte[] DOCUMENT = "<doc>document signé</doc>".getBytes(StandardCharsets.UTF_8);
+
+    /** The document store. */
+    private DocumentStore documentStore;
+
+    /** The storage directory. */
+    private File dir;
+
+    /** The request. */
+    private MockHttpServletRequest request;
+
+    /** The response. */
+    private MockHttpServletResponse response;
+
+    /**
+     * Init.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void init() throws Exception {
+        dir = Files.createTempDirectory("documents").toFile();
+        documentStore = new DocumentStore();
+        ReflectionTestUtils.setField(documentStore, "enabled", true);
+        ReflectionTestUtils.setField(documentStore, "maxDocuments", 2);
+        ReflectionTestUtils.setField(documentStore, "maxBytes", 1024L);
+        ReflectionTestUtils.setField(documentStore, "ttl", 3600L);
+        ReflectionTestUtils.setField(documentStore, "dir", dir.getAbsolutePath());
+        ReflectionTestUtils.setField(documentStore, "meterRegistry", new SimpleMeterRegistry());
+        documentStore.init();
+        request = new MockHttpServletRequest("GET", "/documents");
+        response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+    }
+
+    /**
+     * Shutdown.
+     */
+    @After
+    public void shutdown() {
+        RequestContextHolder.resetRequestAttributes();
+        documentStore.shutdown();
+        dir.delete();
+    }
+
+    /**
+     * Identifiant du document conservé.
+     *
+     * @param location the download address
+     * @return the id
+     */
+    private static String id(final URI location) {
+        return location.getPath().substring(location.getPath().lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Requested test.
+     */
+    @Test
+    public void requestedTest() {
+        assertFalse(documentStore.isRequested());
+        request.addHeader(JobManager.PREFER, "respond-async, return=minimal");
+        assertTrue(documentStore.isRequested());
+    }
+
+    /**
+     * Store test : les documents les plus anciens sont supprimés au-delà des
+     * limites, puis après expiration.
+     */
+    @Test
+    public void storeTest() {
+        final URI first = documentStore.store(DOCUMENT, "application/xml").get();
+        assertEquals("http://localhost/documents/" + id(first), first.toString());
+        assertEquals(DOCUMENT.length, documentStore.get(id(first)).get().getSize());
+        final String second = id(documentStore.store(DOCUMENT, "application/xml").get());
+        final String third = id(documentStore.store(DOCUMENT, "application/xml").get());
+        assertFalse(documentStore.get(id(first)).isPresent());
+        assertTrue(documentStore.get(second).isPresent());
+        assertEquals(2, dir.list().length);
+        // document plus grand que la taille totale autorisée
+        assertFalse(documentStore.store(new byte[2048], "application/pdf").isPresent());
+
+        documentStore.purge();
+        assertTrue(documentStore.get(third).isPresent());
+        ReflectionTestUtils.setField(documentStore, "ttl", -1L);
+        documentStore.purge();
+        assertFalse(documentStore.get(second).isPresent());
+        assertFalse(documentStore.get(third).isPresent());
+        assertEquals(0, dir.list().length);
+    }
+
+    /**
+     * Download test : document entier, partie demandée, contenu non modifié et
+     * partie en dehors du document.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void downloadTest() throws Exception {
+        final String id = id(documentStore.store(DOCUMENT, "application/xml").get());
+        final String etag = documentStore.get(id).get().getEtag();
+        final DocumentsApiDelegateImpl delegate = new DocumentsApiDelegateImpl();
+        ReflectionTestUtils.setField(delegate, "documentStore", documentStore);
+
+        assertNull(delegate.getDocument(id));
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertEquals(etag, response.getHeader(HttpHeaders.ETAG));
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertArrayEquals(DOCUMENT, response.getContentAsByteArray());
+
+        response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        request.addHeader(HttpHeaders.RANGE, "bytes=5-");
+        request.addHeader(HttpHeaders.IF_RANGE, etag);
+        assertNull(delegate.getDocument(id));
+        assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.getStatus());
+        assertEquals("bytes 5-" + (DOCUMENT.length - 1) + "/" + DOCUMENT.length,
+                response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(Arrays.copyOfRange(DOCUMENT, 5, DOCUMENT.length), response.getContentAsByteArray());
+
+        request = new MockHttpServletRequest("GET", "/documents");
+        response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        assertNull(delegate.getDocument(id));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+
+        request = new MockHttpServletRequest("GET", "/documents");
+        response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        request.addHeader(HttpHeaders.RANGE, "bytes=" + DOCUMENT.length + "-");
+        ResponseEntity<Resource> unsatisfiable = delegate.getDocument(id);
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, unsatisfiable.getStatusCode());
+        assertEquals("bytes */" + DOCUMENT.length, unsatisfiable.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(0, response.getContentAsByteArray().length);
+
+        request = new MockHttpServletRequest("GET", "/documents");
+        response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        request.addHeader(HttpHeaders.RANGE, "bytes=" + (DOCUMENT.length + 10) + "-" + (DOCUMENT.length + 20));
+        unsatisfiable = delegate.getDocument(id);
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, unsatisfiable.getStatusCode());
+        assertEquals("bytes */" + DOCUMENT.length, unsatisfiable.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(HttpStatus.NOT_FOUND, delegate.getDocument("inconnu").getStatusCode());
+    }
+}
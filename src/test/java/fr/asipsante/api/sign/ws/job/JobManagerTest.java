@@ -0,0 +1,176 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.asipsante.api.sign.ws.model.Job;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The Class JobManagerTest.
+ */
+public class JobManagerTest {
+
+    /** The job manager. */
+    private JobManager jobManager;
+
+    /** The storage directory. */
+    private File dir;
+
+    /** The request. */
+    private MockHttpServletRequest request;
+
+    /**
+     * Init.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void init() throws Exception {
+        dir = Files.createTempDirectory("jobs").toFile();
+        jobManager = new JobManager();
+        ReflectionTestUtils.setField(jobManager, "enabled", true);
+        ReflectionTestUtils.setField(jobManager, "threads", 1);
+        ReflectionTestUtils.setField(jobManager, "maxJobs", 1);
+        ReflectionTestUtils.setField(jobManager, "maxBytes", 16L);
+        ReflectionTestUtils.setField(jobManager, "ttl", 0L);
+        ReflectionTestUtils.setField(jobManager, "dir", dir.getAbsolutePath());
+        ReflectionTestUtils.setField(jobManager, "memoryThreshold", 4L);
+        ReflectionTestUtils.setField(jobManager, "retryAfter", 1L);
+        ReflectionTestUtils.setField(jobManager, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(jobManager, "meterRegistry", new SimpleMeterRegistry());
+        jobManager.init();
+        request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    /**
+     * Shutdown.
+     */
+    @After
+    public void shutdown() {
+        RequestContextHolder.resetRequestAttributes();
+        jobManager.shutdown();
+    }
+
+    /**
+     * Requested test.
+     */
+    @Test
+    public void requestedTest() {
+        assertFalse(jobManager.isRequested());
+        request.addHeader(JobManager.PREFER, "wait=10, respond-async");
+        assertTrue(jobManager.isRequested());
+    }
+
+    /**
+     * Job test : résultat conservé sur disque, puis purgé.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void jobTest() throws Exception {
+        request.addHeader("X-Test", "detached");
+        final ResponseEntity<String> re = jobManager.submit(
+                new MockMultipartFile("file", "document".getBytes(StandardCharsets.UTF_8)),
+                d -> ResponseEntity.ok(readHeader() + ":" + d.getSize()));
+        assertEquals(HttpStatus.ACCEPTED, re.getStatusCode());
+        final String id = re.getHeaders().getLocation().getPath().replace("/jobs/", "");
+        // nombre maximal atteint
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+                jobManager.submit(null, d -> ResponseEntity.ok("rejected")).getStatusCode());
+
+        Optional<Job> job = jobManager.getJob(id);
+        for (int i = 0; i < 500 && job.get().getHttpStatus() == null; i++) {
+            Thread.sleep(10);
+            job = jobManager.getJob(id);
+        }
+        assertEquals(Integer.valueOf(HttpStatus.OK.value()), job.get().getHttpStatus());
+        assertEquals("\"detached:8\"",
+                StreamUtils.copyToString(jobManager.getResult(id).getInputStream(), StandardCharsets.UTF_8));
+        assertTrue(new File(dir, id + ".json").exists());
+        assertFalse(new File(dir, id + ".doc").exists());
+
+        for (int i = 0; i < 500 && jobManager.getJob(id).isPresent(); i++) {
+            Thread.sleep(10);
+            jobManager.purge();
+        }
+        assertFalse(jobManager.getJob(id).isPresent());
+        assertFalse(new File(dir, id + ".json").exists());
+    }
+
+    /**
+     * Taille totale bornée : un document trop gros est refusé, sa place n'est
+     * pas consommée.
+     */
+    @Test
+    public void maxBytesTest() {
+        final ResponseEntity<String> re = jobManager.submit(new MockMultipartFile("file", new byte[17]),
+                d -> ResponseEntity.ok("rejected"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, re.getStatusCode());
+        assertEquals("1", re.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(HttpStatus.ACCEPTED,
+                jobManager.submit(new MockMultipartFile("file", new byte[16]), d -> ResponseEntity.ok("accepted"))
+                        .getStatusCode());
+    }
+
+    /**
+     * Traitement accepté refusé par l'admission (503 avec Retry-After) : il
+     * est relancé au lieu d'échouer.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void deferredTest() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final ResponseEntity<String> re = jobManager.submit(null, d -> attempts.incrementAndGet() == 1
+                ? ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                        .<String>build()
+                : ResponseEntity.ok("signed"));
+        final String id = re.getHeaders().getLocation().getPath().replace("/jobs/", "");
+
+        Optional<Job> job = jobManager.getJob(id);
+        for (int i = 0; i < 500 && job.get().getHttpStatus() == null; i++) {
+            Thread.sleep(10);
+            job = jobManager.getJob(id);
+        }
+        assertEquals(Integer.valueOf(HttpStatus.OK.value()), job.get().getHttpStatus());
+        assertEquals(2, attempts.get());
+    }
+
+    /**
+     * Lit l'en-tête de test de la requête détachée.
+     *
+     * @return the header value
+     */
+    private static String readHeader() {
+        return ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest()
+                .getHeader("X-Test");
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.security.cert.X509CRL;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The Class CrlMetricsTest.
+ */
+public class CrlMetricsTest {
+
+    /** One hour in ms. */
+    private static final long HOUR = 3600000L;
+
+    /** The CRL metrics. */
+    private CrlMetrics crlMetrics;
+
+    /** The health indicator. */
+    private CrlHealthIndicator healthIndicator;
+
+    /** The meter registry. */
+    private SimpleMeterRegistry meterRegistry;
+
+    /**
+     * Init.
+     */
+    @Before
+    public void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        crlMetrics = new CrlMetrics();
+        ReflectionTestUtils.setField(crlMetrics, "meterRegistry", meterRegistry);
+        healthIndicator = new CrlHealthIndicator();
+        ReflectionTestUtils.setField(healthIndicator, "crlMetrics", crlMetrics);
+    }
+
+    /**
+     * CRL mock.
+     *
+     * @param thisUpdate the this update
+     * @param nextUpdate the next update
+     * @return the CRL
+     * @throws Exception the exception
+     */
+    private static X509CRL crl(final Date thisUpdate, final Date nextUpdate) throws Exception {
+        final X509CRL crl = mock(X509CRL.class);
+        when(crl.getEncoded()).thenReturn(new byte[512]);
+        when(crl.getThisUpdate()).thenReturn(thisUpdate);
+        when(crl.getNextUpdate()).thenReturn(nextUpdate);
+        return crl;
+    }
+
+    /**
+     * Les métriques d'une source sont publiées après chargement.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void sourceMetricsTest() throws Exception {
+        final long now = System.currentTimeMillis();
+        crlMetrics.caLoaded(3);
+        crlMetrics.crlLoaded("http://crl/a.crl", TimeUnit.MILLISECONDS.toNanos(20),
+                Collections.singleton(crl(new Date(now - HOUR), new Date(now + HOUR))));
+        crlMetrics.crlBundleLoaded();
+
+        assertEquals(512, meterRegistry.get("esignsante.crl.size").tag("source", "http://crl/a.crl").gauge()
+                .value(), 0);
+        assertEquals(0, meterRegistry.get("esignsante.crl.entries").gauge().value(), 0);
+        assertTrue(meterRegistry.get("esignsante.crl.age").gauge().value() >= HOUR / 1000);
+        assertTrue(meterRegistry.get("esignsante.crl.next.update").gauge().value() > 0);
+        assertEquals(1, meterRegistry.get("esignsante.crl.fetch").tag("outcome", "success").timer().count());
+        assertEquals(3, meterRegistry.get("esignsante.ca.count").gauge().value(), 0);
+        assertNotNull(crlMetrics.getLastRefresh());
+        assertEquals(Status.UP, healthIndicator.health().getStatus());
+    }
+
+    /**
+     * Une CRL au-delà de nextUpdate rend l'instance indisponible, y compris si
+     * le rechargement suivant échoue.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void staleCrlTest() throws Exception {
+        final long now = System.currentTimeMillis();
+        crlMetrics.crlLoaded("http://crl/a.crl", 0,
+                Collections.singleton(crl(new Date(now - 2 * HOUR), new Date(now + HOUR))));
+        crlMetrics.crlLoaded("http://crl/b.crl", 0,
+                Collections.singleton(crl(new Date(now - 2 * HOUR), new Date(now - HOUR))));
+        crlMetrics.crlFailed("http://crl/b.crl", 0);
+
+        assertEquals(Collections.singleton("http://crl/b.crl"), crlMetrics.staleSources(new Date()).keySet());
+        assertEquals(Status.DOWN, healthIndicator.health().getStatus());
+        assertEquals(1, meterRegistry.get("esignsante.crl.failures").tag("source", "http://crl/b.crl").counter()
+                .count(), 0);
+        assertTrue(meterRegistry.get("esignsante.crl.next.update").tag("source", "http://crl/b.crl").gauge()
+                .value() < 0);
+    }
+
+    /**
+     * Une source absente du chargement suivant est oubliée, avec ses métriques.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void removedSourceTest() throws Exception {
+        final long now = System.currentTimeMillis();
+        crlMetrics.crlRefreshStarted();
+        crlMetrics.crlLoaded("http://crl/a.crl", 0,
+                Collections.singleton(crl(new Date(now - 2 * HOUR), new Date(now + HOUR))));
+        crlMetrics.crlLoaded("http://crl/b.crl", 0,
+                Collections.singleton(crl(new Date(now - 2 * HOUR), new Date(now - HOUR))));
+        crlMetrics.crlBundleLoaded();
+        crlMetrics.crlRefreshEnded();
+        assertEquals(Status.DOWN, healthIndicator.health().getStatus());
+
+        crlMetrics.crlRefreshStarted();
+        crlMetrics.crlLoaded("http://crl/a.crl", 0,
+                Collections.singleton(crl(new Date(now - HOUR), new Date(now + HOUR))));
+        crlMetrics.crlBundleLoaded();
+        crlMetrics.crlRefreshEnded();
+
+        assertEquals(Status.UP, healthIndicator.health().getStatus());
+        assertEquals(Collections.singleton("http://crl/a.crl"), crlMetrics.nextUpdates().keySet());
+        assertNull(meterRegistry.find("esignsante.crl.next.update").tag("source", "http://crl/b.crl").gauge());
+        assertNull(meterRegistry.find("esignsante.crl.fetch").tag("source", "http://crl/b.crl").timer());
+        assertNotNull(meterRegistry.find("esignsante.crl.size").tag("source", "http://crl/a.crl").gauge());
+
+        // échec : l'état de la source est conservé
+        crlMetrics.crlRefreshStarted();
+        crlMetrics.crlFailed("http://crl/a.crl", 0);
+        crlMetrics.crlRefreshEnded();
+        assertEquals(Collections.singleton("http://crl/a.crl"), crlMetrics.nextUpdates().keySet());
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import fr.asipsante.api.sign.utils.AsipSignClientException;
+import fr.asipsante.api.sign.utils.AsipSignException;
+import fr.asipsante.api.sign.ws.util.ESignatureType;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The Class PipelineMetricsTest.
+ */
+public class PipelineMetricsTest {
+
+    /** The pipeline metrics. */
+    private PipelineMetrics pipelineMetrics;
+
+    /** The meter registry. */
+    private SimpleMeterRegistry meterRegistry;
+
+    /**
+     * Init.
+     */
+    @Before
+    public void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        pipelineMetrics = new PipelineMetrics();
+        ReflectionTestUtils.setField(pipelineMetrics, "meterRegistry", meterRegistry);
+    }
+
+    /**
+     * Chaque étape est mesurée avec les tags de la requête.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void stageTimerTest() throws Exception {
+        final PipelineMetrics.Stages stages = pipelineMetrics.stages("sign", ESignatureType.XADES, 1L);
+        assertEquals("ok", stages.record(PipelineMetrics.SIGN, () -> "ok"));
+        stages.record(PipelineMetrics.SIGN, () -> "ok");
+        stages.timer(PipelineMetrics.ENCODE).record(() -> "encoded");
+
+        final Timer sign = meterRegistry.find(PipelineMetrics.STAGE_TIMER).tag("stage", PipelineMetrics.SIGN)
+                .tag("operation", "sign").tag("type", "XADES").tag("conf", "1").timer();
+        assertNotNull(sign);
+        assertEquals(2, sign.count());
+        assertEquals(1, meterRegistry.get(PipelineMetrics.STAGE_TIMER).tag("stage", PipelineMetrics.ENCODE)
+                .timer().count());
+    }
+
+    /**
+     * Une étape en échec est mesurée.
+     */
+    @Test
+    public void failedStageTest() {
+        final PipelineMetrics.Stages stages = pipelineMetrics.stages("validate", ESignatureType.PADES, 2L);
+        try {
+            stages.record(PipelineMetrics.VALIDATE, () -> {
+                throw new AsipSignClientException("erreur");
+            });
+            fail("AsipSignClientException attendue");
+        } catch (final AsipSignException e) {
+            assertEquals(1, meterRegistry.get(PipelineMetrics.STAGE_TIMER).tag("stage", PipelineMetrics.VALIDATE)
+                    .tag("conf", "2").timer().count());
+        } catch (final Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * La taille des documents est enregistrée.
+     */
+    @Test
+    public void documentSizeTest() {
+        final PipelineMetrics.Stages stages = pipelineMetrics.stages("sign", ESignatureType.XMLDSIG, 3L);
+        stages.documentSize(1024);
+        stages.documentSize(3072);
+        final DistributionSummary size = meterRegistry.get(PipelineMetrics.DOCUMENT_SIZE)
+                .tag("type", "XMLDSIG").summary();
+        assertEquals(2, size.count());
+        assertEquals(4096, size.totalAmount(), 0);
+    }
+}
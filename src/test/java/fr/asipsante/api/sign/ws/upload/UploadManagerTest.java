@@ -0,0 +1,243 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.upload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import fr.asipsante.api.sign.ws.job.StoredFile;
+import fr.asipsante.api.sign.ws.model.Upload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The Class UploadManagerTest.
+ */
+public class UploadManagerTest {
+
+    /** The document. */
+    private static final byte[] DOCUMENT = "<doc>téléversé par morceaux</doc>".getBytes(StandardCharsets.UTF_8);
+
+    /** The upload manager. */
+    private UploadManager uploadManager;
+
+    /** The storage directory. */
+    private File dir;
+
+    /**
+     * Init.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void init() throws Exception {
+        dir = Files.createTempDirectory("uploads").toFile();
+        uploadManager = new UploadManager();
+        ReflectionTestUtils.setField(uploadManager, "enabled", true);
+        ReflectionTestUtils.setField(uploadManager, "maxUploads", 1);
+        ReflectionTestUtils.setField(uploadManager, "ttl", 3600L);
+        ReflectionTestUtils.setField(uploadManager, "maxSize", 1024L);
+        ReflectionTestUtils.setField(uploadManager, "maxChunk", 16L);
+        ReflectionTestUtils.setField(uploadManager, "maxBytes", 2048L);
+        ReflectionTestUtils.setField(uploadManager, "dir", dir.getAbsolutePath());
+        ReflectionTestUtils.setField(uploadManager, "meterRegistry", new SimpleMeterRegistry());
+        uploadManager.init();
+    }
+
+    /**
+     * Shutdown.
+     */
+    @After
+    public void shutdown() {
+        uploadManager.shutdown();
+        dir.delete();
+    }
+
+    /**
+     * Envoie un morceau du document.
+     *
+     * @param id    the session id
+     * @param start the first byte
+     * @param end   the last byte
+     * @return the status
+     * @throws Exception the exception
+     */
+    private HttpStatus append(final String id, final int start, final int end) throws Exception {
+        return uploadManager.append(id, "bytes " + start + "-" + end + "/" + DOCUMENT.length,
+                new ByteArrayInputStream(DOCUMENT, start, end - start + 1), end - start + 1);
+    }
+
+    /**
+     * Upload test : document reçu en trois morceaux, empreinte calculée au fil
+     * de la réception.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void uploadTest() throws Exception {
+        final Upload upload = uploadManager.create("doc.xml", "text/xml", (long) DOCUMENT.length, "SHA256", null).get();
+        assertEquals(0L, (long) upload.getReceived());
+        // une seule session autorisée
+        assertFalse(uploadManager.create("doc.xml", "text/xml", null, "SHA256", null).isPresent());
+
+        assertEquals(HttpStatus.OK, append(upload.getId(), 0, 15));
+        assertEquals(HttpStatus.OK, append(upload.getId(), 16, 31));
+        assertFalse(uploadManager.finish(upload.getId()).isPresent());
+        assertNull(uploadManager.get(upload.getId()).get().getDigest());
+        assertEquals(HttpStatus.OK, append(upload.getId(), 32, DOCUMENT.length - 1));
+
+        final Upload done = uploadManager.get(upload.getId()).get();
+        assertEquals(DOCUMENT.length, (long) done.getReceived());
+        assertEquals(Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(DOCUMENT)),
+                done.getDigest());
+
+        final Optional<StoredFile> doc = uploadManager.finish(upload.getId());
+        assertTrue(doc.isPresent());
+        assertEquals("doc.xml", doc.get().getOriginalFilename());
+        assertArrayEquals(DOCUMENT, doc.get().getBytes());
+
+        assertTrue(uploadManager.remove(upload.getId()));
+        assertFalse(uploadManager.get(upload.getId()).isPresent());
+        assertEquals(0, dir.list().length);
+    }
+
+    /**
+     * Resume test : un morceau mal positionné est refusé, la reprise se fait à
+     * partir du nombre d'octets reçus.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void resumeTest() throws Exception {
+        final String id = uploadManager.create("doc.xml", "text/xml", (long) DOCUMENT.length, "SHA512", null).get()
+                .getId();
+        assertEquals(HttpStatus.OK, append(id, 0, 15));
+        // morceau déjà reçu, puis morceau manquant
+        assertEquals(HttpStatus.CONFLICT, append(id, 0, 15));
+        assertEquals(HttpStatus.CONFLICT, append(id, 32, 47));
+        assertEquals(16L, (long) uploadManager.get(id).get().getReceived());
+        assertEquals(HttpStatus.OK, append(id, 16, 31));
+        assertEquals(HttpStatus.OK, append(id, 32, DOCUMENT.length - 1));
+        assertArrayEquals(MessageDigest.getInstance("SHA-512").digest(DOCUMENT),
+                Base64.getDecoder().decode(uploadManager.get(id).get().getDigest()));
+        // document complet
+        assertEquals(HttpStatus.CONFLICT, append(id, 0, 0));
+    }
+
+    /**
+     * Invalid chunk test.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void invalidChunkTest() throws Exception {
+        final String id = uploadManager.create(null, null, null, "SHA256", null).get().getId();
+        assertEquals(HttpStatus.NOT_FOUND, uploadManager.append("inconnu", null, new ByteArrayInputStream(DOCUMENT),
+                4));
+        // longueur incohérente avec l'intervalle
+        assertEquals(HttpStatus.BAD_REQUEST, uploadManager.append(id, "bytes 0-9/*",
+                new ByteArrayInputStream(DOCUMENT), 4));
+        assertEquals(HttpStatus.BAD_REQUEST, uploadManager.append(id, "octets 0-3",
+                new ByteArrayInputStream(DOCUMENT), 4));
+        // morceau trop grand
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, uploadManager.append(id, null,
+                new ByteArrayInputStream(DOCUMENT), DOCUMENT.length));
+        // sans Content-Range, le morceau est ajouté à la suite
+        assertEquals(HttpStatus.OK, uploadManager.append(id, null, new ByteArrayInputStream(DOCUMENT), 4));
+        assertEquals(HttpStatus.OK, uploadManager.append(id, "bytes 4-7/*",
+                new ByteArrayInputStream(DOCUMENT, 4, 4), 4));
+        // taille inconnue : la fin de la réception est demandée par le client
+        final StoredFile doc = uploadManager.finish(id).get();
+        assertArrayEquals(Arrays.copyOf(DOCUMENT, 8), doc.getBytes());
+    }
+
+    /**
+     * Morceaux de longueur inconnue (corps décompressé ou sans
+     * Content-Length) : la longueur est bornée par config.uploads.maxChunk.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void unknownLengthTest() throws Exception {
+        final String id = uploadManager.create(null, null, null, "SHA256", null).get().getId();
+        assertEquals(HttpStatus.OK, uploadManager.append(id, null, new ByteArrayInputStream(DOCUMENT, 0, 16), -1));
+        // longueur donnée par le Content-Range
+        assertEquals(HttpStatus.OK, uploadManager.append(id, "bytes 16-19/*",
+                new ByteArrayInputStream(DOCUMENT, 16, 4), -1));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, uploadManager.append(id, "bytes 20-39/*",
+                new ByteArrayInputStream(DOCUMENT, 20, 20), -1));
+        assertEquals(20L, (long) uploadManager.get(id).get().getReceived());
+        // morceau plus grand que maxChunk : la session est supprimée
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, uploadManager.append(id, null, new ByteArrayInputStream(DOCUMENT),
+                -1));
+        assertFalse(uploadManager.get(id).isPresent());
+        assertEquals(0, dir.list().length);
+    }
+
+    /**
+     * Invalid session test.
+     *
+     * @throws Exception the exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSessionTest() throws Exception {
+        uploadManager.create("doc.xml", "text/xml", 2048L, "SHA256", null);
+    }
+
+    /**
+     * Taille totale bornée : un morceau au-delà est refusé (503), la place
+     * d'une session supprimée est libérée.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void maxBytesTest() throws Exception {
+        ReflectionTestUtils.setField(uploadManager, "maxBytes", 40L);
+        final String id = uploadManager.create("doc.xml", "text/xml", null, "SHA256", 1L).get().getId();
+        assertEquals(Long.valueOf(1L), uploadManager.get(id).get().getIdSignConf());
+        assertEquals(HttpStatus.OK, append(id, 0, 15));
+        assertEquals(HttpStatus.OK, append(id, 16, 31));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, append(id, 32, 47));
+        assertEquals(32L, (long) uploadManager.get(id).get().getReceived());
+
+        assertTrue(uploadManager.remove(id));
+        final String next = uploadManager.create("doc.xml", "text/xml", null, "SHA256", null).get().getId();
+        assertEquals(HttpStatus.OK, append(next, 0, 15));
+        assertEquals(HttpStatus.OK, append(next, 16, 31));
+    }
+
+    /**
+     * Purge test.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void purgeTest() throws Exception {
+        final String id = uploadManager.create("doc.xml", "text/xml", null, "SHA256", null).get().getId();
+        uploadManager.purge();
+        assertTrue(uploadManager.get(id).isPresent());
+        ReflectionTestUtils.setField(uploadManager, "ttl", -1L);
+        uploadManager.purge();
+        assertFalse(uploadManager.get(id).isPresent());
+        assertEquals(0, dir.list().length);
+    }
+}
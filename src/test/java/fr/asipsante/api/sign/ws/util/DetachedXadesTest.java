@@ -0,0 +1,110 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Objects;
+
+import javax.xml.crypto.OctetStreamData;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.asipsante.api.sign.bean.parameters.SignatureParameters;
+import fr.asipsante.api.sign.ws.bean.ConfigurationLoader;
+import fr.asipsante.api.sign.ws.bean.config.impl.GlobalConfJson;
+
+/**
+ * The Class DetachedXadesTest.
+ */
+public class DetachedXadesTest {
+
+    /** The document. */
+    private static final byte[] DOCUMENT = "<doc>détaché</doc>".getBytes(StandardCharsets.UTF_8);
+
+    /** The signature parameters. */
+    private static SignatureParameters signParams;
+
+    /**
+     * Init.
+     *
+     * @throws Exception the exception
+     */
+    @BeforeClass
+    public static void init() throws Exception {
+        final String jsonConf = new String(Files.readAllBytes(Paths.get(Objects.requireNonNull(Thread
+                .currentThread().getContextClassLoader().getResource("esignsante-conf.json")).toURI())));
+        final GlobalConfJson conf = new ObjectMapper().readValue(jsonConf, GlobalConfJson.class);
+        signParams = ConfigurationLoader.loadSignConf(conf.getSignatureById("1").get());
+    }
+
+    /**
+     * Empreinte calculée en flux.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void digestTest() throws Exception {
+        assertArrayEquals(MessageDigest.getInstance("SHA-512").digest(DOCUMENT),
+                DetachedXades.digest(new ByteArrayInputStream(DOCUMENT), "SHA512"));
+    }
+
+    /**
+     * La signature détachée est valide pour le document.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void signTest() throws Exception {
+        final byte[] signature = DetachedXades.sign(signParams, "SHA512", "http://www.w3.org/2001/10/xml-exc-c14n#",
+                DetachedXades.digest(new ByteArrayInputStream(DOCUMENT), "SHA512"), "doc.xml", "text/xml",
+                Collections.singletonList("Dupont"));
+
+        final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        final Document doc = dbf.newDocumentBuilder().parse(new ByteArrayInputStream(signature));
+        final DOMValidateContext context = new DOMValidateContext(
+                signParams.getKeyStore().getCertificate(signParams.getKeyStore().aliases().nextElement())
+                        .getPublicKey(),
+                doc.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature").item(0));
+        context.setIdAttributeNS(
+                (Element) doc.getElementsByTagNameNS(DetachedXades.XADES_NS, "SignedProperties").item(0), null, "Id");
+        // le document détaché est fourni par le contexte de validation
+        context.setURIDereferencer((reference, ctx) -> reference.getURI().startsWith("#")
+                ? XMLSignatureFactory.getInstance("DOM").getURIDereferencer().dereference(reference, ctx)
+                : new OctetStreamData(new ByteArrayInputStream(DOCUMENT)));
+        final XMLSignature xmlSignature = XMLSignatureFactory.getInstance("DOM").unmarshalXMLSignature(context);
+        assertTrue("La signature détachée n'est pas valide", xmlSignature.validate(context));
+        assertEquals("Dupont", doc.getElementsByTagNameNS(DetachedXades.XADES_NS, "ClaimedRole").item(0)
+                .getTextContent());
+    }
+
+    /**
+     * Empreinte de taille incorrecte pour l'algorithme.
+     *
+     * @throws Exception the exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongDigestTest() throws Exception {
+        DetachedXades.sign(signParams, "SHA512", null, new byte[32], null, null, null);
+    }
+}
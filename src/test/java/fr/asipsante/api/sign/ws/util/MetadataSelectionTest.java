@@ -0,0 +1,95 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.Objects;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.asipsante.api.sign.bean.parameters.CertificateValidationParameters;
+import fr.asipsante.api.sign.bean.parameters.SignatureValidationParameters;
+import fr.asipsante.api.sign.enums.MetaDataType;
+import fr.asipsante.api.sign.ws.bean.ConfigurationLoader;
+import fr.asipsante.api.sign.ws.bean.config.impl.GlobalConfJson;
+
+/**
+ * The Class MetadataSelectionTest.
+ */
+public class MetadataSelectionTest {
+
+    /** The signature validation parameters. */
+    private static SignatureValidationParameters signVerifParams;
+
+    /** The certificate validation parameters. */
+    private static CertificateValidationParameters certVerifParams;
+
+    /**
+     * Init.
+     *
+     * @throws Exception the exception
+     */
+    @BeforeClass
+    public static void init() throws Exception {
+        final String jsonConf = new String(Files.readAllBytes(Paths.get(Objects.requireNonNull(Thread
+                .currentThread().getContextClassLoader().getResource("esignsante-conf.json")).toURI())));
+        final GlobalConfJson conf = new ObjectMapper().readValue(jsonConf, GlobalConfJson.class);
+        signVerifParams = ConfigurationLoader.loadSignVerifConf(conf.getSignatureVerificationById("1").get());
+        certVerifParams = ConfigurationLoader.loadCertVerifConf(conf.getCertificateVerificationById("1").get());
+    }
+
+    /**
+     * Lecture de l'en-tête.
+     */
+    @Test
+    public void parseTest() {
+        assertFalse(MetadataSelection.parse(null).isPresent());
+        assertFalse(MetadataSelection.parse(" ").isPresent());
+        assertTrue(MetadataSelection.parse("none").get().isEmpty());
+        assertEquals(EnumSet.of(MetaDataType.DN_CERTIFICAT, MetaDataType.DATE_SIGNATURE),
+                MetadataSelection.parse("DN_CERTIFICAT, date_signature").get());
+    }
+
+    /**
+     * Type de métadonnée inconnu.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownTest() {
+        MetadataSelection.parse("DN_CERTIFICAT,INCONNU");
+    }
+
+    /**
+     * Les paramètres restreints ne portent que les métadonnées demandées et
+     * configurées, sans modifier ceux de la configuration.
+     */
+    @Test
+    public void restrictTest() {
+        final int configured = signVerifParams.getMetaData().size();
+        final SignatureValidationParameters restricted = MetadataSelection.restrict(signVerifParams,
+                EnumSet.of(MetaDataType.DN_CERTIFICAT, MetaDataType.DATE_SIGNATURE));
+        assertEquals(2, restricted.getMetaData().size());
+        assertSame(signVerifParams.getRules(), restricted.getRules());
+        assertEquals(configured, signVerifParams.getMetaData().size());
+
+        assertTrue(MetadataSelection.restrict(signVerifParams, EnumSet.noneOf(MetaDataType.class)).getMetaData()
+                .isEmpty());
+
+        // DATE_SIGNATURE n'est pas configurée pour la vérification de certificat
+        final CertificateValidationParameters certRestricted = MetadataSelection.restrict(certVerifParams,
+                EnumSet.of(MetaDataType.DN_CERTIFICAT, MetaDataType.DATE_SIGNATURE));
+        assertEquals(1, certRestricted.getMetaData().size());
+        assertEquals(MetaDataType.DN_CERTIFICAT, certRestricted.getMetaData().get(0).getType());
+    }
+}
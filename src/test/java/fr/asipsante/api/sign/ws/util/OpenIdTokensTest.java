@@ -0,0 +1,123 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.cache.Cache;
+
+import fr.asipsante.api.sign.bean.proof.OpenIdTokenBean;
+import fr.asipsante.api.sign.utils.AsipSignClientException;
+
+/**
+ * The Class OpenIdTokensTest.
+ */
+public class OpenIdTokensTest {
+
+    /** The token cache. */
+    private Cache<?, ?> cache;
+
+    /**
+     * Init.
+     */
+    @Before
+    public void init() {
+        cache = (Cache<?, ?>) ReflectionTestUtils.getField(OpenIdTokens.class, "CACHE");
+        cache.invalidateAll();
+    }
+
+    /**
+     * Lecture d'un jeton : réponses encodées en base 64.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void parseTest() throws Exception {
+        final OpenIdTokenBean bean = OpenIdTokens.parse(header("AA", "BB", "UU"));
+        assertEquals("AA", bean.getAccessToken());
+        assertEquals(b64("BB"), bean.getIntrospectionResponse());
+        assertEquals(b64("UU"), bean.getUserInfo());
+    }
+
+    /**
+     * Un même header est lu une seule fois, un header différent n'obtient pas
+     * le jeton en cache.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void cacheTest() throws Exception {
+        final OpenIdTokenBean first = OpenIdTokens.parse(header("AA", "BB", "UU"));
+        final OpenIdTokenBean second = OpenIdTokens.parse(header("AA", "BB", "UU"));
+        assertEquals(1, cache.size());
+        // chaque appel obtient son propre bean
+        assertNotSame(first, second);
+        assertEquals(first.getUserInfo(), second.getUserInfo());
+
+        final OpenIdTokenBean other = OpenIdTokens.parse(header("CC", "BB", "VV"));
+        assertEquals(2, cache.size());
+        assertEquals("CC", other.getAccessToken());
+        assertEquals(b64("VV"), other.getUserInfo());
+    }
+
+    /**
+     * Jetons non conformes : AsipSignClientException (réponse 400), rien
+     * n'est mis en cache.
+     */
+    @Test
+    public void malformedTest() {
+        assertRejected("Jeton non conforme");
+        assertRejected(b64("pas du JSON"));
+        assertRejected(b64("{\"accessToken\":\"AA\",\"userInfo\":\"UU\"}"));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Vérifie le refus d'un jeton.
+     *
+     * @param value the header value
+     */
+    private static void assertRejected(final String value) {
+        try {
+            OpenIdTokens.parse(value);
+            fail("Jeton accepté : " + value);
+        } catch (final AsipSignClientException e) {
+            assertEquals("Tokens Openid non conformes.", e.getMessage());
+        }
+    }
+
+    /**
+     * Header value.
+     *
+     * @param accessToken           the access token
+     * @param introspectionResponse the introspection response
+     * @param userInfo              the user info
+     * @return the header value
+     */
+    private static String header(final String accessToken, final String introspectionResponse,
+            final String userInfo) {
+        return b64("{\"accessToken\":\"" + accessToken + "\",\"introspectionResponse\":\"" + introspectionResponse
+                + "\",\"userInfo\":\"" + userInfo + "\"}");
+    }
+
+    /**
+     * Base 64 encoding.
+     *
+     * @param value the value
+     * @return the encoded value
+     */
+    private static String b64(final String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+/**
+ * The Class SecretsTest.
+ */
+public class SecretsTest {
+
+    /**
+     * Détection de l'algorithme à partir du préfixe du hash.
+     */
+    @Test
+    public void prefixedHashMatchTest() {
+        for (final String algorithm : new String[] { Secrets.BCRYPT, Secrets.PBKDF2, Secrets.ARGON2,
+                Secrets.SHA256 }) {
+            final String hash = Secrets.hash("password", algorithm, null);
+            assertTrue("Le hash doit être préfixé par l'algorithme", hash.startsWith("{" + algorithm + "}"));
+            assertTrue(Secrets.match("password", hash));
+            assertFalse(Secrets.match("wrong", hash));
+        }
+    }
+
+    /**
+     * Hash avec un coût spécifique.
+     */
+    @Test
+    public void tunedHashMatchTest() {
+        final String hash = Secrets.hash("password", Secrets.BCRYPT, 4);
+        assertTrue(hash.startsWith("{bcrypt}$2a$04$"));
+        assertTrue(Secrets.match("password", hash));
+    }
+
+    /**
+     * Coût bcrypt hors bornes.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void bcryptCostTest() {
+        Secrets.hash("password", Secrets.BCRYPT, 31);
+    }
+
+    /**
+     * Hash sans préfixe : algorithme global.
+     */
+    @Test
+    public void legacyHashMatchTest() {
+        final String hash = BCrypt.hashpw("password", BCrypt.gensalt(4));
+        assertTrue(Secrets.match("password", hash));
+        assertFalse(Secrets.match("wrong", hash));
+        assertFalse(Secrets.match(null, hash));
+    }
+
+    /**
+     * Algorithme inconnu.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownAlgorithmTest() {
+        Secrets.hash("password", "md5", null);
+    }
+
+}
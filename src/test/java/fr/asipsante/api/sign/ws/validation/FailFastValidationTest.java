@@ -0,0 +1,167 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The Class FailFastValidationTest.
+ */
+public class FailFastValidationTest {
+
+    /** Règle peu coûteuse. */
+    static class DocumentIntact {
+    }
+
+    /** Règle coûteuse. */
+    static class RevocationCertificat {
+    }
+
+    /** Règle absente des paliers. */
+    static class Inconnue {
+    }
+
+    /** The meter registry. */
+    private MeterRegistry meterRegistry;
+
+    /** The fail-fast validation. */
+    private FailFastValidation failFast;
+
+    /** The rules, most expensive first. */
+    private final List<Object> rules = Arrays.asList(new RevocationCertificat(), new DocumentIntact(),
+            new Inconnue());
+
+    /**
+     * Init.
+     */
+    @Before
+    public void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        failFast = new FailFastValidation();
+        ReflectionTestUtils.setField(failFast, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(failFast, "enabled", true);
+        ReflectionTestUtils.setField(failFast, "tiers", "DocumentIntact, SignatureIntacte;RevocationCertificat");
+        ReflectionTestUtils.setField(failFast, "samples", 2L);
+        failFast.init();
+    }
+
+    /**
+     * Reset.
+     */
+    @After
+    public void reset() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    /**
+     * Mode demandé par l'en-tête X-Validation-Mode.
+     */
+    @Test
+    public void requestedTest() {
+        assertFalse(failFast.isRequested());
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        assertFalse(failFast.isRequested());
+        request.addHeader(FailFastValidation.HEADER, "FailFast");
+        assertTrue(failFast.isRequested());
+        ReflectionTestUtils.setField(failFast, "enabled", false);
+        assertFalse(failFast.isRequested());
+    }
+
+    /**
+     * Le premier palier en échec arrête la validation, les règles suivantes
+     * sont comptées comme ignorées.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void stopTest() throws Exception {
+        final List<List<Object>> evaluated = new ArrayList<>();
+        final List<Boolean> reports = failFast.validate("signature", rules, tier -> {
+            evaluated.add(tier);
+            return false;
+        }, Boolean::booleanValue);
+
+        assertEquals(1, reports.size());
+        assertEquals(1, evaluated.size());
+        assertTrue(evaluated.get(0).get(0) instanceof DocumentIntact);
+        assertEquals(1, skipped("RevocationCertificat"), 0);
+        assertEquals(1, skipped("Inconnue"), 0);
+        assertNull(meterRegistry.find(FailFastValidation.SKIPPED).tag("rule", "DocumentIntact").counter());
+    }
+
+    /**
+     * Tous les paliers sont évalués lorsque les règles sont respectées.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void completeTest() throws Exception {
+        final List<List<Object>> evaluated = new ArrayList<>();
+        final List<Boolean> reports = failFast.validate("signature", rules, tier -> {
+            evaluated.add(tier);
+            return true;
+        }, Boolean::booleanValue);
+
+        assertEquals(3, reports.size());
+        assertTrue(evaluated.get(0).get(0) instanceof DocumentIntact);
+        assertTrue(evaluated.get(1).get(0) instanceof RevocationCertificat);
+        assertTrue(evaluated.get(2).get(0) instanceof Inconnue);
+        assertNull(meterRegistry.find(FailFastValidation.SKIPPED).counter());
+    }
+
+    /**
+     * Les paliers sont ordonnés par durée mesurée une fois suffisamment de
+     * mesures disponibles.
+     */
+    @Test
+    public void orderTest() {
+        final List<List<Object>> groups = failFast.group(rules);
+        assertEquals(Arrays.asList(0, 1, 2), failFast.order("signature", groups));
+
+        for (int i = 0; i < 2; i++) {
+            meterRegistry.timer(FailFastValidation.TIER_TIMER, "kind", "signature", "tier", "0")
+                    .record(20, TimeUnit.MILLISECONDS);
+            meterRegistry.timer(FailFastValidation.TIER_TIMER, "kind", "signature", "tier", "1")
+                    .record(30, TimeUnit.MILLISECONDS);
+            meterRegistry.timer(FailFastValidation.TIER_TIMER, "kind", "signature", "tier", "2")
+                    .record(10, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(Arrays.asList(2, 0, 1), failFast.order("signature", groups));
+        // mesures propres au type d'objet vérifié
+        assertEquals(Arrays.asList(0, 1, 2), failFast.order("certificate", groups));
+    }
+
+    /**
+     * Skipped count of a rule.
+     *
+     * @param rule the rule name
+     * @return the count
+     */
+    private double skipped(final String rule) {
+        final Counter counter = meterRegistry.find(FailFastValidation.SKIPPED).tag("rule", rule).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
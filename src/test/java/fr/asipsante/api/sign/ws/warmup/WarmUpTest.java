@@ -0,0 +1,70 @@
+/**
+ * (c) Copyright 1998-2021, ANS. All rights reserved.
+ */
+
+package fr.asipsante.api.sign.ws.warmup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import fr.asipsante.api.sign.ws.bean.config.IGlobalConf;
+
+/**
+ * The Class WarmUpTest.
+ */
+public class WarmUpTest {
+
+    /** The warm up. */
+    private WarmUp warmUp;
+
+    /** The health indicator. */
+    private WarmUpHealthIndicator healthIndicator;
+
+    /**
+     * Init.
+     */
+    @Before
+    public void init() {
+        final IGlobalConf globalConf = mock(IGlobalConf.class);
+        when(globalConf.getSignature()).thenReturn(Collections.emptyList());
+        when(globalConf.getSignatureVerification()).thenReturn(Collections.emptyList());
+        warmUp = new WarmUp();
+        ReflectionTestUtils.setField(warmUp, "globalConf", globalConf);
+        ReflectionTestUtils.setField(warmUp, "iterations", 1);
+        healthIndicator = new WarmUpHealthIndicator();
+        ReflectionTestUtils.setField(healthIndicator, "warmUp", warmUp);
+    }
+
+    /**
+     * Disabled warm-up test: ready immediately.
+     */
+    @Test
+    public void disabledTest() {
+        ReflectionTestUtils.setField(warmUp, "enabled", false);
+        assertTrue(warmUp.isDone());
+        assertEquals(Status.UP, healthIndicator.health().getStatus());
+    }
+
+    /**
+     * Enabled warm-up test: not ready until completed.
+     */
+    @Test
+    public void enabledTest() {
+        ReflectionTestUtils.setField(warmUp, "enabled", true);
+        assertFalse(warmUp.isDone());
+        assertEquals(Status.DOWN, healthIndicator.health().getStatus());
+        warmUp.run();
+        assertTrue(warmUp.isDone());
+        assertEquals(Status.UP, healthIndicator.health().getStatus());
+    }
+}